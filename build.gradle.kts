@@ -8,6 +8,7 @@ plugins {
     id("io.spring.dependency-management")
     id("com.github.ben-manes.versions")
     id("com.diffplug.spotless")
+    id("me.champeau.jmh")
 }
 
 java {
@@ -33,6 +34,7 @@ sourceSets {
 idea {
     module {
         testSources.from(sourceSets["functionalTest"].java.srcDirs)
+        testSources.from(sourceSets["jmh"].java.srcDirs)
     }
 }
 
@@ -66,9 +68,13 @@ val functionalTest = task<Test>("functionalTest") {
 dependencies {
     /* Spring Boot */
     implementation ("org.springframework.boot:spring-boot-starter-web")
+    implementation ("org.springframework.boot:spring-boot-starter-actuator")
     testImplementation("org.springframework.boot:spring-boot-starter-test") {
         exclude (group = "org.junit.vintage", module = "junit-vintage-engine")
     }
+
+    /* Benchmarks */
+    jmh("org.openjdk.jol:jol-core:0.17")
 }
 
 tasks.named<Test>("test") {
@@ -81,6 +87,29 @@ tasks.named<Test>("test") {
 
 tasks.check { dependsOn(functionalTest) }
 
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.set(listOf(it)) }
+}
+
+tasks.register<JavaExec>("footprint") {
+    description = "Compares the heap footprint of the reading store layouts."
+    group = "benchmark"
+
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("uk.tw.energy.store.ReadingStoreFootprint")
+    jvmArgs("-Djdk.attach.allowAttachSelf=true")
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Compares request throughput and latency on platform and virtual threads under slow clients."
+    group = "benchmark"
+
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("uk.tw.energy.VirtualThreadLoadTest")
+}
+
 fun isNonStable(version: String): Boolean {
     val stableKeyword = listOf("RELEASE", "FINAL", "GA").any { version.uppercase().contains(it) }
     val regex = "^[0-9,.v-]+(-r)?$".toRegex()
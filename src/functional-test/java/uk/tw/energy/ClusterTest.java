@@ -0,0 +1,236 @@
+package uk.tw.energy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import uk.tw.energy.cluster.ClusterRouter;
+import uk.tw.energy.cluster.ConsistentHashRing;
+import uk.tw.energy.domain.ClusterNodes;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+
+/**
+ * Runs several nodes on localhost, each a separate application context listening on its own port.
+ */
+public class ClusterTest {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final String ASYNC_INGESTION = "--joi.readings.async.enabled=true";
+    private static final Duration STORE_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(20);
+
+    private final TestRestTemplate restTemplate = new TestRestTemplate();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @AfterEach
+    public void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    public void shouldServeEveryMeterFromAnyNode() {
+        List<String> cluster = List.of(freeNode(), freeNode());
+        cluster.forEach(node -> start(node, cluster));
+
+        for (int meter = 0; meter < 5; meter++) {
+            for (String node : cluster) {
+                ResponseEntity<Map> response =
+                        restTemplate.getForEntity(node + "/price-plans/compare-all/smart-meter-" + meter, Map.class);
+
+                assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            }
+        }
+    }
+
+    @Test
+    public void shouldStoreReadingsOnTheNodeThatOwnsTheMeter() {
+        List<String> cluster = List.of(freeNode(), freeNode());
+        cluster.forEach(node -> start(node, cluster));
+        ConsistentHashRing ring = new ConsistentHashRing(cluster, VIRTUAL_NODES);
+        String smartMeterId = meterOwnedBy(ring, cluster.get(1));
+
+        ResponseEntity<String> response = restTemplate.postForEntity(
+                cluster.get(0) + "/readings/store", meterReadings(smartMeterId), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(readLocally(cluster.get(1), smartMeterId).getBody()).hasSize(1);
+        assertThat(readLocally(cluster.get(0), smartMeterId).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void shouldHandMetersOverToANodeThatJoins() {
+        List<String> cluster = List.of(freeNode(), freeNode());
+        cluster.forEach(node -> start(node, cluster));
+        for (int meter = 0; meter < 50; meter++) {
+            restTemplate.postForEntity(
+                    cluster.get(0) + "/readings/store", meterReadings("joining-meter-" + meter), String.class);
+        }
+        restTemplate.postForEntity(
+                cluster.get(0) + "/accounts/switch", Map.of("smart-meter-3", "price-plan-1"), Map.class);
+
+        String joining = freeNode();
+        List<String> grown = List.of(cluster.get(0), cluster.get(1), joining);
+        start(joining, grown);
+
+        ConsistentHashRing ring = new ConsistentHashRing(grown, VIRTUAL_NODES);
+        for (int meter = 0; meter < 50; meter++) {
+            String smartMeterId = "joining-meter-" + meter;
+            for (String node : grown) {
+                ResponseEntity<ElectricityReading[]> readings = readLocally(node, smartMeterId);
+                if (node.equals(ring.ownerOf(smartMeterId))) {
+                    assertThat(readings.getBody()).hasSize(1);
+                } else {
+                    assertThat(readings.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+                }
+            }
+        }
+        assertThat(restTemplate
+                        .getForEntity(cluster.get(0) + "/cluster", ClusterNodes.class)
+                        .getBody()
+                        .nodes())
+                .containsExactlyInAnyOrderElementsOf(grown);
+        assertThat(accountLocally(joining, "smart-meter-3").getBody()).containsEntry("pricePlanId", "price-plan-1");
+    }
+
+    @Test
+    public void shouldSwitchAnAccountOnEveryNodeWhicheverNodeTheSwitchIsSentTo() {
+        List<String> cluster = List.of(freeNode(), freeNode(), freeNode());
+        cluster.forEach(node -> start(node, cluster));
+        ConsistentHashRing ring = new ConsistentHashRing(cluster, VIRTUAL_NODES);
+        String switchedOne = meterOwnedBy(ring, cluster.get(1));
+
+        restTemplate.put(cluster.get(0) + "/accounts/" + switchedOne + "?pricePlanId=price-plan-1", null);
+        ResponseEntity<Map> switchedMany = restTemplate.postForEntity(
+                cluster.get(2) + "/accounts/switch", Map.of("smart-meter-3", "price-plan-1"), Map.class);
+
+        assertThat(switchedMany.getStatusCode()).isEqualTo(HttpStatus.OK);
+        for (String node : cluster) {
+            for (String smartMeterId : List.of(switchedOne, "smart-meter-3")) {
+                assertThat(accountLocally(node, smartMeterId).getBody()).containsEntry("pricePlanId", "price-plan-1");
+            }
+        }
+    }
+
+    @Test
+    public void givenOwnersThatQueueReadingsShouldHandMetersOverWithoutKeepingACopy() {
+        List<String> cluster = List.of(freeNode(), freeNode());
+        cluster.forEach(node -> start(node, cluster, ASYNC_INGESTION));
+        ConsistentHashRing ring = new ConsistentHashRing(cluster, VIRTUAL_NODES);
+        for (int meter = 0; meter < 50; meter++) {
+            String smartMeterId = "queued-meter-" + meter;
+            ResponseEntity<String> response = restTemplate.postForEntity(
+                    cluster.get(0) + "/readings/store", meterReadings(smartMeterId), String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+            assertThat(readLocallyOnceStored(ring.ownerOf(smartMeterId), smartMeterId).getBody())
+                    .hasSize(1);
+        }
+
+        String joining = freeNode();
+        List<String> grown = List.of(cluster.get(0), cluster.get(1), joining);
+        start(joining, grown, ASYNC_INGESTION);
+
+        ConsistentHashRing grownRing = new ConsistentHashRing(grown, VIRTUAL_NODES);
+        for (int meter = 0; meter < 50; meter++) {
+            String smartMeterId = "queued-meter-" + meter;
+            String owner = grownRing.ownerOf(smartMeterId);
+            assertThat(readLocallyOnceStored(owner, smartMeterId).getBody()).hasSize(1);
+            for (String node : grown) {
+                if (!node.equals(owner)) {
+                    assertThat(readLocally(node, smartMeterId).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+                }
+            }
+        }
+    }
+
+    private void start(String node, List<String> cluster, String... properties) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=" + node.substring(node.lastIndexOf(':') + 1),
+                "--joi.cluster.self=" + node,
+                "--joi.cluster.nodes=" + String.join(",", cluster),
+                "--logging.level.root=WARN"));
+        args.addAll(List.of(properties));
+        nodes.add(SpringApplication.run(App.class, args.toArray(String[]::new)));
+    }
+
+    /**
+     * Reads the meter's readings from the node itself, without the request being routed to the owner.
+     */
+    private ResponseEntity<ElectricityReading[]> readLocally(String node, String smartMeterId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(ClusterRouter.FORWARDED_HEADER, "test");
+        return restTemplate.exchange(
+                node + "/readings/read/" + smartMeterId,
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                ElectricityReading[].class);
+    }
+
+    /**
+     * Reads the meter's account from the node itself, without the request being routed to the owner.
+     */
+    private ResponseEntity<Map> accountLocally(String node, String smartMeterId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(ClusterRouter.FORWARDED_HEADER, "test");
+        return restTemplate.exchange(
+                node + "/accounts/" + smartMeterId, HttpMethod.GET, new HttpEntity<>(headers), Map.class);
+    }
+
+    /**
+     * Reads the meter's readings from the node itself as {@link #readLocally} does, waiting for a node that queues
+     * readings to store them.
+     */
+    private ResponseEntity<ElectricityReading[]> readLocallyOnceStored(String node, String smartMeterId) {
+        long deadline = System.nanoTime() + STORE_TIMEOUT.toNanos();
+        ResponseEntity<ElectricityReading[]> readings = readLocally(node, smartMeterId);
+        while (readings.getStatusCode() == HttpStatus.NOT_FOUND && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            readings = readLocally(node, smartMeterId);
+        }
+        return readings;
+    }
+
+    private static MeterReadings meterReadings(String smartMeterId) {
+        return new MeterReadings(
+                smartMeterId, List.of(new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), BigDecimal.ONE)));
+    }
+
+    private static String meterOwnedBy(ConsistentHashRing ring, String node) {
+        for (int meter = 0; ; meter++) {
+            if (ring.ownerOf("meter-" + meter).equals(node)) {
+                return "meter-" + meter;
+            }
+        }
+    }
+
+    private static String freeNode() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://localhost:" + socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
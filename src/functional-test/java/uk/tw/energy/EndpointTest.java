@@ -17,8 +17,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import uk.tw.energy.builders.MeterReadingsBuilder;
+import uk.tw.energy.domain.BatchIngestionResult;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = App.class)
 public class EndpointTest {
@@ -43,6 +45,26 @@ public class EndpointTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
     }
 
+    @Test
+    public void shouldStoreBatchOfReadings() {
+        String body =
+                """
+                {"smartMeterId": "carol", "electricityReadings": [{"time": "2024-04-26T00:00:10Z", "reading": 0.5}]}
+                {"smartMeterId": "dave", "electricityReadings": [{"time": "2024-04-26T00:00:10Z", "reading": 1.5}]}
+                {"smartMeterId": "erin", "electricityReadings": []}
+                """;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+
+        ResponseEntity<BatchIngestionResult> response = restTemplate.postForEntity(
+                "/readings/store/batch", new HttpEntity<>(body, headers), BatchIngestionResult.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().accepted()).isEqualTo(2);
+        assertThat(response.getBody().rejected()).isEqualTo(1);
+        assertThat(response.getBody().meters()).containsKeys("carol", "dave", "erin");
+    }
+
     @SuppressWarnings("DataFlowIssue")
     @Test
     public void givenMeterIdShouldReturnAMeterReadingAssociatedWithMeterId() {
@@ -60,6 +82,41 @@ public class EndpointTest {
         assertThat(Arrays.asList(response.getBody())).isEqualTo(data);
     }
 
+    @SuppressWarnings("DataFlowIssue")
+    @Test
+    public void givenMeterIdAndTimeRangeShouldReturnTheReadingsInRange() {
+        String smartMeterId = "frank";
+        List<ElectricityReading> data = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:30.00Z"), new BigDecimal(30)),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:10.00Z"), new BigDecimal(10)),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:20.00Z"), new BigDecimal(20)));
+        populateReadingsForMeter(smartMeterId, data);
+
+        ResponseEntity<ElectricityReading[]> response = restTemplate.getForEntity(
+                "/readings/read/" + smartMeterId + "?from=2024-04-26T00:00:15Z&to=2024-04-26T00:01:00Z",
+                ElectricityReading[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(Arrays.asList(response.getBody())).isEqualTo(List.of(data.get(2), data.get(0)));
+    }
+
+    @Test
+    public void givenMeterIdShouldStreamItsReadingsAsNewlineDelimitedJson() {
+        String smartMeterId = "grace";
+        List<ElectricityReading> data = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:10.00Z"), new BigDecimal(10)),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:20.00Z"), new BigDecimal(20)));
+        populateReadingsForMeter(smartMeterId, data);
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/readings/stream/" + smartMeterId, String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().lines())
+                .containsExactly(
+                        "{\"time\":\"2024-04-26T00:00:10Z\",\"reading\":10}",
+                        "{\"time\":\"2024-04-26T00:00:20Z\",\"reading\":20}");
+    }
+
     @Test
     public void shouldCalculateAllPrices() {
         String smartMeterId = "bob";
@@ -72,10 +129,15 @@ public class EndpointTest {
         ResponseEntity<CompareAllResponse> response =
                 restTemplate.getForEntity("/price-plans/compare-all/" + smartMeterId, CompareAllResponse.class);
 
+        // 0.1111 kWh, from ten seconds at 15 kW and ten at 25 kW
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody())
                 .isEqualTo(new CompareAllResponse(
-                        Map.of("price-plan-0", 36000, "price-plan-1", 7200, "price-plan-2", 3600), null));
+                        Map.of(
+                                "price-plan-0", new BigDecimal("1.1110"),
+                                "price-plan-1", new BigDecimal("0.2222"),
+                                "price-plan-2", new BigDecimal("0.1111")),
+                        null));
     }
 
     @SuppressWarnings("rawtypes")
@@ -91,7 +153,33 @@ public class EndpointTest {
         ResponseEntity<Map[]> response =
                 restTemplate.getForEntity("/price-plans/recommend/" + smartMeterId + "?limit=2", Map[].class);
 
-        assertThat(response.getBody()).containsExactly(Map.of("price-plan-2", 3600), Map.of("price-plan-1", 7200));
+        assertThat(response.getBody()).containsExactly(Map.of("price-plan-2", 0.1111), Map.of("price-plan-1", 0.2222));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void shouldReturnRecommendedPricePlansForEveryMeterWithAnAccount() {
+        ResponseEntity<Map> response = restTemplate.getForEntity("/price-plans/recommend-all?limit=1", Map.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).containsEntry("meters", 5);
+        assertThat((Map<?, ?>) response.getBody().get("pricePlans"))
+                .containsOnlyKeys("price-plan-0", "price-plan-1", "price-plan-2");
+        assertThat((Map<?, ?>) response.getBody().get("rankings"))
+                .hasSize(5)
+                .hasEntrySatisfying("smart-meter-0", ranking -> assertThat((List<?>) ranking).hasSize(1));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void shouldCountIngestedReadingsAndTimeRequests() {
+        populateReadingsForMeter("frank", new ElectricityReadingsGenerator().generate(5));
+
+        ResponseEntity<Map> ingested = restTemplate.getForEntity("/actuator/metrics/joi.readings.ingested", Map.class);
+        ResponseEntity<Map> requests = restTemplate.getForEntity("/actuator/metrics/http.server.requests", Map.class);
+
+        assertThat(ingested.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(requests.getStatusCode()).isEqualTo(HttpStatus.OK);
     }
 
     private void populateReadingsForMeter(String smartMeterId, List<ElectricityReading> data) {
@@ -101,5 +189,5 @@ public class EndpointTest {
         restTemplate.postForEntity("/readings/store", entity, String.class);
     }
 
-    record CompareAllResponse(Map<String, Integer> pricePlanComparisons, String pricePlanId) {}
+    record CompareAllResponse(Map<String, BigDecimal> pricePlanComparisons, String pricePlanId) {}
 }
@@ -0,0 +1,165 @@
+package uk.tw.energy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Compares serving requests on Tomcat's pool of platform threads with serving them on virtual threads, under load from
+ * clients that upload their readings slowly.
+ *
+ * <p>Slow clients each hold a request thread for as long as their upload takes. Once there are more of them than
+ * platform threads, requests from fast clients queue behind them, which shows in the fast clients' throughput and tail
+ * latency. On virtual threads a slow upload only parks a virtual thread.
+ *
+ * <p>Run with {@code ./gradlew loadTest}.
+ */
+public class VirtualThreadLoadTest {
+
+    private static final int SLOW_CLIENTS = 400;
+    private static final int FAST_CLIENTS = 50;
+    private static final Duration SLOW_UPLOAD = Duration.ofSeconds(2);
+    private static final int SLOW_UPLOAD_CHUNKS = 10;
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(20);
+
+    private static final Request SLOW_REQUEST = Request.of(
+            "POST /readings/store",
+            "{\"smartMeterId\": \"slow-meter\", "
+                    + "\"electricityReadings\": [{\"time\": \"2024-04-26T00:00:10Z\", \"reading\": 0.5}]}");
+    private static final Request FAST_REQUEST = Request.of("GET /price-plans/compare-all/smart-meter-0", "");
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf(
+                "%-9s %12s %12s %12s %12s %12s%n",
+                "threads", "requests", "requests/s", "p50 ms", "p99 ms", "p99.9 ms");
+        for (boolean virtualThreads : new boolean[] {false, true}) {
+            try (ConfigurableApplicationContext context = SpringApplication.run(
+                    App.class,
+                    "--server.port=0",
+                    "--spring.threads.virtual.enabled=" + virtualThreads,
+                    "--logging.level.root=WARN")) {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                report(virtualThreads ? "virtual" : "platform", load(port));
+            }
+        }
+    }
+
+    /**
+     * @return latencies of the fast clients' requests completed during the measurement, in nanoseconds, sorted
+     */
+    private static long[] load(int port) {
+        long measureFrom = System.nanoTime() + WARMUP.toNanos();
+        long stopAt = measureFrom + MEASUREMENT.toNanos();
+        List<FastClient> fastClients = new ArrayList<>();
+        AtomicLong failures = new AtomicLong();
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < SLOW_CLIENTS; client++) {
+                clients.submit(() -> {
+                    while (System.nanoTime() < stopAt) {
+                        try {
+                            send(port, SLOW_REQUEST, SLOW_UPLOAD_CHUNKS);
+                        } catch (IOException | InterruptedException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            for (int client = 0; client < FAST_CLIENTS; client++) {
+                FastClient fastClient = new FastClient();
+                fastClients.add(fastClient);
+                clients.submit(() -> {
+                    while (System.nanoTime() < stopAt) {
+                        long start = System.nanoTime();
+                        try {
+                            send(port, FAST_REQUEST, 1);
+                        } catch (IOException | InterruptedException e) {
+                            failures.incrementAndGet();
+                            continue;
+                        }
+                        long end = System.nanoTime();
+                        if (start >= measureFrom && end <= stopAt) {
+                            fastClient.latencies.add(end - start);
+                        }
+                    }
+                });
+            }
+        }
+
+        if (failures.get() > 0) {
+            System.out.println(failures.get() + " requests failed");
+        }
+        return fastClients.stream()
+                .flatMap(fastClient -> fastClient.latencies.stream())
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * Sends the request headers, then the body in chunks spread over {@link #SLOW_UPLOAD} when there is more than one,
+     * and reads the whole response.
+     */
+    private static void send(int port, Request request, int chunks) throws IOException, InterruptedException {
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(request.head());
+            out.flush();
+            byte[] body = request.body();
+            int chunk = Math.max(1, (body.length + chunks - 1) / chunks);
+            for (int offset = 0; offset < body.length; offset += chunk) {
+                Thread.sleep(SLOW_UPLOAD.dividedBy(chunks));
+                out.write(body, offset, Math.min(chunk, body.length - offset));
+                out.flush();
+            }
+            socket.getInputStream().readAllBytes();
+        }
+    }
+
+    private static void report(String threads, long[] latencies) {
+        System.out.printf(
+                "%-9s %12d %12.0f %12.2f %12.2f %12.2f%n",
+                threads,
+                latencies.length,
+                latencies.length / (double) MEASUREMENT.toSeconds(),
+                percentile(latencies, 0.5),
+                percentile(latencies, 0.99),
+                percentile(latencies, 0.999));
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    private static final class FastClient {
+
+        final List<Long> latencies = new ArrayList<>();
+    }
+
+    private record Request(byte[] head, byte[] body) {
+
+        static Request of(String requestLine, String body) {
+            String head = requestLine + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n";
+            if (!body.isEmpty()) {
+                head += "Content-Type: application/json\r\nContent-Length: " + body.length() + "\r\n";
+            }
+            return new Request(
+                    (head + "\r\n").getBytes(StandardCharsets.US_ASCII), body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
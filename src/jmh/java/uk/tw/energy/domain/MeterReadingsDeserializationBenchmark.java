@@ -0,0 +1,61 @@
+package uk.tw.energy.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import uk.tw.energy.SeedingApplicationDataConfiguration;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+/**
+ * Parses the body of a store readings request, once as JSON with the same {@link ObjectMapper} configuration as the
+ * application and once in the {@linkplain BinaryMeterReadings binary format}, for the same readings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MeterReadingsDeserializationBenchmark {
+
+    @Param({"10", "1000"})
+    public int readingsPerMeter;
+
+    private ObjectReader meterReadingsReader;
+    private byte[] requestBody;
+    private byte[] binaryRequestBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper =
+                new SeedingApplicationDataConfiguration().objectMapper(new Jackson2ObjectMapperBuilder());
+        MeterReadings meterReadings =
+                new MeterReadings("smart-meter-0", new ElectricityReadingsGenerator().generate(readingsPerMeter));
+        requestBody = objectMapper.writeValueAsBytes(meterReadings);
+        binaryRequestBody = BinaryMeterReadings.encode(meterReadings);
+        meterReadingsReader = objectMapper.readerFor(MeterReadings.class);
+    }
+
+    @Benchmark
+    public MeterReadings readMeterReadings() throws IOException {
+        return meterReadingsReader.readValue(requestBody);
+    }
+
+    @Benchmark
+    public BinaryMeterReadings readBinaryMeterReadings() {
+        return BinaryMeterReadings.decode(binaryRequestBody);
+    }
+}
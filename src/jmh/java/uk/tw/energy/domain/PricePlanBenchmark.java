@@ -0,0 +1,58 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+/**
+ * Prices every reading of a meter against a plan with a peak time multiplier for each day of the week.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PricePlanBenchmark {
+
+    @Param({"10", "1000"})
+    public int readingsPerMeter;
+
+    private PricePlan pricePlan;
+    private LocalDateTime[] readingTimes;
+
+    @Setup
+    public void setUp() {
+        List<PricePlan.PeakTimeMultiplier> peakTimeMultipliers = Arrays.stream(DayOfWeek.values())
+                .map(dayOfWeek -> new PricePlan.PeakTimeMultiplier(dayOfWeek, BigDecimal.valueOf(2)))
+                .toList();
+        pricePlan = new PricePlan("price-plan", "supplier", BigDecimal.TEN, peakTimeMultipliers);
+        readingTimes = new ElectricityReadingsGenerator().generate(readingsPerMeter).stream()
+                .map(reading -> LocalDateTime.ofInstant(reading.time(), ZoneOffset.UTC))
+                .toArray(LocalDateTime[]::new);
+    }
+
+    @Benchmark
+    public void getPrice(Blackhole blackhole) {
+        for (LocalDateTime readingTime : readingTimes) {
+            blackhole.consume(pricePlan.getPrice(readingTime));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+/**
+ * Prices a meter's usage profile on a catalog of time of use plans, each with its own evening peak, against pricing
+ * the trapezoid between every pair of readings at the rate of its half-hour as was done before profiles were kept.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UsageProfileBenchmark {
+
+    private static final BigDecimal NANOS_PER_HOUR = BigDecimal.valueOf(Duration.ofHours(1).toNanos());
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    @Param({"1000"})
+    public int pricePlanCount;
+
+    @Param({"100", "10000"})
+    public int readingsPerMeter;
+
+    private List<PricePlan> pricePlans;
+    private List<ElectricityReading> readings;
+    private UsageProfile usageProfile;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(22);
+        pricePlans = new ArrayList<>(pricePlanCount);
+        for (int i = 0; i < pricePlanCount; i++) {
+            LocalTime peakStart = LocalTime.of(15 + random.nextInt(4), 30 * random.nextInt(2));
+            pricePlans.add(new PricePlan(
+                    "price-plan-" + i,
+                    "supplier",
+                    BigDecimal.valueOf(10 + random.nextInt(30), 2),
+                    List.of(new PricePlan.PeakTimeMultiplier(
+                            DayOfWeek.of(1 + random.nextInt(7)),
+                            peakStart,
+                            peakStart.plusHours(3),
+                            BigDecimal.valueOf(15 + random.nextInt(10), 1)))));
+        }
+        readings = new ElectricityReadingsGenerator().generate(readingsPerMeter);
+        usageProfile = new UsageProfile();
+        usageProfile.addAll(ReadingColumns.of(readings));
+    }
+
+    @Benchmark
+    public void priceUsageProfile(Blackhole blackhole) {
+        for (PricePlan pricePlan : pricePlans) {
+            blackhole.consume(usageProfile.price(pricePlan, 4));
+        }
+    }
+
+    @Benchmark
+    public void priceEveryReading(Blackhole blackhole) {
+        for (PricePlan pricePlan : pricePlans) {
+            BigDecimal priced = BigDecimal.ZERO;
+            for (int i = 1; i < readings.size(); i++) {
+                ElectricityReading from = readings.get(i - 1);
+                ElectricityReading to = readings.get(i);
+                BigDecimal hours = BigDecimal.valueOf(Duration.between(from.time(), to.time()).toNanos())
+                        .divide(NANOS_PER_HOUR, 12, RoundingMode.HALF_UP);
+                BigDecimal energy = from.reading().add(to.reading()).multiply(hours).divide(TWO);
+                priced = priced.add(energy.multiply(pricePlan.getPrice(from.time())));
+            }
+            blackhole.consume(priced.setScale(4, RoundingMode.HALF_UP));
+        }
+    }
+}
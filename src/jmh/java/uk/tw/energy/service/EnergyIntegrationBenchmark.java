@@ -0,0 +1,83 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.EnergyIntegrator;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+/**
+ * Works out the energy one meter consumed by integrating its readings in time order, against the average reading over
+ * the usage time worked out with a stream each for the sum, the first and the last reading, as was done before.
+ * Readings are stored shuffled, so that integrating them goes through the store's time index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EnergyIntegrationBenchmark {
+
+    private static final String SMART_METER_ID = "smart-meter-0";
+
+    @Param({"100", "10000"})
+    public int readingsPerMeter;
+
+    @Param({"TRAPEZOIDAL", "LEFT_RIEMANN"})
+    public EnergyIntegration energyIntegration;
+
+    private MeterReadingService meterReadingService;
+
+    @Setup
+    public void setUp() {
+        List<ElectricityReading> readings = new ElectricityReadingsGenerator().generate(readingsPerMeter);
+        Collections.shuffle(readings, new Random(23));
+        meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        meterReadingService.storeReadings(SMART_METER_ID, readings);
+    }
+
+    @Benchmark
+    public BigDecimal integrate() {
+        EnergyIntegrator integrator = new EnergyIntegrator(energyIntegration, null);
+        meterReadingService.forEachInTimeOrder(SMART_METER_ID, integrator, integrator::add);
+        return integrator.energyInKwH();
+    }
+
+    @Benchmark
+    public BigDecimal averageOverUsageTimeWithStreams() {
+        List<ElectricityReading> readings = meterReadingService.getReadings(SMART_METER_ID).orElseThrow();
+        BigDecimal average = readings.stream()
+                .map(ElectricityReading::reading)
+                .reduce(BigDecimal.ZERO, BigDecimal::add)
+                .divide(BigDecimal.valueOf(readings.size()), RoundingMode.HALF_UP);
+        ElectricityReading first = readings.stream()
+                .min(Comparator.comparing(ElectricityReading::time))
+                .orElseThrow();
+        ElectricityReading last = readings.stream()
+                .max(Comparator.comparing(ElectricityReading::time))
+                .orElseThrow();
+        BigDecimal usageTimeInHours =
+                BigDecimal.valueOf(Duration.between(first.time(), last.time()).getSeconds() / 3600.0);
+        return average.divide(usageTimeInHours, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,72 @@
+package uk.tw.energy.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.SeedingApplicationDataConfiguration;
+import uk.tw.energy.domain.FleetRecommendation;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+/**
+ * Recommends price plans for a whole fleet of meters. Divide the meter count by the reported time per operation to
+ * get meters per second.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class FleetRecommendationServiceBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int meterCount;
+
+    @Param({"10"})
+    public int readingsPerMeter;
+
+    private FleetRecommendationService fleetRecommendationService;
+
+    @Setup
+    public void setUp() {
+        MeterReadingService meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        List<PricePlan> pricePlans = new SeedingApplicationDataConfiguration().pricePlans();
+        Map<String, String> smartMeterToPricePlanAccounts = new HashMap<>();
+        for (int meter = 0; meter < meterCount; meter++) {
+            String smartMeterId = "smart-meter-" + meter;
+            meterReadingService.storeReadings(smartMeterId, generator.generate(readingsPerMeter));
+            smartMeterToPricePlanAccounts.put(
+                    smartMeterId, pricePlans.get(meter % pricePlans.size()).getPlanName());
+        }
+        fleetRecommendationService = new FleetRecommendationService(
+                new PricePlanService(new PricePlanCatalog(pricePlans), meterReadingService),
+                new AccountService(smartMeterToPricePlanAccounts));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fleetRecommendationService.shutdown();
+    }
+
+    @Benchmark
+    public FleetRecommendation recommendForFleet() {
+        return fleetRecommendationService.recommendForFleet(false, null);
+    }
+}
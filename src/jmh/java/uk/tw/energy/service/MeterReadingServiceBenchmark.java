@@ -0,0 +1,67 @@
+package uk.tw.energy.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+/**
+ * Time to ingest one batch of readings for every meter of a fleet. Each iteration starts from an empty store so that
+ * the heap does not grow from one iteration to the next.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Thread)
+public class MeterReadingServiceBenchmark {
+
+    @Param({"100", "10000"})
+    public int meterCount;
+
+    @Param({"10", "1000"})
+    public int readingsPerMeter;
+
+    private String[] smartMeterIds;
+    private List<List<ElectricityReading>> batches;
+    private MeterReadingService meterReadingService;
+
+    @Setup(Level.Trial)
+    public void generateReadings() {
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        smartMeterIds = new String[meterCount];
+        batches = new ArrayList<>(meterCount);
+        for (int meter = 0; meter < meterCount; meter++) {
+            smartMeterIds[meter] = "smart-meter-" + meter;
+            batches.add(generator.generate(readingsPerMeter));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyStore() {
+        meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+    }
+
+    @Benchmark
+    public MeterReadingService storeReadings() {
+        for (int meter = 0; meter < meterCount; meter++) {
+            meterReadingService.storeReadings(smartMeterIds[meter], batches.get(meter));
+        }
+        return meterReadingService;
+    }
+}
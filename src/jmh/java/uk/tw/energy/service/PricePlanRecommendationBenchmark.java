@@ -0,0 +1,62 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Picks the cheapest few of a meter's costs on a large catalog of price plans, keeping them in a bounded heap, against
+ * sorting every plan and taking the first few as recommendations used to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PricePlanRecommendationBenchmark {
+
+    @Param({"100", "10000"})
+    public int pricePlanCount;
+
+    @Param({"5"})
+    public int limit;
+
+    private Map<String, BigDecimal> costs;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        costs = new HashMap<>();
+        for (int pricePlan = 0; pricePlan < pricePlanCount; pricePlan++) {
+            costs.put("price-plan-" + pricePlan, BigDecimal.valueOf(random.nextInt(1_000_000), 4));
+        }
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, BigDecimal>> cheapestInBoundedHeap() {
+        return PricePlanRecommendationService.cheapest(costs, pricePlanId -> true, limit);
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, BigDecimal>> sortEveryPricePlan() {
+        List<Map.Entry<String, BigDecimal>> ranking = new ArrayList<>(costs.entrySet());
+        ranking.sort(PricePlanRecommendationService.CHEAPEST_FIRST);
+        return ranking.subList(0, limit);
+    }
+}
@@ -0,0 +1,63 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.SeedingApplicationDataConfiguration;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+/**
+ * Costs every price plan for one meter at a time, cycling through a fleet of meters so that the working set is as
+ * large as it would be in production.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PricePlanServiceBenchmark {
+
+    @Param({"100", "10000"})
+    public int meterCount;
+
+    @Param({"10", "1000"})
+    public int readingsPerMeter;
+
+    private PricePlanService pricePlanService;
+    private String[] smartMeterIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        MeterReadingService meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        smartMeterIds = new String[meterCount];
+        for (int meter = 0; meter < meterCount; meter++) {
+            smartMeterIds[meter] = "smart-meter-" + meter;
+            meterReadingService.storeReadings(smartMeterIds[meter], generator.generate(readingsPerMeter));
+        }
+        pricePlanService = new PricePlanService(
+                new PricePlanCatalog(new SeedingApplicationDataConfiguration().pricePlans()), meterReadingService);
+    }
+
+    @Benchmark
+    public Optional<Map<String, BigDecimal>> getConsumptionCostOfElectricityReadingsForEachPricePlan() {
+        String smartMeterId = smartMeterIds[next];
+        next = (next + 1) % smartMeterIds.length;
+        return pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId);
+    }
+}
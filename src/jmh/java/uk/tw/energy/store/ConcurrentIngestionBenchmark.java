@@ -0,0 +1,86 @@
+package uk.tw.energy.store;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+/**
+ * Time for each writer thread to store a fixed number of batches into a shared {@link ColumnarReadingStore}, as the
+ * number of writer threads grows. Each thread writes to its own meter, which is the common case for ingestion, so a
+ * time that stays flat as threads are added means throughput scales with the cores.
+ *
+ * <p>Every iteration starts from an empty store to keep the heap bounded.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = ConcurrentIngestionBenchmark.BATCHES_PER_ITERATION)
+@Measurement(iterations = 10, batchSize = ConcurrentIngestionBenchmark.BATCHES_PER_ITERATION)
+@Fork(1)
+public class ConcurrentIngestionBenchmark {
+
+    static final int BATCHES_PER_ITERATION = 50_000;
+    private static final int READINGS_PER_BATCH = 20;
+
+    @State(Scope.Benchmark)
+    public static class SharedStore {
+
+        final AtomicInteger meters = new AtomicInteger();
+        ReadingStore readingStore;
+        List<ElectricityReading> batch;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            readingStore = new ColumnarReadingStore();
+            batch = new ElectricityReadingsGenerator().generate(READINGS_PER_BATCH);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+
+        String smartMeterId;
+
+        @Setup(Level.Iteration)
+        public void setUp(SharedStore shared) {
+            smartMeterId = "smart-meter-" + shared.meters.incrementAndGet();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void oneWriter(SharedStore shared, Writer writer) {
+        shared.readingStore.storeReadings(writer.smartMeterId, shared.batch);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void twoWriters(SharedStore shared, Writer writer) {
+        shared.readingStore.storeReadings(writer.smartMeterId, shared.batch);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fourWriters(SharedStore shared, Writer writer) {
+        shared.readingStore.storeReadings(writer.smartMeterId, shared.batch);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void writerPerCore(SharedStore shared, Writer writer) {
+        shared.readingStore.storeReadings(writer.smartMeterId, shared.batch);
+    }
+}
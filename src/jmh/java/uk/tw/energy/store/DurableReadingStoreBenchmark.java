@@ -0,0 +1,133 @@
+package uk.tw.energy.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+/**
+ * Write throughput and recovery time of the {@link DurableReadingStore}.
+ *
+ * <p>{@code store} times a fixed number of batches written by one thread, to compare with the in-memory
+ * {@link ConcurrentIngestionBenchmark}. {@code recover} times opening a store that already holds
+ * {@code meterCount * readingsPerMeter} readings. Both start every iteration from a fresh directory, which is deleted
+ * afterwards.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DurableReadingStoreBenchmark {
+
+    static final int BATCHES_PER_ITERATION = 50_000;
+    private static final int READINGS_PER_BATCH = 20;
+
+    @State(Scope.Benchmark)
+    public static class EmptyStore {
+
+        @Param({"false", "true"})
+        public boolean forceWrites;
+
+        Path directory;
+        DurableReadingStore readingStore;
+        List<ElectricityReading> batch;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("durable-reading-store");
+            readingStore = new DurableReadingStore(
+                    directory,
+                    DurableReadingStore.DEFAULT_SHARD_COUNT,
+                    DurableReadingStore.DEFAULT_SEGMENT_BYTES,
+                    forceWrites);
+            batch = new ElectricityReadingsGenerator().generate(READINGS_PER_BATCH);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            readingStore.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilledDirectory {
+
+        @Param({"10000"})
+        public int meterCount;
+
+        @Param({"100", "1000"})
+        public int readingsPerMeter;
+
+        Path directory;
+        DurableReadingStore recovered;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("durable-reading-store");
+            ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+            try (DurableReadingStore readingStore = new DurableReadingStore(directory)) {
+                for (int meter = 0; meter < meterCount; meter++) {
+                    readingStore.storeReadings("smart-meter-" + meter, generator.generate(readingsPerMeter));
+                }
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void closeRecovered() throws IOException {
+            recovered.close();
+            recovered = null;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3, batchSize = BATCHES_PER_ITERATION)
+    @Measurement(iterations = 5, batchSize = BATCHES_PER_ITERATION)
+    public void store(EmptyStore empty) {
+        empty.readingStore.storeReadings("smart-meter-" + (empty.next++ % 1000), empty.batch);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public DurableReadingStore recover(FilledDirectory filled) throws IOException {
+        filled.recovered = new DurableReadingStore(filled.directory);
+        return filled.recovered;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
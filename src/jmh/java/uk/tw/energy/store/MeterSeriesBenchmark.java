@@ -0,0 +1,70 @@
+package uk.tw.energy.store;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+/**
+ * Readings decoded per second from a {@link MeterSeries}, most of which sits in compressed blocks.
+ *
+ * <p>{@code forEach} goes through every reading, as costing does. {@code between} reads the last hundredth of the
+ * series by time, which finds the range by binary search and decodes only the blocks it spans. The bytes a reading
+ * takes are measured by {@link ReadingStoreFootprint}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeterSeriesBenchmark {
+
+    private static final int READINGS = 100_000;
+
+    @Param({"true", "false"})
+    public boolean inTimeOrder;
+
+    private MeterSeries series;
+    private Instant from;
+    private Instant to;
+
+    @Setup
+    public void fillSeries() {
+        List<ElectricityReading> readings = new ElectricityReadingsGenerator().generate(READINGS);
+        if (!inTimeOrder) {
+            readings = readings.reversed();
+        }
+        series = new MeterSeries();
+        series.appendAll(ReadingColumns.of(readings));
+        from = series.summary().latest().minusSeconds(READINGS / 10);
+        to = series.summary().latest().plusSeconds(1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READINGS)
+    public void forEach(Blackhole blackhole) {
+        series.forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READINGS / 100)
+    public void between(Blackhole blackhole) {
+        series.forEachBetween(from, to, Integer.MAX_VALUE, blackhole::consume);
+    }
+}
@@ -0,0 +1,89 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import org.openjdk.jol.info.GraphLayout;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+/**
+ * Measures the retained heap of the readings of a fleet of meters, once held as lists of {@link ElectricityReading}
+ * objects and once held by the {@link ColumnarReadingStore}.
+ *
+ * <p>Readings are either those of the {@link ElectricityReadingsGenerator}, which are random from one to the next, or
+ * those of a meter reporting every ten seconds on a load that varies slowly, which compress far better.
+ *
+ * <p>Run with {@code ./gradlew footprint}.
+ */
+public class ReadingStoreFootprint {
+
+    private static final int[] METER_COUNTS = {1_000, 10_000};
+    private static final int[] READINGS_PER_METER = {10, 100, 1_000};
+
+    public static void main(String[] args) {
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        System.out.printf(
+                "%-10s %-8s %8s %10s %16s %16s%n",
+                "layout",
+                "workload",
+                "meters",
+                "readings",
+                "bytes",
+                "bytes/reading");
+        for (int meterCount : METER_COUNTS) {
+            for (int readingsPerMeter : READINGS_PER_METER) {
+                if ((long) meterCount * readingsPerMeter > 1_000_000) {
+                    continue;
+                }
+                measure("random", meterCount, readingsPerMeter, generator::generate);
+                measure("regular", meterCount, readingsPerMeter, ReadingStoreFootprint::regular);
+            }
+        }
+    }
+
+    private static void measure(
+            String workload, int meterCount, int readingsPerMeter, IntFunction<List<ElectricityReading>> readings) {
+        Map<String, List<ElectricityReading>> mapOfLists = new HashMap<>();
+        ColumnarReadingStore columnar = new ColumnarReadingStore();
+        for (int meter = 0; meter < meterCount; meter++) {
+            String smartMeterId = "smart-meter-" + meter;
+            List<ElectricityReading> meterReadings = readings.apply(readingsPerMeter);
+            mapOfLists.computeIfAbsent(smartMeterId, id -> new ArrayList<>()).addAll(meterReadings);
+            columnar.storeReadings(smartMeterId, meterReadings);
+        }
+
+        long readingCount = (long) meterCount * readingsPerMeter;
+        report("map", workload, meterCount, readingCount, GraphLayout.parseInstance(mapOfLists).totalSize());
+        report("columnar", workload, meterCount, readingCount, GraphLayout.parseInstance(columnar).totalSize());
+    }
+
+    /**
+     * @return readings ten seconds apart, of a load drifting by at most a watt from one to the next
+     */
+    private static List<ElectricityReading> regular(int number) {
+        List<ElectricityReading> readings = new ArrayList<>(number);
+        Instant start = Instant.parse("2024-04-26T00:00:00Z");
+        long load = 5_000;
+        for (int i = 0; i < number; i++) {
+            load = Math.max(0, load + (i * 7919L % 3) - 1);
+            readings.add(new ElectricityReading(start.plusSeconds(i * 10L), BigDecimal.valueOf(load, 4)));
+        }
+        return readings;
+    }
+
+    private static void report(String layout, String workload, int meterCount, long readingCount, long bytes) {
+        System.out.printf(
+                "%-10s %-8s %8d %10d %16d %16.1f%n",
+                layout,
+                workload,
+                meterCount,
+                readingCount,
+                bytes,
+                (double) bytes / readingCount);
+    }
+}
@@ -0,0 +1,86 @@
+package uk.tw.energy.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+/**
+ * Time until the store is ready to answer for a meter, when starting from a snapshot of {@code meterCount} meters
+ * against seeding each of their accounts with generated readings as a start without a snapshot does.
+ *
+ * <p>{@code restore} opens the snapshot, which reads every account, and restores the first meter asked for. {@code
+ * seed} generates and stores {@code readingsPerMeter} readings for every meter.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+@State(Scope.Benchmark)
+public class SnapshotStartupBenchmark {
+
+    @Param({"0", "10000", "1000000", "10000000"})
+    public int meterCount;
+
+    @Param({"20"})
+    public int readingsPerMeter;
+
+    private Path file;
+    private Map<String, String> accounts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ColumnarReadingStore readingStore = new ColumnarReadingStore();
+        List<ElectricityReading> readings = new ElectricityReadingsGenerator().generate(readingsPerMeter);
+        accounts = HashMap.newHashMap(meterCount);
+        for (int meter = 0; meter < meterCount; meter++) {
+            String smartMeterId = "smart-meter-" + meter;
+            readingStore.storeReadings(smartMeterId, readings);
+            accounts.put(smartMeterId, "price-plan-" + meter % 3);
+        }
+        file = Files.createTempFile("store", ".snapshot");
+        StoreSnapshot.write(file, readingStore, accounts, List.of());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public ReadingStore restore() throws IOException {
+        ReadingStore readingStore = new SnapshotReadingStore(StoreSnapshot.open(file));
+        readingStore.getSummary("smart-meter-0");
+        return readingStore;
+    }
+
+    @Benchmark
+    public ReadingStore seed() {
+        ReadingStore readingStore = new ColumnarReadingStore();
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        for (String smartMeterId : accounts.keySet()) {
+            readingStore.storeReadings(smartMeterId, generator.generate(readingsPerMeter));
+        }
+        readingStore.getSummary("smart-meter-0");
+        return readingStore;
+    }
+}
@@ -0,0 +1,72 @@
+package uk.tw.energy;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.tw.energy.service.PricePlanService;
+import uk.tw.energy.service.ReadingIngestionQueue;
+import uk.tw.energy.store.ReadingStore;
+
+/**
+ * Metrics worked out when they are read, served under {@code /actuator/metrics} along with the ingestion counters and
+ * timers recorded by the services.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public MeterBinder readingStoreMetrics(ReadingStore readingStore) {
+        return registry -> {
+            Gauge.builder("joi.store.meters", readingStore, ReadingStore::meterCount)
+                    .description("Meters with readings")
+                    .register(registry);
+            Gauge.builder("joi.store.readings", readingStore, ReadingStore::readingCount)
+                    .description("Readings of all the meters")
+                    .register(registry);
+            Gauge.builder("joi.store.readings.per.meter", readingStore, MetricsConfiguration::readingsPerMeter)
+                    .description("Average number of readings of a meter")
+                    .register(registry);
+            Gauge.builder("joi.store.size", readingStore, ReadingStore::sizeInBytes)
+                    .description("Estimated heap retained by the readings")
+                    .baseUnit("bytes")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder comparisonCacheMetrics(PricePlanService pricePlanService) {
+        return registry -> {
+            FunctionCounter.builder(
+                            "joi.comparison.cache.hits",
+                            pricePlanService,
+                            service -> service.getComparisonCacheStatistics().hits())
+                    .register(registry);
+            FunctionCounter.builder(
+                            "joi.comparison.cache.misses",
+                            pricePlanService,
+                            service -> service.getComparisonCacheStatistics().misses())
+                    .register(registry);
+            FunctionCounter.builder(
+                            "joi.comparison.cache.evictions",
+                            pricePlanService,
+                            service -> service.getComparisonCacheStatistics().evictions())
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder ingestionQueueMetrics(ReadingIngestionQueue readingIngestionQueue) {
+        return registry -> Gauge.builder(
+                        "joi.readings.queue.depth", readingIngestionQueue, ReadingIngestionQueue::depth)
+                .description("Batches of readings waiting to be stored")
+                .baseUnit("batches")
+                .register(registry);
+    }
+
+    private static double readingsPerMeter(ReadingStore readingStore) {
+        long meters = readingStore.meterCount();
+        return meters == 0 ? 0 : (double) readingStore.readingCount() / meters;
+    }
+}
@@ -4,18 +4,28 @@ import static java.util.Collections.emptyList;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
-import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.cluster.ClusterTopology;
 import uk.tw.energy.domain.PricePlan;
 import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ColumnarReadingStore;
+import uk.tw.energy.store.DurableReadingStore;
+import uk.tw.energy.store.ReadingStore;
+import uk.tw.energy.store.SnapshotReadingStore;
+import uk.tw.energy.store.StoreSnapshot;
 
 @Configuration
 public class SeedingApplicationDataConfiguration {
@@ -24,8 +34,29 @@ public class SeedingApplicationDataConfiguration {
     private static final String RENEWABLES_PRICE_PLAN_ID = "price-plan-1";
     private static final String STANDARD_PRICE_PLAN_ID = "price-plan-2";
 
+    // null unless starting from a snapshot
+    private final StoreSnapshot storeSnapshot;
+
+    public SeedingApplicationDataConfiguration() {
+        this.storeSnapshot = null;
+    }
+
+    /**
+     * Starts from the snapshot at {@code joi.snapshot.file}, if one has been written there, rather than seeding the
+     * price plans, accounts and readings.
+     */
+    @Autowired
+    public SeedingApplicationDataConfiguration(@Value("${joi.snapshot.file:}") String snapshotFile) throws IOException {
+        this.storeSnapshot = !snapshotFile.isEmpty() && Files.exists(Path.of(snapshotFile))
+                ? StoreSnapshot.open(Path.of(snapshotFile))
+                : null;
+    }
+
     @Bean
     public List<PricePlan> pricePlans() {
+        if (storeSnapshot != null) {
+            return storeSnapshot.pricePlans();
+        }
         final List<PricePlan> pricePlans = new ArrayList<>();
         pricePlans.add(new PricePlan(MOST_EVIL_PRICE_PLAN_ID, "Dr Evil's Dark Energy", BigDecimal.TEN, emptyList()));
         pricePlans.add(new PricePlan(RENEWABLES_PRICE_PLAN_ID, "The Green Eco", BigDecimal.valueOf(2), emptyList()));
@@ -33,18 +64,42 @@ public class SeedingApplicationDataConfiguration {
         return pricePlans;
     }
 
+    /**
+     * Readings are kept in memory only, unless {@code joi.readings.directory} names a directory to persist them to.
+     * Meters without readings, which is all of them on the first start, are seeded with generated ones, by the node
+     * that owns them when running as part of a cluster. When starting from a snapshot, the readings are restored from
+     * it instead, as each meter is first asked for, and nothing is seeded.
+     *
+     * @throws IllegalStateException if starting from a snapshot and persisting readings to a directory, which already
+     *     holds them
+     */
     @Bean
-    public Map<String, List<ElectricityReading>> perMeterElectricityReadings() {
-        final Map<String, List<ElectricityReading>> readings = new HashMap<>();
+    public ReadingStore readingStore(
+            @Value("${joi.readings.directory:}") String directory, ClusterTopology clusterTopology)
+            throws IOException {
+        if (storeSnapshot != null) {
+            if (!directory.isEmpty()) {
+                throw new IllegalStateException(
+                        "Cannot start from a snapshot while readings are persisted to " + directory);
+            }
+            return new SnapshotReadingStore(storeSnapshot);
+        }
+        final ReadingStore readings =
+                directory.isEmpty() ? new ColumnarReadingStore() : new DurableReadingStore(Path.of(directory));
         final ElectricityReadingsGenerator electricityReadingsGenerator = new ElectricityReadingsGenerator();
-        smartMeterToPricePlanAccounts()
-                .keySet()
-                .forEach(smartMeterId -> readings.put(smartMeterId, electricityReadingsGenerator.generate(20)));
+        smartMeterToPricePlanAccounts().keySet().stream()
+                .filter(clusterTopology::isLocal)
+                .filter(smartMeterId -> readings.getSummary(smartMeterId).isEmpty())
+                .forEach(smartMeterId ->
+                        readings.storeReadings(smartMeterId, electricityReadingsGenerator.generate(20)));
         return readings;
     }
 
     @Bean
     public Map<String, String> smartMeterToPricePlanAccounts() {
+        if (storeSnapshot != null) {
+            return storeSnapshot.accounts();
+        }
         final Map<String, String> smartMeterToPricePlanAccounts = new HashMap<>();
         smartMeterToPricePlanAccounts.put("smart-meter-0", MOST_EVIL_PRICE_PLAN_ID);
         smartMeterToPricePlanAccounts.put("smart-meter-1", RENEWABLES_PRICE_PLAN_ID);
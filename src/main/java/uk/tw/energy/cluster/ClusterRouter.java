@@ -0,0 +1,315 @@
+package uk.tw.energy.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import uk.tw.energy.domain.BatchIngestionResult;
+import uk.tw.energy.domain.ClusterNodes;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.service.MeterReadingService;
+
+/**
+ * Sends requests for meters owned by other nodes on to them, and moves meters between nodes as nodes join.
+ *
+ * <p>A node joins by announcing itself to every node it is configured with once it is ready. Each of them adds it to
+ * their ring and hands it the meters it now owns, storing their readings on it and then dropping them locally. The
+ * announcement is answered with the nodes the other node knows of, so a node also learns of any that joined since it
+ * was configured.
+ *
+ * <p>Every node holds every account. A price plan switch made on one node is sent on to all the others, and a node that
+ * joins is sent the accounts of each node it announces itself to.
+ */
+@Component
+public class ClusterRouter {
+
+    /**
+     * Marks a request sent on by another node, which is served where it arrives rather than routed again, so that
+     * nodes briefly disagreeing on the owner of a meter cannot send a request back and forth.
+     */
+    public static final String FORWARDED_HEADER = "X-Joi-Forwarded-By";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final int HAND_OFF_ATTEMPTS = 3;
+    // as long as an owner whose ingestion queue is full asks to be left before the readings are sent again
+    private static final Duration HAND_OFF_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final ClusterTopology topology;
+    private final MeterReadingService meterReadingService;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+
+    public ClusterRouter(
+            ClusterTopology topology, MeterReadingService meterReadingService, ObjectMapper objectMapper) {
+        this.topology = topology;
+        this.meterReadingService = meterReadingService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Sends a request on to the node, marked as forwarded, with the response body left to be read as a stream.
+     *
+     * @param contentType type of the body, or null when there is none
+     */
+    public HttpResponse<InputStream> forward(
+            String node, String method, String pathAndQuery, String contentType, byte[] body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + pathAndQuery))
+                .header(FORWARDED_HEADER, topology.self())
+                .method(
+                        method,
+                        body.length == 0
+                                ? HttpRequest.BodyPublishers.noBody()
+                                : HttpRequest.BodyPublishers.ofByteArray(body));
+        if (contentType != null) {
+            request.header("Content-Type", contentType);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * @return the status the owner answered with
+     */
+    public int forwardReadings(String node, MeterReadings meterReadings) throws IOException, InterruptedException {
+        return forwardReadings(node, MediaType.APPLICATION_JSON_VALUE, objectMapper.writeValueAsBytes(meterReadings));
+    }
+
+    /**
+     * Sends on a store readings request body as it was received.
+     *
+     * @return the status the owner answered with
+     */
+    public int forwardReadings(String node, String contentType, byte[] body) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = forward(node, "POST", "/readings/store", contentType, body);
+        try (InputStream responseBody = response.body()) {
+            responseBody.transferTo(OutputStream.nullOutputStream());
+        }
+        return response.statusCode();
+    }
+
+    /**
+     * @return the counts the owner answered with, along with its status, or no counts when the owner answered with
+     *     neither a successful status nor too many requests, as its body is then an error rather than counts
+     */
+    public ResponseEntity<BatchIngestionResult> forwardBatch(String node, List<MeterReadings> batch)
+            throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = forward(
+                node,
+                "POST",
+                "/readings/store/batch",
+                MediaType.APPLICATION_JSON_VALUE,
+                objectMapper.writeValueAsBytes(batch));
+        try (InputStream body = response.body()) {
+            int status = response.statusCode();
+            if (status / 100 != 2 && status != HttpStatus.TOO_MANY_REQUESTS.value()) {
+                body.transferTo(OutputStream.nullOutputStream());
+                return ResponseEntity.status(status).build();
+            }
+            return ResponseEntity.status(status).body(objectMapper.readValue(body, BatchIngestionResult.class));
+        }
+    }
+
+    /**
+     * Switches the meters' price plans on every other node, as {@code POST /accounts/switch} does.
+     *
+     * @return whether every other node answered with a successful status
+     */
+    public boolean switchPricePlans(Map<String, String> pricePlanIdsBySmartMeterId) {
+        boolean switched = true;
+        for (String node : otherNodes()) {
+            switched &= switchPricePlans(node, pricePlanIdsBySmartMeterId);
+        }
+        return switched;
+    }
+
+    /**
+     * Switches the meters' price plans on the node, as {@code POST /accounts/switch} does.
+     *
+     * @return whether the node answered with a successful status
+     */
+    public boolean switchPricePlans(String node, Map<String, String> pricePlanIdsBySmartMeterId) {
+        try {
+            return deliver(
+                    node,
+                    "/accounts/switch",
+                    MediaType.APPLICATION_JSON_VALUE,
+                    objectMapper.writeValueAsBytes(pricePlanIdsBySmartMeterId));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Moves every meter on one price plan to another on every other node, as {@code POST /accounts/switch-all} does.
+     *
+     * @return whether every other node answered with a successful status
+     */
+    public boolean switchAllPricePlans(String fromPricePlanId, String toPricePlanId) {
+        String pathAndQuery = "/accounts/switch-all?from=" + URLEncoder.encode(fromPricePlanId, StandardCharsets.UTF_8)
+                + "&to=" + URLEncoder.encode(toPricePlanId, StandardCharsets.UTF_8);
+        boolean switched = true;
+        for (String node : otherNodes()) {
+            switched &= deliver(node, pathAndQuery, null, new byte[0]);
+        }
+        return switched;
+    }
+
+    /**
+     * Adds the announced node, and any others it knows of, and hands over the meters they now own.
+     *
+     * @return the nodes this node knows of
+     */
+    public ClusterNodes join(ClusterNodes announced) {
+        boolean changed = topology.addNode(announced.self());
+        for (String node : announced.nodes()) {
+            changed |= topology.addNode(node);
+        }
+        if (changed) {
+            handOff();
+        }
+        return new ClusterNodes(topology.self(), topology.nodes());
+    }
+
+    /**
+     * Announces this node to every other node once it is serving requests. A node that cannot be reached is skipped;
+     * it learns of this one from its own configuration or from another node when it starts.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void joinCluster() {
+        if (!topology.isClustered()) {
+            return;
+        }
+        Set<String> announcedTo = new HashSet<>(Set.of(topology.self()));
+        Deque<String> pending = new ArrayDeque<>(topology.nodes());
+        while (!pending.isEmpty()) {
+            String node = pending.poll();
+            if (announcedTo.add(node)) {
+                announce(node).ifPresent(known -> known.nodes().forEach(other -> {
+                    topology.addNode(other);
+                    pending.add(other);
+                }));
+            }
+        }
+        handOff();
+    }
+
+    /**
+     * Moves every meter this node holds but no longer owns to its owner. The readings count as moved once the owner
+     * answers with any successful status, including accepted when it queues readings to store them later. An owner
+     * that answers too many requests is sent the readings again after a pause, a few times at most. A meter that
+     * cannot be moved is kept.
+     *
+     * @return number of meters moved
+     */
+    public int handOff() {
+        int handedOff = 0;
+        for (String smartMeterId : meterReadingService.getSmartMeterIds()) {
+            String owner = topology.ownerOf(smartMeterId);
+            if (owner.equals(topology.self())) {
+                continue;
+            }
+            Optional<List<ElectricityReading>> readings = meterReadingService.removeReadings(smartMeterId);
+            if (readings.isEmpty() || readings.get().isEmpty()) {
+                continue;
+            }
+            MeterReadings meterReadings = new MeterReadings(smartMeterId, readings.get());
+            if (send(owner, meterReadings)) {
+                handedOff++;
+            } else {
+                meterReadingService.storeReadings(smartMeterId, readings.get());
+            }
+        }
+        return handedOff;
+    }
+
+    private boolean send(String node, MeterReadings meterReadings) {
+        try {
+            for (int attempt = 1; ; attempt++) {
+                int status = forwardReadings(node, meterReadings);
+                if (status / 100 == 2) {
+                    return true;
+                }
+                if (status != HttpStatus.TOO_MANY_REQUESTS.value() || attempt == HAND_OFF_ATTEMPTS) {
+                    return false;
+                }
+                Thread.sleep(HAND_OFF_RETRY_AFTER);
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private List<String> otherNodes() {
+        return topology.nodes().stream()
+                .filter(node -> !node.equals(topology.self()))
+                .toList();
+    }
+
+    /**
+     * POSTs the body to the node, without reading the response.
+     *
+     * @return whether the node answered with a successful status
+     */
+    private boolean deliver(String node, String pathAndQuery, String contentType, byte[] body) {
+        try {
+            HttpResponse<InputStream> response = forward(node, "POST", pathAndQuery, contentType, body);
+            try (InputStream responseBody = response.body()) {
+                responseBody.transferTo(OutputStream.nullOutputStream());
+            }
+            return response.statusCode() / 100 == 2;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Optional<ClusterNodes> announce(String node) {
+        try {
+            HttpResponse<InputStream> response = forward(
+                    node,
+                    "POST",
+                    "/cluster/nodes",
+                    MediaType.APPLICATION_JSON_VALUE,
+                    objectMapper.writeValueAsBytes(new ClusterNodes(topology.self(), topology.nodes())));
+            try (InputStream body = response.body()) {
+                return response.statusCode() == HttpStatus.OK.value()
+                        ? Optional.of(objectMapper.readValue(body, ClusterNodes.class))
+                        : Optional.empty();
+            }
+        } catch (IOException e) {
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+}
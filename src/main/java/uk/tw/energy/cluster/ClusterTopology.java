@@ -0,0 +1,81 @@
+package uk.tw.energy.cluster;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Which node of the cluster owns each meter.
+ *
+ * <p>Nodes are named by their base URL, such as {@code http://localhost:8081}. The cluster starts out as the nodes
+ * listed in {@code joi.cluster.nodes}, which must include this node, {@code joi.cluster.self}. Nodes that join later
+ * are added as they announce themselves. Without {@code joi.cluster.nodes} the application runs on its own and owns
+ * every meter.
+ *
+ * <p>The ring is replaced rather than changed, so lookups read it without locking.
+ */
+@Component
+public class ClusterTopology {
+
+    private final String self;
+    private final ReentrantLock membershipLock = new ReentrantLock();
+    private volatile ConsistentHashRing ring;
+
+    public ClusterTopology(
+            @Value("${joi.cluster.self:}") String self,
+            @Value("${joi.cluster.nodes:}") List<String> nodes,
+            @Value("${joi.cluster.virtual-nodes:128}") int virtualNodes) {
+        if (!nodes.isEmpty() && !nodes.contains(self)) {
+            throw new IllegalStateException("joi.cluster.nodes " + nodes + " must include joi.cluster.self " + self);
+        }
+        this.self = self;
+        this.ring = nodes.isEmpty() ? null : new ConsistentHashRing(nodes, virtualNodes);
+    }
+
+    public boolean isClustered() {
+        return ring != null;
+    }
+
+    public String self() {
+        return self;
+    }
+
+    /**
+     * @return the nodes of the cluster in alphabetical order, or just this one when it runs on its own
+     */
+    public List<String> nodes() {
+        ConsistentHashRing current = ring;
+        return current == null ? List.of(self) : current.nodes();
+    }
+
+    public String ownerOf(String smartMeterId) {
+        ConsistentHashRing current = ring;
+        return current == null ? self : current.ownerOf(smartMeterId);
+    }
+
+    public boolean isLocal(String smartMeterId) {
+        return ownerOf(smartMeterId).equals(self);
+    }
+
+    /**
+     * @return whether the node was new to this one
+     * @throws IllegalStateException if this node runs on its own
+     */
+    public boolean addNode(String node) {
+        membershipLock.lock();
+        try {
+            if (ring == null) {
+                throw new IllegalStateException("This node is not part of a cluster");
+            }
+            ConsistentHashRing grown = ring.withNode(node);
+            if (grown == ring) {
+                return false;
+            }
+            ring = grown;
+            return true;
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package uk.tw.energy.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Spreads keys over nodes so that adding a node only moves the keys it takes over, about one in every node count of
+ * them, rather than reshuffling them all as hashing modulo the node count would.
+ *
+ * <p>Each node is placed on a ring of 64-bit hashes at a number of virtual points, which evens out the share of the
+ * ring each node gets. A key belongs to the node at the first point at or after the key's hash, wrapping round to the
+ * first point on the ring.
+ *
+ * <p>A ring is immutable; {@link #withNode} returns a new one.
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> nodes;
+    private final int virtualNodes;
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * @param virtualNodes number of points each node is placed at
+     */
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one node placed at one point or more");
+        }
+        this.nodes = List.copyOf(new TreeSet<>(nodes));
+        this.virtualNodes = virtualNodes;
+
+        record Point(long hash, String owner) {}
+        List<Point> placed = new ArrayList<>(this.nodes.size() * virtualNodes);
+        for (String node : this.nodes) {
+            for (int point = 0; point < virtualNodes; point++) {
+                placed.add(new Point(hash(node + "#" + point), node));
+            }
+        }
+        placed.sort(Comparator.comparingLong(Point::hash).thenComparing(Point::owner));
+
+        points = new long[placed.size()];
+        owners = new String[placed.size()];
+        for (int i = 0; i < placed.size(); i++) {
+            points[i] = placed.get(i).hash();
+            owners[i] = placed.get(i).owner();
+        }
+    }
+
+    public String ownerOf(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * @return the nodes on the ring, in alphabetical order
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public ConsistentHashRing withNode(String node) {
+        if (nodes.contains(node)) {
+            return this;
+        }
+        List<String> grown = new ArrayList<>(nodes);
+        grown.add(node);
+        return new ConsistentHashRing(grown, virtualNodes);
+    }
+
+    /**
+     * 64-bit FNV-1a over the key's UTF-8 bytes, with the bits then mixed by MurmurHash3's finaliser, as FNV alone
+     * leaves keys that differ only in their last characters close together on the ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,85 @@
+package uk.tw.energy.cluster;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * Sends requests that name a meter in their path on to the node that owns the meter, and streams its response back.
+ *
+ * <p>Requests that name meters in their body are routed by the {@code MeterReadingController} once it has read them.
+ * Switches of many accounts at once are not routed, as the {@code AccountController} sends them on to every node.
+ */
+@Component
+public class MeterRoutingFilter extends OncePerRequestFilter {
+
+    private static final Pattern METER_PATH = Pattern.compile(
+            "/(?:readings/(?:read|stream|rollups|consumption)|price-plans/(?:compare-all|recommend|savings))/([^/]+)");
+    // only matched for reading or switching one meter's account, so that the bulk switches beside it are not routed
+    private static final Pattern ACCOUNT_PATH = Pattern.compile("/accounts/([^/]+)");
+
+    private final ClusterTopology topology;
+    private final ClusterRouter router;
+
+    public MeterRoutingFilter(ClusterTopology topology, ClusterRouter router) {
+        this.topology = topology;
+        this.router = router;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !topology.isClustered() || request.getHeader(ClusterRouter.FORWARDED_HEADER) != null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Matcher meterPath = METER_PATH.matcher(path);
+        if (!meterPath.matches() && isAccountMethod(request.getMethod())) {
+            meterPath = ACCOUNT_PATH.matcher(path);
+        }
+        String owner = meterPath.matches()
+                ? topology.ownerOf(UriUtils.decode(meterPath.group(1), StandardCharsets.UTF_8))
+                : topology.self();
+        if (owner.equals(topology.self())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String query = request.getQueryString();
+        try {
+            HttpResponse<InputStream> forwarded = router.forward(
+                    owner,
+                    request.getMethod(),
+                    request.getRequestURI() + (query == null ? "" : "?" + query),
+                    null,
+                    new byte[0]);
+            response.setStatus(forwarded.statusCode());
+            forwarded.headers().firstValue("Content-Type").ifPresent(response::setContentType);
+            try (InputStream body = forwarded.body()) {
+                body.transferTo(response.getOutputStream());
+            }
+        } catch (IOException e) {
+            response.sendError(HttpStatus.BAD_GATEWAY.value());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+    }
+
+    private static boolean isAccountMethod(String method) {
+        return method.equals("GET") || method.equals("PUT");
+    }
+}
@@ -0,0 +1,123 @@
+package uk.tw.energy.controller;
+
+import java.util.Map;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import uk.tw.energy.cluster.ClusterRouter;
+import uk.tw.energy.cluster.ClusterTopology;
+import uk.tw.energy.service.AccountService;
+import uk.tw.energy.service.PricePlanCatalog;
+
+/**
+ * Serves and switches the meters' accounts.
+ *
+ * <p>In a cluster, every node holds every account. A switch is made on the node it is sent to and then sent on to every
+ * other node, and is answered with bad gateway if any of them could not take it. A switch can be sent again as it is,
+ * since making it twice leaves the accounts as making it once does.
+ */
+@RestController
+@RequestMapping("/accounts")
+public class AccountController {
+
+    public static final String SMART_METER_ID_KEY = "smartMeterId";
+    public static final String PRICE_PLAN_ID_KEY = "pricePlanId";
+    public static final String SWITCHED_KEY = "switched";
+
+    private final AccountService accountService;
+    private final PricePlanCatalog pricePlanCatalog;
+    private final ClusterTopology topology;
+    private final ClusterRouter router;
+
+    public AccountController(
+            AccountService accountService,
+            PricePlanCatalog pricePlanCatalog,
+            ClusterTopology topology,
+            ClusterRouter router) {
+        this.accountService = accountService;
+        this.pricePlanCatalog = pricePlanCatalog;
+        this.topology = topology;
+        this.router = router;
+    }
+
+    @GetMapping("/{smartMeterId}")
+    public ResponseEntity<Map<String, String>> getAccount(@PathVariable String smartMeterId) {
+        String pricePlanId = accountService.getPricePlanIdForSmartMeterId(smartMeterId);
+        return pricePlanId == null
+                ? ResponseEntity.notFound().build()
+                : ResponseEntity.ok(Map.of(SMART_METER_ID_KEY, smartMeterId, PRICE_PLAN_ID_KEY, pricePlanId));
+    }
+
+    /**
+     * Puts the meter on the price plan, opening an account for it if it has none. In a cluster, the request is routed
+     * to the node that owns the meter, which sends the switch on to the others.
+     */
+    @PutMapping("/{smartMeterId}")
+    public ResponseEntity<Map<String, String>> switchPricePlan(
+            @PathVariable String smartMeterId, @RequestParam(PRICE_PLAN_ID_KEY) String pricePlanId) {
+        if (!pricePlanCatalog.contains(pricePlanId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<String, String> pricePlanIdsBySmartMeterId = Map.of(smartMeterId, pricePlanId);
+        accountService.switchPricePlans(pricePlanIdsBySmartMeterId);
+        if (topology.isClustered() && !router.switchPricePlans(pricePlanIdsBySmartMeterId)) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        }
+        return ResponseEntity.ok(Map.of(SMART_METER_ID_KEY, smartMeterId, PRICE_PLAN_ID_KEY, pricePlanId));
+    }
+
+    /**
+     * Switches every meter in the body to its price plan at once. Nothing is switched if any of the plans is unknown.
+     *
+     * @param pricePlanIdsBySmartMeterId the price plan id to switch each meter to
+     */
+    @PostMapping("/switch")
+    public ResponseEntity<Map<String, Integer>> switchPricePlans(
+            @RequestBody Map<String, String> pricePlanIdsBySmartMeterId,
+            @RequestHeader(value = ClusterRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        PricePlanCatalog.Snapshot pricePlans = pricePlanCatalog.snapshot();
+        for (String pricePlanId : pricePlanIdsBySmartMeterId.values()) {
+            if (pricePlans.get(pricePlanId) == null) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        int switched = accountService.switchPricePlans(pricePlanIdsBySmartMeterId);
+        if (isToBeSentOn(forwardedBy) && !router.switchPricePlans(pricePlanIdsBySmartMeterId)) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        }
+        return ResponseEntity.ok(Map.of(SWITCHED_KEY, switched));
+    }
+
+    /**
+     * Moves every meter on one price plan to another.
+     */
+    @PostMapping("/switch-all")
+    public ResponseEntity<Map<String, Integer>> switchAllPricePlans(
+            @RequestParam("from") String fromPricePlanId,
+            @RequestParam("to") String toPricePlanId,
+            @RequestHeader(value = ClusterRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        if (!pricePlanCatalog.contains(toPricePlanId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int switched = accountService.switchPricePlans(fromPricePlanId, toPricePlanId);
+        if (isToBeSentOn(forwardedBy) && !router.switchAllPricePlans(fromPricePlanId, toPricePlanId)) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        }
+        return ResponseEntity.ok(Map.of(SWITCHED_KEY, switched));
+    }
+
+    /**
+     * @return whether a switch is to be sent on to the other nodes, which it is unless it was sent on by one of them
+     */
+    private boolean isToBeSentOn(String forwardedBy) {
+        return topology.isClustered() && forwardedBy == null;
+    }
+}
@@ -0,0 +1,46 @@
+package uk.tw.energy.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import uk.tw.energy.cluster.ClusterRouter;
+import uk.tw.energy.cluster.ClusterTopology;
+import uk.tw.energy.domain.ClusterNodes;
+import uk.tw.energy.service.AccountService;
+
+@RestController
+@RequestMapping("/cluster")
+public class ClusterController {
+
+    private final ClusterTopology topology;
+    private final ClusterRouter router;
+    private final AccountService accountService;
+
+    public ClusterController(ClusterTopology topology, ClusterRouter router, AccountService accountService) {
+        this.topology = topology;
+        this.router = router;
+        this.accountService = accountService;
+    }
+
+    @GetMapping
+    public ResponseEntity<ClusterNodes> getNodes() {
+        return ResponseEntity.ok(new ClusterNodes(topology.self(), topology.nodes()));
+    }
+
+    /**
+     * Called by a node as it joins. Answers once the meters the node now owns have been handed over to it, and it has
+     * been sent every account, so that it does not serve accounts as they were before switches made in the meantime.
+     */
+    @PostMapping("/nodes")
+    public ResponseEntity<ClusterNodes> join(@RequestBody ClusterNodes announced) {
+        if (!topology.isClustered()) {
+            return ResponseEntity.badRequest().build();
+        }
+        ClusterNodes known = router.join(announced);
+        router.switchPricePlans(announced.self(), accountService.getAccounts());
+        return ResponseEntity.ok(known);
+    }
+}
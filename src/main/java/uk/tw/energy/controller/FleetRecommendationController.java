@@ -0,0 +1,30 @@
+package uk.tw.energy.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import uk.tw.energy.domain.FleetRecommendation;
+import uk.tw.energy.service.FleetRecommendationService;
+
+@RestController
+@RequestMapping("/price-plans")
+public class FleetRecommendationController {
+
+    private final FleetRecommendationService fleetRecommendationService;
+
+    public FleetRecommendationController(FleetRecommendationService fleetRecommendationService) {
+        this.fleetRecommendationService = fleetRecommendationService;
+    }
+
+    @GetMapping("/recommend-all")
+    public ResponseEntity<FleetRecommendation> recommendForFleet(
+            @RequestParam(value = "rankings", defaultValue = "true") boolean rankings,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        if (limit != null && limit < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(fleetRecommendationService.recommendForFleet(rankings, limit));
+    }
+}
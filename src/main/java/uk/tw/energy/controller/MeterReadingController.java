@@ -1,36 +1,277 @@
 package uk.tw.energy.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.tw.energy.cluster.ClusterRouter;
+import uk.tw.energy.cluster.ClusterTopology;
+import uk.tw.energy.domain.BatchIngestionResult;
+import uk.tw.energy.domain.BinaryMeterReadings;
+import uk.tw.energy.domain.ConsumptionAggregator;
+import uk.tw.energy.domain.ConsumptionBucket;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.domain.ReadingRollup;
 import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.ReadingIngestionQueue;
 
 @RestController
 @RequestMapping("/readings")
 public class MeterReadingController {
 
+    private static final int STORE_BATCH_SIZE = 1000;
+
     private final MeterReadingService meterReadingService;
+    private final ReadingIngestionQueue readingIngestionQueue;
+    private final ClusterTopology clusterTopology;
+    private final ClusterRouter clusterRouter;
+    private final ObjectReader meterReadingsReader;
+    private final ObjectWriter electricityReadingWriter;
 
-    public MeterReadingController(MeterReadingService meterReadingService) {
+    public MeterReadingController(
+            MeterReadingService meterReadingService,
+            ReadingIngestionQueue readingIngestionQueue,
+            ClusterTopology clusterTopology,
+            ClusterRouter clusterRouter,
+            ObjectMapper objectMapper) {
         this.meterReadingService = meterReadingService;
+        this.readingIngestionQueue = readingIngestionQueue;
+        this.clusterTopology = clusterTopology;
+        this.clusterRouter = clusterRouter;
+        this.meterReadingsReader = objectMapper.readerFor(MeterReadings.class);
+        this.electricityReadingWriter = objectMapper
+                .writerFor(ElectricityReading.class)
+                .withRootValueSeparator("\n")
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
+    /**
+     * Stores the readings here, or on the node that owns the meter when running as part of a cluster. When readings are
+     * {@linkplain ReadingIngestionQueue queued}, answers with an accepted status once they are queued, or too many
+     * requests when the queue is full.
+     *
+     * @param forwardedBy the node that sent the readings on, in which case they are stored here regardless
+     */
     @PostMapping("/store")
-    public ResponseEntity storeReadings(@RequestBody MeterReadings meterReadings) {
+    public ResponseEntity storeReadings(
+            @RequestBody MeterReadings meterReadings,
+            @RequestHeader(value = ClusterRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
         if (!isMeterReadingsValid(meterReadings)) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
-        meterReadingService.storeReadings(meterReadings.smartMeterId(), meterReadings.electricityReadings());
-        return ResponseEntity.ok().build();
+        String owner = forwardedBy == null ? clusterTopology.ownerOf(meterReadings.smartMeterId()) : null;
+        if (owner != null && !owner.equals(clusterTopology.self())) {
+            return forwardReadings(() -> clusterRouter.forwardReadings(owner, meterReadings));
+        }
+        ReadingColumns readings;
+        try {
+            readings = ReadingColumns.of(meterReadings.electricityReadings());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return store(meterReadings.smartMeterId(), readings);
+    }
+
+    /**
+     * Stores readings sent in the {@linkplain BinaryMeterReadings binary format}, which are decoded straight into
+     * columns for the store. A body that is not in the format is rejected with a bad request status. Otherwise answers
+     * as {@link #storeReadings} does.
+     *
+     * @param forwardedBy the node that sent the readings on, in which case they are stored here regardless
+     */
+    @PostMapping(value = "/store", consumes = BinaryMeterReadings.MEDIA_TYPE)
+    public ResponseEntity storeBinaryReadings(
+            @RequestBody byte[] body,
+            @RequestHeader(value = ClusterRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        BinaryMeterReadings meterReadings;
+        try {
+            meterReadings = BinaryMeterReadings.decode(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (meterReadings.smartMeterId().isEmpty() || meterReadings.readings().size() == 0) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        String owner = forwardedBy == null ? clusterTopology.ownerOf(meterReadings.smartMeterId()) : null;
+        if (owner != null && !owner.equals(clusterTopology.self())) {
+            return forwardReadings(() -> clusterRouter.forwardReadings(owner, BinaryMeterReadings.MEDIA_TYPE, body));
+        }
+        return store(meterReadings.smartMeterId(), meterReadings.readings());
+    }
+
+    private ResponseEntity store(String smartMeterId, ReadingColumns readings) {
+        if (!readingIngestionQueue.isEnabled()) {
+            meterReadingService.storeReadings(smartMeterId, readings);
+            return ResponseEntity.ok().build();
+        }
+        if (readingIngestionQueue.offer(smartMeterId, readings)) {
+            return ResponseEntity.accepted().build();
+        }
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
+
+    private ResponseEntity forwardReadings(Forwarding forwarding) {
+        try {
+            return ResponseEntity.status(forwarding.send()).build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Stores the readings of many meters, sent either as a JSON array or as newline delimited JSON. Entries are parsed
+     * one at a time and stored in batches as the body is read, so the body is never held in memory as a whole.
+     *
+     * <p>When readings are {@linkplain ReadingIngestionQueue queued}, each entry is queued as readings sent on their
+     * own are, and the counts are answered with an accepted status. Entries that arrive once the queue is full are
+     * turned away and counted as rejected, and the counts are then answered with too many requests, so that the client
+     * backs off before sending the rejected entries again.
+     *
+     * <p>Entries read before a malformed one are still stored, and reported with a bad request status.
+     *
+     * <p>When running as part of a cluster, entries for meters owned by other nodes are gathered into batches for
+     * each of those nodes and sent on to them.
+     *
+     * @param forwardedBy the node that sent the entries on, in which case they are all stored here
+     */
+    @PostMapping(
+            value = "/store/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BatchIngestionResult> storeReadingsBatch(
+            InputStream body,
+            @RequestHeader(value = ClusterRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        BatchTally tally = new BatchTally();
+        List<MeterReadings> batch = new ArrayList<>(STORE_BATCH_SIZE);
+        Map<String, List<MeterReadings>> batchesByOwner = new HashMap<>();
+
+        try (MappingIterator<MeterReadings> entries = meterReadingsReader.readValues(body)) {
+            while (entries.hasNextValue()) {
+                MeterReadings meterReadings = entries.nextValue();
+                if (meterReadings == null || !isMeterReadingsValid(meterReadings)) {
+                    tally.rejected(meterReadings == null ? null : meterReadings.smartMeterId());
+                    continue;
+                }
+                String owner = forwardedBy == null ? clusterTopology.ownerOf(meterReadings.smartMeterId()) : null;
+                if (owner != null && !owner.equals(clusterTopology.self())) {
+                    List<MeterReadings> ownerBatch =
+                            batchesByOwner.computeIfAbsent(owner, node -> new ArrayList<>(STORE_BATCH_SIZE));
+                    ownerBatch.add(meterReadings);
+                    if (ownerBatch.size() == STORE_BATCH_SIZE) {
+                        forwardBatch(owner, ownerBatch, tally);
+                    }
+                    continue;
+                }
+                batch.add(meterReadings);
+                if (batch.size() == STORE_BATCH_SIZE) {
+                    storeBatch(batch, tally);
+                }
+            }
+        } catch (IOException e) {
+            storeBatch(batch, tally);
+            batchesByOwner.forEach((owner, ownerBatch) -> forwardBatch(owner, ownerBatch, tally));
+            return ResponseEntity.badRequest().body(tally.toResult());
+        }
+        storeBatch(batch, tally);
+        batchesByOwner.forEach((owner, ownerBatch) -> forwardBatch(owner, ownerBatch, tally));
+        if (tally.turnedAway) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(tally.toResult());
+        }
+        if (readingIngestionQueue.isEnabled()) {
+            return ResponseEntity.accepted().body(tally.toResult());
+        }
+        return ResponseEntity.ok(tally.toResult());
+    }
+
+    private void forwardBatch(String owner, List<MeterReadings> batch, BatchTally tally) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            ResponseEntity<BatchIngestionResult> response = clusterRouter.forwardBatch(owner, batch);
+            if (response.getBody() == null) {
+                // the owner failed rather than counting the entries
+                batch.forEach(meterReadings -> tally.rejected(meterReadings.smartMeterId()));
+            } else {
+                tally.add(response.getBody());
+                tally.turnedAway |= response.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS;
+            }
+        } catch (IOException e) {
+            batch.forEach(meterReadings -> tally.rejected(meterReadings.smartMeterId()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.forEach(meterReadings -> tally.rejected(meterReadings.smartMeterId()));
+        }
+        batch.clear();
+    }
+
+    private void storeBatch(List<MeterReadings> batch, BatchTally tally) {
+        if (readingIngestionQueue.isEnabled()) {
+            batch.forEach(meterReadings -> queue(meterReadings, tally));
+            batch.clear();
+            return;
+        }
+        boolean[] stored = meterReadingService.storeReadings(batch);
+        for (int entry = 0; entry < stored.length; entry++) {
+            String smartMeterId = batch.get(entry).smartMeterId();
+            if (stored[entry]) {
+                tally.accepted(smartMeterId);
+            } else {
+                tally.rejected(smartMeterId);
+            }
+        }
+        batch.clear();
+    }
+
+    private void queue(MeterReadings meterReadings, BatchTally tally) {
+        String smartMeterId = meterReadings.smartMeterId();
+        ReadingColumns readings;
+        try {
+            readings = ReadingColumns.of(meterReadings.electricityReadings());
+        } catch (IllegalArgumentException e) {
+            tally.rejected(smartMeterId);
+            return;
+        }
+        if (readingIngestionQueue.offer(smartMeterId, readings)) {
+            tally.accepted(smartMeterId);
+        } else {
+            tally.rejected(smartMeterId);
+            tally.turnedAway = true;
+        }
     }
 
     private boolean isMeterReadingsValid(MeterReadings meterReadings) {
@@ -42,11 +283,138 @@ public class MeterReadingController {
                 && !electricityReadings.isEmpty();
     }
 
+    /**
+     * Returns all of a meter's readings in the order they were stored or, when any of the range parameters is given,
+     * the readings in that range in time order.
+     */
     @GetMapping("/read/{smartMeterId}")
-    public ResponseEntity readReadings(@PathVariable String smartMeterId) {
-        Optional<List<ElectricityReading>> readings = meterReadingService.getReadings(smartMeterId);
+    public ResponseEntity readReadings(
+            @PathVariable String smartMeterId,
+            @RequestParam(value = "from", required = false) Instant from,
+            @RequestParam(value = "to", required = false) Instant to,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        if (limit != null && limit < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<List<ElectricityReading>> readings = from == null && to == null && limit == null
+                ? meterReadingService.getReadings(smartMeterId)
+                : meterReadingService.getReadings(smartMeterId, from, to, limit);
         return readings.isPresent()
                 ? ResponseEntity.ok(readings.get())
                 : ResponseEntity.notFound().build();
     }
+
+    /**
+     * Streams the same readings as {@link #readReadings} as newline delimited JSON, writing each reading straight from
+     * the store to the response, so that the memory used does not grow with the length of the meter's history. A range
+     * of readings that arrived out of order is walked by the meter's time index rather than collected and sorted.
+     */
+    @GetMapping(value = "/stream/{smartMeterId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamReadings(
+            @PathVariable String smartMeterId,
+            @RequestParam(value = "from", required = false) Instant from,
+            @RequestParam(value = "to", required = false) Instant to,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        if (limit != null && limit < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (meterReadingService.getReadingSummary(smartMeterId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter readings = electricityReadingWriter.writeValues(outputStream)) {
+                meterReadingService.forEachReading(smartMeterId, from, to, limit, reading -> {
+                    try {
+                        readings.write(reading);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Returns the rollups of the meter's readings that have been compacted, in time order.
+     */
+    @GetMapping("/rollups/{smartMeterId}")
+    public ResponseEntity<List<ReadingRollup>> readRollups(@PathVariable String smartMeterId) {
+        return meterReadingService
+                .getRollups(smartMeterId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Returns the meter's consumption over the range in buckets of the given width, each with the energy consumed and
+     * the smallest, mean and largest reading, rather than the readings to add up. Answers with a bad request status if
+     * the range is empty, the width is not positive, or the range takes more than
+     * {@link ConsumptionAggregator#MAX_BUCKETS} buckets.
+     */
+    @GetMapping("/consumption/{smartMeterId}")
+    public ResponseEntity<List<ConsumptionBucket>> readConsumption(
+            @PathVariable String smartMeterId,
+            @RequestParam("from") Instant from,
+            @RequestParam("to") Instant to,
+            @RequestParam(value = "bucket", defaultValue = "PT1H") Duration bucket) {
+        Optional<List<ConsumptionBucket>> consumption;
+        try {
+            consumption = meterReadingService.getConsumption(smartMeterId, from, to, bucket);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return consumption.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+
+    @FunctionalInterface
+    private interface Forwarding {
+
+        /**
+         * @return the status the owner answered with
+         */
+        int send() throws IOException, InterruptedException;
+    }
+
+    private static final class BatchTally {
+
+        private final Map<String, int[]> countsByMeter = new LinkedHashMap<>();
+        private int accepted;
+        private int rejected;
+        private boolean turnedAway; // whether any entry was rejected because the queue was full
+
+        void accepted(String smartMeterId) {
+            accepted++;
+            countsByMeter.computeIfAbsent(smartMeterId, id -> new int[2])[0]++;
+        }
+
+        void rejected(String smartMeterId) {
+            rejected++;
+            if (smartMeterId != null && !smartMeterId.isEmpty()) {
+                countsByMeter.computeIfAbsent(smartMeterId, id -> new int[2])[1]++;
+            }
+        }
+
+        void add(BatchIngestionResult result) {
+            accepted += result.accepted();
+            rejected += result.rejected();
+            if (result.meters() == null) {
+                return;
+            }
+            result.meters().forEach((smartMeterId, counts) -> {
+                int[] meterCounts = countsByMeter.computeIfAbsent(smartMeterId, id -> new int[2]);
+                meterCounts[0] += counts.accepted();
+                meterCounts[1] += counts.rejected();
+            });
+        }
+
+        BatchIngestionResult toResult() {
+            Map<String, BatchIngestionResult.MeterCounts> meters = new LinkedHashMap<>();
+            countsByMeter.forEach((smartMeterId, counts) ->
+                    meters.put(smartMeterId, new BatchIngestionResult.MeterCounts(counts[0], counts[1])));
+            return new BatchIngestionResult(accepted, rejected, meters);
+        }
+    }
 }
@@ -1,8 +1,6 @@
 package uk.tw.energy.controller;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,7 +11,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import uk.tw.energy.domain.ComparisonCacheStatistics;
+import uk.tw.energy.domain.PricePlanRecommendation;
 import uk.tw.energy.service.AccountService;
+import uk.tw.energy.service.PricePlanRecommendationService;
 import uk.tw.energy.service.PricePlanService;
 
 @RestController
@@ -24,10 +25,15 @@ public class PricePlanComparatorController {
     public static final String PRICE_PLAN_COMPARISONS_KEY = "pricePlanComparisons";
     private final PricePlanService pricePlanService;
     private final AccountService accountService;
+    private final PricePlanRecommendationService pricePlanRecommendationService;
 
-    public PricePlanComparatorController(PricePlanService pricePlanService, AccountService accountService) {
+    public PricePlanComparatorController(
+            PricePlanService pricePlanService,
+            AccountService accountService,
+            PricePlanRecommendationService pricePlanRecommendationService) {
         this.pricePlanService = pricePlanService;
         this.accountService = accountService;
+        this.pricePlanRecommendationService = pricePlanRecommendationService;
     }
 
     @GetMapping("/compare-all/{smartMeterId}")
@@ -49,24 +55,42 @@ public class PricePlanComparatorController {
                 : ResponseEntity.notFound().build();
     }
 
+    /**
+     * @param supplier only recommend plans of this energy supplier
+     */
     @GetMapping("/recommend/{smartMeterId}")
     public ResponseEntity<List<Map.Entry<String, BigDecimal>>> recommendCheapestPricePlans(
-            @PathVariable String smartMeterId, @RequestParam(value = "limit", required = false) Integer limit) {
-        Optional<Map<String, BigDecimal>> consumptionsForPricePlans =
-                pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId);
-
-        if (!consumptionsForPricePlans.isPresent()) {
-            return ResponseEntity.notFound().build();
+            @PathVariable String smartMeterId,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "supplier", required = false) String supplier) {
+        if (limit != null && limit < 0) {
+            return ResponseEntity.badRequest().build();
         }
+        return pricePlanRecommendationService
+                .recommendCheapestPricePlans(smartMeterId, limit, supplier)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-        List<Map.Entry<String, BigDecimal>> recommendations =
-                new ArrayList<>(consumptionsForPricePlans.get().entrySet());
-        recommendations.sort(Comparator.comparing(Map.Entry::getValue));
-
-        if (limit != null && limit < recommendations.size()) {
-            recommendations = recommendations.subList(0, limit);
+    /**
+     * @param supplier only recommend plans of this energy supplier
+     */
+    @GetMapping("/savings/{smartMeterId}")
+    public ResponseEntity<PricePlanRecommendation> recommendAgainstCurrentPricePlan(
+            @PathVariable String smartMeterId,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "supplier", required = false) String supplier) {
+        if (limit != null && limit < 0) {
+            return ResponseEntity.badRequest().build();
         }
+        return pricePlanRecommendationService
+                .recommendAgainstCurrentPricePlan(smartMeterId, limit, supplier)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-        return ResponseEntity.ok(recommendations);
+    @GetMapping("/comparison-cache")
+    public ResponseEntity<ComparisonCacheStatistics> comparisonCacheStatistics() {
+        return ResponseEntity.ok(pricePlanService.getComparisonCacheStatistics());
     }
 }
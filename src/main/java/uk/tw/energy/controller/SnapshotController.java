@@ -0,0 +1,27 @@
+package uk.tw.energy.controller;
+
+import java.io.IOException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import uk.tw.energy.domain.SnapshotStatistics;
+import uk.tw.energy.service.SnapshotService;
+
+@RestController
+@RequestMapping("/snapshot")
+@ConditionalOnProperty("joi.snapshot.file")
+public class SnapshotController {
+
+    private final SnapshotService snapshotService;
+
+    public SnapshotController(SnapshotService snapshotService) {
+        this.snapshotService = snapshotService;
+    }
+
+    @PostMapping
+    public ResponseEntity<SnapshotStatistics> writeSnapshot() throws IOException {
+        return ResponseEntity.ok(snapshotService.writeSnapshot());
+    }
+}
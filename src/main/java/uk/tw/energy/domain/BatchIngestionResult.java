@@ -0,0 +1,16 @@
+package uk.tw.energy.domain;
+
+import java.util.Map;
+
+/**
+ * Outcome of storing a batch of {@link MeterReadings}.
+ *
+ * @param accepted number of entries that were stored, or queued to be stored
+ * @param rejected number of entries that were invalid, could not be stored or were turned away because the queue was
+ *     full, including those without a meter id
+ * @param meters accepted and rejected entries of each meter
+ */
+public record BatchIngestionResult(int accepted, int rejected, Map<String, MeterCounts> meters) {
+
+    public record MeterCounts(int accepted, int rejected) {}
+}
@@ -0,0 +1,147 @@
+package uk.tw.energy.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * A meter's readings in the binary request format, which is far cheaper to parse than JSON with its ISO instants and
+ * decimal numbers.
+ *
+ * <p>The body is the length of the smart meter id in bytes followed by its UTF-8 bytes, the number of readings, and
+ * then for each reading its epoch second, nano adjustment, unscaled value and scale. The epoch second is written as the
+ * change from the previous reading's, or from zero for the first. The scale is a single signed byte and every other
+ * number a little-endian base 128 varint, with the epoch second change and the unscaled value zigzag encoded so that
+ * negative numbers stay short.
+ *
+ * @param readings decoded straight into columns, without an {@link ElectricityReading} being created for each
+ */
+public record BinaryMeterReadings(String smartMeterId, ReadingColumns readings) {
+
+    public static final String MEDIA_TYPE = "application/x-joi-readings";
+
+    // more than any meter sends in one request, to stop a corrupt count allocating columns for it
+    private static final int MAX_INITIAL_CAPACITY = 4096;
+
+    /**
+     * @throws IllegalArgumentException if the body is not in the binary format
+     */
+    public static BinaryMeterReadings decode(byte[] body) {
+        Reader reader = new Reader(body);
+        String smartMeterId = reader.getString(reader.getLength());
+
+        int count = reader.getLength();
+        ReadingColumns readings = new ReadingColumns(Math.min(count, MAX_INITIAL_CAPACITY));
+        long epochSecond = 0;
+        for (int i = 0; i < count; i++) {
+            epochSecond += reader.getZigzag();
+            long nano = reader.getVarint();
+            long unscaledReading = reader.getZigzag();
+            byte readingScale = reader.get();
+            if (nano > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Nano adjustment " + nano + " is out of range");
+            }
+            readings.add(epochSecond, (int) nano, unscaledReading, readingScale);
+        }
+        if (reader.remaining() != 0) {
+            throw new IllegalArgumentException("Body has " + reader.remaining() + " bytes after the readings");
+        }
+        return new BinaryMeterReadings(smartMeterId, readings);
+    }
+
+    /**
+     * @throws IllegalArgumentException if any of the readings cannot be represented in the binary format
+     */
+    public static byte[] encode(MeterReadings meterReadings) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] smartMeterId = meterReadings.smartMeterId().getBytes(StandardCharsets.UTF_8);
+        putVarint(body, smartMeterId.length);
+        body.writeBytes(smartMeterId);
+
+        putVarint(body, meterReadings.electricityReadings().size());
+        long previousEpochSecond = 0;
+        for (ElectricityReading electricityReading : meterReadings.electricityReadings()) {
+            Instant time = electricityReading.time();
+            BigDecimal reading = electricityReading.reading();
+            if (reading.unscaledValue().bitLength() > 63
+                    || reading.scale() < Byte.MIN_VALUE
+                    || reading.scale() > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Reading " + reading + " cannot be represented");
+            }
+            putZigzag(body, time.getEpochSecond() - previousEpochSecond);
+            previousEpochSecond = time.getEpochSecond();
+            putVarint(body, time.getNano());
+            putZigzag(body, reading.unscaledValue().longValue());
+            body.write(reading.scale());
+        }
+        return body.toByteArray();
+    }
+
+    private static void putZigzag(ByteArrayOutputStream body, long value) {
+        putVarint(body, (value << 1) ^ (value >> 63));
+    }
+
+    private static void putVarint(ByteArrayOutputStream body, long value) {
+        while ((value & ~0x7FL) != 0) {
+            body.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        body.write((int) value);
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int remaining() {
+            return bytes.length - position;
+        }
+
+        String getString(int length) {
+            if (length > remaining()) {
+                throw new IllegalArgumentException("Body ends part way through the smart meter id");
+            }
+            String string = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return string;
+        }
+
+        byte get() {
+            if (position == bytes.length) {
+                throw new IllegalArgumentException("Body ends part way through a reading");
+            }
+            return bytes[position++];
+        }
+
+        int getLength() {
+            long length = getVarint();
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Length " + length + " is out of range");
+            }
+            return (int) length;
+        }
+
+        long getZigzag() {
+            long value = getVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long getVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint is longer than ten bytes");
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package uk.tw.energy.domain;
+
+import java.util.List;
+
+/**
+ * The nodes of the cluster as one node knows them.
+ *
+ * @param self base URL of the node
+ * @param nodes base URLs of every node the node knows of, itself included
+ */
+public record ClusterNodes(String self, List<String> nodes) {}
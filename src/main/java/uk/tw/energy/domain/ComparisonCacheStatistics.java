@@ -0,0 +1,12 @@
+package uk.tw.energy.domain;
+
+/**
+ * Counters of the cache of price plan comparisons, since the application started.
+ *
+ * @param hits comparisons answered from the cache
+ * @param misses comparisons worked out because the meter was not cached or its readings had changed
+ * @param evictions meters dropped to make room for others
+ * @param size meters cached now
+ * @param capacity most meters the cache holds
+ */
+public record ComparisonCacheStatistics(long hits, long misses, long evictions, int size, int capacity) {}
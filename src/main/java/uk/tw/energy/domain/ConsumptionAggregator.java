@@ -0,0 +1,333 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out a meter's {@link ConsumptionBucket}s over a time range, cut into buckets of the same width bar the last, in
+ * a single pass over its readings. Readings must be handed over in time order, and a rollup ahead of any reading taken
+ * after its start.
+ *
+ * <p>A bucket's energy is {@linkplain EnergyIntegrator integrated} over the part of each interval between readings
+ * that falls within it. An interval is cut where a bucket starts or ends, at the power the integration takes the meter
+ * to have drawn then, so the buckets' energies add up to the energy over the whole range. Intervals longer than the
+ * largest gap allowed are left out, as they are from costs. A rollup counts towards the bucket its period starts in,
+ * with all of its energy, as when within its period its readings were taken is no longer known.
+ *
+ * <p>Each bucket's readings are summed in a long for as long as they keep the same scale and the sum fits, and compared
+ * as longs while they have the same scale, so that a {@link BigDecimal} is only created now and then however many
+ * readings there are.
+ */
+public final class ConsumptionAggregator implements ReadingConsumer {
+
+    /**
+     * Most buckets a range can be cut into.
+     */
+    public static final int MAX_BUCKETS = 10_000;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final Instant from;
+    private final Instant to;
+    private final long fromEpochSecond;
+    private final int fromNano;
+    private final long bucketNanos;
+    private final long rangeNanos;
+    private final EnergyIntegration integration;
+    private final Duration maxGap;
+    private final Bucket[] buckets;
+
+    private int scale; // of the energies and means, the largest of the readings
+    private boolean started;
+    private long previousEpochSecond;
+    private int previousNano;
+    private long previousUnscaledReading;
+    private int previousScale;
+    private BigDecimal previousReading; // instead of the unscaled reading for a rollup's mean
+    private int previousBucket;
+
+    /**
+     * @param from start of the range, inclusive
+     * @param to end of the range, exclusive
+     * @param maxGap longest interval between readings to integrate, or null to integrate every interval
+     * @throws IllegalArgumentException if the range is empty, the bucket width is not positive, the range takes more
+     *     than {@value #MAX_BUCKETS} buckets, or the integration does not integrate readings
+     */
+    public ConsumptionAggregator(
+            Instant from, Instant to, Duration bucketWidth, EnergyIntegration integration, Duration maxGap) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Range from " + from + " to " + to + " is empty");
+        }
+        if (bucketWidth.isNegative() || bucketWidth.isZero()) {
+            throw new IllegalArgumentException("Bucket width " + bucketWidth + " is not positive");
+        }
+        if (integration == EnergyIntegration.AVERAGE_OVER_USAGE_TIME) {
+            throw new IllegalArgumentException(integration + " does not integrate readings");
+        }
+        try {
+            this.rangeNanos = Duration.between(from, to).toNanos();
+            this.bucketNanos = bucketWidth.toNanos();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Range from " + from + " to " + to + " is too long", e);
+        }
+        long bucketCount = (rangeNanos - 1) / bucketNanos + 1;
+        if (bucketCount > MAX_BUCKETS) {
+            throw new IllegalArgumentException(
+                    "Range from " + from + " to " + to + " takes " + bucketCount + " buckets of " + bucketWidth);
+        }
+        this.from = from;
+        this.to = to;
+        this.fromEpochSecond = from.getEpochSecond();
+        this.fromNano = from.getNano();
+        this.integration = integration;
+        this.maxGap = maxGap;
+        this.buckets = new Bucket[(int) bucketCount];
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            buckets[bucket] = new Bucket();
+        }
+    }
+
+    @Override
+    public void accept(long epochSecond, int nano, long unscaledReading, byte readingScale) {
+        scale = Math.max(scale, readingScale);
+        int bucket = bucketOf(epochSecond, nano);
+        if (isInRange(bucket)) {
+            buckets[bucket].add(unscaledReading, readingScale);
+        }
+        if (isBeforePrevious(epochSecond, nano)) {
+            return;
+        }
+        if (started && bucket != previousBucket) {
+            cutIntervalAt(bucket, epochSecond, nano, BigDecimal.valueOf(unscaledReading, readingScale));
+        }
+        if (isInRange(bucket)) {
+            buckets[bucket].integrator().accept(epochSecond, nano, unscaledReading, readingScale);
+        }
+        started = true;
+        previousEpochSecond = epochSecond;
+        previousNano = nano;
+        previousUnscaledReading = unscaledReading;
+        previousScale = readingScale;
+        previousReading = null;
+        previousBucket = bucket;
+    }
+
+    public void add(ReadingRollup rollup) {
+        BigDecimal mean = rollup.sum().divide(BigDecimal.valueOf(rollup.count()), MathContext.DECIMAL128);
+        scale = Math.max(scale, rollup.sum().scale());
+        Instant start = rollup.start();
+        Instant end = rollup.end();
+        int startBucket = bucketOf(start.getEpochSecond(), start.getNano());
+        if (started && startBucket != previousBucket && !isBeforePrevious(start.getEpochSecond(), start.getNano())) {
+            cutIntervalAt(startBucket, start.getEpochSecond(), start.getNano(), mean);
+        }
+        if (isInRange(startBucket)) {
+            buckets[startBucket].add(rollup);
+            buckets[startBucket].integrator().add(rollup);
+        }
+        if (isBeforePrevious(end.getEpochSecond(), end.getNano())) {
+            return;
+        }
+        int endBucket = bucketOf(end.getEpochSecond(), end.getNano());
+        if (endBucket != startBucket && isInRange(endBucket)) {
+            buckets[endBucket].integrator().addPoint(end, mean);
+        }
+        started = true;
+        previousEpochSecond = end.getEpochSecond();
+        previousNano = end.getNano();
+        previousReading = mean;
+        previousBucket = endBucket;
+    }
+
+    /**
+     * @return the buckets in time order, with the means rounded half up to the largest scale of the readings, and the
+     *     energies to that or {@link EnergyIntegrator#MIN_ENERGY_SCALE}, whichever is larger
+     */
+    public List<ConsumptionBucket> buckets() {
+        List<ConsumptionBucket> consumptionBuckets = new ArrayList<>(buckets.length);
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            consumptionBuckets.add(buckets[bucket].toConsumptionBucket(boundary(bucket), boundary(bucket + 1), scale));
+        }
+        return consumptionBuckets;
+    }
+
+    /**
+     * Cuts the interval from the previous reading to one at the time, in a later bucket, where each bucket between
+     * them starts, unless the interval is too long to integrate.
+     */
+    private void cutIntervalAt(int bucket, long epochSecond, int nano, BigDecimal reading) {
+        if (!isWithinMaxGap(epochSecond, nano)) {
+            return;
+        }
+        Instant previousTime = Instant.ofEpochSecond(previousEpochSecond, previousNano);
+        Instant time = Instant.ofEpochSecond(epochSecond, nano);
+        BigDecimal previous = previousReading != null
+                ? previousReading
+                : BigDecimal.valueOf(previousUnscaledReading, previousScale);
+        for (int next = Math.max(0, previousBucket + 1); next <= Math.min(buckets.length, bucket); next++) {
+            Instant boundary = boundary(next);
+            BigDecimal power = integration == EnergyIntegration.TRAPEZOIDAL
+                    ? interpolate(previousTime, previous, time, reading, boundary)
+                    : previous;
+            if (next > 0) {
+                buckets[next - 1].integrator().addPoint(boundary, power);
+            }
+            if (next < buckets.length) {
+                buckets[next].integrator().addPoint(boundary, power);
+            }
+        }
+    }
+
+    private static BigDecimal interpolate(
+            Instant previousTime, BigDecimal previous, Instant time, BigDecimal reading, Instant at) {
+        BigDecimal elapsed = nanosBetween(previousTime, at);
+        BigDecimal interval = nanosBetween(previousTime, time);
+        return previous.add(reading.subtract(previous).multiply(elapsed).divide(interval, MathContext.DECIMAL128));
+    }
+
+    private static BigDecimal nanosBetween(Instant start, Instant end) {
+        Duration duration = Duration.between(start, end);
+        return BigDecimal.valueOf(duration.getSeconds())
+                .scaleByPowerOfTen(9)
+                .add(BigDecimal.valueOf(duration.getNano()));
+    }
+
+    /**
+     * @return the bucket the time falls in, -1 if it is before the range or the number of buckets if it is after it
+     */
+    private int bucketOf(long epochSecond, int nano) {
+        long seconds = epochSecond - fromEpochSecond;
+        if (seconds < 0) {
+            return -1;
+        }
+        if (seconds > rangeNanos / NANOS_PER_SECOND + 1) {
+            return buckets.length;
+        }
+        long nanos = seconds * NANOS_PER_SECOND + nano - fromNano;
+        if (nanos < 0) {
+            return -1;
+        }
+        return nanos >= rangeNanos ? buckets.length : (int) (nanos / bucketNanos);
+    }
+
+    private Instant boundary(int bucket) {
+        return bucket == buckets.length ? to : from.plusNanos(bucket * bucketNanos);
+    }
+
+    private boolean isInRange(int bucket) {
+        return bucket >= 0 && bucket < buckets.length;
+    }
+
+    private boolean isBeforePrevious(long epochSecond, int nano) {
+        return started
+                && (epochSecond < previousEpochSecond || (epochSecond == previousEpochSecond && nano < previousNano));
+    }
+
+    private boolean isWithinMaxGap(long epochSecond, int nano) {
+        if (maxGap == null) {
+            return true;
+        }
+        long seconds = epochSecond - previousEpochSecond;
+        int nanos = nano - previousNano;
+        if (nanos < 0) {
+            seconds--;
+            nanos += (int) NANOS_PER_SECOND;
+        }
+        return seconds < maxGap.getSeconds() || (seconds == maxGap.getSeconds() && nanos <= maxGap.getNano());
+    }
+
+    private static int compare(long unscaled, int scale, long otherUnscaled, int otherScale) {
+        return scale == otherScale
+                ? Long.compare(unscaled, otherUnscaled)
+                : BigDecimal.valueOf(unscaled, scale).compareTo(BigDecimal.valueOf(otherUnscaled, otherScale));
+    }
+
+    /**
+     * The readings counted towards one bucket, and its share of the energy.
+     */
+    private final class Bucket {
+
+        private EnergyIntegrator integrator;
+        private long count;
+        private BigDecimal sum = BigDecimal.ZERO;
+        private long runSum; // unscaled, at runScale, not yet added to sum
+        private int runScale;
+        private long unscaledMin;
+        private int minScale;
+        private long unscaledMax;
+        private int maxScale;
+
+        EnergyIntegrator integrator() {
+            if (integrator == null) {
+                integrator = new EnergyIntegrator(integration, maxGap);
+            }
+            return integrator;
+        }
+
+        void add(long unscaledReading, int readingScale) {
+            extendTo(unscaledReading, readingScale);
+            count++;
+            if (runSum != 0 && runScale != readingScale) {
+                flushRun();
+            }
+            long added = runSum + unscaledReading;
+            if (((runSum ^ added) & (unscaledReading ^ added)) < 0) {
+                flushRun();
+                added = unscaledReading;
+            }
+            runSum = added;
+            runScale = readingScale;
+        }
+
+        void add(ReadingRollup rollup) {
+            // a rollup's minimum and maximum are readings, which the store holds as longs
+            extendTo(rollup.min().unscaledValue().longValueExact(), rollup.min().scale());
+            count += rollup.count();
+            extendTo(rollup.max().unscaledValue().longValueExact(), rollup.max().scale());
+            sum = sum.add(rollup.sum());
+        }
+
+        ConsumptionBucket toConsumptionBucket(Instant start, Instant end, int scale) {
+            int energyScale = Math.max(scale, EnergyIntegrator.MIN_ENERGY_SCALE);
+            BigDecimal energyInKwH =
+                    integrator == null ? BigDecimal.ZERO.setScale(energyScale) : integrator.energyInKwH(energyScale);
+            if (count == 0) {
+                return new ConsumptionBucket(start, end, 0, energyInKwH, null, null, null);
+            }
+            flushRun();
+            return new ConsumptionBucket(
+                    start,
+                    end,
+                    count,
+                    energyInKwH,
+                    BigDecimal.valueOf(unscaledMin, minScale),
+                    sum.divide(BigDecimal.valueOf(count), scale, RoundingMode.HALF_UP),
+                    BigDecimal.valueOf(unscaledMax, maxScale));
+        }
+
+        /**
+         * Takes the reading as the smallest and largest so far if the bucket has none yet, or as either it goes beyond.
+         */
+        private void extendTo(long unscaledReading, int readingScale) {
+            if (count == 0 || compare(unscaledReading, readingScale, unscaledMin, minScale) < 0) {
+                unscaledMin = unscaledReading;
+                minScale = readingScale;
+            }
+            if (count == 0 || compare(unscaledReading, readingScale, unscaledMax, maxScale) > 0) {
+                unscaledMax = unscaledReading;
+                maxScale = readingScale;
+            }
+        }
+
+        private void flushRun() {
+            sum = sum.add(BigDecimal.valueOf(runSum, runScale));
+            runSum = 0;
+        }
+
+    }
+}
@@ -0,0 +1,24 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A meter's consumption over part of a time range.
+ *
+ * @param start start of the period, inclusive
+ * @param end end of the period, exclusive
+ * @param readingCount number of readings taken in the period, counting those rolled up
+ * @param energyInKwH energy consumed in the period, in kWh
+ * @param minKw smallest reading, in kW, or null if there were no readings
+ * @param averageKw mean of the readings, in kW, or null if there were no readings
+ * @param maxKw largest reading, in kW, or null if there were no readings
+ */
+public record ConsumptionBucket(
+        Instant start,
+        Instant end,
+        long readingCount,
+        BigDecimal energyInKwH,
+        BigDecimal minKw,
+        BigDecimal averageKw,
+        BigDecimal maxKw) {}
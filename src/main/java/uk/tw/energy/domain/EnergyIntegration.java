@@ -0,0 +1,35 @@
+package uk.tw.energy.domain;
+
+/**
+ * How the energy a meter consumed is worked out from its readings of power.
+ */
+public enum EnergyIntegration {
+
+    /**
+     * Each interval between consecutive readings at the mean of the readings at either end, as if the power changed
+     * steadily from one to the other.
+     */
+    TRAPEZOIDAL,
+
+    /**
+     * Each interval between consecutive readings at the reading it starts with, as if the power held until the next
+     * reading.
+     */
+    LEFT_RIEMANN,
+
+    /**
+     * The average reading divided by the hours between the earliest and latest readings. This is not an energy, but is
+     * how costs were worked out before readings were integrated, and is kept so that costs can be compared with ones
+     * worked out that way. It gives no energy for any one interval, so where that is needed, as for a usage profile or
+     * consumption buckets, intervals are integrated trapezoidally.
+     */
+    AVERAGE_OVER_USAGE_TIME;
+
+    /**
+     * @return how the intervals between readings are integrated where the energy of each is needed, which is this
+     *     integration unless it does not integrate readings
+     */
+    public EnergyIntegration ofIntervals() {
+        return this == AVERAGE_OVER_USAGE_TIME ? TRAPEZOIDAL : this;
+    }
+}
@@ -0,0 +1,260 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Works out the energy a meter consumed, in kWh, by integrating its readings of power over time in a single pass.
+ * Readings must be handed over in time order, and a rollup ahead of any reading taken after its start.
+ *
+ * <p>Each interval between consecutive readings adds the energy of its {@link EnergyIntegration}, unless it is longer
+ * than the largest gap allowed, when the meter is taken to have been off or out of touch and the interval adds
+ * nothing. A reading taken at the same time as the one before it ends no interval, and replaces it as the start of
+ * the next, while one taken before it, as a reading within a rollup's period can be, is left out. A rollup adds its
+ * mean reading over its whole period, and stands for a reading of its mean at either end of the period when
+ * integrating the intervals up to and after it.
+ *
+ * <p>The integral is kept in units of the readings' last decimal place times nanoseconds, added up in a long for as
+ * long as the readings keep the same scale and the total fits, so that a {@link BigDecimal} is only created now and
+ * then however many readings there are.
+ */
+public final class EnergyIntegrator implements ReadingConsumer {
+
+    /**
+     * Fewest decimal places an energy is given to, so that readings in whole kW do not have their energy rounded to
+     * whole kWh before it is priced.
+     */
+    public static final int MIN_ENERGY_SCALE = 4;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // the integral is doubled, so that halving the sum of two readings for a trapezoid stays exact
+    private static final BigDecimal DOUBLED_NANOS_PER_HOUR = BigDecimal.valueOf(2 * 3600 * NANOS_PER_SECOND);
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    // any interval longer than this may not fit in a long when counted in nanoseconds
+    private static final long MAX_NANO_COUNTED_SECONDS = Long.MAX_VALUE / NANOS_PER_SECOND - 1;
+
+    private final boolean trapezoidal;
+    private final long maxGapSeconds;
+    private final int maxGapNanos;
+    private final UsageProfile profile; // shares the energy of each interval out between half-hours, if not null
+
+    private BigDecimal integral = BigDecimal.ZERO;
+    private long runIntegral; // unscaled, at runScale, not yet added to integral
+    private int runScale;
+    private int scale; // of the energy, the largest of the readings
+    private boolean started;
+    private long previousEpochSecond;
+    private int previousNano;
+    private long previousUnscaledReading;
+    private int previousScale;
+    private BigDecimal previousReading; // instead of the unscaled reading when it does not fit, as for a rollup's mean
+
+    /**
+     * @param maxGap longest interval between readings to integrate, or null to integrate every interval
+     * @throws IllegalArgumentException if the integration does not integrate readings
+     */
+    public EnergyIntegrator(EnergyIntegration integration, Duration maxGap) {
+        this(integration, maxGap, null);
+    }
+
+    EnergyIntegrator(EnergyIntegration integration, Duration maxGap, UsageProfile profile) {
+        if (integration == EnergyIntegration.AVERAGE_OVER_USAGE_TIME) {
+            throw new IllegalArgumentException(integration + " does not integrate readings");
+        }
+        this.trapezoidal = integration == EnergyIntegration.TRAPEZOIDAL;
+        this.maxGapSeconds = maxGap == null ? Long.MAX_VALUE : maxGap.getSeconds();
+        this.maxGapNanos = maxGap == null ? 0 : maxGap.getNano();
+        this.profile = profile;
+    }
+
+    @Override
+    public void accept(long epochSecond, int nano, long unscaledReading, byte readingScale) {
+        scale = Math.max(scale, readingScale);
+        if (isBeforePrevious(epochSecond, nano)) {
+            return;
+        }
+        if (startsInterval(epochSecond, nano)) {
+            long seconds = epochSecond - previousEpochSecond;
+            int nanos = nano - previousNano;
+            if (previousReading != null
+                    || readingScale != previousScale
+                    || seconds > MAX_NANO_COUNTED_SECONDS
+                    || !addToRun(unscaledReading, seconds * NANOS_PER_SECOND + nanos, readingScale)) {
+                addExactly(BigDecimal.valueOf(unscaledReading, readingScale), seconds, nanos);
+            }
+        }
+        previousEpochSecond = epochSecond;
+        previousNano = nano;
+        previousUnscaledReading = unscaledReading;
+        previousScale = readingScale;
+        previousReading = null;
+    }
+
+    public void add(ElectricityReading electricityReading) {
+        BigDecimal reading = electricityReading.reading();
+        Instant time = electricityReading.time();
+        if (reading.unscaledValue().bitLength() < Long.SIZE
+                && reading.scale() >= Byte.MIN_VALUE
+                && reading.scale() <= Byte.MAX_VALUE) {
+            accept(time.getEpochSecond(), time.getNano(), reading.unscaledValue().longValue(), (byte) reading.scale());
+        } else {
+            scale = Math.max(scale, reading.scale());
+            if (!isBeforePrevious(time.getEpochSecond(), time.getNano())) {
+                addAt(time, reading);
+            }
+        }
+    }
+
+    public void add(ReadingRollup rollup) {
+        BigDecimal mean = rollup.sum().divide(BigDecimal.valueOf(rollup.count()), MathContext.DECIMAL128);
+        scale = Math.max(scale, rollup.sum().scale());
+        Duration period = Duration.between(rollup.start(), rollup.end());
+        integral = integral.add(TWO.multiply(mean).multiply(nanosOf(period.getSeconds(), period.getNano())));
+        if (!isBeforePrevious(rollup.start().getEpochSecond(), rollup.start().getNano())) {
+            addAt(rollup.start(), mean);
+        }
+        if (!isBeforePrevious(rollup.end().getEpochSecond(), rollup.end().getNano())) {
+            started = true;
+            previousEpochSecond = rollup.end().getEpochSecond();
+            previousNano = rollup.end().getNano();
+            previousReading = mean;
+        }
+    }
+
+    /**
+     * Takes the power to have been the reading at the time, as where an interval is cut short or picked up part way
+     * through, without the reading counting towards the scale of the energy.
+     */
+    public void addPoint(Instant time, BigDecimal reading) {
+        if (!isBeforePrevious(time.getEpochSecond(), time.getNano())) {
+            addAt(time, reading);
+        }
+    }
+
+    /**
+     * @return the energy consumed, in kWh, rounded half up to the largest scale of the readings, or to
+     *     {@link #MIN_ENERGY_SCALE} if that is larger
+     */
+    public BigDecimal energyInKwH() {
+        return energyInKwH(energyScale());
+    }
+
+    /**
+     * @return the scale {@link #energyInKwH()} rounds the energy to
+     */
+    public int energyScale() {
+        return Math.max(scale, MIN_ENERGY_SCALE);
+    }
+
+    /**
+     * @return the energy consumed, in kWh, rounded half up to the scale
+     */
+    public BigDecimal energyInKwH(int scale) {
+        return integral.add(BigDecimal.valueOf(runIntegral, runScale))
+                .divide(DOUBLED_NANOS_PER_HOUR, scale, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Integrates up to a reading that is not held unscaled, which then starts the next interval.
+     */
+    private void addAt(Instant time, BigDecimal reading) {
+        if (startsInterval(time.getEpochSecond(), time.getNano())) {
+            addExactly(reading, time.getEpochSecond() - previousEpochSecond, time.getNano() - previousNano);
+        }
+        previousEpochSecond = time.getEpochSecond();
+        previousNano = time.getNano();
+        previousReading = reading;
+    }
+
+    boolean isBeforeLatest(long epochSecond, int nano) {
+        return isBeforePrevious(epochSecond, nano);
+    }
+
+    private boolean isBeforePrevious(long epochSecond, int nano) {
+        return started
+                && (epochSecond < previousEpochSecond || (epochSecond == previousEpochSecond && nano < previousNano));
+    }
+
+    /**
+     * @return whether a reading at the time, which is not before the previous one, ends an interval to integrate, which
+     *     it does unless it is the first, is at the same time as the previous one, or is too long after it
+     */
+    private boolean startsInterval(long epochSecond, int nano) {
+        if (!started) {
+            started = true;
+            return false;
+        }
+        long seconds = epochSecond - previousEpochSecond;
+        int nanos = nano - previousNano;
+        if (nanos < 0) {
+            seconds--;
+            nanos += (int) NANOS_PER_SECOND;
+        }
+        if (seconds == 0 && nanos == 0) {
+            return false;
+        }
+        return seconds < maxGapSeconds || (seconds == maxGapSeconds && nanos <= maxGapNanos);
+    }
+
+    /**
+     * @return false, leaving the integral as it was, if the interval's doubled energy does not fit in a long
+     */
+    private boolean addToRun(long unscaledReading, long nanos, int readingScale) {
+        long doubledReading = trapezoidal
+                ? previousUnscaledReading + unscaledReading
+                : previousUnscaledReading + previousUnscaledReading;
+        long other = trapezoidal ? unscaledReading : previousUnscaledReading;
+        if (((previousUnscaledReading ^ doubledReading) & (other ^ doubledReading)) < 0) {
+            return false;
+        }
+        long high = Math.multiplyHigh(doubledReading, nanos);
+        long doubledEnergy = doubledReading * nanos;
+        if (high != (doubledEnergy >> 63)) {
+            return false;
+        }
+        if (runIntegral != 0 && runScale != readingScale) {
+            flushRun();
+        }
+        long added = runIntegral + doubledEnergy;
+        if (((runIntegral ^ added) & (doubledEnergy ^ added)) < 0) {
+            flushRun();
+            added = doubledEnergy;
+        }
+        runIntegral = added;
+        runScale = readingScale;
+        if (profile != null) {
+            profile.addInterval(
+                    previousEpochSecond,
+                    previousNano,
+                    nanos,
+                    previousUnscaledReading,
+                    unscaledReading,
+                    readingScale,
+                    doubledEnergy);
+        }
+        return true;
+    }
+
+    private void addExactly(BigDecimal reading, long seconds, int nanos) {
+        BigDecimal previous = previousReading != null
+                ? previousReading
+                : BigDecimal.valueOf(previousUnscaledReading, previousScale);
+        BigDecimal doubledReading = trapezoidal ? previous.add(reading) : previous.multiply(TWO);
+        integral = integral.add(doubledReading.multiply(nanosOf(seconds, nanos)));
+        if (profile != null) {
+            profile.addInterval(previousEpochSecond, previousNano, nanosOf(seconds, nanos), previous, reading, scale);
+        }
+    }
+
+    private void flushRun() {
+        integral = integral.add(BigDecimal.valueOf(runIntegral, runScale));
+        runIntegral = 0;
+    }
+
+    private static BigDecimal nanosOf(long seconds, int nanos) {
+        return BigDecimal.valueOf(seconds).scaleByPowerOfTen(9).add(BigDecimal.valueOf(nanos));
+    }
+}
@@ -0,0 +1,29 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Price plan recommendations for every meter with an account.
+ *
+ * @param meters number of meters that were costed
+ * @param elapsedMillis time taken to cost and rank them
+ * @param metersPerSecond throughput of the run
+ * @param pricePlans how each price plan compares across the fleet
+ * @param rankings each meter's price plans, cheapest first, or null when rankings were not asked for
+ */
+public record FleetRecommendation(
+        int meters,
+        long elapsedMillis,
+        double metersPerSecond,
+        Map<String, PricePlanSavings> pricePlans,
+        Map<String, List<Map.Entry<String, BigDecimal>>> rankings) {
+
+    /**
+     * @param cheapestForMeters number of meters for which the plan is the cheapest
+     * @param totalSavings what meters would save in total by switching from their current plan to this one; negative
+     *     when switching would cost more
+     */
+    public record PricePlanSavings(int cheapestForMeters, BigDecimal totalSavings) {}
+}
@@ -1,8 +1,11 @@
 package uk.tw.energy.domain;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.time.DayOfWeek;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.List;
 
 public class PricePlan {
@@ -10,14 +13,34 @@ public class PricePlan {
     private final String energySupplier;
     private final String planName;
     private final BigDecimal unitRate; // unit price per kWh
+    private final Long unscaledUnitRate; // unitRate in units of its last decimal place, or null if too long for a long
     private final List<PeakTimeMultiplier> peakTimeMultipliers;
+    private final BigDecimal[] unitRateBySlot; // unit price per kWh in each TimeOfUseSlot
+    private final int unitRateBySlotScale; // largest scale of the unit rates in unitRateBySlot
+    private final long[] unscaledUnitRateBySlot; // unitRateBySlot at unitRateBySlotScale, or null if too long for longs
+    private final long largestUnscaledUnitRate; // largest magnitude in unscaledUnitRateBySlot
 
     public PricePlan(
             String planName, String energySupplier, BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers) {
         this.planName = planName;
         this.energySupplier = energySupplier;
         this.unitRate = unitRate;
-        this.peakTimeMultipliers = peakTimeMultipliers;
+        this.unscaledUnitRate = unitRate != null && unitRate.unscaledValue().bitLength() < Long.SIZE
+                ? unitRate.unscaledValue().longValue()
+                : null;
+        this.peakTimeMultipliers = peakTimeMultipliers == null ? List.of() : List.copyOf(peakTimeMultipliers);
+        this.unitRateBySlot = compileUnitRates(unitRate, this.peakTimeMultipliers);
+        int scale = 0;
+        for (BigDecimal slotRate : unitRateBySlot) {
+            scale = slotRate == null ? scale : Math.max(scale, slotRate.scale());
+        }
+        this.unitRateBySlotScale = scale;
+        this.unscaledUnitRateBySlot = compileUnscaledUnitRates(unitRateBySlot, scale);
+        long largest = 0;
+        for (int slot = 0; unscaledUnitRateBySlot != null && slot < TimeOfUseSlot.COUNT; slot++) {
+            largest = Math.max(largest, Math.abs(unscaledUnitRateBySlot[slot]));
+        }
+        this.largestUnscaledUnitRate = largest;
     }
 
     public String getEnergySupplier() {
@@ -32,22 +55,149 @@ public class PricePlan {
         return unitRate;
     }
 
+    /**
+     * @return the unit rate in units of its last decimal place, that is without the decimal point, for fixed-point
+     *     arithmetic at the unit rate's scale
+     * @throws ArithmeticException if the unit rate has too many digits to fit in a long
+     */
+    public long getUnscaledUnitRate() {
+        if (unscaledUnitRate == null) {
+            throw new ArithmeticException("Unit rate " + unitRate + " does not fit in a long");
+        }
+        return unscaledUnitRate;
+    }
+
+    public List<PeakTimeMultiplier> getPeakTimeMultipliers() {
+        return peakTimeMultipliers;
+    }
+
+    /**
+     * @return whether the unit rate varies with the time of use
+     */
+    public boolean isTimeOfUse() {
+        return !peakTimeMultipliers.isEmpty();
+    }
+
     public BigDecimal getPrice(LocalDateTime dateTime) {
-        return peakTimeMultipliers.stream()
-                .filter(multiplier -> multiplier.dayOfWeek.equals(dateTime.getDayOfWeek()))
-                .findFirst()
-                .map(multiplier -> unitRate.multiply(multiplier.multiplier))
-                .orElse(unitRate);
+        return unitRateBySlot[TimeOfUseSlot.of(dateTime)];
+    }
+
+    public BigDecimal getPrice(Instant time) {
+        return unitRateBySlot[TimeOfUseSlot.of(time)];
+    }
+
+    /**
+     * @param slot a {@link TimeOfUseSlot}
+     */
+    public BigDecimal getPrice(int slot) {
+        return unitRateBySlot[slot];
+    }
+
+    /**
+     * Works out the unit rate of every half-hour of the week up front, so that pricing a reading is a lookup. Where
+     * multipliers overlap, the first one in the list applies. A window running past midnight carries on into the next
+     * day, and from Sunday into Monday.
+     */
+    private static BigDecimal[] compileUnitRates(BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers) {
+        BigDecimal[] unitRateBySlot = new BigDecimal[TimeOfUseSlot.COUNT];
+        for (PeakTimeMultiplier multiplier : peakTimeMultipliers) {
+            BigDecimal peakRate = unitRate.multiply(multiplier.multiplier);
+            int from = TimeOfUseSlot.of(multiplier.dayOfWeek, multiplier.from);
+            int to = TimeOfUseSlot.of(multiplier.dayOfWeek, multiplier.to);
+            if (multiplier.to.equals(LocalTime.MIDNIGHT) || multiplier.to.isBefore(multiplier.from)) {
+                to += TimeOfUseSlot.SLOTS_PER_DAY;
+            }
+            for (int slot = from; slot < to; slot++) {
+                int weekSlot = slot % TimeOfUseSlot.COUNT;
+                if (unitRateBySlot[weekSlot] == null) {
+                    unitRateBySlot[weekSlot] = peakRate;
+                }
+            }
+        }
+        for (int slot = 0; slot < unitRateBySlot.length; slot++) {
+            if (unitRateBySlot[slot] == null) {
+                unitRateBySlot[slot] = unitRate;
+            }
+        }
+        return unitRateBySlot;
+    }
+
+    /**
+     * @return the scale at which {@link #getUnscaledUnitRatesBySlot()} gives the unit rates
+     */
+    public int getUnitRateBySlotScale() {
+        return unitRateBySlotScale;
     }
 
-    static class PeakTimeMultiplier {
+    /**
+     * @return the unit rate of each {@link TimeOfUseSlot} without the decimal point, all at the same scale, for
+     *     fixed-point arithmetic, or null if any of them is too long for a long; must not be modified
+     */
+    public long[] getUnscaledUnitRatesBySlot() {
+        return unscaledUnitRateBySlot;
+    }
+
+    /**
+     * @return the largest magnitude of {@link #getUnscaledUnitRatesBySlot()}, to tell whether sums of its products can
+     *     overflow
+     */
+    public long getLargestUnscaledUnitRate() {
+        return largestUnscaledUnitRate;
+    }
+
+    private static long[] compileUnscaledUnitRates(BigDecimal[] unitRateBySlot, int scale) {
+        long[] unscaledUnitRateBySlot = new long[TimeOfUseSlot.COUNT];
+        for (int slot = 0; slot < TimeOfUseSlot.COUNT; slot++) {
+            if (unitRateBySlot[slot] == null) {
+                return null;
+            }
+            // exact, as no unit rate has a larger scale
+            BigInteger unscaled = unitRateBySlot[slot].setScale(scale).unscaledValue();
+            if (unscaled.bitLength() >= Long.SIZE) {
+                return null;
+            }
+            unscaledUnitRateBySlot[slot] = unscaled.longValue();
+        }
+        return unscaledUnitRateBySlot;
+    }
+
+    /**
+     * Multiplies the unit rate over a window of a day of the week, from the start time up to but excluding the end
+     * time. Windows are resolved to the half-hour, and a window ending at midnight runs to the end of the day. A
+     * window ending before it starts runs overnight, from the start time on the given day to the end time on the next.
+     */
+    public static class PeakTimeMultiplier {
 
         DayOfWeek dayOfWeek;
+        LocalTime from;
+        LocalTime to;
         BigDecimal multiplier;
 
         public PeakTimeMultiplier(DayOfWeek dayOfWeek, BigDecimal multiplier) {
+            this(dayOfWeek, LocalTime.MIDNIGHT, LocalTime.MIDNIGHT, multiplier);
+        }
+
+        public PeakTimeMultiplier(DayOfWeek dayOfWeek, LocalTime from, LocalTime to, BigDecimal multiplier) {
             this.dayOfWeek = dayOfWeek;
+            this.from = from;
+            this.to = to;
             this.multiplier = multiplier;
         }
+
+        public DayOfWeek getDayOfWeek() {
+            return dayOfWeek;
+        }
+
+        public LocalTime getFrom() {
+            return from;
+        }
+
+        public LocalTime getTo() {
+            return to;
+        }
+
+        public BigDecimal getMultiplier() {
+            return multiplier;
+        }
     }
 }
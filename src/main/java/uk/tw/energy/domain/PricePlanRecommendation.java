@@ -0,0 +1,22 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The cheapest price plans for a meter, set against the plan it is on.
+ *
+ * @param currentPricePlanId the plan the meter's account is on, or null if it has no account
+ * @param currentCost cost of the meter's readings on its current plan, or null if it has no account or its plan is no
+ *     longer on offer
+ * @param pricePlans the cheapest plans, cheapest first
+ */
+public record PricePlanRecommendation(
+        String smartMeterId, String currentPricePlanId, BigDecimal currentCost, List<RecommendedPricePlan> pricePlans) {
+
+    /**
+     * @param saving what the meter would save by switching to this plan from its current one, negative when switching
+     *     would cost more, or null when there is no current cost to compare with
+     */
+    public record RecommendedPricePlan(String pricePlanId, String energySupplier, BigDecimal cost, BigDecimal saving) {}
+}
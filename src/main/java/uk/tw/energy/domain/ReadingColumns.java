@@ -0,0 +1,179 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A batch of a meter's readings held column by column, so that readings decoded from a binary request body reach the
+ * store without an {@link ElectricityReading} being created for each.
+ *
+ * <p>A reading is its epoch second, its nano adjustment, and the unscaled value and scale of its {@link BigDecimal},
+ * which must fit in a long and a byte.
+ */
+public final class ReadingColumns {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] epochSeconds;
+    private int[] nanos;
+    private long[] unscaledReadings;
+    private byte[] readingScales;
+    private int size;
+
+    public ReadingColumns() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ReadingColumns(int capacity) {
+        epochSeconds = new long[capacity];
+        nanos = new int[capacity];
+        unscaledReadings = new long[capacity];
+        readingScales = new byte[capacity];
+    }
+
+    /**
+     * @throws IllegalArgumentException if any of the readings cannot be represented by the columns
+     */
+    public static ReadingColumns of(List<ElectricityReading> electricityReadings) {
+        ReadingColumns columns = new ReadingColumns(electricityReadings.size());
+        for (ElectricityReading electricityReading : electricityReadings) {
+            Instant time = electricityReading.time();
+            BigDecimal reading = electricityReading.reading();
+            if (reading.unscaledValue().bitLength() > 63) {
+                throw new IllegalArgumentException("Reading " + reading + " has more precision than can be stored");
+            }
+            if (reading.scale() < Byte.MIN_VALUE || reading.scale() > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Reading " + reading + " has a scale that cannot be stored");
+            }
+            columns.add(
+                    time.getEpochSecond(),
+                    time.getNano(),
+                    reading.unscaledValue().longValue(),
+                    (byte) reading.scale());
+        }
+        return columns;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the epoch second and nano adjustment are not those of an {@link Instant}
+     */
+    public void add(long epochSecond, int nano, long unscaledReading, byte readingScale) {
+        if (epochSecond < Instant.MIN.getEpochSecond()
+                || epochSecond > Instant.MAX.getEpochSecond()
+                || nano < 0
+                || nano > 999_999_999) {
+            throw new IllegalArgumentException(
+                    "Epoch second " + epochSecond + " and nano adjustment " + nano + " are not an instant");
+        }
+        ensureCapacity(size + 1);
+        epochSeconds[size] = epochSecond;
+        nanos[size] = nano;
+        unscaledReadings[size] = unscaledReading;
+        readingScales[size] = readingScale;
+        size++;
+    }
+
+    /**
+     * Appends the other readings after these.
+     */
+    public void addAll(ReadingColumns other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.epochSeconds, 0, epochSeconds, size, other.size);
+        System.arraycopy(other.nanos, 0, nanos, size, other.size);
+        System.arraycopy(other.unscaledReadings, 0, unscaledReadings, size, other.size);
+        System.arraycopy(other.readingScales, 0, readingScales, size, other.size);
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long epochSecond(int index) {
+        return epochSeconds[index];
+    }
+
+    public int nano(int index) {
+        return nanos[index];
+    }
+
+    public long unscaledReading(int index) {
+        return unscaledReadings[index];
+    }
+
+    public byte readingScale(int index) {
+        return readingScales[index];
+    }
+
+    public ElectricityReading get(int index) {
+        return new ElectricityReading(
+                Instant.ofEpochSecond(epochSeconds[index], nanos[index]),
+                BigDecimal.valueOf(unscaledReadings[index], readingScales[index]));
+    }
+
+    public List<ElectricityReading> toList() {
+        List<ElectricityReading> electricityReadings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            electricityReadings.add(get(i));
+        }
+        return electricityReadings;
+    }
+
+    /**
+     * Sums the readings by adding up unscaled values in a long for as long as the scale stays the same and the total
+     * fits, so that only a few {@link BigDecimal}s are created however many readings there are.
+     *
+     * @return the summary of these readings alone, equal to adding each of them to {@link ReadingSummary#EMPTY}
+     */
+    public ReadingSummary summary() {
+        if (size == 0) {
+            return ReadingSummary.EMPTY;
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        long runSum = 0;
+        byte runScale = readingScales[0];
+        int earliest = 0;
+        int latest = 0;
+        for (int i = 0; i < size; i++) {
+            long added = runSum + unscaledReadings[i];
+            boolean overflows = ((runSum ^ added) & (unscaledReadings[i] ^ added)) < 0;
+            if (readingScales[i] != runScale || overflows) {
+                sum = sum.add(BigDecimal.valueOf(runSum, runScale));
+                runScale = readingScales[i];
+                added = unscaledReadings[i];
+            }
+            runSum = added;
+            if (compareTimes(i, earliest) < 0) {
+                earliest = i;
+            }
+            if (compareTimes(i, latest) > 0) {
+                latest = i;
+            }
+        }
+        sum = sum.add(BigDecimal.valueOf(runSum, runScale));
+        return new ReadingSummary(
+                size,
+                sum,
+                Instant.ofEpochSecond(epochSeconds[earliest], nanos[earliest]),
+                Instant.ofEpochSecond(epochSeconds[latest], nanos[latest]));
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= epochSeconds.length) {
+            return;
+        }
+        int capacity = Math.max(Math.max(INITIAL_CAPACITY, required), size + (size >> 1));
+        epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+        nanos = Arrays.copyOf(nanos, capacity);
+        unscaledReadings = Arrays.copyOf(unscaledReadings, capacity);
+        readingScales = Arrays.copyOf(readingScales, capacity);
+    }
+
+    private int compareTimes(int index, int otherIndex) {
+        int bySecond = Long.compare(epochSeconds[index], epochSeconds[otherIndex]);
+        return bySecond != 0 ? bySecond : Integer.compare(nanos[index], nanos[otherIndex]);
+    }
+}
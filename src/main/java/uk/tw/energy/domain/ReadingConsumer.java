@@ -0,0 +1,11 @@
+package uk.tw.energy.domain;
+
+/**
+ * Takes a reading as the columns of a {@link ReadingColumns}, so that readings can be handed over one at a time without
+ * an {@link ElectricityReading} being created for each.
+ */
+@FunctionalInterface
+public interface ReadingConsumer {
+
+    void accept(long epochSecond, int nano, long unscaledReading, byte readingScale);
+}
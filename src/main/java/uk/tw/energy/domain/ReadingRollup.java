@@ -0,0 +1,40 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * The readings of a meter over a period, reduced to their count, sum, minimum and maximum once they are too old to be
+ * kept one by one.
+ *
+ * @param start start of the period, inclusive
+ * @param end end of the period, exclusive
+ * @param count number of readings
+ * @param sum sum of the readings, in kW
+ * @param min smallest reading, in kW
+ * @param max largest reading, in kW
+ */
+public record ReadingRollup(Instant start, Instant end, long count, BigDecimal sum, BigDecimal min, BigDecimal max) {
+
+    public static ReadingRollup of(Instant start, Instant end, ElectricityReading electricityReading) {
+        BigDecimal reading = electricityReading.reading();
+        return new ReadingRollup(start, end, 1, reading, reading, reading);
+    }
+
+    public boolean covers(Instant time) {
+        return !time.isBefore(start) && time.isBefore(end);
+    }
+
+    public ReadingRollup add(ElectricityReading electricityReading) {
+        BigDecimal reading = electricityReading.reading();
+        return new ReadingRollup(start, end, count + 1, sum.add(reading), min.min(reading), max.max(reading));
+    }
+
+    /**
+     * @return a rollup over this rollup's readings and the other's, for a period that must take in both of theirs
+     */
+    public ReadingRollup merge(ReadingRollup other, Instant start, Instant end) {
+        return new ReadingRollup(
+                start, end, count + other.count, sum.add(other.sum), min.min(other.min), max.max(other.max));
+    }
+}
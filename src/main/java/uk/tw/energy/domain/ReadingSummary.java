@@ -0,0 +1,43 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Running totals over all the readings of a meter.
+ *
+ * @param count number of readings
+ * @param sum sum of the readings, in kW
+ * @param earliest time of the earliest reading, or null when there are no readings
+ * @param latest time of the latest reading, or null when there are no readings
+ */
+public record ReadingSummary(long count, BigDecimal sum, Instant earliest, Instant latest) {
+
+    public static final ReadingSummary EMPTY = new ReadingSummary(0, BigDecimal.ZERO, null, null);
+
+    public ReadingSummary add(ElectricityReading electricityReading) {
+        Instant time = electricityReading.time();
+        return new ReadingSummary(
+                count + 1,
+                sum.add(electricityReading.reading()),
+                earliest == null || time.isBefore(earliest) ? time : earliest,
+                latest == null || time.isAfter(latest) ? time : latest);
+    }
+
+    /**
+     * @return the summary of the readings of both summaries together
+     */
+    public ReadingSummary merge(ReadingSummary other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            return other;
+        }
+        return new ReadingSummary(
+                count + other.count,
+                sum.add(other.sum),
+                other.earliest.isBefore(earliest) ? other.earliest : earliest,
+                other.latest.isAfter(latest) ? other.latest : latest);
+    }
+}
@@ -0,0 +1,13 @@
+package uk.tw.energy.domain;
+
+/**
+ * What a snapshot of the store, the accounts and the price plans holds.
+ *
+ * @param meterCount meters with readings
+ * @param readingCount readings of all the meters, not counting those rolled up
+ * @param accountCount accounts
+ * @param pricePlanCount price plans
+ * @param sizeInBytes size of the snapshot's file
+ */
+public record SnapshotStatistics(
+        long meterCount, long readingCount, int accountCount, int pricePlanCount, long sizeInBytes) {}
@@ -0,0 +1,42 @@
+package uk.tw.energy.domain;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Divides the week into half-hour slots, numbered from Monday 00:00 onwards, so that anything that varies with the
+ * time of use can be looked up by array index. Instants are placed in the week by their UTC time.
+ */
+public final class TimeOfUseSlot {
+
+    public static final int SLOTS_PER_DAY = 48;
+    public static final int COUNT = 7 * SLOTS_PER_DAY;
+
+    private static final int SECONDS_PER_SLOT = 30 * 60;
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    // 1970-01-01 was a Thursday
+    private static final int EPOCH_DAY_OF_WEEK = DayOfWeek.THURSDAY.ordinal();
+
+    private TimeOfUseSlot() {}
+
+    public static int of(DayOfWeek dayOfWeek, LocalTime time) {
+        return dayOfWeek.ordinal() * SLOTS_PER_DAY + time.toSecondOfDay() / SECONDS_PER_SLOT;
+    }
+
+    public static int of(LocalDateTime dateTime) {
+        return of(dateTime.getDayOfWeek(), dateTime.toLocalTime());
+    }
+
+    public static int of(Instant time) {
+        return of(time.getEpochSecond());
+    }
+
+    public static int of(long epochSecond) {
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        int dayOfWeek = (int) Math.floorMod(epochDay + EPOCH_DAY_OF_WEEK, 7);
+        return dayOfWeek * SLOTS_PER_DAY + secondOfDay / SECONDS_PER_SLOT;
+    }
+}
@@ -0,0 +1,410 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.Duration;
+
+/**
+ * The energy a meter consumed in each half-hour of the week, which is all a time of use plan needs to price it.
+ * Pricing the profile on a plan is a dot product of its energies with the plan's
+ * {@linkplain PricePlan#getUnscaledUnitRatesBySlot() rate table}, however many readings the meter has.
+ *
+ * <p>Readings are integrated as an {@link EnergyIntegrator} integrates them, and an interval that runs on past the end
+ * of a half-hour is split there, each part taking the energy of its own stretch of the interval, so that the parts add
+ * up to the energy of the whole. A rollup's energy is shared equally between the half-hours it spans, as which of them
+ * its readings were taken in is no longer known. Readings must be added in time order.
+ *
+ * <p>Energies are kept doubled, in units of the readings' last decimal place times nanoseconds, as the integrator keeps
+ * its integral. They are added up in longs, all at the largest scale of the readings added so far, and an energy that
+ * no longer fits is carried into a {@link BigInteger}.
+ */
+public final class UsageProfile implements ReadingConsumer {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long SECONDS_PER_SLOT = 30 * 60;
+    private static final long NANOS_PER_SLOT = SECONDS_PER_SLOT * NANOS_PER_SECOND;
+    private static final BigDecimal DOUBLED_NANOS_PER_HOUR = BigDecimal.valueOf(2 * 3600 * NANOS_PER_SECOND);
+    private static final Duration HALF_HOUR = Duration.ofMinutes(30);
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final long[] POWERS_OF_TEN = {
+        1L,
+        10L,
+        100L,
+        1_000L,
+        10_000L,
+        100_000L,
+        1_000_000L,
+        10_000_000L,
+        100_000_000L,
+        1_000_000_000L,
+        10_000_000_000L,
+        100_000_000_000L,
+        1_000_000_000_000L,
+        10_000_000_000_000L,
+        100_000_000_000_000L,
+        1_000_000_000_000_000L,
+        10_000_000_000_000_000L,
+        100_000_000_000_000_000L,
+        1_000_000_000_000_000_000L
+    };
+
+    private final EnergyIntegrator integrator; // null for a copy, which takes no more readings
+    private final boolean trapezoidal;
+    private final long[] energies; // unscaled at scale, not yet carried
+    private BigInteger[] carried; // unscaled at scale, once any energy no longer fits in a long
+    private int scale; // of every energy
+    private int energyScale; // of a copy's energy in kWh
+    private long count;
+    private ReadingSummary readingSummary;
+
+    public UsageProfile() {
+        this(EnergyIntegration.TRAPEZOIDAL, null);
+    }
+
+    /**
+     * @param maxGap longest interval between readings to integrate, or null to integrate every interval
+     * @throws IllegalArgumentException if the integration does not integrate readings
+     */
+    public UsageProfile(EnergyIntegration integration, Duration maxGap) {
+        this.integrator = new EnergyIntegrator(integration, maxGap, this);
+        this.trapezoidal = integration == EnergyIntegration.TRAPEZOIDAL;
+        this.energies = new long[TimeOfUseSlot.COUNT];
+    }
+
+    private UsageProfile(UsageProfile other, ReadingSummary readingSummary) {
+        this.integrator = null;
+        this.trapezoidal = other.trapezoidal;
+        this.energies = other.energies.clone();
+        this.carried = other.carried == null ? null : other.carried.clone();
+        this.scale = other.scale;
+        this.energyScale = other.integrator == null ? other.energyScale : other.integrator.energyScale();
+        this.count = other.count;
+        this.readingSummary = readingSummary;
+    }
+
+    /**
+     * @return a copy of this profile, unaffected by readings added to this one later, that stands for the readings of
+     *     the summary
+     */
+    public UsageProfile copy(ReadingSummary readingSummary) {
+        return new UsageProfile(this, readingSummary);
+    }
+
+    /**
+     * @return the summary of the readings in this profile, if it was {@linkplain #copy copied} with one
+     */
+    public ReadingSummary readingSummary() {
+        return readingSummary;
+    }
+
+    /**
+     * @return number of readings added, counting those of each rollup
+     */
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void accept(long epochSecond, int nano, long unscaledReading, byte readingScale) {
+        count++;
+        integrator.accept(epochSecond, nano, unscaledReading, readingScale);
+    }
+
+    public void add(ElectricityReading electricityReading) {
+        count++;
+        integrator.add(electricityReading);
+    }
+
+    /**
+     * Adds the readings if they are in time order and none of them is before the last reading added.
+     *
+     * @return false, leaving the profile as it was, if they are not, in which case the profile can only be made again
+     *     from all of the meter's readings
+     */
+    public boolean addAll(ReadingColumns readings) {
+        for (int i = 0; i < readings.size(); i++) {
+            boolean beforePrevious = i == 0
+                    ? integrator.isBeforeLatest(readings.epochSecond(i), readings.nano(i))
+                    : readings.epochSecond(i) < readings.epochSecond(i - 1)
+                            || (readings.epochSecond(i) == readings.epochSecond(i - 1)
+                                    && readings.nano(i) < readings.nano(i - 1));
+            if (beforePrevious) {
+                return false;
+            }
+        }
+        for (int i = 0; i < readings.size(); i++) {
+            accept(readings.epochSecond(i), readings.nano(i), readings.unscaledReading(i), readings.readingScale(i));
+        }
+        return true;
+    }
+
+    /**
+     * Adds a rollup ahead of any reading taken from its start on, sharing its energy equally between the half-hours it
+     * spans.
+     */
+    public void add(ReadingRollup rollup) {
+        count += rollup.count();
+        integrator.add(rollup);
+        Duration period = Duration.between(rollup.start(), rollup.end());
+        int roundingScale = Math.max(scale, rollup.sum().scale());
+        BigDecimal energy = TWO.multiply(rollup.sum())
+                .multiply(new BigDecimal(period.toNanos()))
+                .divide(BigDecimal.valueOf(rollup.count()), roundingScale, RoundingMode.HALF_UP);
+        long halfHours = Math.max(1, period.dividedBy(HALF_HOUR));
+        BigDecimal share = energy.divide(BigDecimal.valueOf(halfHours), roundingScale, RoundingMode.DOWN);
+        for (long halfHour = 0; halfHour < halfHours; halfHour++) {
+            // the last half-hour takes what is left over, so that the shares add up to the whole
+            BigDecimal added = halfHour < halfHours - 1
+                    ? share
+                    : energy.subtract(share.multiply(BigDecimal.valueOf(halfHours - 1)));
+            addEnergy(TimeOfUseSlot.of(rollup.start().plus(HALF_HOUR.multipliedBy(halfHour))), added);
+        }
+    }
+
+    /**
+     * @return the energy consumed, in kWh, rounded half up as {@link EnergyIntegrator#energyInKwH()} rounds it
+     */
+    public BigDecimal energyInKwH() {
+        return energyInKwH(integrator == null ? energyScale : integrator.energyScale());
+    }
+
+    /**
+     * @return the energy consumed, in kWh, rounded half up to the scale
+     */
+    public BigDecimal energyInKwH(int scale) {
+        BigInteger total = BigInteger.ZERO;
+        for (int slot = 0; slot < TimeOfUseSlot.COUNT; slot++) {
+            total = total.add(energy(slot));
+        }
+        return toKwH(new BigDecimal(total, this.scale), scale);
+    }
+
+    /**
+     * @param slot a {@link TimeOfUseSlot}
+     * @return the energy consumed in the half-hour, in kWh, rounded half up to the scale
+     */
+    public BigDecimal getEnergyInKwH(int slot, int scale) {
+        return toKwH(new BigDecimal(energy(slot), this.scale), scale);
+    }
+
+    /**
+     * The sum over every half-hour of its energy times the plan's unit rate, rounded half up to the scale.
+     *
+     * <p>When the products cannot add up to more than a long holds, the sum is a plain loop of multiply-adds, which the
+     * JIT compiler is free to vectorise; otherwise they are added up in 128 bits, with {@link BigInteger} the last
+     * resort.
+     */
+    public BigDecimal price(PricePlan pricePlan, int scale) {
+        return toKwH(priced(pricePlan), scale);
+    }
+
+    /**
+     * @return the plan's unit rate averaged over the half-hours of the week, weighted by the energy consumed in each,
+     *     rounded half up to the scale, or the plan's unit rate if no energy was consumed
+     */
+    public BigDecimal weightedUnitRate(PricePlan pricePlan, int scale) {
+        BigInteger total = BigInteger.ZERO;
+        for (int slot = 0; slot < TimeOfUseSlot.COUNT; slot++) {
+            total = total.add(energy(slot));
+        }
+        if (total.signum() == 0) {
+            return pricePlan.getUnitRate().setScale(scale, RoundingMode.HALF_UP);
+        }
+        return priced(pricePlan).divide(new BigDecimal(total, this.scale), scale, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * @return whether a reading taken at the time would be before the last one added
+     */
+    boolean isBeforeLatest(long epochSecond, int nano) {
+        return integrator.isBeforeLatest(epochSecond, nano);
+    }
+
+    /**
+     * Adds the doubled energy of an interval whose readings are held unscaled at the same scale, splitting it between
+     * the half-hours it spans.
+     *
+     * @param nanos length of the interval
+     */
+    void addInterval(
+            long epochSecond,
+            int nano,
+            long nanos,
+            long unscaledFrom,
+            long unscaledTo,
+            int readingScale,
+            long doubledEnergy) {
+        long intoSlot = Math.floorMod(epochSecond, SECONDS_PER_SLOT) * NANOS_PER_SECOND + nano;
+        if (intoSlot + nanos <= NANOS_PER_SLOT) {
+            addEnergy(TimeOfUseSlot.of(epochSecond), doubledEnergy, readingScale);
+            return;
+        }
+        addInterval(
+                epochSecond,
+                nano,
+                BigDecimal.valueOf(nanos),
+                BigDecimal.valueOf(unscaledFrom, readingScale),
+                BigDecimal.valueOf(unscaledTo, readingScale),
+                readingScale);
+    }
+
+    /**
+     * Adds the doubled energy of an interval between readings of any size, splitting it between the half-hours it
+     * spans.
+     *
+     * @param nanos length of the interval
+     * @param readingScale scale to round the parts of the energy to, unless the energies already have a larger one
+     */
+    void addInterval(long epochSecond, int nano, BigDecimal nanos, BigDecimal from, BigDecimal to, int readingScale) {
+        int roundingScale = Math.max(scale, readingScale);
+        BigDecimal energy = (trapezoidal ? from.add(to) : TWO.multiply(from)).multiply(nanos);
+        BigDecimal intoSlot =
+                BigDecimal.valueOf(Math.floorMod(epochSecond, SECONDS_PER_SLOT) * NANOS_PER_SECOND + nano);
+        BigDecimal untilSlotEnds = BigDecimal.valueOf(NANOS_PER_SLOT).subtract(intoSlot);
+        int slot = TimeOfUseSlot.of(epochSecond);
+        BigDecimal added = BigDecimal.ZERO;
+        // each part is the energy up to the end of its half-hour less that up to its start, both rounded the same way
+        for (BigDecimal elapsed = untilSlotEnds;
+                elapsed.compareTo(nanos) < 0;
+                elapsed = elapsed.add(BigDecimal.valueOf(NANOS_PER_SLOT))) {
+            BigDecimal energyUntil = energyUntil(elapsed, nanos, from, to, roundingScale);
+            addEnergy(slot, energyUntil.subtract(added));
+            added = energyUntil;
+            slot = (slot + 1) % TimeOfUseSlot.COUNT;
+        }
+        addEnergy(slot, energy.setScale(roundingScale, RoundingMode.HALF_UP).subtract(added));
+    }
+
+    /**
+     * @return the doubled energy from the start of an interval until the time elapsed, as the power changes steadily
+     *     from the one reading to the other or holds at the first, rounded half up to the scale
+     */
+    private BigDecimal energyUntil(BigDecimal elapsed, BigDecimal nanos, BigDecimal from, BigDecimal to, int scale) {
+        BigDecimal held = TWO.multiply(from).multiply(elapsed);
+        if (!trapezoidal) {
+            return held.setScale(scale, RoundingMode.HALF_UP);
+        }
+        BigDecimal change = to.subtract(from).multiply(elapsed).multiply(elapsed);
+        return held.multiply(nanos).add(change).divide(nanos, scale, RoundingMode.HALF_UP);
+    }
+
+    private BigInteger energy(int slot) {
+        BigInteger energy = BigInteger.valueOf(energies[slot]);
+        return carried == null || carried[slot] == null ? energy : carried[slot].add(energy);
+    }
+
+    /**
+     * @return the sum over every half-hour of its doubled energy times the plan's unit rate
+     */
+    private BigDecimal priced(PricePlan pricePlan) {
+        long[] unscaledUnitRates = pricePlan.getUnscaledUnitRatesBySlot();
+        int pricedScale = scale + pricePlan.getUnitRateBySlotScale();
+        if (carried == null && unscaledUnitRates != null) {
+            double largestProducts = largestEnergy() * pricePlan.getLargestUnscaledUnitRate() * TimeOfUseSlot.COUNT;
+            // with a bit to spare for the rounding of the doubles
+            if (largestProducts < 0x1p62) {
+                long priced = 0;
+                for (int slot = 0; slot < TimeOfUseSlot.COUNT; slot++) {
+                    priced += energies[slot] * unscaledUnitRates[slot];
+                }
+                return BigDecimal.valueOf(priced, pricedScale);
+            }
+            if (largestProducts < 0x1p126) {
+                long high = 0;
+                long low = 0;
+                for (int slot = 0; slot < TimeOfUseSlot.COUNT; slot++) {
+                    long productLow = energies[slot] * unscaledUnitRates[slot];
+                    long sumLow = low + productLow;
+                    high += Math.multiplyHigh(energies[slot], unscaledUnitRates[slot])
+                            + (Long.compareUnsigned(sumLow, low) < 0 ? 1 : 0);
+                    low = sumLow;
+                }
+                BigInteger unsignedLow = BigInteger.valueOf(low & Long.MAX_VALUE);
+                if (low < 0) {
+                    unsignedLow = unsignedLow.setBit(Long.SIZE - 1);
+                }
+                return new BigDecimal(BigInteger.valueOf(high).shiftLeft(Long.SIZE).add(unsignedLow), pricedScale);
+            }
+        }
+        BigDecimal priced = BigDecimal.ZERO;
+        for (int slot = 0; slot < TimeOfUseSlot.COUNT; slot++) {
+            priced = priced.add(new BigDecimal(energy(slot), scale).multiply(pricePlan.getPrice(slot)));
+        }
+        // exact, as no product has a larger scale
+        return priced.setScale(pricedScale);
+    }
+
+    private double largestEnergy() {
+        long largest = 0;
+        for (long energy : energies) {
+            largest = Math.max(largest, Math.abs(energy));
+        }
+        return largest;
+    }
+
+    private static BigDecimal toKwH(BigDecimal doubledEnergy, int scale) {
+        return doubledEnergy.divide(DOUBLED_NANOS_PER_HOUR, scale, RoundingMode.HALF_UP);
+    }
+
+    private void addEnergy(int slot, BigDecimal doubledEnergy) {
+        if (doubledEnergy.scale() > scale) {
+            rescale(doubledEnergy.scale());
+        }
+        // exact, as the energy has no larger scale
+        BigInteger unscaled = doubledEnergy.setScale(scale).unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE) {
+            addEnergy(slot, unscaled.longValue(), scale);
+        } else {
+            carry(slot, unscaled);
+        }
+    }
+
+    private void addEnergy(int slot, long unscaledEnergy, int energyScale) {
+        if (energyScale > scale) {
+            rescale(energyScale);
+        }
+        long energy = unscaledEnergy;
+        if (energyScale < scale) {
+            long factor = scale - energyScale < POWERS_OF_TEN.length ? POWERS_OF_TEN[scale - energyScale] : 0;
+            energy = unscaledEnergy * factor;
+            if (factor == 0 || Math.multiplyHigh(unscaledEnergy, factor) != (energy >> 63)) {
+                carry(slot, BigInteger.valueOf(unscaledEnergy).multiply(BigInteger.TEN.pow(scale - energyScale)));
+                return;
+            }
+        }
+        long sum = energies[slot] + energy;
+        if (((energies[slot] ^ sum) & (energy ^ sum)) < 0) {
+            carry(slot, BigInteger.valueOf(energies[slot]));
+            sum = energy;
+        }
+        energies[slot] = sum;
+    }
+
+    private void carry(int slot, BigInteger energy) {
+        if (carried == null) {
+            carried = new BigInteger[TimeOfUseSlot.COUNT];
+        }
+        carried[slot] = carried[slot] == null ? energy : carried[slot].add(energy);
+    }
+
+    /**
+     * Rescales every energy to a larger scale, which is exact, carrying those that no longer fit in a long.
+     */
+    private void rescale(int newScale) {
+        BigInteger factor = BigInteger.TEN.pow(newScale - scale);
+        for (int slot = 0; slot < TimeOfUseSlot.COUNT; slot++) {
+            if (carried != null && carried[slot] != null) {
+                carried[slot] = carried[slot].multiply(factor);
+            }
+            BigInteger rescaled = BigInteger.valueOf(energies[slot]).multiply(factor);
+            if (rescaled.bitLength() < Long.SIZE) {
+                energies[slot] = rescaled.longValue();
+            } else {
+                energies[slot] = 0;
+                carry(slot, rescaled);
+            }
+        }
+        scale = newScale;
+    }
+}
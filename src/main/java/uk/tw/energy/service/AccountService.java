@@ -1,18 +1,100 @@
 package uk.tw.energy.service;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import org.springframework.stereotype.Service;
 
+/**
+ * The price plan each smart meter's account is on.
+ *
+ * <p>Accounts are held in an immutable map that each change copies and replaces, so lookups take no lock and a set of
+ * meter ids stays the same while it is iterated. Copying makes a single change cost as much as the number of accounts,
+ * so switching many meters should be done in one call to {@link #switchPricePlans(Map)}, which also makes every switch
+ * visible at once.
+ */
 @Service
 public class AccountService {
 
-    private final Map<String, String> smartMeterToPricePlanAccounts;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Map<String, String> smartMeterToPricePlanAccounts;
 
     public AccountService(Map<String, String> smartMeterToPricePlanAccounts) {
-        this.smartMeterToPricePlanAccounts = smartMeterToPricePlanAccounts;
+        this.smartMeterToPricePlanAccounts = Map.copyOf(smartMeterToPricePlanAccounts);
     }
 
+    /**
+     * @return the meter's price plan id, or null if the meter has no account
+     */
     public String getPricePlanIdForSmartMeterId(String smartMeterId) {
         return smartMeterToPricePlanAccounts.get(smartMeterId);
     }
+
+    /**
+     * @return ids of the meters with an account when called, unaffected by later changes
+     */
+    public Set<String> getSmartMeterIds() {
+        return smartMeterToPricePlanAccounts.keySet();
+    }
+
+    /**
+     * @return every meter's price plan id when called, unaffected by later changes
+     */
+    public Map<String, String> getAccounts() {
+        return smartMeterToPricePlanAccounts;
+    }
+
+    /**
+     * Puts each meter on its price plan, opening an account for any meter without one.
+     *
+     * @param pricePlanIdsBySmartMeterId the price plan id to switch each meter to
+     * @return number of meters whose price plan changed
+     */
+    public int switchPricePlans(Map<String, String> pricePlanIdsBySmartMeterId) {
+        lock.lock();
+        try {
+            Map<String, String> accounts = new HashMap<>(smartMeterToPricePlanAccounts);
+            int switched = 0;
+            for (Map.Entry<String, String> account : pricePlanIdsBySmartMeterId.entrySet()) {
+                Objects.requireNonNull(account.getValue(), "pricePlanId");
+                if (!account.getValue().equals(accounts.put(account.getKey(), account.getValue()))) {
+                    switched++;
+                }
+            }
+            if (switched > 0) {
+                smartMeterToPricePlanAccounts = Map.copyOf(accounts);
+            }
+            return switched;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves every meter on one price plan to another, as when a plan is withdrawn.
+     *
+     * @return number of meters moved
+     */
+    public int switchPricePlans(String fromPricePlanId, String toPricePlanId) {
+        Objects.requireNonNull(toPricePlanId, "toPricePlanId");
+        lock.lock();
+        try {
+            Map<String, String> accounts = new HashMap<>(smartMeterToPricePlanAccounts);
+            int switched = 0;
+            for (Map.Entry<String, String> account : accounts.entrySet()) {
+                if (account.getValue().equals(fromPricePlanId) && !fromPricePlanId.equals(toPricePlanId)) {
+                    account.setValue(toPricePlanId);
+                    switched++;
+                }
+            }
+            if (switched > 0) {
+                smartMeterToPricePlanAccounts = Map.copyOf(accounts);
+            }
+            return switched;
+        } finally {
+            lock.unlock();
+        }
+    }
 }
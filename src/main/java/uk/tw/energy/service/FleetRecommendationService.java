@@ -0,0 +1,111 @@
+package uk.tw.energy.service;
+
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.FleetRecommendation;
+import uk.tw.energy.domain.FleetRecommendation.PricePlanSavings;
+
+/**
+ * Recommends price plans for every meter with an account in one go, rather than one request per meter.
+ */
+@Service
+public class FleetRecommendationService {
+
+    private final PricePlanService pricePlanService;
+    private final AccountService accountService;
+    // shared by every call rather than started for each, as starting and stopping the threads costs more than costing
+    // a small fleet
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    public FleetRecommendationService(PricePlanService pricePlanService, AccountService accountService) {
+        this.pricePlanService = pricePlanService;
+        this.accountService = accountService;
+    }
+
+    /**
+     * Meters are costed in parallel on a pool with a thread per core, against the accounts as they were when called.
+     * Meters without readings are left out.
+     *
+     * @param includeRankings whether to return each meter's ranking as well as the fleet totals
+     * @param limit number of price plans to keep in each meter's ranking, or null for all of them
+     */
+    public FleetRecommendation recommendForFleet(boolean includeRankings, Integer limit) {
+        long start = System.nanoTime();
+        Map<String, String> accounts = accountService.getAccounts();
+        List<String> smartMeterIds = new ArrayList<>(accounts.keySet());
+
+        List<MeterCosts> meterCosts = pool.submit(() -> smartMeterIds.parallelStream()
+                        .map(smartMeterId -> costPricePlans(smartMeterId, accounts.get(smartMeterId)))
+                        .flatMap(Optional::stream)
+                        .toList())
+                .join();
+
+        Map<String, PricePlanSavings> pricePlans = aggregate(meterCosts);
+        Map<String, List<Map.Entry<String, BigDecimal>>> rankings = null;
+        if (includeRankings) {
+            rankings = new LinkedHashMap<>();
+            for (MeterCosts costs : meterCosts) {
+                rankings.put(
+                        costs.smartMeterId(),
+                        PricePlanRecommendationService.cheapest(costs.costs(), pricePlanId -> true, limit));
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        double metersPerSecond = elapsedNanos == 0 ? 0 : meterCosts.size() * 1e9 / elapsedNanos;
+        return new FleetRecommendation(
+                meterCosts.size(), elapsedNanos / 1_000_000, metersPerSecond, pricePlans, rankings);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private Optional<MeterCosts> costPricePlans(String smartMeterId, String currentPricePlanId) {
+        return pricePlanService
+                .getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId)
+                .map(costs -> new MeterCosts(smartMeterId, currentPricePlanId, costs));
+    }
+
+    private static Map<String, PricePlanSavings> aggregate(List<MeterCosts> meterCosts) {
+        Map<String, Integer> cheapestForMeters = new HashMap<>();
+        Map<String, BigDecimal> totalSavings = new HashMap<>();
+        for (MeterCosts costs : meterCosts) {
+            BigDecimal currentCost =
+                    costs.currentPricePlanId() == null ? null : costs.costs().get(costs.currentPricePlanId());
+            String cheapest = null;
+            for (Map.Entry<String, BigDecimal> cost : costs.costs().entrySet()) {
+                cheapestForMeters.putIfAbsent(cost.getKey(), 0);
+                totalSavings.putIfAbsent(cost.getKey(), BigDecimal.ZERO);
+                if (currentCost != null) {
+                    totalSavings.merge(cost.getKey(), currentCost.subtract(cost.getValue()), BigDecimal::add);
+                }
+                if (cheapest == null || cost.getValue().compareTo(costs.costs().get(cheapest)) < 0) {
+                    cheapest = cost.getKey();
+                }
+            }
+            if (cheapest != null) {
+                cheapestForMeters.merge(cheapest, 1, Integer::sum);
+            }
+        }
+
+        Map<String, PricePlanSavings> pricePlans = new LinkedHashMap<>();
+        totalSavings.entrySet().stream()
+                .sorted(Map.Entry.<String, BigDecimal>comparingByValue().reversed())
+                .forEach(savings -> pricePlans.put(
+                        savings.getKey(),
+                        new PricePlanSavings(cheapestForMeters.get(savings.getKey()), savings.getValue())));
+        return pricePlans;
+    }
+
+    private record MeterCosts(String smartMeterId, String currentPricePlanId, Map<String, BigDecimal> costs) {}
+}
@@ -1,29 +1,311 @@
 package uk.tw.energy.service;
 
-import java.util.ArrayList;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.ConsumptionAggregator;
+import uk.tw.energy.domain.ConsumptionBucket;
 import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.domain.ReadingConsumer;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+import uk.tw.energy.domain.UsageProfile;
+import uk.tw.energy.store.ReadingStore;
+import uk.tw.energy.store.RetentionPolicy;
 
 @Service
 public class MeterReadingService {
 
-    private final Map<String, List<ElectricityReading>> meterAssociatedReadings;
+    /**
+     * Number of meters whose {@link UsageProfile} is kept up to date as their readings arrive. The profile of any
+     * other meter is worked out from its readings each time it is asked for.
+     */
+    public static final int USAGE_PROFILE_CAPACITY = 100_000;
 
-    public MeterReadingService(Map<String, List<ElectricityReading>> meterAssociatedReadings) {
-        this.meterAssociatedReadings = meterAssociatedReadings;
+    private static final int USAGE_PROFILE_ATTEMPTS = 3;
+
+    private final ReadingStore readingStore;
+    private final EnergyIntegration intervalIntegration;
+    private final Duration maxReadingGap;
+    private final ConcurrentMap<String, ProfiledMeter> profiledMeters = new ConcurrentHashMap<>();
+    private final Counter readingsIngested;
+    private final Counter batchesIngested;
+    private final Timer storeTimer;
+
+    /**
+     * Integrates every interval trapezoidally, and records its meters on a registry of its own.
+     */
+    public MeterReadingService(ReadingStore readingStore) {
+        this(readingStore, new SimpleMeterRegistry(), EnergyIntegration.TRAPEZOIDAL, null);
+    }
+
+    /**
+     * @param energyIntegration how consumption is integrated, which usage profiles and consumption buckets follow as
+     *     {@link EnergyIntegration#ofIntervals()} says
+     * @param maxReadingGap longest interval between readings to integrate, or null to integrate every interval
+     */
+    @Autowired
+    public MeterReadingService(
+            ReadingStore readingStore,
+            MeterRegistry meterRegistry,
+            @Value("${joi.pricing.energy-integration:trapezoidal}") EnergyIntegration energyIntegration,
+            @Value("${joi.pricing.max-reading-gap:#{null}}") Duration maxReadingGap) {
+        this.readingStore = readingStore;
+        this.intervalIntegration = energyIntegration.ofIntervals();
+        this.maxReadingGap = maxReadingGap;
+        this.readingsIngested = Counter.builder("joi.readings.ingested")
+                .description("Readings stored")
+                .baseUnit("readings")
+                .register(meterRegistry);
+        this.batchesIngested = Counter.builder("joi.readings.batches.ingested")
+                .description("Batches of a meter's readings stored")
+                .baseUnit("batches")
+                .register(meterRegistry);
+        this.storeTimer = Timer.builder("joi.readings.store")
+                .description("Time to store a batch of a meter's readings")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(meterRegistry);
     }
 
     public Optional<List<ElectricityReading>> getReadings(String smartMeterId) {
-        return Optional.ofNullable(meterAssociatedReadings.get(smartMeterId));
+        return readingStore.getReadings(smartMeterId);
+    }
+
+    /**
+     * @param from earliest reading time, inclusive, or null for no lower bound
+     * @param to latest reading time, exclusive, or null for no upper bound
+     * @param limit maximum number of readings to return, or null for no limit
+     * @return the meter's readings in the range, in time order
+     */
+    public Optional<List<ElectricityReading>> getReadings(
+            String smartMeterId, Instant from, Instant to, Integer limit) {
+        return readingStore.getReadings(
+                smartMeterId,
+                from == null ? Instant.MIN : from,
+                to == null ? Instant.MAX : to,
+                limit == null ? Integer.MAX_VALUE : limit);
+    }
+
+    /**
+     * Hands the meter's readings to the action one at a time, as {@link #getReadings(String)} and
+     * {@link #getReadings(String, Instant, Instant, Integer)} would return them, without collecting them first.
+     *
+     * @return false if the meter is not known
+     */
+    public boolean forEachReading(
+            String smartMeterId, Instant from, Instant to, Integer limit, Consumer<ElectricityReading> action) {
+        if (from == null && to == null && limit == null) {
+            return readingStore.forEachReading(smartMeterId, action);
+        }
+        return readingStore.forEachReading(
+                smartMeterId,
+                from == null ? Instant.MIN : from,
+                to == null ? Instant.MAX : to,
+                limit == null ? Integer.MAX_VALUE : limit,
+                action);
+    }
+
+    /**
+     * Hands the meter's readings and the rollups of its compacted readings to the actions, as they were at the same
+     * moment.
+     *
+     * @return false if the meter is not known
+     */
+    public boolean forEachReadingAndRollup(
+            String smartMeterId, Consumer<ElectricityReading> readingAction, Consumer<ReadingRollup> rollupAction) {
+        return readingStore.forEachReadingAndRollup(smartMeterId, readingAction, rollupAction);
+    }
+
+    /**
+     * Hands the meter's readings and rollups to the actions in time order, as {@link ReadingStore#forEachInTimeOrder}
+     * does.
+     *
+     * @return the summary of the readings handed over, or empty if the meter is not known
+     */
+    public Optional<ReadingSummary> forEachInTimeOrder(
+            String smartMeterId, ReadingConsumer readingAction, Consumer<ReadingRollup> rollupAction) {
+        return readingStore.forEachInTimeOrder(smartMeterId, readingAction, rollupAction);
+    }
+
+    /**
+     * Works out the meter's consumption in each bucket of the range in one pass over its readings and rollups, as a
+     * {@link ConsumptionAggregator} does, so that history already compacted is aggregated from its rollups rather than
+     * from readings.
+     *
+     * @param from start of the range, inclusive
+     * @param to end of the range, exclusive
+     * @return the meter's consumption in each bucket, in time order, or empty if the meter is not known
+     * @throws IllegalArgumentException if the range is empty, the bucket width is not positive, or the range takes more
+     *     than {@link ConsumptionAggregator#MAX_BUCKETS} buckets
+     */
+    public Optional<List<ConsumptionBucket>> getConsumption(
+            String smartMeterId, Instant from, Instant to, Duration bucketWidth) {
+        ConsumptionAggregator aggregator =
+                new ConsumptionAggregator(from, to, bucketWidth, intervalIntegration, maxReadingGap);
+        return readingStore
+                .forEachInTimeOrder(smartMeterId, aggregator, aggregator::add)
+                .map(readingSummary -> aggregator.buckets());
+    }
+
+    public List<String> getSmartMeterIds() {
+        return readingStore.getSmartMeterIds();
+    }
+
+    /**
+     * @return the meter's readings as they were when removed, not counting those that had been compacted
+     */
+    public Optional<List<ElectricityReading>> removeReadings(String smartMeterId) {
+        ProfiledMeter profiledMeter = profiledMeters.get(smartMeterId);
+        if (profiledMeter == null) {
+            return readingStore.removeReadings(smartMeterId);
+        }
+        profiledMeter.lock.lock();
+        try {
+            profiledMeters.remove(smartMeterId, profiledMeter);
+            return readingStore.removeReadings(smartMeterId);
+        } finally {
+            profiledMeter.lock.unlock();
+        }
     }
 
+    public Optional<List<ReadingRollup>> getRollups(String smartMeterId) {
+        return readingStore.getRollups(smartMeterId);
+    }
+
+    public Optional<ReadingSummary> getReadingSummary(String smartMeterId) {
+        return readingStore.getSummary(smartMeterId);
+    }
+
+    /**
+     * The first time a meter's profile is asked for, its energy is integrated from the meter's readings and rollups in
+     * time order, and from then on readings stored for the meter are integrated into it as they arrive, so that a
+     * rollup made afterwards does not blur the half-hours of the readings it replaces. Readings stored out of time
+     * order have the profile integrated afresh the next time it is asked for. Only the first
+     * {@link #USAGE_PROFILE_CAPACITY} meters asked for are kept up to date; the profile of any other meter is worked
+     * out afresh each time.
+     *
+     * @return the meter's usage profile, {@linkplain UsageProfile#readingSummary() summarised} by the same readings
+     */
+    public Optional<UsageProfile> getUsageProfile(String smartMeterId) {
+        ProfiledMeter profiledMeter = profiledMeters.get(smartMeterId);
+        if (profiledMeter == null && profiledMeters.size() < USAGE_PROFILE_CAPACITY) {
+            profiledMeter = profiledMeters.computeIfAbsent(smartMeterId, id -> new ProfiledMeter());
+        }
+        if (profiledMeter == null) {
+            return calculateUsageProfile(smartMeterId);
+        }
+        profiledMeter.lock.lock();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                Optional<ReadingSummary> readingSummary = readingStore.getSummary(smartMeterId);
+                if (readingSummary.isEmpty()) {
+                    profiledMeters.remove(smartMeterId, profiledMeter);
+                    return Optional.empty();
+                }
+                // readings stored before the meter was profiled may still have been on their way to the store
+                if (profiledMeter.profile != null
+                        && (profiledMeter.profile.count() == readingSummary.get().count()
+                                || attempt == USAGE_PROFILE_ATTEMPTS)) {
+                    return Optional.of(profiledMeter.profile.copy(readingSummary.get()));
+                }
+                profiledMeter.profile = scanUsageProfile(smartMeterId);
+            }
+        } finally {
+            profiledMeter.lock.unlock();
+        }
+    }
+
+    private Optional<UsageProfile> calculateUsageProfile(String smartMeterId) {
+        UsageProfile profile = new UsageProfile(intervalIntegration, maxReadingGap);
+        return readingStore.forEachInTimeOrder(smartMeterId, profile, profile::add).map(profile::copy);
+    }
+
+    private UsageProfile scanUsageProfile(String smartMeterId) {
+        UsageProfile profile = new UsageProfile(intervalIntegration, maxReadingGap);
+        readingStore.forEachInTimeOrder(smartMeterId, profile, profile::add);
+        return profile;
+    }
+
+    /**
+     * @return number of readings rolled up
+     */
+    public long compactReadings(RetentionPolicy retentionPolicy, Instant now) {
+        return readingStore.compact(retentionPolicy, now);
+    }
+
+    /**
+     * @throws IllegalArgumentException if any of the readings cannot be stored, in which case none of them are
+     */
     public void storeReadings(String smartMeterId, List<ElectricityReading> electricityReadings) {
-        if (!meterAssociatedReadings.containsKey(smartMeterId)) {
-            meterAssociatedReadings.put(smartMeterId, new ArrayList<>());
+        storeReadings(smartMeterId, ReadingColumns.of(electricityReadings));
+    }
+
+    public void storeReadings(String smartMeterId, ReadingColumns readings) {
+        storeTimer.record(() -> storeAndProfileReadings(smartMeterId, readings));
+        readingsIngested.increment(readings.size());
+        batchesIngested.increment();
+    }
+
+    private void storeAndProfileReadings(String smartMeterId, ReadingColumns readings) {
+        ProfiledMeter profiledMeter = profiledMeters.get(smartMeterId);
+        if (profiledMeter == null) {
+            readingStore.storeReadings(smartMeterId, readings);
+            return;
+        }
+        profiledMeter.lock.lock();
+        try {
+            readingStore.storeReadings(smartMeterId, readings);
+            if (profiledMeter.profile != null && !profiledMeter.profile.addAll(readings)) {
+                // readings older than the latest cannot be integrated into the profile, so it is worked out again
+                profiledMeter.profile = null;
+            }
+        } finally {
+            profiledMeter.lock.unlock();
         }
-        meterAssociatedReadings.get(smartMeterId).addAll(electricityReadings);
+    }
+
+    /**
+     * Stores the readings of several meters. Entries that cannot be stored are left out, and the rest are stored.
+     *
+     * @return whether each entry was stored, at the same position as the entry in the batch
+     */
+    public boolean[] storeReadings(List<MeterReadings> batch) {
+        boolean[] stored = new boolean[batch.size()];
+        int entry = 0;
+        for (MeterReadings meterReadings : batch) {
+            try {
+                storeReadings(meterReadings.smartMeterId(), meterReadings.electricityReadings());
+                stored[entry] = true;
+            } catch (IllegalArgumentException e) {
+                // reported as not stored
+            }
+            entry++;
+        }
+        return stored;
+    }
+
+    /**
+     * A meter whose usage profile is kept up to date. The lock makes storing readings and adding them to the profile
+     * one step, as seen by a reader of the profile.
+     */
+    private static final class ProfiledMeter {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private UsageProfile profile;
     }
 }
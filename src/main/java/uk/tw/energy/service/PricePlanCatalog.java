@@ -0,0 +1,129 @@
+package uk.tw.energy.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.PricePlan;
+
+/**
+ * The price plans on offer, indexed by their id, which is the plan name.
+ *
+ * <p>Readers take a {@link Snapshot}, an immutable view that stays the same however the plans change afterwards, so
+ * that costing a meter on every plan takes no lock and sees no half-made change. Each change copies the plans into a
+ * new snapshot and publishes it, which is cheap for a catalog that changes far less often than it is read.
+ */
+@Service
+public class PricePlanCatalog {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+
+    /**
+     * @throws IllegalArgumentException if two of the plans have the same id
+     */
+    public PricePlanCatalog(List<PricePlan> pricePlans) {
+        this.snapshot = Snapshot.of(0, pricePlans);
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the plans in the order they were added, which must not be modified
+     */
+    public List<PricePlan> getPricePlans() {
+        return snapshot.pricePlans();
+    }
+
+    public Optional<PricePlan> getPricePlan(String pricePlanId) {
+        return Optional.ofNullable(snapshot.get(pricePlanId));
+    }
+
+    public boolean contains(String pricePlanId) {
+        return snapshot.get(pricePlanId) != null;
+    }
+
+    /**
+     * Adds the plan, or replaces the plan with the same id in its place.
+     */
+    public void putPricePlan(PricePlan pricePlan) {
+        lock.lock();
+        try {
+            List<PricePlan> pricePlans = new ArrayList<>(snapshot.pricePlans());
+            int index = pricePlans.indexOf(snapshot.get(pricePlan.getPlanName()));
+            if (index < 0) {
+                pricePlans.add(pricePlan);
+            } else {
+                pricePlans.set(index, pricePlan);
+            }
+            snapshot = Snapshot.of(snapshot.version() + 1, pricePlans);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether there was a plan with the id
+     */
+    public boolean removePricePlan(String pricePlanId) {
+        lock.lock();
+        try {
+            PricePlan removed = snapshot.get(pricePlanId);
+            if (removed == null) {
+                return false;
+            }
+            List<PricePlan> pricePlans = new ArrayList<>(snapshot.pricePlans());
+            pricePlans.remove(removed);
+            snapshot = Snapshot.of(snapshot.version() + 1, pricePlans);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces every plan at once, so that no reader sees some of the new plans alongside some of the old.
+     *
+     * @throws IllegalArgumentException if two of the plans have the same id
+     */
+    public void replacePricePlans(List<PricePlan> pricePlans) {
+        lock.lock();
+        try {
+            snapshot = Snapshot.of(snapshot.version() + 1, pricePlans);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The plans as they were at one point in time.
+     *
+     * @param version counts the changes made before this snapshot was taken, so a later snapshot has a greater version
+     * @param pricePlans in the order they were added
+     * @param pricePlansById the same plans, by id
+     */
+    public record Snapshot(long version, List<PricePlan> pricePlans, Map<String, PricePlan> pricePlansById) {
+
+        static Snapshot of(long version, List<PricePlan> pricePlans) {
+            Map<String, PricePlan> pricePlansById = new HashMap<>();
+            for (PricePlan pricePlan : pricePlans) {
+                if (pricePlansById.putIfAbsent(pricePlan.getPlanName(), pricePlan) != null) {
+                    throw new IllegalArgumentException("There is more than one price plan " + pricePlan.getPlanName());
+                }
+            }
+            return new Snapshot(version, List.copyOf(pricePlans), Map.copyOf(pricePlansById));
+        }
+
+        /**
+         * @return the plan, or null if there is none with the id
+         */
+        public PricePlan get(String pricePlanId) {
+            return pricePlanId == null ? null : pricePlansById.get(pricePlanId);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import uk.tw.energy.domain.ComparisonCacheStatistics;
+import uk.tw.energy.domain.ReadingSummary;
+
+/**
+ * The costs of every price plan for the meters compared most recently, evicting the least recently used meter once
+ * full.
+ *
+ * <p>Each entry remembers the {@link ReadingSummary} it was worked out from. Storing readings publishes a new summary,
+ * so an entry is invalidated by the next write to its meter, whichever path the readings were stored by, and is
+ * dropped the next time it is looked up. Entries are only kept for the latest {@link PricePlanCatalog.Snapshot}, so
+ * the first lookup with a newer snapshot drops every entry, and costs worked out from an older one are not cached.
+ */
+final class PricePlanComparisonCache {
+
+    private final int capacity;
+    private final Map<String, CachedCosts> entries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long pricePlansVersion = -1;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    PricePlanComparisonCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedCosts> eldest) {
+                if (size() > PricePlanComparisonCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param pricePlans the plans the costs are wanted on
+     * @return the cached costs, or null if the meter is not cached, its readings have changed since, or the plans are
+     *     older than those the cached costs were worked out on
+     */
+    Map<String, BigDecimal> get(
+            String smartMeterId, ReadingSummary readingSummary, PricePlanCatalog.Snapshot pricePlans) {
+        lock.lock();
+        try {
+            // a reader still holding an older snapshot neither uses nor drops the entries of the latest
+            CachedCosts entry = isLatest(pricePlans) ? entries.get(smartMeterId) : null;
+            if (entry != null && entry.readingSummary == readingSummary) {
+                hits++;
+                return entry.costs;
+            }
+            if (entry != null) {
+                entries.remove(smartMeterId);
+            }
+            misses++;
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches the costs, unless the price plans they were worked out on have changed since.
+     */
+    void put(
+            String smartMeterId,
+            ReadingSummary readingSummary,
+            PricePlanCatalog.Snapshot pricePlans,
+            Map<String, BigDecimal> costs) {
+        lock.lock();
+        try {
+            if (isLatest(pricePlans)) {
+                entries.put(smartMeterId, new CachedCosts(readingSummary, costs));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every entry on seeing newer price plans than those the entries were worked out on.
+     *
+     * @return whether the price plans are the newest seen
+     */
+    private boolean isLatest(PricePlanCatalog.Snapshot pricePlans) {
+        if (pricePlans.version() > pricePlansVersion) {
+            entries.clear();
+            pricePlansVersion = pricePlans.version();
+        }
+        return pricePlans.version() == pricePlansVersion;
+    }
+
+    ComparisonCacheStatistics statistics() {
+        lock.lock();
+        try {
+            return new ComparisonCacheStatistics(hits, misses, evictions, entries.size(), capacity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record CachedCosts(ReadingSummary readingSummary, Map<String, BigDecimal> costs) {}
+}
@@ -0,0 +1,129 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanRecommendation;
+import uk.tw.energy.domain.PricePlanRecommendation.RecommendedPricePlan;
+
+/**
+ * Picks the cheapest price plans for a meter from its costs on every plan.
+ *
+ * <p>Only the plans asked for are put in order. The cheapest {@code limit} plans are kept in a heap with the dearest
+ * of them on top, which each plan is checked against and only replaces when it is cheaper, so picking a handful of
+ * plans out of thousands costs little more than looking at each once. Plans costing the same are ordered by id, so a
+ * recommendation does not change from one request to the next.
+ */
+@Service
+public class PricePlanRecommendationService {
+
+    static final Comparator<Map.Entry<String, BigDecimal>> CHEAPEST_FIRST =
+            Map.Entry.<String, BigDecimal>comparingByValue().thenComparing(Map.Entry.comparingByKey());
+
+    private final PricePlanService pricePlanService;
+    private final PricePlanCatalog pricePlanCatalog;
+    private final AccountService accountService;
+
+    public PricePlanRecommendationService(
+            PricePlanService pricePlanService, PricePlanCatalog pricePlanCatalog, AccountService accountService) {
+        this.pricePlanService = pricePlanService;
+        this.pricePlanCatalog = pricePlanCatalog;
+        this.accountService = accountService;
+    }
+
+    /**
+     * @param limit number of plans to recommend, or null for all of them
+     * @param energySupplier only recommend plans of this supplier, or null for plans of any
+     * @return the cheapest plans and their costs, cheapest first, or empty if the meter has no readings
+     */
+    public Optional<List<Map.Entry<String, BigDecimal>>> recommendCheapestPricePlans(
+            String smartMeterId, Integer limit, String energySupplier) {
+        PricePlanCatalog.Snapshot pricePlans = pricePlanCatalog.snapshot();
+        return pricePlanService
+                .getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId)
+                .map(costs -> cheapest(costs, suppliedBy(pricePlans, energySupplier), limit));
+    }
+
+    /**
+     * @param limit number of plans to recommend, or null for all of them
+     * @param energySupplier only recommend plans of this supplier, or null for plans of any
+     * @return the cheapest plans and what switching to each would save, or empty if the meter has no readings
+     */
+    public Optional<PricePlanRecommendation> recommendAgainstCurrentPricePlan(
+            String smartMeterId, Integer limit, String energySupplier) {
+        PricePlanCatalog.Snapshot pricePlans = pricePlanCatalog.snapshot();
+        String currentPricePlanId = accountService.getPricePlanIdForSmartMeterId(smartMeterId);
+        return pricePlanService
+                .getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId)
+                .map(costs -> {
+                    BigDecimal currentCost = currentPricePlanId == null ? null : costs.get(currentPricePlanId);
+                    List<RecommendedPricePlan> recommended = new ArrayList<>();
+                    for (Map.Entry<String, BigDecimal> cost :
+                            cheapest(costs, suppliedBy(pricePlans, energySupplier), limit)) {
+                        PricePlan pricePlan = pricePlans.get(cost.getKey());
+                        recommended.add(new RecommendedPricePlan(
+                                cost.getKey(),
+                                pricePlan == null ? null : pricePlan.getEnergySupplier(),
+                                cost.getValue(),
+                                currentCost == null ? null : currentCost.subtract(cost.getValue())));
+                    }
+                    return new PricePlanRecommendation(smartMeterId, currentPricePlanId, currentCost, recommended);
+                });
+    }
+
+    /**
+     * @param filter which plans, by id, may be recommended
+     * @param limit number of plans to keep, or null for all of them
+     * @return the cheapest plans that pass the filter, cheapest first
+     */
+    static List<Map.Entry<String, BigDecimal>> cheapest(
+            Map<String, BigDecimal> costs, Predicate<String> filter, Integer limit) {
+        if (limit == null || limit >= costs.size()) {
+            List<Map.Entry<String, BigDecimal>> ranking = new ArrayList<>(costs.size());
+            for (Map.Entry<String, BigDecimal> cost : costs.entrySet()) {
+                if (filter.test(cost.getKey())) {
+                    ranking.add(cost);
+                }
+            }
+            ranking.sort(CHEAPEST_FIRST);
+            return ranking;
+        }
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        PriorityQueue<Map.Entry<String, BigDecimal>> dearestOnTop =
+                new PriorityQueue<>(limit + 1, CHEAPEST_FIRST.reversed());
+        for (Map.Entry<String, BigDecimal> cost : costs.entrySet()) {
+            if (!filter.test(cost.getKey())) {
+                continue;
+            }
+            if (dearestOnTop.size() < limit) {
+                dearestOnTop.add(cost);
+            } else if (CHEAPEST_FIRST.compare(cost, dearestOnTop.peek()) < 0) {
+                dearestOnTop.poll();
+                dearestOnTop.add(cost);
+            }
+        }
+        List<Map.Entry<String, BigDecimal>> ranking = new ArrayList<>(dearestOnTop);
+        ranking.sort(CHEAPEST_FIRST);
+        return ranking;
+    }
+
+    private static Predicate<String> suppliedBy(PricePlanCatalog.Snapshot pricePlans, String energySupplier) {
+        if (energySupplier == null) {
+            return pricePlanId -> true;
+        }
+        return pricePlanId -> {
+            PricePlan pricePlan = pricePlans.get(pricePlanId);
+            return pricePlan != null && energySupplier.equals(pricePlan.getEnergySupplier());
+        };
+    }
+}
@@ -1,65 +1,294 @@
 package uk.tw.energy.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
-import java.util.Comparator;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ComparisonCacheStatistics;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.EnergyIntegrator;
 import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.ReadingSummary;
+import uk.tw.energy.domain.UsageProfile;
 
 @Service
 public class PricePlanService {
 
-    private final List<PricePlan> pricePlans;
+    // a long holds any number of up to 18 digits
+    private static final int MAX_LONG_DIGITS = 19;
+    private static final long UNSCALED_TOO_LONG = Long.MIN_VALUE;
+    private static final long SECONDS_PER_HOUR = 3600;
+    // relative error of a double, with room to spare
+    private static final double HALF_WAY_TOLERANCE = 1e-14;
+
+    public static final int COMPARISON_CACHE_CAPACITY = 100_000;
+
+    private final PricePlanCatalog pricePlanCatalog;
     private final MeterReadingService meterReadingService;
+    private final EnergyIntegration energyIntegration;
+    private final Duration maxReadingGap;
+    private final PricePlanComparisonCache comparisonCache = new PricePlanComparisonCache(COMPARISON_CACHE_CAPACITY);
+    private final Timer costsTimer;
+
+    /**
+     * Integrates every interval trapezoidally, and records its timer on a registry of its own.
+     */
+    public PricePlanService(PricePlanCatalog pricePlanCatalog, MeterReadingService meterReadingService) {
+        this(pricePlanCatalog, meterReadingService, new SimpleMeterRegistry(), EnergyIntegration.TRAPEZOIDAL, null);
+    }
 
-    public PricePlanService(List<PricePlan> pricePlans, MeterReadingService meterReadingService) {
-        this.pricePlans = pricePlans;
+    /**
+     * @param maxReadingGap longest interval between readings to integrate, or null to integrate every interval
+     */
+    @Autowired
+    public PricePlanService(
+            PricePlanCatalog pricePlanCatalog,
+            MeterReadingService meterReadingService,
+            MeterRegistry meterRegistry,
+            @Value("${joi.pricing.energy-integration:trapezoidal}") EnergyIntegration energyIntegration,
+            @Value("${joi.pricing.max-reading-gap:#{null}}") Duration maxReadingGap) {
+        this.pricePlanCatalog = pricePlanCatalog;
         this.meterReadingService = meterReadingService;
+        this.energyIntegration = energyIntegration;
+        this.maxReadingGap = maxReadingGap;
+        this.costsTimer = Timer.builder("joi.price-plans.costs")
+                .description("Time to cost a meter's readings on every price plan, including cache hits")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the energy the meter consumed, in kWh, worked out by this service's {@link EnergyIntegration}
+     */
+    public Optional<BigDecimal> getEnergyConsumedInKwH(String smartMeterId) {
+        return meterReadingService
+                .getReadingSummary(smartMeterId)
+                .flatMap(readingSummary -> measureConsumption(smartMeterId, readingSummary, false))
+                .map(Consumption::energyConsumedInKwH);
     }
 
+    /**
+     * Costs are cached per meter until readings are next stored for it or the price plans change. The meter is costed
+     * on a {@linkplain PricePlanCatalog#snapshot() snapshot} of the plans, so plans changed meanwhile are left out of
+     * the costs rather than partly included.
+     *
+     * @return the cost of the meter's readings on each price plan, which must not be modified
+     */
     public Optional<Map<String, BigDecimal>> getConsumptionCostOfElectricityReadingsForEachPricePlan(
             String smartMeterId) {
-        Optional<List<ElectricityReading>> electricityReadings = meterReadingService.getReadings(smartMeterId);
+        return costsTimer.record(() -> getCachedConsumptionCosts(smartMeterId));
+    }
+
+    private Optional<Map<String, BigDecimal>> getCachedConsumptionCosts(String smartMeterId) {
+        Optional<ReadingSummary> readingSummary = meterReadingService.getReadingSummary(smartMeterId);
 
-        if (!electricityReadings.isPresent()) {
+        if (!readingSummary.isPresent()) {
             return Optional.empty();
         }
 
-        return Optional.of(pricePlans.stream()
-                .collect(Collectors.toMap(PricePlan::getPlanName, t -> calculateCost(electricityReadings.get(), t))));
+        PricePlanCatalog.Snapshot pricePlans = pricePlanCatalog.snapshot();
+        Map<String, BigDecimal> costs = comparisonCache.get(smartMeterId, readingSummary.get(), pricePlans);
+        if (costs != null) {
+            return Optional.of(costs);
+        }
+        Optional<Consumption> consumption = measureConsumption(
+                smartMeterId, readingSummary.get(), pricePlans.pricePlans().stream().anyMatch(PricePlan::isTimeOfUse));
+        if (consumption.isEmpty()) {
+            return Optional.empty();
+        }
+        costs = Collections.unmodifiableMap(calculateCosts(consumption.get(), pricePlans.pricePlans()));
+        comparisonCache.put(smartMeterId, consumption.get().readingSummary(), pricePlans, costs);
+        return Optional.of(costs);
     }
 
-    private BigDecimal calculateCost(List<ElectricityReading> electricityReadings, PricePlan pricePlan) {
-        final BigDecimal averageReadingInKw = calculateAverageReading(electricityReadings);
-        final BigDecimal usageTimeInHours = calculateUsageTimeInHours(electricityReadings);
-        final BigDecimal energyConsumedInKwH = averageReadingInKw.divide(usageTimeInHours, RoundingMode.HALF_UP);
-        final BigDecimal cost = energyConsumedInKwH.multiply(pricePlan.getUnitRate());
-        return cost;
+    /**
+     * Integrates the meter's readings, unless this service averages them over the usage time, in which case the
+     * summary is all it takes. The consumption may take in readings stored since the summary was read, and is then
+     * summarised by them.
+     *
+     * @param timeOfUse whether to take the meter's usage profile, which then gives the energy too, so that both are
+     *     worked out from the same readings
+     */
+    private Optional<Consumption> measureConsumption(
+            String smartMeterId, ReadingSummary readingSummary, boolean timeOfUse) {
+        if (timeOfUse) {
+            return meterReadingService.getUsageProfile(smartMeterId).map(usageProfile -> new Consumption(
+                    usageProfile.readingSummary(),
+                    energyIntegration == EnergyIntegration.AVERAGE_OVER_USAGE_TIME
+                            ? calculateEnergyConsumedInKwH(usageProfile.readingSummary())
+                            : usageProfile.energyInKwH(),
+                    usageProfile));
+        }
+        if (energyIntegration == EnergyIntegration.AVERAGE_OVER_USAGE_TIME) {
+            return Optional.of(new Consumption(readingSummary, calculateEnergyConsumedInKwH(readingSummary), null));
+        }
+        EnergyIntegrator integrator = new EnergyIntegrator(energyIntegration, maxReadingGap);
+        return meterReadingService
+                .forEachInTimeOrder(smartMeterId, integrator, integrator::add)
+                .map(integrated -> new Consumption(integrated, integrator.energyInKwH(), null));
     }
 
-    private BigDecimal calculateAverageReading(List<ElectricityReading> electricityReadings) {
-        BigDecimal summedReadings = electricityReadings.stream()
-                .map(ElectricityReading::reading)
-                .reduce(BigDecimal.ZERO, (reading, accumulator) -> reading.add(accumulator));
+    /**
+     * Drops every cached cost. Changes made through the {@link PricePlanCatalog} need not call this, as the cache
+     * notices them itself.
+     */
+    public void invalidateComparisons() {
+        comparisonCache.invalidateAll();
+    }
 
-        return summedReadings.divide(BigDecimal.valueOf(electricityReadings.size()), RoundingMode.HALF_UP);
+    public ComparisonCacheStatistics getComparisonCacheStatistics() {
+        return comparisonCache.statistics();
     }
 
-    private BigDecimal calculateUsageTimeInHours(List<ElectricityReading> electricityReadings) {
-        ElectricityReading first = electricityReadings.stream()
-                .min(Comparator.comparing(ElectricityReading::time))
-                .get();
+    /**
+     * Prices the energy consumed on each plan in turn, so that a catalog of thousands of plans takes a multiplication
+     * per plan, or for a time of use plan a dot product of the energy in each half-hour of the meter's usage profile
+     * with the plan's unit rates.
+     */
+    private Map<String, BigDecimal> calculateCosts(Consumption consumption, List<PricePlan> pricePlans) {
+        final BigDecimal energyConsumedInKwH = consumption.energyConsumedInKwH();
+        final UsageProfile usageProfile = consumption.usageProfile();
+        final long unscaledEnergyConsumed = energyConsumedInKwH.precision() < MAX_LONG_DIGITS
+                ? energyConsumedInKwH.unscaledValue().longValue()
+                : UNSCALED_TOO_LONG;
+        final Map<String, BigDecimal> costs = HashMap.newHashMap(pricePlans.size());
+        for (PricePlan pricePlan : pricePlans) {
+            costs.put(
+                    pricePlan.getPlanName(),
+                    calculateCost(energyConsumedInKwH, unscaledEnergyConsumed, usageProfile, pricePlan));
+        }
+        return costs;
+    }
 
-        ElectricityReading last = electricityReadings.stream()
-                .max(Comparator.comparing(ElectricityReading::time))
-                .get();
+    private BigDecimal calculateCost(
+            BigDecimal energyConsumedInKwH,
+            long unscaledEnergyConsumed,
+            UsageProfile usageProfile,
+            PricePlan pricePlan) {
+        final BigDecimal flatCost = calculateFlatCost(energyConsumedInKwH, unscaledEnergyConsumed, pricePlan);
+        if (!pricePlan.isTimeOfUse()) {
+            return flatCost;
+        }
+        if (energyIntegration != EnergyIntegration.AVERAGE_OVER_USAGE_TIME) {
+            return usageProfile.price(pricePlan, flatCost.scale());
+        }
+        // the average reading over the usage time is not an energy that can be shared out between half-hours
+        return energyConsumedInKwH
+                .multiply(usageProfile.weightedUnitRate(pricePlan, flatCost.scale() + 4))
+                .setScale(flatCost.scale(), RoundingMode.HALF_UP);
+    }
 
-        return BigDecimal.valueOf(Duration.between(first.time(), last.time()).getSeconds() / 3600.0);
+    /**
+     * The energy consumed times the unit rate, multiplied as longs unless either of them or the product is too long.
+     */
+    private BigDecimal calculateFlatCost(
+            BigDecimal energyConsumedInKwH, long unscaledEnergyConsumed, PricePlan pricePlan) {
+        if (unscaledEnergyConsumed != UNSCALED_TOO_LONG) {
+            try {
+                return BigDecimal.valueOf(
+                        Math.multiplyExact(unscaledEnergyConsumed, pricePlan.getUnscaledUnitRate()),
+                        energyConsumedInKwH.scale() + pricePlan.getUnitRate().scale());
+            } catch (ArithmeticException e) {
+                // fall back to BigDecimal
+            }
+        }
+        return energyConsumedInKwH.multiply(pricePlan.getUnitRate());
     }
+
+    /**
+     * The average reading divided by the usage time, both rounded half up to the scale of the readings.
+     *
+     * <p>This is worked out in long arithmetic, in units of the readings' last decimal place, whenever the numbers fit
+     * and the result is certain to match {@link #calculateEnergyConsumedInKwHExactly}, which turns the usage time into
+     * a {@link BigDecimal} by way of a double. That conversion can be out by a unit in the last place, which only
+     * matters when the exact quotient is a hair away from half way between two results, so those fall back too.
+     */
+    private BigDecimal calculateEnergyConsumedInKwH(ReadingSummary readingSummary) {
+        final BigDecimal sum = readingSummary.sum();
+        final long usageTimeInSeconds = calculateUsageTimeInSeconds(readingSummary);
+        if (usageTimeInSeconds == 0) {
+            // a single reading, or readings less than a second apart, leave no usage time to divide by
+            return BigDecimal.ZERO.setScale(sum.scale());
+        }
+        if (sum.precision() >= MAX_LONG_DIGITS) {
+            return calculateEnergyConsumedInKwHExactly(readingSummary);
+        }
+
+        final long averageReadingInKw = divideHalfUp(sum.unscaledValue().longValue(), readingSummary.count());
+        if (usageTimeInSeconds % SECONDS_PER_HOUR == 0) {
+            return BigDecimal.valueOf(
+                    divideHalfUp(averageReadingInKw, usageTimeInSeconds / SECONDS_PER_HOUR), sum.scale());
+        }
+
+        final long averageReadingInKwSeconds;
+        try {
+            averageReadingInKwSeconds = Math.multiplyExact(averageReadingInKw, SECONDS_PER_HOUR);
+        } catch (ArithmeticException e) {
+            return calculateEnergyConsumedInKwHExactly(readingSummary);
+        }
+        final long quotient = averageReadingInKwSeconds / usageTimeInSeconds;
+        final long remainder = Math.abs(averageReadingInKwSeconds % usageTimeInSeconds);
+        final double distanceFromHalfWay =
+                Math.abs(2.0 * remainder - usageTimeInSeconds) / (2.0 * usageTimeInSeconds);
+        if (distanceFromHalfWay <= HALF_WAY_TOLERANCE * (Math.abs(quotient) + 1)) {
+            return calculateEnergyConsumedInKwHExactly(readingSummary);
+        }
+        final long roundedAwayFromZero = 2 * remainder > usageTimeInSeconds ? Long.signum(averageReadingInKw) : 0;
+        return BigDecimal.valueOf(quotient + roundedAwayFromZero, sum.scale());
+    }
+
+    private BigDecimal calculateEnergyConsumedInKwHExactly(ReadingSummary readingSummary) {
+        final BigDecimal averageReadingInKw = calculateAverageReading(readingSummary);
+        final BigDecimal usageTimeInHours = calculateUsageTimeInHours(readingSummary);
+        return averageReadingInKw.divide(usageTimeInHours, RoundingMode.HALF_UP);
+    }
+
+    private BigDecimal calculateAverageReading(ReadingSummary readingSummary) {
+        return readingSummary.sum().divide(BigDecimal.valueOf(readingSummary.count()), RoundingMode.HALF_UP);
+    }
+
+    private BigDecimal calculateUsageTimeInHours(ReadingSummary readingSummary) {
+        return BigDecimal.valueOf(
+                Duration.between(readingSummary.earliest(), readingSummary.latest()).getSeconds() / 3600.0);
+    }
+
+    /**
+     * Whole seconds between the earliest and latest readings, as {@link Duration#getSeconds()} would give.
+     */
+    private static long calculateUsageTimeInSeconds(ReadingSummary readingSummary) {
+        final Instant earliest = readingSummary.earliest();
+        final Instant latest = readingSummary.latest();
+        final long seconds = latest.getEpochSecond() - earliest.getEpochSecond();
+        return latest.getNano() < earliest.getNano() ? seconds - 1 : seconds;
+    }
+
+    /**
+     * Division rounding half away from zero, as {@link RoundingMode#HALF_UP} does.
+     */
+    private static long divideHalfUp(long dividend, long divisor) {
+        final long quotient = dividend / divisor;
+        final long remainder = Math.abs(dividend % divisor);
+        if (remainder >= Math.abs(divisor) - remainder) {
+            return quotient + (Long.signum(dividend) * Long.signum(divisor));
+        }
+        return quotient;
+    }
+
+    /**
+     * @param readingSummary summary of the readings the energy was worked out from
+     * @param usageProfile profile of the same readings, or null if it was not needed
+     */
+    private record Consumption(
+            ReadingSummary readingSummary, BigDecimal energyConsumedInKwH, UsageProfile usageProfile) {}
 }
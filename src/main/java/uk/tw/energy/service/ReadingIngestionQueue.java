@@ -0,0 +1,196 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.ReadingColumns;
+
+/**
+ * Stores readings behind the request that sent them, so that a slow store holds up writer threads rather than request
+ * threads. Only queues readings when {@code joi.readings.async.enabled} is set; otherwise readings are stored as they
+ * arrive.
+ *
+ * <p>Meters are spread over {@code joi.readings.async.writers} bounded queues, each drained by a writer thread of its
+ * own, so that a meter's batches are stored in the order they arrived. A writer takes whatever has queued up since it
+ * last looked, joins the batches of each meter into one and stores that, which takes far fewer locks and summary
+ * updates than storing them one by one when a meter sends often. Once a queue holds its share of
+ * {@code joi.readings.async.queue-capacity} batches, further batches for its meters are turned away until it drains.
+ *
+ * <p>On shutdown the queues are drained before the writers stop.
+ */
+@Service
+public class ReadingIngestionQueue implements AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(ReadingIngestionQueue.class.getName());
+    private static final int MAX_DRAINED = 1024;
+    private static final long POLL_MILLIS = 100;
+
+    private final MeterReadingService meterReadingService;
+    private final boolean enabled;
+    private final List<BlockingQueue<QueuedReadings>> queues = new ArrayList<>();
+    private final List<Thread> writers = new ArrayList<>();
+    private final Counter batchesQueued;
+    private final Counter batchesDrained;
+    private final Counter batchesRejected;
+    private final Counter readingsFailed;
+    private volatile boolean stopping;
+
+    public ReadingIngestionQueue(
+            MeterReadingService meterReadingService,
+            MeterRegistry meterRegistry,
+            @Value("${joi.readings.async.enabled:false}") boolean enabled,
+            @Value("${joi.readings.async.queue-capacity:10000}") int capacity,
+            @Value("${joi.readings.async.writers:2}") int writerCount) {
+        this.meterReadingService = meterReadingService;
+        this.enabled = enabled;
+        this.batchesQueued = Counter.builder("joi.readings.queue.queued")
+                .description("Batches of a meter's readings queued to be stored")
+                .baseUnit("batches")
+                .register(meterRegistry);
+        this.batchesDrained = Counter.builder("joi.readings.queue.drained")
+                .description("Queued batches of a meter's readings taken off the queue and stored")
+                .baseUnit("batches")
+                .register(meterRegistry);
+        this.batchesRejected = Counter.builder("joi.readings.queue.rejected")
+                .description("Batches of a meter's readings turned away because the queue was full")
+                .baseUnit("batches")
+                .register(meterRegistry);
+        this.readingsFailed = Counter.builder("joi.readings.queue.failed")
+                .description("Queued readings the store failed to store")
+                .baseUnit("readings")
+                .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        if (writerCount < 1 || capacity < writerCount) {
+            throw new IllegalArgumentException(
+                    "The queue needs at least one writer and room for a batch per writer, not " + writerCount
+                            + " writers and room for " + capacity);
+        }
+        for (int writer = 0; writer < writerCount; writer++) {
+            BlockingQueue<QueuedReadings> queue = new ArrayBlockingQueue<>(capacity / writerCount);
+            queues.add(queue);
+            writers.add(Thread.ofPlatform()
+                    .daemon()
+                    .name("joi-reading-writer-" + writer)
+                    .start(() -> drain(queue)));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the readings to be stored by a writer thread.
+     *
+     * @return false if the meter's queue is full or the queue is shutting down, in which case the readings are not
+     *     stored
+     */
+    public boolean offer(String smartMeterId, ReadingColumns readings) {
+        if (!enabled) {
+            throw new IllegalStateException("Readings are stored as they arrive unless joi.readings.async.enabled");
+        }
+        if (!stopping && queueOf(smartMeterId).offer(new QueuedReadings(smartMeterId, readings))) {
+            batchesQueued.increment();
+            return true;
+        }
+        batchesRejected.increment();
+        return false;
+    }
+
+    /**
+     * @return number of batches waiting to be stored
+     */
+    public int depth() {
+        int depth = 0;
+        for (BlockingQueue<QueuedReadings> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Turns away further batches and waits for the writers to store those already queued.
+     */
+    @Override
+    public void close() {
+        stopping = true;
+        boolean interrupted = false;
+        for (Thread writer : writers) {
+            while (writer.isAlive()) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // a batch offered as the queue began stopping can land after its writer last looked
+        for (BlockingQueue<QueuedReadings> queue : queues) {
+            for (QueuedReadings queued = queue.poll(); queued != null; queued = queue.poll()) {
+                store(queued.smartMeterId(), queued.readings());
+                batchesDrained.increment();
+            }
+        }
+    }
+
+    private BlockingQueue<QueuedReadings> queueOf(String smartMeterId) {
+        return queues.get(Math.floorMod(smartMeterId.hashCode(), queues.size()));
+    }
+
+    private void drain(BlockingQueue<QueuedReadings> queue) {
+        List<QueuedReadings> drained = new ArrayList<>();
+        Map<String, ReadingColumns> readingsByMeter = new LinkedHashMap<>();
+        while (true) {
+            QueuedReadings first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // only stopping ends the writer, and it still drains the queue first
+                continue;
+            }
+            if (first == null) {
+                if (stopping) {
+                    return;
+                }
+                continue;
+            }
+
+            drained.add(first);
+            queue.drainTo(drained, MAX_DRAINED - 1);
+            for (QueuedReadings queued : drained) {
+                readingsByMeter.merge(queued.smartMeterId(), queued.readings(), (joined, more) -> {
+                    joined.addAll(more);
+                    return joined;
+                });
+            }
+            readingsByMeter.forEach(this::store);
+            batchesDrained.increment(drained.size());
+            drained.clear();
+            readingsByMeter.clear();
+        }
+    }
+
+    private void store(String smartMeterId, ReadingColumns readings) {
+        try {
+            meterReadingService.storeReadings(smartMeterId, readings);
+        } catch (RuntimeException e) {
+            readingsFailed.increment(readings.size());
+            LOGGER.log(System.Logger.Level.ERROR, "Failed to store queued readings of " + smartMeterId, e);
+        }
+    }
+
+    private record QueuedReadings(String smartMeterId, ReadingColumns readings) {}
+}
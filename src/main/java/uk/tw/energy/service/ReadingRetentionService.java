@@ -0,0 +1,53 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.store.RetentionPolicy;
+
+/**
+ * Compacts old readings in the background, so that the memory taken by a meter's history grows with the number of
+ * hours it covers rather than the number of readings. Only runs when {@code joi.readings.retention.raw} is set.
+ */
+@Service
+@ConditionalOnProperty("joi.readings.retention.raw")
+public class ReadingRetentionService {
+
+    private final MeterReadingService meterReadingService;
+    private final RetentionPolicy retentionPolicy;
+    private final Counter readingsRolledUp;
+
+    public ReadingRetentionService(
+            MeterReadingService meterReadingService,
+            MeterRegistry meterRegistry,
+            @Value("${joi.readings.retention.raw}") Duration raw,
+            @Value("${joi.readings.retention.quarter-hourly:${joi.readings.retention.raw}}") Duration quarterHourly) {
+        this.meterReadingService = meterReadingService;
+        this.retentionPolicy = new RetentionPolicy(raw, quarterHourly);
+        this.readingsRolledUp = Counter.builder("joi.readings.rolled.up")
+                .description("Readings compacted into rollups")
+                .baseUnit("readings")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${joi.readings.retention.compaction-interval:1h}",
+            fixedDelayString = "${joi.readings.retention.compaction-interval:1h}")
+    public void compact() {
+        compact(Instant.now());
+    }
+
+    /**
+     * @return number of readings rolled up
+     */
+    public long compact(Instant now) {
+        long rolledUp = meterReadingService.compactReadings(retentionPolicy, now);
+        readingsRolledUp.increment(rolledUp);
+        return rolledUp;
+    }
+}
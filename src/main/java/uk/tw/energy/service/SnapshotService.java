@@ -0,0 +1,43 @@
+package uk.tw.energy.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.SnapshotStatistics;
+import uk.tw.energy.store.ReadingStore;
+import uk.tw.energy.store.StoreSnapshot;
+
+/**
+ * Writes a snapshot of the readings, accounts and price plans to {@code joi.snapshot.file}, for the next start to
+ * restore rather than seeding them again. Only runs when {@code joi.snapshot.file} is set.
+ */
+@Service
+@ConditionalOnProperty("joi.snapshot.file")
+public class SnapshotService {
+
+    private final ReadingStore readingStore;
+    private final AccountService accountService;
+    private final PricePlanCatalog pricePlanCatalog;
+    private final Path file;
+
+    public SnapshotService(
+            ReadingStore readingStore,
+            AccountService accountService,
+            PricePlanCatalog pricePlanCatalog,
+            @Value("${joi.snapshot.file}") Path file) {
+        this.readingStore = readingStore;
+        this.accountService = accountService;
+        this.pricePlanCatalog = pricePlanCatalog;
+        this.file = file;
+    }
+
+    /**
+     * Replaces the snapshot with one of the readings, accounts and price plans now. A process that started from the
+     * snapshot being replaced carries on restoring its meters from the one it opened.
+     */
+    public SnapshotStatistics writeSnapshot() throws IOException {
+        return StoreSnapshot.write(file, readingStore, accountService.getAccounts(), pricePlanCatalog.getPricePlans());
+    }
+}
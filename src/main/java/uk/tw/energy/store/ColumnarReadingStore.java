@@ -0,0 +1,140 @@
+package uk.tw.energy.store;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.domain.ReadingConsumer;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+
+/**
+ * Keeps each meter's readings in primitive columns rather than as {@link ElectricityReading} objects, which brings the
+ * cost of a reading down from over 100 bytes to around 17. All but a meter's latest readings are further compressed
+ * into blocks, where readings taken at a regular interval of a slowly varying load take two or three bytes each.
+ *
+ * <p>The store is safe for concurrent use. Each meter's series has its own lock, so writers to different meters never
+ * contend, and readers never block.
+ */
+public class ColumnarReadingStore implements ReadingStore {
+
+    private final Map<String, MeterSeries> seriesByMeter = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<List<ElectricityReading>> getReadings(String smartMeterId) {
+        return Optional.ofNullable(seriesByMeter.get(smartMeterId)).map(MeterSeries::toList);
+    }
+
+    @Override
+    public Optional<List<ElectricityReading>> getReadings(String smartMeterId, Instant from, Instant to, int limit) {
+        return Optional.ofNullable(seriesByMeter.get(smartMeterId)).map(series -> series.between(from, to, limit));
+    }
+
+    @Override
+    public boolean forEachReading(String smartMeterId, Consumer<ElectricityReading> action) {
+        MeterSeries series = seriesByMeter.get(smartMeterId);
+        if (series == null) {
+            return false;
+        }
+        series.forEach(action);
+        return true;
+    }
+
+    @Override
+    public boolean forEachReading(
+            String smartMeterId, Instant from, Instant to, int limit, Consumer<ElectricityReading> action) {
+        MeterSeries series = seriesByMeter.get(smartMeterId);
+        if (series == null) {
+            return false;
+        }
+        series.forEachBetween(from, to, limit, action);
+        return true;
+    }
+
+    @Override
+    public boolean forEachReadingAndRollup(
+            String smartMeterId, Consumer<ElectricityReading> readingAction, Consumer<ReadingRollup> rollupAction) {
+        MeterSeries series = seriesByMeter.get(smartMeterId);
+        if (series == null) {
+            return false;
+        }
+        series.forEach(readingAction, rollupAction);
+        return true;
+    }
+
+    @Override
+    public Optional<ReadingSummary> forEachInTimeOrder(
+            String smartMeterId, ReadingConsumer readingAction, Consumer<ReadingRollup> rollupAction) {
+        MeterSeries series = seriesByMeter.get(smartMeterId);
+        if (series == null) {
+            return Optional.empty();
+        }
+        return Optional.of(series.forEachInTimeOrder(readingAction, rollupAction));
+    }
+
+    @Override
+    public void storeReadings(String smartMeterId, ReadingColumns readings) {
+        seriesByMeter.computeIfAbsent(smartMeterId, id -> new MeterSeries()).appendAll(readings);
+    }
+
+    /**
+     * Gives the meter the series restored by the function, unless the meter already has one or the function returns
+     * null. The function is called at most once, while other calls for the same meter wait.
+     */
+    void restoreIfAbsent(String smartMeterId, Function<String, MeterSeries> restore) {
+        seriesByMeter.computeIfAbsent(smartMeterId, restore);
+    }
+
+    @Override
+    public Optional<List<ElectricityReading>> removeReadings(String smartMeterId) {
+        return Optional.ofNullable(seriesByMeter.remove(smartMeterId)).map(MeterSeries::toList);
+    }
+
+    @Override
+    public List<String> getSmartMeterIds() {
+        return List.copyOf(seriesByMeter.keySet());
+    }
+
+    @Override
+    public Optional<List<ReadingRollup>> getRollups(String smartMeterId) {
+        return Optional.ofNullable(seriesByMeter.get(smartMeterId)).map(MeterSeries::rollups);
+    }
+
+    @Override
+    public long compact(RetentionPolicy retentionPolicy, Instant now) {
+        Instant rawCutoff = retentionPolicy.rawCutoff(now);
+        Instant quarterHourlyCutoff = retentionPolicy.quarterHourlyCutoff(now);
+        return seriesByMeter.values().stream()
+                .mapToLong(series -> series.compact(rawCutoff, quarterHourlyCutoff))
+                .sum();
+    }
+
+    @Override
+    public Optional<ReadingSummary> getSummary(String smartMeterId) {
+        return Optional.ofNullable(seriesByMeter.get(smartMeterId)).map(MeterSeries::summary);
+    }
+
+    @Override
+    public long meterCount() {
+        return seriesByMeter.size();
+    }
+
+    @Override
+    public long readingCount() {
+        return seriesByMeter.values().stream()
+                .mapToLong(MeterSeries::size)
+                .sum();
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return seriesByMeter.values().stream()
+                .mapToLong(MeterSeries::sizeInBytes)
+                .sum();
+    }
+}
@@ -0,0 +1,580 @@
+package uk.tw.energy.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.domain.ReadingConsumer;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+
+/**
+ * A {@link ColumnarReadingStore} whose readings survive a restart.
+ *
+ * <p>Every stored batch is appended to a log on disk before it is added to memory. Meters are spread over a fixed
+ * number of shards, each a directory holding a dictionary of its meter ids and a sequence of segment files. A segment
+ * is a run of fixed-width records of {@value #RECORD_BYTES} bytes: the meter's position in the dictionary, the epoch
+ * second, the nano adjustment, and the unscaled value and scale of the reading. Once a segment reaches its size limit
+ * the next one is started. A meter is removed by appending a record with a nano adjustment of {@value #REMOVED_NANOS},
+ * which drops its earlier readings when the log is recovered.
+ *
+ * <p>A batch is committed by a record following its readings with a nano adjustment of {@value #COMMITTED_NANOS} and
+ * the number of readings in the batch in place of the reading, so that a batch is recovered whole or not at all.
+ * Readings without a commit record after them, left by a crash or by a write that failed part way, are skipped when
+ * the log is recovered. A failed write also cuts the segment back to where the batch started, so that the next batch
+ * starts on a record boundary.
+ *
+ * <p>On opening, the segments of every shard are memory mapped and decoded record by record, the shards in parallel,
+ * and a torn record left at the end of a log by a crash is cut off. Readings are then served from memory exactly as
+ * by the {@link ColumnarReadingStore}.
+ *
+ * <p>Appends to a shard are serialised by the shard's lock, which is held while writing to the disk. By default the log
+ * is left to the operating system to flush, so readings survive the process stopping but not the machine; with
+ * {@code forceWrites} every batch is forced to disk before it is acknowledged.
+ *
+ * <p>{@linkplain #compact Compaction} only rolls up the readings held in memory; rollups are not written to the log.
+ * The log keeps every reading as it was stored and is never trimmed, so after a restart the recovered readings are
+ * raw again, taking the memory they took before they were rolled up, until they are next compacted.
+ */
+public class DurableReadingStore implements ReadingStore, Closeable {
+
+    static final int RECORD_BYTES = 4 + 8 + 4 + 8 + 1;
+    // outside the range of a nano adjustment
+    static final int REMOVED_NANOS = -1;
+    static final int COMMITTED_NANOS = -2;
+
+    public static final int DEFAULT_SHARD_COUNT = 16;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final String SHARD_PREFIX = "shard-";
+    private static final String DICTIONARY_FILE = "meters";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECOVERY_BATCH_SIZE = 4096;
+
+    private final ColumnarReadingStore readings = new ColumnarReadingStore();
+    private final Shard[] shards;
+
+    public DurableReadingStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SHARD_COUNT, DEFAULT_SEGMENT_BYTES, false);
+    }
+
+    /**
+     * Opens the store kept in the directory, creating it if needed, and recovers the readings already in it.
+     *
+     * @throws IllegalStateException if the directory holds a store with a different number of shards
+     */
+    public DurableReadingStore(Path directory, int shardCount, long segmentBytes, boolean forceWrites)
+            throws IOException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("A store needs at least one shard");
+        }
+        if (segmentBytes < RECORD_BYTES || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segments must hold between one record and 2 GiB");
+        }
+        Files.createDirectories(directory);
+        try (Stream<Path> existing = Files.list(directory)) {
+            long existingShards = existing.filter(path ->
+                            path.getFileName().toString().startsWith(SHARD_PREFIX))
+                    .count();
+            if (existingShards != 0 && existingShards != shardCount) {
+                throw new IllegalStateException(
+                        directory + " holds " + existingShards + " shards rather than " + shardCount);
+            }
+        }
+
+        long recordsPerSegment = segmentBytes / RECORD_BYTES;
+        shards = new Shard[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards[shard] = new Shard(
+                    directory.resolve(String.format("%s%03d", SHARD_PREFIX, shard)), recordsPerSegment, forceWrites);
+        }
+        try {
+            IntStream.range(0, shardCount).parallel().forEach(shard -> shards[shard].recover(readings));
+        } catch (UncheckedIOException e) {
+            close();
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Optional<List<ElectricityReading>> getReadings(String smartMeterId) {
+        return readings.getReadings(smartMeterId);
+    }
+
+    @Override
+    public Optional<List<ElectricityReading>> getReadings(String smartMeterId, Instant from, Instant to, int limit) {
+        return readings.getReadings(smartMeterId, from, to, limit);
+    }
+
+    @Override
+    public boolean forEachReading(String smartMeterId, Consumer<ElectricityReading> action) {
+        return readings.forEachReading(smartMeterId, action);
+    }
+
+    @Override
+    public boolean forEachReading(
+            String smartMeterId, Instant from, Instant to, int limit, Consumer<ElectricityReading> action) {
+        return readings.forEachReading(smartMeterId, from, to, limit, action);
+    }
+
+    @Override
+    public boolean forEachReadingAndRollup(
+            String smartMeterId, Consumer<ElectricityReading> readingAction, Consumer<ReadingRollup> rollupAction) {
+        return readings.forEachReadingAndRollup(smartMeterId, readingAction, rollupAction);
+    }
+
+    @Override
+    public Optional<ReadingSummary> forEachInTimeOrder(
+            String smartMeterId, ReadingConsumer readingAction, Consumer<ReadingRollup> rollupAction) {
+        return readings.forEachInTimeOrder(smartMeterId, readingAction, rollupAction);
+    }
+
+    /**
+     * @throws UncheckedIOException if the readings could not be written to disk, in which case they are not stored
+     */
+    @Override
+    public void storeReadings(String smartMeterId, ReadingColumns batch) {
+        shardOf(smartMeterId).append(smartMeterId, batch, readings);
+    }
+
+    private Shard shardOf(String smartMeterId) {
+        return shards[Math.floorMod(smartMeterId.hashCode(), shards.length)];
+    }
+
+    /**
+     * @throws UncheckedIOException if the removal could not be written to disk, in which case the meter is kept
+     */
+    @Override
+    public Optional<List<ElectricityReading>> removeReadings(String smartMeterId) {
+        return shardOf(smartMeterId).remove(smartMeterId, readings);
+    }
+
+    @Override
+    public List<String> getSmartMeterIds() {
+        return readings.getSmartMeterIds();
+    }
+
+    @Override
+    public Optional<List<ReadingRollup>> getRollups(String smartMeterId) {
+        return readings.getRollups(smartMeterId);
+    }
+
+    @Override
+    public long compact(RetentionPolicy retentionPolicy, Instant now) {
+        return readings.compact(retentionPolicy, now);
+    }
+
+    @Override
+    public Optional<ReadingSummary> getSummary(String smartMeterId) {
+        return readings.getSummary(smartMeterId);
+    }
+
+    @Override
+    public long meterCount() {
+        return readings.meterCount();
+    }
+
+    @Override
+    public long readingCount() {
+        return readings.readingCount();
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return readings.sizeInBytes();
+    }
+
+    /**
+     * @return the bytes taken by the log on disk
+     */
+    public long sizeOnDisk() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += shard.sizeOnDisk();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Shard shard : shards) {
+            if (shard != null) {
+                shard.close();
+            }
+        }
+    }
+
+    private static final class Shard {
+
+        private final Path directory;
+        private final long recordsPerSegment;
+        private final boolean forceWrites;
+        private final Map<String, Integer> meterIndexes = new HashMap<>();
+        private final List<String> smartMeterIds = new ArrayList<>();
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private FileChannel dictionary;
+        private FileChannel segment;
+        private int segmentNumber;
+        private long segmentRecords;
+        private long closedSegmentBytes;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * 256);
+
+        Shard(Path directory, long recordsPerSegment, boolean forceWrites) {
+            this.directory = directory;
+            this.recordsPerSegment = recordsPerSegment;
+            this.forceWrites = forceWrites;
+        }
+
+        void recover(ColumnarReadingStore readings) {
+            lock.lock();
+            try {
+                Files.createDirectories(directory);
+                dictionary = FileChannel.open(
+                        directory.resolve(DICTIONARY_FILE),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                recoverDictionary();
+
+                List<Path> segments;
+                try (Stream<Path> files = Files.list(directory)) {
+                    segments = files.filter(path ->
+                                    path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                            .sorted()
+                            .toList();
+                }
+                // a batch can run on from one segment into the next
+                UncommittedBatch uncommitted = new UncommittedBatch();
+                for (Path path : segments) {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        recoverSegment(channel, uncommitted, readings);
+                        closedSegmentBytes += channel.size();
+                    }
+                }
+
+                if (!segments.isEmpty()) {
+                    Path last = segments.get(segments.size() - 1);
+                    closedSegmentBytes -= Files.size(last);
+                    String name = last.getFileName().toString();
+                    segmentNumber = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                }
+                openSegment();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void append(String smartMeterId, ReadingColumns batch, ColumnarReadingStore readings) {
+            lock.lock();
+            try {
+                int meterIndex = indexOf(smartMeterId);
+                int batchSegment = segmentNumber;
+                long batchStart = segmentRecords;
+                try {
+                    int written = 0;
+                    while (written < batch.size()) {
+                        if (segmentRecords >= recordsPerSegment) {
+                            rollSegment();
+                        }
+                        int count = (int) Math.min(batch.size() - written, recordsPerSegment - segmentRecords);
+                        writeRecords(meterIndex, batch, written, count);
+                        written += count;
+                    }
+                    if (segmentRecords >= recordsPerSegment) {
+                        rollSegment();
+                    }
+                    writeRecord(meterIndex, 0, COMMITTED_NANOS, batch.size(), (byte) 0);
+                    if (forceWrites) {
+                        segment.force(false);
+                    }
+                } catch (IOException e) {
+                    rollBack(batchSegment, batchStart, e);
+                    throw e;
+                }
+                readings.storeReadings(smartMeterId, batch);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Optional<List<ElectricityReading>> remove(String smartMeterId, ColumnarReadingStore readings) {
+            lock.lock();
+            try {
+                Integer meterIndex = meterIndexes.get(smartMeterId);
+                if (meterIndex != null) {
+                    if (segmentRecords >= recordsPerSegment) {
+                        rollSegment();
+                    }
+                    writeRecord(meterIndex, 0, REMOVED_NANOS, 0, (byte) 0);
+                    if (forceWrites) {
+                        segment.force(false);
+                    }
+                }
+                return readings.removeReadings(smartMeterId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long sizeOnDisk() {
+            lock.lock();
+            try {
+                return closedSegmentBytes + segment.size() + dictionary.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() throws IOException {
+            lock.lock();
+            try {
+                if (segment != null) {
+                    segment.close();
+                }
+                if (dictionary != null) {
+                    dictionary.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void recoverDictionary() throws IOException {
+            MappedByteBuffer mapped = dictionary.map(FileChannel.MapMode.READ_ONLY, 0, dictionary.size());
+            while (mapped.remaining() >= Short.BYTES) {
+                int length = Short.toUnsignedInt(mapped.getShort(mapped.position()));
+                if (mapped.remaining() < Short.BYTES + length) {
+                    break;
+                }
+                mapped.position(mapped.position() + Short.BYTES);
+                byte[] smartMeterId = new byte[length];
+                mapped.get(smartMeterId);
+                register(new String(smartMeterId, StandardCharsets.UTF_8));
+            }
+            dictionary.truncate(mapped.position());
+            dictionary.position(mapped.position());
+        }
+
+        private void recoverSegment(FileChannel channel, UncommittedBatch uncommitted, ColumnarReadingStore readings)
+                throws IOException {
+            long records = channel.size() / RECORD_BYTES;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, records * RECORD_BYTES);
+            Map<Integer, ReadingColumns> pending = new HashMap<>();
+            for (long record = 0; record < records; record++) {
+                int meterIndex = mapped.getInt();
+                long epochSecond = mapped.getLong();
+                int nanos = mapped.getInt();
+                long unscaledReading = mapped.getLong();
+                byte readingScale = mapped.get();
+                // a record can outlive its dictionary entry if the machine stopped before both reached the disk
+                if (meterIndex < 0 || meterIndex >= smartMeterIds.size()) {
+                    continue;
+                }
+                if (nanos == REMOVED_NANOS) {
+                    uncommitted.clear();
+                    pending.remove(meterIndex);
+                    readings.removeReadings(smartMeterIds.get(meterIndex));
+                    continue;
+                }
+                if (nanos != COMMITTED_NANOS) {
+                    uncommitted.add(meterIndex, epochSecond, nanos, unscaledReading, readingScale);
+                    continue;
+                }
+
+                ReadingColumns committed = uncommitted.commit(meterIndex, unscaledReading);
+                if (committed == null) {
+                    continue;
+                }
+                ReadingColumns batch = pending.computeIfAbsent(meterIndex, index -> committed);
+                if (batch != committed) {
+                    batch.addAll(committed);
+                }
+                if (batch.size() >= RECOVERY_BATCH_SIZE) {
+                    readings.storeReadings(smartMeterIds.get(meterIndex), batch);
+                    pending.remove(meterIndex);
+                }
+            }
+            pending.forEach((meterIndex, batch) -> readings.storeReadings(smartMeterIds.get(meterIndex), batch));
+        }
+
+        private int indexOf(String smartMeterId) throws IOException {
+            Integer meterIndex = meterIndexes.get(smartMeterId);
+            if (meterIndex != null) {
+                return meterIndex;
+            }
+
+            byte[] encoded = smartMeterId.getBytes(StandardCharsets.UTF_8);
+            if (encoded.length > 0xFFFF) {
+                throw new IllegalArgumentException("Smart meter id is too long to store");
+            }
+            ByteBuffer entry = ByteBuffer.allocate(Short.BYTES + encoded.length);
+            entry.putShort((short) encoded.length).put(encoded).flip();
+            while (entry.hasRemaining()) {
+                dictionary.write(entry);
+            }
+            if (forceWrites) {
+                dictionary.force(false);
+            }
+            return register(smartMeterId);
+        }
+
+        private int register(String smartMeterId) {
+            int meterIndex = smartMeterIds.size();
+            smartMeterIds.add(smartMeterId);
+            meterIndexes.put(smartMeterId, meterIndex);
+            return meterIndex;
+        }
+
+        private void writeRecords(int meterIndex, ReadingColumns batch, int from, int count)
+                throws IOException {
+            int bytes = count * RECORD_BYTES;
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocateDirect(Math.max(bytes, buffer.capacity() * 2));
+            }
+            buffer.clear();
+            for (int i = from; i < from + count; i++) {
+                putRecord(
+                        meterIndex,
+                        batch.epochSecond(i),
+                        batch.nano(i),
+                        batch.unscaledReading(i),
+                        batch.readingScale(i));
+            }
+            flushRecords(count);
+        }
+
+        private void writeRecord(int meterIndex, long epochSecond, int nanos, long unscaledReading, byte readingScale)
+                throws IOException {
+            buffer.clear();
+            putRecord(meterIndex, epochSecond, nanos, unscaledReading, readingScale);
+            flushRecords(1);
+        }
+
+        private void putRecord(int meterIndex, long epochSecond, int nanos, long unscaledReading, byte readingScale) {
+            buffer.putInt(meterIndex)
+                    .putLong(epochSecond)
+                    .putInt(nanos)
+                    .putLong(unscaledReading)
+                    .put(readingScale);
+        }
+
+        private void flushRecords(int records) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segmentRecords += records;
+        }
+
+        /**
+         * Cuts the segment back to where a batch that failed to be written started, or to empty if the batch rolled
+         * over into it, in which case the batch's readings in the earlier segment are left without a commit record.
+         */
+        private void rollBack(int batchSegment, long batchStart, IOException failure) {
+            long kept = segmentNumber == batchSegment ? batchStart : 0;
+            try {
+                segment.truncate(kept * RECORD_BYTES);
+                segment.position(kept * RECORD_BYTES);
+                segmentRecords = kept;
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+
+        private void rollSegment() throws IOException {
+            closedSegmentBytes += segment.size();
+            segment.close();
+            segmentNumber++;
+            openSegment();
+        }
+
+        private void openSegment() throws IOException {
+            segment = FileChannel.open(
+                    segmentPath(segmentNumber), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // cut off a record torn by a crash, so that appends start on a record boundary
+            segmentRecords = segment.size() / RECORD_BYTES;
+            segment.truncate(segmentRecords * RECORD_BYTES);
+            segment.position(segmentRecords * RECORD_BYTES);
+        }
+
+        private Path segmentPath(int number) {
+            return directory.resolve(String.format("%08d%s", number, SEGMENT_SUFFIX));
+        }
+    }
+
+    /**
+     * The readings recovered since the last commit record, all of one meter, as the records of a batch are written
+     * together under the shard's lock.
+     */
+    private static final class UncommittedBatch {
+
+        private int meterIndex = -1;
+        private ReadingColumns readings = new ReadingColumns();
+
+        void add(int meterIndex, long epochSecond, int nanos, long unscaledReading, byte readingScale) {
+            if (meterIndex != this.meterIndex) {
+                clear();
+                this.meterIndex = meterIndex;
+            }
+            readings.add(epochSecond, nanos, unscaledReading, readingScale);
+        }
+
+        /**
+         * @return the last {@code count} readings, which the commit record of the meter commits, or null if they are
+         *     not all there; readings before them belong to a batch that was never committed
+         */
+        ReadingColumns commit(int meterIndex, long count) {
+            ReadingColumns uncommitted = readings;
+            boolean complete = meterIndex == this.meterIndex && count <= uncommitted.size();
+            clear();
+            if (!complete) {
+                return null;
+            }
+            int from = uncommitted.size() - (int) count;
+            if (from == 0) {
+                return uncommitted;
+            }
+            ReadingColumns committed = new ReadingColumns((int) count);
+            for (int i = from; i < uncommitted.size(); i++) {
+                committed.add(
+                        uncommitted.epochSecond(i),
+                        uncommitted.nano(i),
+                        uncommitted.unscaledReading(i),
+                        uncommitted.readingScale(i));
+            }
+            return committed;
+        }
+
+        void clear() {
+            meterIndex = -1;
+            readings = new ReadingColumns();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package uk.tw.energy.store;
+
+import java.nio.ByteBuffer;
+import uk.tw.energy.domain.ReadingConsumer;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+
+/**
+ * Takes one meter's readings, rollups and summary as {@link ReadingStore#exportInTimeOrder} hands them over, to copy
+ * them out of the store.
+ */
+public interface MeterExporter extends ReadingConsumer {
+
+    /**
+     * Takes one of the meter's rollups, ahead of the readings taken from its start on.
+     */
+    void acceptRollup(ReadingRollup rollup);
+
+    /**
+     * Takes the summary of the readings handed over, once they all have been.
+     */
+    void acceptSummary(ReadingSummary summary);
+
+    /**
+     * Takes the meter's record as a {@link StoreSnapshot} wrote it, in place of its readings, rollups and summary,
+     * when the store still holds the meter as it was in the snapshot it started from.
+     */
+    void acceptSnapshotRecord(ByteBuffer record);
+}
@@ -0,0 +1,732 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.domain.ReadingConsumer;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+
+/**
+ * The readings of a single meter, stored column by column.
+ *
+ * <p>A reading is kept as its epoch second, its nano adjustment and its {@link BigDecimal} unscaled value and scale, so
+ * that it is handed back exactly as it was stored. The nano column is only allocated once a reading with sub-second
+ * precision arrives, as meters usually report on whole seconds.
+ *
+ * <p>Only the latest readings are kept in plain columns, an open block of up to {@link SeriesBlock#CAPACITY} readings.
+ * A full block is sealed into a compressed {@link SeriesBlock}, which readers decode on the fly, a block at a time, as
+ * they go through the readings.
+ *
+ * <p>Writers append under the series' lock and then publish an immutable {@link Columns} view. Slots below a published
+ * size are never written again, so readers work from the view they picked up without taking the lock and always see a
+ * consistent snapshot, even while a writer is appending.
+ *
+ * <p>A {@link ReadingSummary} is kept up to date as readings are appended and published along with the columns.
+ *
+ * <p>Readings stay in the order they were stored. While they also arrive in time order, which is the common case, a
+ * time range is found by binary search over the columns directly. Once a reading arrives out of order, a time index
+ * of reading positions is built for visiting the readings in time order, and extended by merging on later visits. A
+ * range is then found by binary search over the index instead.
+ *
+ * <p>Readings older than a {@link RetentionPolicy} allows are {@linkplain #compact compacted} into
+ * {@link ReadingRollup}s, which are published in the same view. The summary still covers them.
+ */
+final class MeterSeries {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long ARRAY_HEADER_BYTES = 16;
+    private static final long REFERENCE_BYTES = 4;
+    // a rollup, its two instants and three BigDecimals small enough not to need a BigInteger
+    private static final long ROLLUP_BYTES = 32 + 2 * 24 + 3 * 40;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile Columns columns;
+
+    MeterSeries() {
+        this(Columns.EMPTY);
+    }
+
+    private MeterSeries(Columns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Restores a series from full sealed blocks of readings in time order, the readings taken after those, and the
+     * summary and rollups the series had. The blocks are adopted as they are rather than encoded again.
+     */
+    static MeterSeries restore(
+            SeriesBlock[] blocks, ReadingColumns openReadings, ReadingSummary summary, List<ReadingRollup> rollups) {
+        int openSize = openReadings.size();
+        long[] epochSeconds = new long[openSize];
+        int[] nanos = null;
+        long[] unscaledReadings = new long[openSize];
+        byte[] readingScales = new byte[openSize];
+        for (int i = 0; i < openSize; i++) {
+            epochSeconds[i] = openReadings.epochSecond(i);
+            if (openReadings.nano(i) != 0) {
+                if (nanos == null) {
+                    nanos = new int[openSize];
+                }
+                nanos[i] = openReadings.nano(i);
+            }
+            unscaledReadings[i] = openReadings.unscaledReading(i);
+            readingScales[i] = openReadings.readingScale(i);
+        }
+        int size = blocks.length * SeriesBlock.CAPACITY + openSize;
+        return new MeterSeries(new Columns(
+                blocks,
+                blocks.length,
+                epochSeconds,
+                nanos,
+                unscaledReadings,
+                readingScales,
+                openSize,
+                summary,
+                true,
+                null,
+                size,
+                List.copyOf(rollups)));
+    }
+
+    void appendAll(ReadingColumns readings) {
+        appendLock.lock();
+        try {
+            Columns current = columns;
+            Appender appender = new Appender(current);
+            ReadingSummary summary = current.summary.merge(readings.summary());
+            boolean sortedByTime = current.sortedByTime;
+            Instant latest = current.summary.latest();
+            long latestEpochSecond = latest == null ? Long.MIN_VALUE : latest.getEpochSecond();
+            int latestNano = latest == null ? 0 : latest.getNano();
+
+            for (int i = 0; i < readings.size(); i++) {
+                long epochSecond = readings.epochSecond(i);
+                int nano = readings.nano(i);
+                appender.append(epochSecond, nano, readings.unscaledReading(i), readings.readingScale(i));
+                if (sortedByTime) {
+                    sortedByTime = epochSecond > latestEpochSecond
+                            || (epochSecond == latestEpochSecond && nano >= latestNano);
+                    latestEpochSecond = epochSecond;
+                    latestNano = nano;
+                }
+            }
+
+            columns = appender.publish(
+                    summary,
+                    sortedByTime,
+                    current.sortedByTime ? null : current.knownTimeOrder(),
+                    current.sortedByTime ? current.size : current.sortedPrefix,
+                    current.rollups);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Rolls the readings from before {@code rawCutoff} up into the quarter-hours they fall in, and the quarter-hour
+     * rollups from before {@code quarterHourlyCutoff} up into hours. Both cutoffs must be on the hour or quarter-hour
+     * they divide at. A reading that arrived late for a period already rolled up is added to that period's rollup.
+     *
+     * @return number of readings rolled up
+     */
+    int compact(Instant rawCutoff, Instant quarterHourlyCutoff) {
+        appendLock.lock();
+        try {
+            Columns current = columns;
+            boolean rollsReadings = current.size > 0 && current.summary.earliest().isBefore(rawCutoff);
+            boolean rollsQuarterHours = current.rollups.stream()
+                    .anyMatch(rollup -> isQuarterHour(rollup) && rollup.start().isBefore(quarterHourlyCutoff));
+            if (!rollsReadings && !rollsQuarterHours) {
+                return 0;
+            }
+
+            NavigableMap<Instant, ReadingRollup> rollups = new TreeMap<>();
+            current.rollups.forEach(rollup -> rollups.put(rollup.start(), rollup));
+
+            Cursor cursor = new Cursor(current);
+            Appender retained = new Appender(Columns.EMPTY);
+            int size = 0;
+            int sortedPrefix = 0;
+            int previous = -1;
+            for (int i = 0; i < current.size; i++) {
+                if (cursor.compareTime(i, rawCutoff) < 0) {
+                    rollUp(rollups, cursor.get(i));
+                    continue;
+                }
+                retained.append(cursor.epochSecond(i), cursor.nano(i), cursor.unscaledReading(i), cursor.scale(i));
+                if (sortedPrefix == size && (previous < 0 || cursor.compareTimes(previous, i) <= 0)) {
+                    sortedPrefix++;
+                }
+                previous = i;
+                size++;
+            }
+            int rolledUp = current.size - size;
+
+            for (ReadingRollup quarterHour : List.copyOf(rollups.headMap(quarterHourlyCutoff).values())) {
+                if (isQuarterHour(quarterHour)) {
+                    rollups.remove(quarterHour.start());
+                    Instant hour = RetentionPolicy.periodStart(quarterHour.start(), RetentionPolicy.HOUR);
+                    Instant end = hour.plus(RetentionPolicy.HOUR);
+                    ReadingRollup existing = rollups.get(hour);
+                    rollups.put(
+                            hour,
+                            existing == null
+                                    ? new ReadingRollup(
+                                            hour,
+                                            end,
+                                            quarterHour.count(),
+                                            quarterHour.sum(),
+                                            quarterHour.min(),
+                                            quarterHour.max())
+                                    : existing.merge(quarterHour, hour, end));
+                }
+            }
+
+            columns = retained.publish(
+                    current.summary, sortedPrefix == size, null, sortedPrefix, List.copyOf(rollups.values()));
+            return rolledUp;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    int size() {
+        return columns.size;
+    }
+
+    ReadingSummary summary() {
+        return columns.summary;
+    }
+
+    /**
+     * @return the rollups of the readings compacted so far, in time order
+     */
+    List<ReadingRollup> rollups() {
+        return columns.rollups;
+    }
+
+    List<ElectricityReading> toList() {
+        List<ElectricityReading> electricityReadings = new ArrayList<>(size());
+        forEach(electricityReadings::add);
+        return electricityReadings;
+    }
+
+    /**
+     * Hands each reading to the action in the order they were stored, creating them one at a time.
+     */
+    void forEach(Consumer<ElectricityReading> action) {
+        Columns snapshot = columns;
+        Cursor cursor = new Cursor(snapshot);
+        for (int i = 0; i < snapshot.size; i++) {
+            action.accept(cursor.get(i));
+        }
+    }
+
+    /**
+     * Hands each reading to the one action and each rollup to the other, taking both from the same view so that a
+     * reading being compacted at the time is neither missed nor seen twice.
+     */
+    void forEach(Consumer<ElectricityReading> readingAction, Consumer<ReadingRollup> rollupAction) {
+        Columns snapshot = columns;
+        Cursor cursor = new Cursor(snapshot);
+        for (int i = 0; i < snapshot.size; i++) {
+            readingAction.accept(cursor.get(i));
+        }
+        snapshot.rollups.forEach(rollupAction);
+    }
+
+    /**
+     * Hands the readings and rollups of the same view to the actions merged in time order, each rollup ahead of the
+     * readings taken from its start on. Readings out of order are visited by the view's time index, which is built
+     * once for the view rather than by sorting the readings on each call.
+     *
+     * @return the summary of the readings handed over
+     */
+    ReadingSummary forEachInTimeOrder(ReadingConsumer readingAction, Consumer<ReadingRollup> rollupAction) {
+        Columns snapshot = columns;
+        int[] timeOrder = snapshot.sortedByTime ? null : snapshot.timeOrder();
+        Cursor cursor = new Cursor(snapshot);
+        Iterator<ReadingRollup> rollups = snapshot.rollups.iterator();
+        ReadingRollup rollup = rollups.hasNext() ? rollups.next() : null;
+        for (int position = 0; position < snapshot.size; position++) {
+            int index = positionOf(timeOrder, position);
+            while (rollup != null && cursor.compareTime(index, rollup.start()) >= 0) {
+                rollupAction.accept(rollup);
+                rollup = rollups.hasNext() ? rollups.next() : null;
+            }
+            readingAction.accept(
+                    cursor.epochSecond(index), cursor.nano(index), cursor.unscaledReading(index), cursor.scale(index));
+        }
+        while (rollup != null) {
+            rollupAction.accept(rollup);
+            rollup = rollups.hasNext() ? rollups.next() : null;
+        }
+        return snapshot.summary;
+    }
+
+    /**
+     * @return up to {@code limit} readings taken from {@code from}, inclusive, until {@code to}, exclusive, in time
+     *     order
+     */
+    List<ElectricityReading> between(Instant from, Instant to, int limit) {
+        List<ElectricityReading> electricityReadings = new ArrayList<>();
+        forEachBetween(from, to, limit, electricityReadings::add);
+        return electricityReadings;
+    }
+
+    /**
+     * Hands each of the readings {@link #between} the given times to the action, creating them one at a time. Readings
+     * out of order are visited by the view's time index, so that the range is still found by binary search and walked
+     * only as far as the limit.
+     */
+    void forEachBetween(Instant from, Instant to, int limit, Consumer<ElectricityReading> action) {
+        Columns snapshot = columns;
+        int[] timeOrder = snapshot.sortedByTime ? null : snapshot.timeOrder();
+        // readings in time order sit in as few blocks as the range spans
+        Cursor cursor = new Cursor(snapshot);
+
+        int low = 0;
+        int high = snapshot.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cursor.compareTime(positionOf(timeOrder, middle), from) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int end = (int) Math.min(snapshot.size, (long) low + limit);
+        for (int position = low; position < end; position++) {
+            int index = positionOf(timeOrder, position);
+            if (cursor.compareTime(index, to) >= 0) {
+                break;
+            }
+            action.accept(cursor.get(index));
+        }
+    }
+
+    long sizeInBytes() {
+        Columns snapshot = columns;
+        long bytes = ARRAY_HEADER_BYTES + snapshot.blocks.length * REFERENCE_BYTES;
+        for (int i = 0; i < snapshot.blockCount; i++) {
+            bytes += snapshot.blocks[i].sizeInBytes();
+        }
+        bytes += ARRAY_HEADER_BYTES * 3
+                + snapshot.epochSeconds.length * 8L
+                + snapshot.unscaledReadings.length * 8L
+                + snapshot.readingScales.length;
+        if (snapshot.nanos != null) {
+            bytes += ARRAY_HEADER_BYTES + snapshot.nanos.length * 4L;
+        }
+        int[] timeOrder = snapshot.knownTimeOrder();
+        if (timeOrder != null) {
+            bytes += ARRAY_HEADER_BYTES + timeOrder.length * 4L;
+        }
+        return bytes + snapshot.rollups.size() * ROLLUP_BYTES;
+    }
+
+    private static void rollUp(NavigableMap<Instant, ReadingRollup> rollups, ElectricityReading electricityReading) {
+        Instant time = electricityReading.time();
+        Map.Entry<Instant, ReadingRollup> latestBefore = rollups.floorEntry(time);
+        if (latestBefore != null && latestBefore.getValue().covers(time)) {
+            rollups.put(latestBefore.getKey(), latestBefore.getValue().add(electricityReading));
+        } else {
+            Instant quarterHour = RetentionPolicy.periodStart(time, RetentionPolicy.QUARTER_HOUR);
+            rollups.put(
+                    quarterHour,
+                    ReadingRollup.of(quarterHour, quarterHour.plus(RetentionPolicy.QUARTER_HOUR), electricityReading));
+        }
+    }
+
+    private static boolean isQuarterHour(ReadingRollup rollup) {
+        return Duration.between(rollup.start(), rollup.end()).equals(RetentionPolicy.QUARTER_HOUR);
+    }
+
+    private static int positionOf(int[] timeOrder, int position) {
+        return timeOrder == null ? position : timeOrder[position];
+    }
+
+    /**
+     * Appends readings after those of a view, writing only to slots beyond the ones the view published. The open
+     * block is sealed into a {@link SeriesBlock} as it fills up and replaced by new columns rather than reused, so
+     * readers of an older view still find it as they left it.
+     */
+    private static final class Appender {
+
+        private SeriesBlock[] blocks;
+        private int blockCount;
+        private long[] epochSeconds;
+        private int[] nanos;
+        private long[] unscaledReadings;
+        private byte[] readingScales;
+        private int openSize;
+
+        Appender(Columns view) {
+            this.blocks = view.blocks;
+            this.blockCount = view.blockCount;
+            this.epochSeconds = view.epochSeconds;
+            this.nanos = view.nanos;
+            this.unscaledReadings = view.unscaledReadings;
+            this.readingScales = view.readingScales;
+            this.openSize = view.openSize;
+        }
+
+        void append(long epochSecond, int nano, long unscaledReading, byte scale) {
+            if (openSize == SeriesBlock.CAPACITY) {
+                seal();
+            }
+            if (openSize == epochSeconds.length) {
+                int capacity = Math.min(SeriesBlock.CAPACITY, newCapacity(epochSeconds.length, openSize + 1));
+                epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+                nanos = nanos == null ? null : Arrays.copyOf(nanos, capacity);
+                unscaledReadings = Arrays.copyOf(unscaledReadings, capacity);
+                readingScales = Arrays.copyOf(readingScales, capacity);
+            }
+
+            epochSeconds[openSize] = epochSecond;
+            if (nano != 0) {
+                if (nanos == null) {
+                    nanos = new int[epochSeconds.length];
+                }
+                nanos[openSize] = nano;
+            }
+            unscaledReadings[openSize] = unscaledReading;
+            readingScales[openSize] = scale;
+            openSize++;
+        }
+
+        Columns publish(
+                ReadingSummary summary,
+                boolean sortedByTime,
+                int[] carriedTimeOrder,
+                int sortedPrefix,
+                List<ReadingRollup> rollups) {
+            return new Columns(
+                    blocks,
+                    blockCount,
+                    epochSeconds,
+                    nanos,
+                    unscaledReadings,
+                    readingScales,
+                    openSize,
+                    summary,
+                    sortedByTime,
+                    carriedTimeOrder,
+                    sortedPrefix,
+                    rollups);
+        }
+
+        private void seal() {
+            if (blockCount == blocks.length) {
+                blocks = Arrays.copyOf(blocks, newCapacity(blocks.length, blockCount + 1));
+            }
+            blocks[blockCount++] = SeriesBlock.encode(epochSeconds, nanos, unscaledReadings, readingScales, openSize);
+            // a meter that filled one block is likely to fill the next
+            epochSeconds = new long[SeriesBlock.CAPACITY];
+            nanos = null;
+            unscaledReadings = new long[SeriesBlock.CAPACITY];
+            readingScales = new byte[SeriesBlock.CAPACITY];
+            openSize = 0;
+        }
+
+        private static int newCapacity(int currentCapacity, int requiredCapacity) {
+            int grown = currentCapacity + (currentCapacity >> 1);
+            return Math.max(Math.max(INITIAL_CAPACITY, requiredCapacity), grown);
+        }
+    }
+
+    /**
+     * Reads the readings of a view by index. Sealed blocks are decoded as they are reached, keeping only the few
+     * blocks used last. That suits reading in the order the readings were stored, and reading in time order too, as
+     * readings that arrived late tend to sit in a few blocks among readings that are in order.
+     */
+    private static final class Cursor {
+
+        private static final int CACHED_BLOCKS = 8;
+
+        private final Columns view;
+        private final int sealedSize;
+        // the decoded columns of the blocks last used, by slot, and the block in each slot or -1 while it is empty
+        private final long[][] decodedEpochSeconds;
+        private final int[][] decodedNanos;
+        private final long[][] decodedUnscaledReadings;
+        private final byte[][] decodedScales;
+        private final int[] decodedBlocks;
+        private final long[] lastUsed;
+        private long uses;
+        private int slot = -1;
+
+        // the columns holding the reading last located and its offset in them
+        private long[] epochSeconds;
+        private int[] nanos;
+        private long[] unscaledReadings;
+        private byte[] readingScales;
+        private int offset;
+
+        Cursor(Columns view) {
+            this.view = view;
+            this.sealedSize = view.blockCount * SeriesBlock.CAPACITY;
+            int slots = Math.min(CACHED_BLOCKS, view.blockCount);
+            this.decodedEpochSeconds = new long[slots][];
+            this.decodedNanos = new int[slots][];
+            this.decodedUnscaledReadings = new long[slots][];
+            this.decodedScales = new byte[slots][];
+            this.decodedBlocks = new int[slots];
+            this.lastUsed = new long[slots];
+            Arrays.fill(decodedBlocks, -1);
+        }
+
+        ElectricityReading get(int index) {
+            locate(index);
+            return new ElectricityReading(
+                    Instant.ofEpochSecond(epochSeconds[offset], nanos == null ? 0 : nanos[offset]),
+                    BigDecimal.valueOf(unscaledReadings[offset], readingScales[offset]));
+        }
+
+        long epochSecond(int index) {
+            locate(index);
+            return epochSeconds[offset];
+        }
+
+        int nano(int index) {
+            locate(index);
+            return nanos == null ? 0 : nanos[offset];
+        }
+
+        long unscaledReading(int index) {
+            locate(index);
+            return unscaledReadings[offset];
+        }
+
+        byte scale(int index) {
+            locate(index);
+            return readingScales[offset];
+        }
+
+        int compareTime(int index, Instant time) {
+            return compareTime(index, time.getEpochSecond(), time.getNano());
+        }
+
+        int compareTime(int index, long epochSecond, int nano) {
+            locate(index);
+            int bySecond = Long.compare(epochSeconds[offset], epochSecond);
+            return bySecond != 0 ? bySecond : Integer.compare(nanos == null ? 0 : nanos[offset], nano);
+        }
+
+        int compareTimes(int index, int otherIndex) {
+            return compareTime(index, epochSecond(otherIndex), nano(otherIndex));
+        }
+
+        private void locate(int index) {
+            if (index >= sealedSize) {
+                epochSeconds = view.epochSeconds;
+                nanos = view.nanos;
+                unscaledReadings = view.unscaledReadings;
+                readingScales = view.readingScales;
+                offset = index - sealedSize;
+                return;
+            }
+            int block = index / SeriesBlock.CAPACITY;
+            if (slot < 0 || decodedBlocks[slot] != block) {
+                slot = slotOf(block);
+            }
+            lastUsed[slot] = ++uses;
+            epochSeconds = decodedEpochSeconds[slot];
+            nanos = decodedNanos[slot];
+            unscaledReadings = decodedUnscaledReadings[slot];
+            readingScales = decodedScales[slot];
+            offset = index % SeriesBlock.CAPACITY;
+        }
+
+        /**
+         * @return the slot holding the block, decoding it into the slot used longest ago if no slot holds it
+         */
+        private int slotOf(int block) {
+            int leastRecent = 0;
+            for (int candidate = 0; candidate < decodedBlocks.length; candidate++) {
+                if (decodedBlocks[candidate] == block) {
+                    return candidate;
+                }
+                if (lastUsed[candidate] < lastUsed[leastRecent]) {
+                    leastRecent = candidate;
+                }
+            }
+            if (decodedEpochSeconds[leastRecent] == null) {
+                decodedEpochSeconds[leastRecent] = new long[SeriesBlock.CAPACITY];
+                decodedNanos[leastRecent] = new int[SeriesBlock.CAPACITY];
+                decodedUnscaledReadings[leastRecent] = new long[SeriesBlock.CAPACITY];
+                decodedScales[leastRecent] = new byte[SeriesBlock.CAPACITY];
+            }
+            view.blocks[block].decode(
+                    decodedEpochSeconds[leastRecent],
+                    decodedNanos[leastRecent],
+                    decodedUnscaledReadings[leastRecent],
+                    decodedScales[leastRecent]);
+            decodedBlocks[leastRecent] = block;
+            return leastRecent;
+        }
+    }
+
+    private static final class Columns {
+
+        static final Columns EMPTY = new Columns(
+                new SeriesBlock[0],
+                0,
+                new long[0],
+                null,
+                new long[0],
+                new byte[0],
+                0,
+                ReadingSummary.EMPTY,
+                true,
+                null,
+                0,
+                List.of());
+
+        // sealed blocks, every one of them full, and the columns of the open block the latest readings are in
+        final SeriesBlock[] blocks;
+        final int blockCount;
+        final long[] epochSeconds;
+        final int[] nanos;
+        final long[] unscaledReadings;
+        final byte[] readingScales;
+        final int openSize;
+        final int size;
+        final ReadingSummary summary;
+        final boolean sortedByTime;
+        final List<ReadingRollup> rollups;
+
+        // time order of the first readings, carried over from the previous view, or null when the first
+        // sortedPrefix readings are already in time order
+        private final int[] carriedTimeOrder;
+        private final int sortedPrefix;
+        // time order of all the readings, built on first use
+        private volatile int[] timeOrder;
+
+        Columns(
+                SeriesBlock[] blocks,
+                int blockCount,
+                long[] epochSeconds,
+                int[] nanos,
+                long[] unscaledReadings,
+                byte[] readingScales,
+                int openSize,
+                ReadingSummary summary,
+                boolean sortedByTime,
+                int[] carriedTimeOrder,
+                int sortedPrefix,
+                List<ReadingRollup> rollups) {
+            this.blocks = blocks;
+            this.blockCount = blockCount;
+            this.epochSeconds = epochSeconds;
+            this.nanos = nanos;
+            this.unscaledReadings = unscaledReadings;
+            this.readingScales = readingScales;
+            this.openSize = openSize;
+            this.size = blockCount * SeriesBlock.CAPACITY + openSize;
+            this.summary = summary;
+            this.sortedByTime = sortedByTime;
+            this.carriedTimeOrder = carriedTimeOrder;
+            this.sortedPrefix = sortedPrefix;
+            this.rollups = rollups;
+        }
+
+        int[] knownTimeOrder() {
+            int[] built = timeOrder;
+            return built != null ? built : carriedTimeOrder;
+        }
+
+        int[] timeOrder() {
+            int[] built = timeOrder;
+            if (built == null) {
+                built = buildTimeOrder();
+                timeOrder = built;
+            }
+            return built;
+        }
+
+        private int[] buildTimeOrder() {
+            Cursor cursor = new Cursor(this);
+            int[] ordered = carriedTimeOrder != null ? carriedTimeOrder : IntStream.range(0, sortedPrefix).toArray();
+            int arrivedFrom = ordered.length;
+            int arrivedCount = size - arrivedFrom;
+            long[] arrivedSeconds = new long[arrivedCount];
+            int[] arrivedNanos = new int[arrivedCount];
+            for (int i = 0; i < arrivedCount; i++) {
+                arrivedSeconds[i] = cursor.epochSecond(arrivedFrom + i);
+                arrivedNanos[i] = cursor.nano(arrivedFrom + i);
+            }
+            int[] arrived = sortByTime(arrivedSeconds, arrivedNanos);
+
+            int[] merged = new int[size];
+            int fromOrdered = 0;
+            int fromArrived = 0;
+            for (int position = 0; position < size; position++) {
+                boolean takeOrdered = fromArrived == arrivedCount;
+                if (!takeOrdered && fromOrdered < ordered.length) {
+                    int next = arrived[fromArrived];
+                    takeOrdered =
+                            cursor.compareTime(ordered[fromOrdered], arrivedSeconds[next], arrivedNanos[next]) <= 0;
+                }
+                if (takeOrdered) {
+                    merged[position] = ordered[fromOrdered++];
+                } else {
+                    merged[position] = arrivedFrom + arrived[fromArrived++];
+                }
+            }
+            return merged;
+        }
+
+        /**
+         * Sorts positions in the given columns by time with a bottom-up merge sort, which keeps readings taken at the
+         * same time in the order they arrived, without boxing a position for each reading.
+         *
+         * @return the positions in time order
+         */
+        private static int[] sortByTime(long[] epochSeconds, int[] nanos) {
+            int count = epochSeconds.length;
+            int[] sorted = IntStream.range(0, count).toArray();
+            int[] merged = new int[count];
+            for (int width = 1; width < count; width *= 2) {
+                for (int low = 0; low < count; low += 2 * width) {
+                    int middle = Math.min(low + width, count);
+                    int high = Math.min(low + 2 * width, count);
+                    int left = low;
+                    int right = middle;
+                    for (int position = low; position < high; position++) {
+                        if (right == high
+                                || (left < middle
+                                        && compareTimes(epochSeconds, nanos, sorted[left], sorted[right]) <= 0)) {
+                            merged[position] = sorted[left++];
+                        } else {
+                            merged[position] = sorted[right++];
+                        }
+                    }
+                }
+                int[] swap = sorted;
+                sorted = merged;
+                merged = swap;
+            }
+            return sorted;
+        }
+
+        private static int compareTimes(long[] epochSeconds, int[] nanos, int position, int otherPosition) {
+            int bySecond = Long.compare(epochSeconds[position], epochSeconds[otherPosition]);
+            return bySecond != 0 ? bySecond : Integer.compare(nanos[position], nanos[otherPosition]);
+        }
+    }
+}
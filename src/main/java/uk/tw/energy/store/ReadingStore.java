@@ -0,0 +1,132 @@
+package uk.tw.energy.store;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.domain.ReadingConsumer;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+
+/**
+ * Holds the electricity readings of every smart meter.
+ *
+ * <p>Readings are returned in the order in which they were stored. Readings that have been {@linkplain #compact
+ * compacted} are no longer returned one by one, but as part of the meter's rollups.
+ */
+public interface ReadingStore {
+
+    Optional<List<ElectricityReading>> getReadings(String smartMeterId);
+
+    /**
+     * @return up to {@code limit} of the meter's readings taken from {@code from}, inclusive, until {@code to},
+     *     exclusive, in time order
+     */
+    Optional<List<ElectricityReading>> getReadings(String smartMeterId, Instant from, Instant to, int limit);
+
+    /**
+     * Hands the meter's readings to the action one at a time, in the order they were stored, without collecting them.
+     *
+     * @return false if the meter is not known
+     */
+    boolean forEachReading(String smartMeterId, Consumer<ElectricityReading> action);
+
+    /**
+     * Hands the same readings as {@link #getReadings(String, Instant, Instant, int)} to the action one at a time,
+     * without collecting them, even when they arrived out of order.
+     *
+     * @return false if the meter is not known
+     */
+    boolean forEachReading(
+            String smartMeterId, Instant from, Instant to, int limit, Consumer<ElectricityReading> action);
+
+    /**
+     * Hands the meter's readings and then its rollups to the actions one at a time, both as they were at the same
+     * moment, so that a reading compacted meanwhile is neither missed nor seen twice.
+     *
+     * @return false if the meter is not known
+     */
+    boolean forEachReadingAndRollup(
+            String smartMeterId, Consumer<ElectricityReading> readingAction, Consumer<ReadingRollup> rollupAction);
+
+    /**
+     * Hands the meter's readings and rollups to the actions merged in time order, each rollup ahead of the readings
+     * taken from its start on, all as they were at the same moment. Readings are handed over by their columns, without
+     * an {@link ElectricityReading} being created for each.
+     *
+     * @return the summary of the readings handed over, or empty if the meter is not known
+     */
+    Optional<ReadingSummary> forEachInTimeOrder(
+            String smartMeterId, ReadingConsumer readingAction, Consumer<ReadingRollup> rollupAction);
+
+    /**
+     * Hands the meter's readings and rollups to the exporter as {@link #forEachInTimeOrder} does, and then their
+     * summary. A store that still holds the meter as a {@link StoreSnapshot} record may hand over the record instead.
+     *
+     * @return false if the meter is not known
+     */
+    default boolean exportInTimeOrder(String smartMeterId, MeterExporter exporter) {
+        Optional<ReadingSummary> summary = forEachInTimeOrder(smartMeterId, exporter, exporter::acceptRollup);
+        summary.ifPresent(exporter::acceptSummary);
+        return summary.isPresent();
+    }
+
+    /**
+     * @throws IllegalArgumentException if any of the readings cannot be stored, in which case none of them are
+     */
+    default void storeReadings(String smartMeterId, List<ElectricityReading> electricityReadings) {
+        storeReadings(smartMeterId, ReadingColumns.of(electricityReadings));
+    }
+
+    /**
+     * Stores readings already split into columns, without an {@link ElectricityReading} being created for each.
+     */
+    void storeReadings(String smartMeterId, ReadingColumns readings);
+
+    /**
+     * Drops the meter and everything stored for it.
+     *
+     * @return the meter's readings as they were when dropped, not counting those that had been compacted
+     */
+    Optional<List<ElectricityReading>> removeReadings(String smartMeterId);
+
+    /**
+     * @return the ids of the meters with readings
+     */
+    List<String> getSmartMeterIds();
+
+    /**
+     * @return the rollups of the meter's compacted readings, in time order
+     */
+    Optional<List<ReadingRollup>> getRollups(String smartMeterId);
+
+    /**
+     * Rolls every meter's readings up as far as the retention policy allows at the given time.
+     *
+     * @return number of readings rolled up
+     */
+    long compact(RetentionPolicy retentionPolicy, Instant now);
+
+    /**
+     * @return totals over all the meter's readings, including those that have been compacted, kept up to date as
+     *     readings are stored rather than computed on demand
+     */
+    Optional<ReadingSummary> getSummary(String smartMeterId);
+
+    /**
+     * @return number of meters with readings
+     */
+    long meterCount();
+
+    /**
+     * @return number of readings of all the meters that have not been compacted
+     */
+    long readingCount();
+
+    /**
+     * @return an estimate of the heap retained by the stored readings
+     */
+    long sizeInBytes();
+}
@@ -0,0 +1,44 @@
+package uk.tw.energy.store;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * How long readings are kept at each resolution. Readings are kept one by one until they are {@code raw} old, then as
+ * quarter-hour rollups until they are {@code quarterHourly} old, and from then on as hourly rollups.
+ *
+ * <p>A reading is only rolled up once the whole quarter-hour it falls in is old enough, and a quarter-hour once the
+ * whole hour, so that a period is always rolled up as a whole.
+ */
+public record RetentionPolicy(Duration raw, Duration quarterHourly) {
+
+    public static final Duration QUARTER_HOUR = Duration.ofMinutes(15);
+    public static final Duration HOUR = Duration.ofHours(1);
+
+    public RetentionPolicy {
+        if (raw.isNegative() || quarterHourly.compareTo(raw) < 0) {
+            throw new IllegalArgumentException(
+                    "Readings must be kept raw for " + raw + " and as quarter-hours for at least as long, not "
+                            + quarterHourly);
+        }
+    }
+
+    /**
+     * @return the time before which readings are rolled up into quarter-hours
+     */
+    public Instant rawCutoff(Instant now) {
+        return periodStart(now.minus(raw), QUARTER_HOUR);
+    }
+
+    /**
+     * @return the time before which quarter-hour rollups are rolled up into hours
+     */
+    public Instant quarterHourlyCutoff(Instant now) {
+        return periodStart(now.minus(quarterHourly), HOUR);
+    }
+
+    public static Instant periodStart(Instant time, Duration period) {
+        long epochSecond = time.getEpochSecond();
+        return Instant.ofEpochSecond(epochSecond - Math.floorMod(epochSecond, period.getSeconds()));
+    }
+}
@@ -0,0 +1,180 @@
+package uk.tw.energy.store;
+
+import java.util.Arrays;
+
+/**
+ * A sealed run of up to {@link #CAPACITY} readings of a {@link MeterSeries}, encoded the way Gorilla encodes time
+ * series, though in whole bytes rather than bits so that decoding needs no bit twiddling.
+ *
+ * <p>Epoch seconds are stored as the first one, the delta to the second, and from then on the change in delta, which
+ * is zero for a meter reporting at a regular interval. Readings are stored as the first unscaled value followed by the
+ * delta to each next one, which stays small while the power drawn varies slowly. Every number is zigzag encoded, so
+ * that small negative numbers stay small, and written as a varint of seven bits a byte. A regular, slowly varying
+ * series takes around three bytes a reading.
+ *
+ * <p>Nano adjustments are only written for a block that has any, each as the delta to the previous one. A scale is
+ * written once for the whole block when every reading in it has the same scale, and otherwise once for each reading.
+ * Arithmetic on deltas wraps around, which decoding undoes exactly, so any long is stored as it was.
+ */
+final class SeriesBlock {
+
+    static final int CAPACITY = 128;
+
+    private static final int HAS_NANOS = 1;
+    private static final int MIXED_SCALES = 2;
+    // flags, scale, then at most a ten byte varint for each of the epoch second, reading and nano adjustment, and a
+    // scale, for every reading
+    private static final int MAX_ENCODED_BYTES = 2 + CAPACITY * (10 + 10 + 5 + 1);
+    // object header and fields, and the header of the encoded bytes
+    private static final long OVERHEAD_BYTES = 24 + 16;
+
+    final int count;
+    private final byte[] encoded;
+
+    private SeriesBlock(int count, byte[] encoded) {
+        this.count = count;
+        this.encoded = encoded;
+    }
+
+    /**
+     * @param nanos nano adjustments, or null when they are all zero
+     */
+    static SeriesBlock encode(
+            long[] epochSeconds, int[] nanos, long[] unscaledReadings, byte[] readingScales, int count) {
+        boolean hasNanos = false;
+        boolean mixedScales = false;
+        for (int i = 0; i < count; i++) {
+            hasNanos |= nanos != null && nanos[i] != 0;
+            mixedScales |= readingScales[i] != readingScales[0];
+        }
+
+        Writer writer = new Writer();
+        writer.put((hasNanos ? HAS_NANOS : 0) | (mixedScales ? MIXED_SCALES : 0));
+        if (!mixedScales) {
+            writer.put(readingScales[0]);
+        }
+        long previousEpochSecond = 0;
+        long previousDelta = 0;
+        long previousUnscaled = 0;
+        int previousNano = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = epochSeconds[i] - previousEpochSecond;
+            writer.putZigzag(i < 2 ? delta : delta - previousDelta);
+            previousDelta = delta;
+            previousEpochSecond = epochSeconds[i];
+            if (hasNanos) {
+                writer.putZigzag(nanos[i] - previousNano);
+                previousNano = nanos[i];
+            }
+            writer.putZigzag(unscaledReadings[i] - previousUnscaled);
+            previousUnscaled = unscaledReadings[i];
+            if (mixedScales) {
+                writer.put(readingScales[i]);
+            }
+        }
+        return new SeriesBlock(count, writer.toByteArray());
+    }
+
+    /**
+     * @return the block of {@code count} readings that {@link #encode} encoded into the given bytes, as read back from
+     *     a {@link StoreSnapshot}
+     */
+    static SeriesBlock of(int count, byte[] encoded) {
+        return new SeriesBlock(count, encoded);
+    }
+
+    /**
+     * @return the encoded readings, which must not be modified
+     */
+    byte[] encoded() {
+        return encoded;
+    }
+
+    /**
+     * Decodes the block into the first {@link #count} slots of each column.
+     */
+    void decode(long[] epochSeconds, int[] nanos, long[] unscaledReadings, byte[] readingScales) {
+        Reader reader = new Reader(encoded);
+        int flags = reader.get();
+        boolean hasNanos = (flags & HAS_NANOS) != 0;
+        boolean mixedScales = (flags & MIXED_SCALES) != 0;
+        byte scale = mixedScales ? 0 : reader.get();
+
+        long previousEpochSecond = 0;
+        long previousDelta = 0;
+        long previousUnscaled = 0;
+        int previousNano = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = i < 2 ? reader.getZigzag() : previousDelta + reader.getZigzag();
+            previousEpochSecond += delta;
+            previousDelta = delta;
+            epochSeconds[i] = previousEpochSecond;
+            previousNano += hasNanos ? (int) reader.getZigzag() : 0;
+            nanos[i] = previousNano;
+            previousUnscaled += reader.getZigzag();
+            unscaledReadings[i] = previousUnscaled;
+            readingScales[i] = mixedScales ? reader.get() : scale;
+        }
+    }
+
+    long sizeInBytes() {
+        return OVERHEAD_BYTES + encoded.length;
+    }
+
+    private static final class Writer {
+
+        private final byte[] bytes = new byte[MAX_ENCODED_BYTES];
+        private int position;
+
+        void put(int value) {
+            bytes[position++] = (byte) value;
+        }
+
+        void putZigzag(long value) {
+            putVarint((value << 1) ^ (value >> 63));
+        }
+
+        void putVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        byte get() {
+            return bytes[position++];
+        }
+
+        long getZigzag() {
+            long value = getVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long getVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package uk.tw.energy.store;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.domain.ReadingConsumer;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+
+/**
+ * A {@link ColumnarReadingStore} that starts from a {@link StoreSnapshot}, restoring each meter from the snapshot the
+ * first time the meter is asked for rather than all of them up front, so that the store is ready as soon as the
+ * snapshot is open. A restored meter's readings come back in time order, whatever order they were stored in.
+ *
+ * <p>A meter is restored at most once. Once it has been removed, it is not restored again, and readings stored for it
+ * afterwards start a new series.
+ *
+ * <p>{@linkplain #compact Compacting} the store only compacts the meters restored so far. The others are compacted
+ * as far as the latest compaction reached when they are restored, so the number of readings rolled up does not count
+ * theirs.
+ */
+public class SnapshotReadingStore implements ReadingStore {
+
+    private final ColumnarReadingStore readings = new ColumnarReadingStore();
+    private final StoreSnapshot snapshot;
+    // meters of the snapshot that have been restored, including those removed since
+    private final Set<String> restored = ConcurrentHashMap.newKeySet();
+    private final AtomicLong unrestoredReadings;
+    private final AtomicReference<Cutoffs> compactedTo = new AtomicReference<>();
+
+    public SnapshotReadingStore(StoreSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.unrestoredReadings = new AtomicLong(snapshot.readingCount());
+    }
+
+    @Override
+    public Optional<List<ElectricityReading>> getReadings(String smartMeterId) {
+        restore(smartMeterId);
+        return readings.getReadings(smartMeterId);
+    }
+
+    @Override
+    public Optional<List<ElectricityReading>> getReadings(String smartMeterId, Instant from, Instant to, int limit) {
+        restore(smartMeterId);
+        return readings.getReadings(smartMeterId, from, to, limit);
+    }
+
+    @Override
+    public boolean forEachReading(String smartMeterId, Consumer<ElectricityReading> action) {
+        restore(smartMeterId);
+        return readings.forEachReading(smartMeterId, action);
+    }
+
+    @Override
+    public boolean forEachReading(
+            String smartMeterId, Instant from, Instant to, int limit, Consumer<ElectricityReading> action) {
+        restore(smartMeterId);
+        return readings.forEachReading(smartMeterId, from, to, limit, action);
+    }
+
+    @Override
+    public boolean forEachReadingAndRollup(
+            String smartMeterId, Consumer<ElectricityReading> readingAction, Consumer<ReadingRollup> rollupAction) {
+        restore(smartMeterId);
+        return readings.forEachReadingAndRollup(smartMeterId, readingAction, rollupAction);
+    }
+
+    @Override
+    public Optional<ReadingSummary> forEachInTimeOrder(
+            String smartMeterId, ReadingConsumer readingAction, Consumer<ReadingRollup> rollupAction) {
+        restore(smartMeterId);
+        return readings.forEachInTimeOrder(smartMeterId, readingAction, rollupAction);
+    }
+
+    @Override
+    public void storeReadings(String smartMeterId, ReadingColumns batch) {
+        restore(smartMeterId);
+        readings.storeReadings(smartMeterId, batch);
+    }
+
+    @Override
+    public Optional<List<ElectricityReading>> removeReadings(String smartMeterId) {
+        restore(smartMeterId);
+        return readings.removeReadings(smartMeterId);
+    }
+
+    /**
+     * @return the ids of the meters restored or stored so far and those still in the snapshot
+     */
+    @Override
+    public List<String> getSmartMeterIds() {
+        Set<String> smartMeterIds = new HashSet<>(readings.getSmartMeterIds());
+        snapshot.forEachSmartMeterId(smartMeterId -> {
+            if (!restored.contains(smartMeterId)) {
+                smartMeterIds.add(smartMeterId);
+            }
+        });
+        return new ArrayList<>(smartMeterIds);
+    }
+
+    @Override
+    public Optional<List<ReadingRollup>> getRollups(String smartMeterId) {
+        restore(smartMeterId);
+        return readings.getRollups(smartMeterId);
+    }
+
+    @Override
+    public long compact(RetentionPolicy retentionPolicy, Instant now) {
+        Cutoffs cutoffs = new Cutoffs(retentionPolicy.rawCutoff(now), retentionPolicy.quarterHourlyCutoff(now));
+        compactedTo.accumulateAndGet(cutoffs, Cutoffs::latest);
+        return readings.compact(retentionPolicy, now);
+    }
+
+    @Override
+    public Optional<ReadingSummary> getSummary(String smartMeterId) {
+        restore(smartMeterId);
+        return readings.getSummary(smartMeterId);
+    }
+
+    @Override
+    public long meterCount() {
+        return readings.meterCount() + snapshot.meterCount() - restored.size();
+    }
+
+    @Override
+    public long readingCount() {
+        return readings.readingCount() + unrestoredReadings.get();
+    }
+
+    /**
+     * @return an estimate of the heap retained by the restored meters' readings, as the others are only mapped
+     */
+    @Override
+    public long sizeInBytes() {
+        return readings.sizeInBytes();
+    }
+
+    /**
+     * Hands over the record of a meter not yet restored from the snapshot, to be copied rather than restored.
+     */
+    @Override
+    public boolean exportInTimeOrder(String smartMeterId, MeterExporter exporter) {
+        ByteBuffer record = restored.contains(smartMeterId) ? null : snapshot.record(smartMeterId);
+        if (record == null) {
+            return readings.exportInTimeOrder(smartMeterId, exporter);
+        }
+        exporter.acceptSnapshotRecord(record);
+        return true;
+    }
+
+    private void restore(String smartMeterId) {
+        readings.restoreIfAbsent(smartMeterId, id -> {
+            if (restored.contains(id)) {
+                return null;
+            }
+            MeterSeries series = snapshot.restore(id);
+            if (series == null) {
+                return null;
+            }
+            restored.add(id);
+            unrestoredReadings.addAndGet(-series.size());
+            Cutoffs cutoffs = compactedTo.get();
+            if (cutoffs != null) {
+                series.compact(cutoffs.raw(), cutoffs.quarterHourly());
+            }
+            return series;
+        });
+    }
+
+    /**
+     * How far compaction has reached: readings are rolled up before the first cutoff, and quarter-hours before the
+     * second.
+     */
+    private record Cutoffs(Instant raw, Instant quarterHourly) {
+
+        static Cutoffs latest(Cutoffs current, Cutoffs other) {
+            if (current == null) {
+                return other;
+            }
+            return new Cutoffs(
+                    current.raw.isAfter(other.raw) ? current.raw : other.raw,
+                    current.quarterHourly.isAfter(other.quarterHourly) ? current.quarterHourly : other.quarterHourly);
+        }
+    }
+}
@@ -0,0 +1,685 @@
+package uk.tw.energy.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+import uk.tw.energy.domain.SnapshotStatistics;
+
+/**
+ * A copy of every meter's readings, the accounts and the price plans as they were at one time, in a single file that
+ * a process can start from rather than loading them from where they came from.
+ *
+ * <p>The file holds a header of {@value #HEADER_BYTES} bytes, the price plans, the accounts, a record for each meter,
+ * and a hash table of the meters' ids. A meter's record holds its id, its summary, its readings in time order in
+ * {@link SeriesBlock}s encoded exactly as a {@link MeterSeries} keeps them, and its rollups. Numbers are big-endian,
+ * a string is its length in UTF-8 bytes followed by the bytes, and a {@link BigDecimal} is the length of its unscaled
+ * value in two's complement, its scale and then the unscaled value. A length of -1 stands for null.
+ *
+ * <p>The hash table has a power of two slots, at least twice as many as there are meters, each the offset of a
+ * meter's record in the low {@value #OFFSET_BITS} bits and 16 bits of the hash of its id above them, or zero when the
+ * slot is empty. A meter is found by probing from the slot its hash picks until its id or an empty slot is reached.
+ *
+ * <p>{@linkplain #open Opening} a snapshot reads the price plans and accounts, and maps the rest of the file into
+ * memory without reading it. A meter's record is only found and decoded when it is {@linkplain #restore restored},
+ * so opening a snapshot takes the same time however many meters it holds, but time in proportion to the number of
+ * accounts, which are all read into a map. The file is mapped in overlapping regions of 1 GiB plus the longest record,
+ * so that every record lies within one region.
+ */
+public final class StoreSnapshot {
+
+    static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 8;
+    static final int OFFSET_BITS = 48;
+    // a record starts with its length and the number of readings in it
+    static final int ID_OFFSET = 2 * Integer.BYTES;
+
+    private static final int MAGIC = 0x4A4F4953; // "JOIS"
+    private static final int VERSION = 1;
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_BYTES = 1L << REGION_SHIFT;
+    // so that a region and the longest record after its start can be mapped as one buffer
+    private static final int MAX_RECORD_BYTES = (int) REGION_BYTES - 1;
+    private static final int TABLE_ENTRY_BYTES = Long.BYTES;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final List<PricePlan> pricePlans;
+    private final Map<String, String> accounts;
+    private final long meterCount;
+    private final long readingCount;
+    private final int tableBits;
+    private final long tableOffset;
+    private final MappedByteBuffer[] regions;
+
+    private StoreSnapshot(
+            List<PricePlan> pricePlans,
+            Map<String, String> accounts,
+            long meterCount,
+            long readingCount,
+            int tableBits,
+            long tableOffset,
+            MappedByteBuffer[] regions) {
+        this.pricePlans = pricePlans;
+        this.accounts = accounts;
+        this.meterCount = meterCount;
+        this.readingCount = readingCount;
+        this.tableBits = tableBits;
+        this.tableOffset = tableOffset;
+        this.regions = regions;
+    }
+
+    /**
+     * Writes a snapshot of the readings of every meter in the store, the accounts and the price plans. The snapshot is
+     * written next to the file and moved over it once complete, so the file is never left half written, and a process
+     * that opened the file before keeps the snapshot it opened.
+     *
+     * <p>Each meter's readings, rollups and summary are taken as they were at the same moment, but different meters
+     * may be taken at different moments while readings are being stored.
+     *
+     * @return what was written
+     * @throws IllegalStateException if a meter has too many readings to fit in a record
+     */
+    public static SnapshotStatistics write(
+            Path file, ReadingStore readingStore, Map<String, String> accounts, List<PricePlan> pricePlans)
+            throws IOException {
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        long meterCount = 0;
+        long readingCount = 0;
+        int maxRecordBytes = TABLE_ENTRY_BYTES;
+        long[] recordOffsets = new long[16];
+        int[] idHashes = new int[16];
+        long tableOffset;
+        int tableBits;
+        try (CountingOutputStream counting =
+                        new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(written), 1 << 16));
+                DataOutputStream out = new DataOutputStream(counting)) {
+            out.write(new byte[HEADER_BYTES]);
+            writePricePlans(out, pricePlans);
+            writeAccounts(out, accounts);
+
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(recordBytes);
+            for (String smartMeterId : readingStore.getSmartMeterIds()) {
+                RecordEncoder encoder = new RecordEncoder();
+                if (!readingStore.exportInTimeOrder(smartMeterId, encoder)) {
+                    // removed since its id was listed
+                    continue;
+                }
+                long recordOffset = counting.count;
+                int readings;
+                if (encoder.snapshotRecord() != null) {
+                    // a meter not yet restored from the snapshot the store started from is copied rather than restored
+                    ByteBuffer copied = encoder.snapshotRecord();
+                    readings = readingCountOf(copied);
+                    maxRecordBytes = Math.max(maxRecordBytes, copied.remaining());
+                    writeBuffer(out, copied);
+                } else {
+                    recordBytes.reset();
+                    writeRecord(record, smartMeterId, encoder);
+                    int recordLength = ID_OFFSET + recordBytes.size();
+                    if (recordBytes.size() > MAX_RECORD_BYTES - ID_OFFSET) {
+                        throw new IllegalStateException(
+                                "Smart meter " + smartMeterId + " has too many readings to write");
+                    }
+                    readings = encoder.size();
+                    maxRecordBytes = Math.max(maxRecordBytes, recordLength);
+                    out.writeInt(recordLength);
+                    out.writeInt(readings);
+                    recordBytes.writeTo(out);
+                }
+
+                if (meterCount == recordOffsets.length) {
+                    recordOffsets = Arrays.copyOf(recordOffsets, recordOffsets.length * 2);
+                    idHashes = Arrays.copyOf(idHashes, idHashes.length * 2);
+                }
+                recordOffsets[(int) meterCount] = recordOffset;
+                idHashes[(int) meterCount] = smartMeterId.hashCode();
+                meterCount++;
+                readingCount += readings;
+            }
+
+            tableOffset = counting.count;
+            tableBits = tableBits(meterCount);
+            for (long entry : buildTable(tableBits, recordOffsets, idHashes, (int) meterCount)) {
+                out.writeLong(entry);
+            }
+            if (counting.count > OFFSET_MASK) {
+                throw new IllegalStateException("Snapshot is too large to address");
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(meterCount)
+                    .putLong(readingCount)
+                    .putInt(maxRecordBytes)
+                    .putInt(tableBits)
+                    .putLong(tableOffset)
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SnapshotStatistics(meterCount, readingCount, accounts.size(), pricePlans.size(), Files.size(file));
+    }
+
+    /**
+     * Reads the price plans and accounts of the snapshot and maps its meters' records into memory.
+     *
+     * @throws IllegalStateException if the file is not a snapshot this version can read
+     */
+    public static StoreSnapshot open(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || in.readInt() != MAGIC) {
+                throw new IllegalStateException(file + " is not a snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalStateException(
+                        file + " is a snapshot of version " + version + " rather than " + VERSION);
+            }
+            long meterCount = in.readLong();
+            long readingCount = in.readLong();
+            int maxRecordBytes = in.readInt();
+            int tableBits = in.readInt();
+            long tableOffset = in.readLong();
+            List<PricePlan> pricePlans = readPricePlans(in);
+            Map<String, String> accounts = readAccounts(in);
+
+            MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_BYTES - 1) >>> REGION_SHIFT)];
+            for (int region = 0; region < regions.length; region++) {
+                long start = region * REGION_BYTES;
+                long length = Math.min(size - start, REGION_BYTES + maxRecordBytes);
+                regions[region] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            // the mappings stay valid once the channel is closed
+            return new StoreSnapshot(pricePlans, accounts, meterCount, readingCount, tableBits, tableOffset, regions);
+        }
+    }
+
+    /**
+     * @return the price plans, in the order they were in when written
+     */
+    public List<PricePlan> pricePlans() {
+        return pricePlans;
+    }
+
+    /**
+     * @return the price plan id of each meter's account
+     */
+    public Map<String, String> accounts() {
+        return accounts;
+    }
+
+    /**
+     * @return number of meters with readings
+     */
+    public long meterCount() {
+        return meterCount;
+    }
+
+    /**
+     * @return number of readings of all the meters, not counting those rolled up
+     */
+    public long readingCount() {
+        return readingCount;
+    }
+
+    /**
+     * @return a new series holding the meter's readings, rollups and summary as they were written, or null if the
+     *     meter had no readings
+     */
+    MeterSeries restore(String smartMeterId) {
+        long offset = find(smartMeterId);
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer record = at(offset + ID_OFFSET);
+        skipString(record);
+
+        ReadingSummary summary = readSummary(record);
+        SeriesBlock[] blocks = new SeriesBlock[record.getInt()];
+        for (int block = 0; block < blocks.length; block++) {
+            blocks[block] = SeriesBlock.of(SeriesBlock.CAPACITY, readBytes(record));
+        }
+        int openSize = record.getInt();
+        ReadingColumns openReadings = new ReadingColumns(openSize);
+        if (openSize > 0) {
+            long[] epochSeconds = new long[openSize];
+            int[] nanos = new int[openSize];
+            long[] unscaledReadings = new long[openSize];
+            byte[] readingScales = new byte[openSize];
+            SeriesBlock.of(openSize, readBytes(record)).decode(epochSeconds, nanos, unscaledReadings, readingScales);
+            for (int i = 0; i < openSize; i++) {
+                openReadings.add(epochSeconds[i], nanos[i], unscaledReadings[i], readingScales[i]);
+            }
+        }
+        int rollupCount = record.getInt();
+        List<ReadingRollup> rollups = new ArrayList<>(rollupCount);
+        for (int i = 0; i < rollupCount; i++) {
+            rollups.add(new ReadingRollup(
+                    readInstant(record),
+                    readInstant(record),
+                    record.getLong(),
+                    readDecimal(record),
+                    readDecimal(record),
+                    readDecimal(record)));
+        }
+        return MeterSeries.restore(blocks, openReadings, summary, rollups);
+    }
+
+    /**
+     * Hands the id of every meter in the snapshot to the action, in no particular order.
+     */
+    void forEachSmartMeterId(Consumer<String> action) {
+        long slots = 1L << tableBits;
+        for (long slot = 0; slot < slots; slot++) {
+            long entry = getLong(tableOffset + slot * TABLE_ENTRY_BYTES);
+            if (entry != 0) {
+                ByteBuffer record = at((entry & OFFSET_MASK) + ID_OFFSET);
+                action.accept(new String(readBytes(record), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * @return the meter's record as it was written, to copy into another snapshot, or null if the meter had no
+     *     readings
+     */
+    ByteBuffer record(String smartMeterId) {
+        long offset = find(smartMeterId);
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer record = at(offset);
+        return record.limit(record.position() + record.getInt(record.position())).slice();
+    }
+
+    /**
+     * @return number of readings in a record returned by {@link #record}
+     */
+    static int readingCountOf(ByteBuffer record) {
+        return record.getInt(Integer.BYTES);
+    }
+
+    private long find(String smartMeterId) {
+        byte[] id = smartMeterId.getBytes(StandardCharsets.UTF_8);
+        long hash = mix(smartMeterId.hashCode());
+        long mask = (1L << tableBits) - 1;
+        for (long slot = slotOf(hash, tableBits); ; slot = (slot + 1) & mask) {
+            long entry = getLong(tableOffset + slot * TABLE_ENTRY_BYTES);
+            if (entry == 0) {
+                return -1;
+            }
+            long offset = entry & OFFSET_MASK;
+            if (entry >>> OFFSET_BITS == tagOf(hash) && hasId(offset, id)) {
+                return offset;
+            }
+        }
+    }
+
+    private boolean hasId(long offset, byte[] id) {
+        ByteBuffer record = at(offset + ID_OFFSET);
+        if (record.getInt() != id.length) {
+            return false;
+        }
+        return record.limit(record.position() + id.length).equals(ByteBuffer.wrap(id));
+    }
+
+    private ByteBuffer at(long offset) {
+        return regions[(int) (offset >>> REGION_SHIFT)].duplicate().position((int) (offset & (REGION_BYTES - 1)));
+    }
+
+    private long getLong(long offset) {
+        return regions[(int) (offset >>> REGION_SHIFT)].getLong((int) (offset & (REGION_BYTES - 1)));
+    }
+
+    private static int tableBits(long meterCount) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(1, meterCount * 2 - 1));
+    }
+
+    private static long[] buildTable(int tableBits, long[] recordOffsets, int[] idHashes, int meterCount) {
+        long[] table = new long[1 << tableBits];
+        int mask = table.length - 1;
+        for (int meter = 0; meter < meterCount; meter++) {
+            long hash = mix(idHashes[meter]);
+            int slot = (int) slotOf(hash, tableBits);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = tagOf(hash) << OFFSET_BITS | recordOffsets[meter];
+        }
+        return table;
+    }
+
+    private static long mix(int hashCode) {
+        return (hashCode & 0xFFFFFFFFL) * HASH_MULTIPLIER;
+    }
+
+    private static long slotOf(long hash, int tableBits) {
+        return hash >>> (Long.SIZE - tableBits);
+    }
+
+    private static long tagOf(long hash) {
+        return (hash >>> 8) & 0xFFFF;
+    }
+
+    private static void writeRecord(DataOutputStream out, String smartMeterId, RecordEncoder encoder)
+            throws IOException {
+        ReadingSummary summary = encoder.summary();
+        writeString(out, smartMeterId);
+        out.writeLong(summary.count());
+        writeDecimal(out, summary.sum());
+        if (summary.count() > 0) {
+            writeInstant(out, summary.earliest());
+            writeInstant(out, summary.latest());
+        }
+        List<byte[]> sealed = encoder.sealed();
+        out.writeInt(sealed.size());
+        for (byte[] block : sealed) {
+            writeBytes(out, block);
+        }
+        out.writeInt(encoder.openSize());
+        if (encoder.openSize() > 0) {
+            writeBytes(out, encoder.encodeOpen());
+        }
+        out.writeInt(encoder.rollups().size());
+        for (ReadingRollup rollup : encoder.rollups()) {
+            writeInstant(out, rollup.start());
+            writeInstant(out, rollup.end());
+            out.writeLong(rollup.count());
+            writeDecimal(out, rollup.sum());
+            writeDecimal(out, rollup.min());
+            writeDecimal(out, rollup.max());
+        }
+    }
+
+    private static ReadingSummary readSummary(ByteBuffer record) {
+        long count = record.getLong();
+        BigDecimal sum = readDecimal(record);
+        if (count == 0) {
+            return new ReadingSummary(0, sum, null, null);
+        }
+        return new ReadingSummary(count, sum, readInstant(record), readInstant(record));
+    }
+
+    private static void writePricePlans(DataOutputStream out, List<PricePlan> pricePlans) throws IOException {
+        out.writeInt(pricePlans.size());
+        for (PricePlan pricePlan : pricePlans) {
+            writeString(out, pricePlan.getPlanName());
+            writeString(out, pricePlan.getEnergySupplier());
+            writeDecimal(out, pricePlan.getUnitRate());
+            out.writeInt(pricePlan.getPeakTimeMultipliers().size());
+            for (PricePlan.PeakTimeMultiplier multiplier : pricePlan.getPeakTimeMultipliers()) {
+                out.writeByte(multiplier.getDayOfWeek().getValue());
+                out.writeLong(multiplier.getFrom().toNanoOfDay());
+                out.writeLong(multiplier.getTo().toNanoOfDay());
+                writeDecimal(out, multiplier.getMultiplier());
+            }
+        }
+    }
+
+    private static List<PricePlan> readPricePlans(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<PricePlan> pricePlans = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String planName = readString(in);
+            String energySupplier = readString(in);
+            BigDecimal unitRate = readDecimal(in);
+            int multiplierCount = in.readInt();
+            List<PricePlan.PeakTimeMultiplier> multipliers = new ArrayList<>(multiplierCount);
+            for (int j = 0; j < multiplierCount; j++) {
+                multipliers.add(new PricePlan.PeakTimeMultiplier(
+                        DayOfWeek.of(in.readByte()),
+                        LocalTime.ofNanoOfDay(in.readLong()),
+                        LocalTime.ofNanoOfDay(in.readLong()),
+                        readDecimal(in)));
+            }
+            pricePlans.add(new PricePlan(planName, energySupplier, unitRate, multipliers));
+        }
+        return Collections.unmodifiableList(pricePlans);
+    }
+
+    /**
+     * Writes the price plan ids once each, ahead of the accounts, which refer to them by their position.
+     */
+    private static void writeAccounts(DataOutputStream out, Map<String, String> accounts) throws IOException {
+        Map<String, Integer> pricePlanIndexes = new HashMap<>();
+        List<String> pricePlanIds = new ArrayList<>();
+        for (String pricePlanId : accounts.values()) {
+            if (pricePlanIndexes.putIfAbsent(pricePlanId, pricePlanIds.size()) == null) {
+                pricePlanIds.add(pricePlanId);
+            }
+        }
+        out.writeInt(pricePlanIds.size());
+        for (String pricePlanId : pricePlanIds) {
+            writeString(out, pricePlanId);
+        }
+        out.writeInt(accounts.size());
+        for (Map.Entry<String, String> account : accounts.entrySet()) {
+            writeString(out, account.getKey());
+            out.writeInt(pricePlanIndexes.get(account.getValue()));
+        }
+    }
+
+    private static Map<String, String> readAccounts(DataInputStream in) throws IOException {
+        String[] pricePlanIds = new String[in.readInt()];
+        for (int i = 0; i < pricePlanIds.length; i++) {
+            pricePlanIds[i] = readString(in);
+        }
+        int count = in.readInt();
+        Map<String, String> accounts = HashMap.newHashMap(count);
+        for (int i = 0; i < count; i++) {
+            accounts.put(readString(in), pricePlanIds[in.readInt()]);
+        }
+        return Collections.unmodifiableMap(accounts);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        return length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer in) {
+        in.position(in.position() + Integer.BYTES + in.getInt(in.position()));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeBuffer(DataOutputStream out, ByteBuffer buffer) throws IOException {
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 1 << 16)];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(unscaled.length);
+        out.writeInt(value.scale());
+        out.write(unscaled);
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        int scale = in.readInt();
+        return new BigDecimal(new BigInteger(in.readNBytes(length)), scale);
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        int scale = in.getInt();
+        byte[] unscaled = new byte[length];
+        in.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeLong(instant.getEpochSecond());
+        out.writeInt(instant.getNano());
+    }
+
+    private static Instant readInstant(ByteBuffer in) {
+        return Instant.ofEpochSecond(in.getLong(), in.getInt());
+    }
+
+    /**
+     * Seals readings handed over in time order into blocks as a {@link MeterSeries} would, keeping the readings after
+     * the last full block open, and keeps the rollups and summary handed over with them, or else the record to copy.
+     */
+    private static final class RecordEncoder implements MeterExporter {
+
+        private final List<byte[]> sealed = new ArrayList<>();
+        private final long[] epochSeconds = new long[SeriesBlock.CAPACITY];
+        private final int[] nanos = new int[SeriesBlock.CAPACITY];
+        private final long[] unscaledReadings = new long[SeriesBlock.CAPACITY];
+        private final byte[] readingScales = new byte[SeriesBlock.CAPACITY];
+        private final List<ReadingRollup> rollups = new ArrayList<>();
+        private int openSize;
+        private ReadingSummary summary;
+        private ByteBuffer snapshotRecord;
+
+        @Override
+        public void accept(long epochSecond, int nano, long unscaledReading, byte readingScale) {
+            epochSeconds[openSize] = epochSecond;
+            nanos[openSize] = nano;
+            unscaledReadings[openSize] = unscaledReading;
+            readingScales[openSize] = readingScale;
+            if (++openSize == SeriesBlock.CAPACITY) {
+                sealed.add(encodeOpen());
+                openSize = 0;
+            }
+        }
+
+        @Override
+        public void acceptRollup(ReadingRollup rollup) {
+            rollups.add(rollup);
+        }
+
+        @Override
+        public void acceptSummary(ReadingSummary summary) {
+            this.summary = summary;
+        }
+
+        @Override
+        public void acceptSnapshotRecord(ByteBuffer record) {
+            this.snapshotRecord = record;
+        }
+
+        List<byte[]> sealed() {
+            return sealed;
+        }
+
+        int openSize() {
+            return openSize;
+        }
+
+        int size() {
+            return sealed.size() * SeriesBlock.CAPACITY + openSize;
+        }
+
+        List<ReadingRollup> rollups() {
+            return rollups;
+        }
+
+        ReadingSummary summary() {
+            return summary;
+        }
+
+        ByteBuffer snapshotRecord() {
+            return snapshotRecord;
+        }
+
+        byte[] encodeOpen() {
+            return SeriesBlock.encode(epochSeconds, nanos, unscaledReadings, readingScales, openSize)
+                    .encoded();
+        }
+    }
+
+    /**
+     * Counts the bytes written, which {@link DataOutputStream} only does up to 2 GiB.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package uk.tw.energy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanCatalog;
+import uk.tw.energy.service.PricePlanService;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+public class MetricsConfigurationTest {
+
+    private final MetricsConfiguration metricsConfiguration = new MetricsConfiguration();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private ColumnarReadingStore readingStore;
+
+    @BeforeEach
+    public void setUp() {
+        readingStore = new ColumnarReadingStore();
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        readingStore.storeReadings("smart-meter-0", generator.generate(10));
+        readingStore.storeReadings("smart-meter-1", generator.generate(30));
+    }
+
+    @Test
+    public void shouldGaugeTheReadingStore() {
+        metricsConfiguration.readingStoreMetrics(readingStore).bindTo(registry);
+
+        assertThat(registry.get("joi.store.meters").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("joi.store.readings").gauge().value()).isEqualTo(40);
+        assertThat(registry.get("joi.store.readings.per.meter").gauge().value()).isEqualTo(20);
+        assertThat(registry.get("joi.store.size").gauge().value()).isEqualTo(readingStore.sizeInBytes());
+    }
+
+    @Test
+    public void shouldCountComparisonCacheHitsAndMisses() {
+        PricePlanService pricePlanService = new PricePlanService(
+                new PricePlanCatalog(new SeedingApplicationDataConfiguration().pricePlans()),
+                new MeterReadingService(readingStore));
+        metricsConfiguration.comparisonCacheMetrics(pricePlanService).bindTo(registry);
+
+        for (String smartMeterId : List.of("smart-meter-0", "smart-meter-0", "smart-meter-1")) {
+            pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId);
+        }
+
+        assertThat(registry.get("joi.comparison.cache.hits").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("joi.comparison.cache.misses").functionCounter().count()).isEqualTo(2);
+    }
+}
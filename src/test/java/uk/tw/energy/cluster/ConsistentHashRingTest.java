@@ -0,0 +1,72 @@
+package uk.tw.energy.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class ConsistentHashRingTest {
+
+    private static final int METERS = 30_000;
+    private static final List<String> NODES =
+            List.of("http://localhost:8080", "http://localhost:8081", "http://localhost:8082");
+
+    @Test
+    public void givenOneNodeShouldOwnEveryMeter() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("http://localhost:8080"), 128);
+
+        for (int meter = 0; meter < 100; meter++) {
+            assertThat(ring.ownerOf("smart-meter-" + meter)).isEqualTo("http://localhost:8080");
+        }
+    }
+
+    @Test
+    public void givenNodesInAnyOrderShouldAgreeOnTheOwnerOfEachMeter() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        ConsistentHashRing reversed = new ConsistentHashRing(NODES.reversed(), 128);
+
+        for (int meter = 0; meter < 1000; meter++) {
+            assertThat(reversed.ownerOf("smart-meter-" + meter)).isEqualTo(ring.ownerOf("smart-meter-" + meter));
+        }
+    }
+
+    @Test
+    public void givenSeveralNodesShouldShareTheMetersOutEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        Map<String, Integer> metersByNode = new HashMap<>();
+
+        for (int meter = 0; meter < METERS; meter++) {
+            metersByNode.merge(ring.ownerOf("smart-meter-" + meter), 1, Integer::sum);
+        }
+
+        assertThat(metersByNode).containsOnlyKeys(NODES);
+        assertThat(metersByNode.values())
+                .allSatisfy(meters -> assertThat(meters).isBetween(METERS / 4, METERS * 5 / 12));
+    }
+
+    @Test
+    public void givenNodeJoiningShouldOnlyMoveTheMetersItTakesOver() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        ConsistentHashRing joined = ring.withNode("http://localhost:8083");
+        int moved = 0;
+
+        for (int meter = 0; meter < METERS; meter++) {
+            String owner = joined.ownerOf("smart-meter-" + meter);
+            if (!owner.equals(ring.ownerOf("smart-meter-" + meter))) {
+                assertThat(owner).isEqualTo("http://localhost:8083");
+                moved++;
+            }
+        }
+
+        assertThat(moved).isBetween(METERS / 6, METERS / 3);
+        assertThat(joined.nodes()).hasSize(4);
+    }
+
+    @Test
+    public void givenNoNodesShouldReject() {
+        assertThatThrownBy(() -> new ConsistentHashRing(List.of(), 128)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
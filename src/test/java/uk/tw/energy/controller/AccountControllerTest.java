@@ -0,0 +1,123 @@
+package uk.tw.energy.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import uk.tw.energy.cluster.ClusterRouter;
+import uk.tw.energy.cluster.ClusterTopology;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.service.AccountService;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanCatalog;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+public class AccountControllerTest {
+
+    private static final String SMART_METER_ID = "smart-meter-id";
+    private static final String CURRENT_PLAN_ID = "current-plan";
+    private static final String OTHER_PLAN_ID = "other-plan";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private AccountService accountService;
+    private AccountController controller;
+
+    @BeforeEach
+    public void setUp() {
+        accountService = new AccountService(Map.of(SMART_METER_ID, CURRENT_PLAN_ID));
+        controller = controllerFor(new ClusterTopology("", List.of(), 1));
+    }
+
+    private AccountController controllerFor(ClusterTopology clusterTopology) {
+        PricePlanCatalog pricePlanCatalog = new PricePlanCatalog(List.of(
+                new PricePlan(CURRENT_PLAN_ID, null, BigDecimal.TEN, null),
+                new PricePlan(OTHER_PLAN_ID, null, BigDecimal.ONE, null)));
+        MeterReadingService meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        return new AccountController(
+                accountService,
+                pricePlanCatalog,
+                clusterTopology,
+                new ClusterRouter(clusterTopology, meterReadingService, objectMapper));
+    }
+
+    @Test
+    public void givenAMeterWithoutAnAccountShouldReturnNotFound() {
+        assertThat(controller.getAccount("unknown-id").getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void givenAKnownPricePlanShouldSwitchTheMeterToIt() {
+        assertThat(controller.switchPricePlan(SMART_METER_ID, OTHER_PLAN_ID).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+
+        assertThat(controller.getAccount(SMART_METER_ID).getBody())
+                .containsEntry(AccountController.PRICE_PLAN_ID_KEY, OTHER_PLAN_ID);
+    }
+
+    @Test
+    public void givenAnUnknownPricePlanShouldSwitchNoneOfTheMeters() {
+        var response =
+                controller.switchPricePlans(Map.of("new-smart-meter-id", OTHER_PLAN_ID, SMART_METER_ID, "nope"), null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(accountService.getAccounts()).isEqualTo(Map.of(SMART_METER_ID, CURRENT_PLAN_ID));
+    }
+
+    @Test
+    public void givenAPricePlanShouldMoveEveryMeterOnItToAnother() {
+        var response = controller.switchAllPricePlans(CURRENT_PLAN_ID, OTHER_PLAN_ID, null);
+
+        assertThat(response.getBody()).isEqualTo(Map.of(AccountController.SWITCHED_KEY, 1));
+        assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(OTHER_PLAN_ID);
+    }
+
+    @Test
+    public void givenOtherNodesShouldSendTheSwitchOnToEachOfThem() throws Exception {
+        List<Map<String, String>> switchesSentOn = new CopyOnWriteArrayList<>();
+        HttpServer other = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        other.createContext("/accounts/switch", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                switchesSentOn.add(objectMapper.readValue(body, new TypeReference<Map<String, String>>() {}));
+            }
+            exchange.sendResponseHeaders(HttpStatus.OK.value(), -1);
+            exchange.close();
+        });
+        other.start();
+        try {
+            String self = "http://localhost:1";
+            String otherNode = "http://localhost:" + other.getAddress().getPort();
+            controller = controllerFor(new ClusterTopology(self, List.of(self, otherNode), 128));
+
+            assertThat(controller.switchPricePlan(SMART_METER_ID, OTHER_PLAN_ID).getStatusCode())
+                    .isEqualTo(HttpStatus.OK);
+
+            assertThat(switchesSentOn).isEqualTo(List.of(Map.of(SMART_METER_ID, OTHER_PLAN_ID)));
+        } finally {
+            other.stop(0);
+        }
+    }
+
+    @Test
+    public void givenANodeThatCannotTakeTheSwitchShouldAnswerBadGatewayUnlessTheSwitchWasSentOnByAnother() {
+        String self = "http://localhost:1";
+        controller = controllerFor(new ClusterTopology(self, List.of(self, "http://localhost:2"), 128));
+        Map<String, String> pricePlanIdsBySmartMeterId = Map.of(SMART_METER_ID, OTHER_PLAN_ID);
+
+        assertThat(controller.switchPricePlans(pricePlanIdsBySmartMeterId, null).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_GATEWAY);
+        assertThat(controller.switchPricePlans(pricePlanIdsBySmartMeterId, self).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+        assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(OTHER_PLAN_ID);
+    }
+}
@@ -0,0 +1,45 @@
+package uk.tw.energy.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import uk.tw.energy.service.AccountService;
+import uk.tw.energy.service.FleetRecommendationService;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanCatalog;
+import uk.tw.energy.service.PricePlanService;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+public class FleetRecommendationControllerTest {
+
+    private FleetRecommendationService fleetRecommendationService;
+    private FleetRecommendationController controller;
+
+    @BeforeEach
+    public void setUp() {
+        PricePlanService pricePlanService = new PricePlanService(
+                new PricePlanCatalog(List.of()), new MeterReadingService(new ColumnarReadingStore()));
+        fleetRecommendationService = new FleetRecommendationService(pricePlanService, new AccountService(Map.of()));
+        controller = new FleetRecommendationController(fleetRecommendationService);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        fleetRecommendationService.shutdown();
+    }
+
+    @Test
+    public void givenANegativeLimitShouldReturnBadRequest() {
+        assertThat(controller.recommendForFleet(true, -1).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void givenNoLimitShouldRecommendForTheFleet() {
+        assertThat(controller.recommendForFleet(true, null).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+}
@@ -2,17 +2,44 @@ package uk.tw.energy.controller;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import uk.tw.energy.builders.MeterReadingsBuilder;
+import uk.tw.energy.cluster.ClusterRouter;
+import uk.tw.energy.cluster.ClusterTopology;
+import uk.tw.energy.domain.BatchIngestionResult;
+import uk.tw.energy.domain.BinaryMeterReadings;
+import uk.tw.energy.domain.ConsumptionBucket;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.ReadingColumns;
 import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.ReadingIngestionQueue;
+import uk.tw.energy.store.ColumnarReadingStore;
 
 public class MeterReadingControllerTest {
 
@@ -22,28 +49,66 @@ public class MeterReadingControllerTest {
 
     @BeforeEach
     public void setUp() {
-        this.meterReadingService = new MeterReadingService(new HashMap<>());
-        this.meterReadingController = new MeterReadingController(meterReadingService);
+        this.meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        this.meterReadingController = controllerFor(meterReadingService, queueStoringDirectly(meterReadingService));
+    }
+
+    private static ReadingIngestionQueue queueStoringDirectly(MeterReadingService meterReadingService) {
+        return new ReadingIngestionQueue(meterReadingService, new SimpleMeterRegistry(), false, 0, 0);
+    }
+
+    private static MeterReadingController controllerFor(
+            MeterReadingService meterReadingService, ReadingIngestionQueue readingIngestionQueue) {
+        return controllerFor(meterReadingService, readingIngestionQueue, new ClusterTopology("", List.of(), 1));
+    }
+
+    private static MeterReadingController controllerFor(
+            MeterReadingService meterReadingService,
+            ReadingIngestionQueue readingIngestionQueue,
+            ClusterTopology clusterTopology) {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        return new MeterReadingController(
+                meterReadingService,
+                readingIngestionQueue,
+                clusterTopology,
+                new ClusterRouter(clusterTopology, meterReadingService, objectMapper),
+                objectMapper);
     }
 
     @Test
     public void givenNoMeterIdIsSuppliedWhenStoringShouldReturnErrorResponse() {
         MeterReadings meterReadings = new MeterReadings(null, Collections.emptyList());
-        assertThat(meterReadingController.storeReadings(meterReadings).getStatusCode())
+        assertThat(meterReadingController.storeReadings(meterReadings, null).getStatusCode())
                 .isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
     @Test
     public void givenEmptyMeterReadingShouldReturnErrorResponse() {
         MeterReadings meterReadings = new MeterReadings(SMART_METER_ID, Collections.emptyList());
-        assertThat(meterReadingController.storeReadings(meterReadings).getStatusCode())
+        assertThat(meterReadingController.storeReadings(meterReadings, null).getStatusCode())
+                .isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    @Test
+    public void givenReadingTooPreciseToStoreShouldReturnErrorResponseAndStoreNone() {
+        MeterReadings meterReadings = new MeterReadings(
+                SMART_METER_ID,
+                List.of(
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), BigDecimal.ONE),
+                        new ElectricityReading(
+                                Instant.parse("2024-04-26T00:00:10Z"), new BigDecimal(BigInteger.TWO.pow(70), 4))));
+
+        assertThat(meterReadingController.storeReadings(meterReadings, null).getStatusCode())
                 .isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(meterReadingService.getReadings(SMART_METER_ID)).isEmpty();
     }
 
     @Test
     public void givenNullReadingsAreSuppliedWhenStoringShouldReturnErrorResponse() {
         MeterReadings meterReadings = new MeterReadings(SMART_METER_ID, null);
-        assertThat(meterReadingController.storeReadings(meterReadings).getStatusCode())
+        assertThat(meterReadingController.storeReadings(meterReadings, null).getStatusCode())
                 .isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
@@ -59,8 +124,8 @@ public class MeterReadingControllerTest {
                 .generateElectricityReadings()
                 .build();
 
-        meterReadingController.storeReadings(meterReadings);
-        meterReadingController.storeReadings(otherMeterReadings);
+        meterReadingController.storeReadings(meterReadings, null);
+        meterReadingController.storeReadings(otherMeterReadings, null);
 
         List<ElectricityReading> expectedElectricityReadings = new ArrayList<>();
         expectedElectricityReadings.addAll(meterReadings.electricityReadings());
@@ -81,16 +146,338 @@ public class MeterReadingControllerTest {
                 .generateElectricityReadings()
                 .build();
 
-        meterReadingController.storeReadings(meterReadings);
-        meterReadingController.storeReadings(otherMeterReadings);
+        meterReadingController.storeReadings(meterReadings, null);
+        meterReadingController.storeReadings(otherMeterReadings, null);
+
+        assertThat(meterReadingService.getReadings(SMART_METER_ID).get())
+                .isEqualTo(meterReadings.electricityReadings());
+    }
+
+    @Test
+    public void givenReadingsInTheBinaryFormatShouldStoreThemAsSent() {
+        MeterReadings meterReadings = new MeterReadingsBuilder()
+                .setSmartMeterId(SMART_METER_ID)
+                .generateElectricityReadings()
+                .build();
+
+        ResponseEntity response =
+                meterReadingController.storeBinaryReadings(BinaryMeterReadings.encode(meterReadings), null);
 
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(meterReadingService.getReadings(SMART_METER_ID).get())
                 .isEqualTo(meterReadings.electricityReadings());
     }
 
+    @Test
+    public void givenBodyNotInTheBinaryFormatShouldReturnBadRequest() {
+        byte[] body = "{\"smartMeterId\": \"10101010\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(meterReadingController.storeBinaryReadings(body, null).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
     @Test
     public void givenMeterIdThatIsNotRecognisedShouldReturnNotFound() {
-        assertThat(meterReadingController.readReadings(SMART_METER_ID).getStatusCode())
+        assertThat(meterReadingController.readReadings(SMART_METER_ID, null, null, null).getStatusCode())
                 .isEqualTo(HttpStatus.NOT_FOUND);
     }
+
+    @Test
+    public void givenTimeRangeShouldReturnReadingsWithinItInTimeOrder() {
+        var late = new ElectricityReading(Instant.parse("2024-04-26T00:00:30Z"), BigDecimal.valueOf(3));
+        var early = new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), BigDecimal.valueOf(1));
+        var middle = new ElectricityReading(Instant.parse("2024-04-26T00:00:20Z"), BigDecimal.valueOf(2));
+        meterReadingService.storeReadings(SMART_METER_ID, List.of(late, early, middle));
+
+        ResponseEntity response = meterReadingController.readReadings(
+                SMART_METER_ID, Instant.parse("2024-04-26T00:00:10Z"), Instant.parse("2024-04-26T00:00:30Z"), null);
+
+        assertThat(response.getBody()).isEqualTo(List.of(early, middle));
+        assertThat(meterReadingController.readReadings(SMART_METER_ID, null, null, 1).getBody())
+                .isEqualTo(List.of(early));
+    }
+
+    @Test
+    public void givenNegativeLimitShouldReturnBadRequest() {
+        assertThat(meterReadingController.readReadings(SMART_METER_ID, null, null, -1).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void givenMeterIdShouldStreamItsReadingsAsNewlineDelimitedJson() throws Exception {
+        meterReadingService.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), new BigDecimal("0.5")),
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:20Z"), new BigDecimal("1.5"))));
+
+        ResponseEntity<StreamingResponseBody> response =
+                meterReadingController.streamReadings(SMART_METER_ID, null, null, null);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.getBody().writeTo(body);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(body.toString(StandardCharsets.UTF_8))
+                .isEqualTo(
+                        """
+                        {"time":"2024-04-26T00:00:10Z","reading":0.5}
+                        {"time":"2024-04-26T00:00:20Z","reading":1.5}""");
+    }
+
+    @Test
+    public void givenReadingsOutOfOrderShouldStreamTheRangeInTimeOrderUpToTheLimit() throws Exception {
+        Instant start = Instant.parse("2024-04-26T00:00:00Z");
+        List<ElectricityReading> later = new ArrayList<>();
+        List<ElectricityReading> earlier = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            later.add(new ElectricityReading(start.plusSeconds(1_000 + i), BigDecimal.ONE));
+            earlier.add(new ElectricityReading(start.plusSeconds(i), BigDecimal.TEN));
+        }
+        meterReadingService.storeReadings(SMART_METER_ID, later);
+        meterReadingService.storeReadings(SMART_METER_ID, earlier);
+
+        ResponseEntity<StreamingResponseBody> response = meterReadingController.streamReadings(
+                SMART_METER_ID, start.plusSeconds(298), start.plusSeconds(2_000), 3);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.getBody().writeTo(body);
+
+        assertThat(body.toString(StandardCharsets.UTF_8))
+                .isEqualTo(
+                        """
+                        {"time":"2024-04-26T00:04:58Z","reading":10}
+                        {"time":"2024-04-26T00:04:59Z","reading":10}
+                        {"time":"2024-04-26T00:16:40Z","reading":1}""");
+    }
+
+    @Test
+    public void givenMeterIdThatIsNotRecognisedWhenStreamingShouldReturnNotFound() {
+        assertThat(meterReadingController.streamReadings(SMART_METER_ID, null, null, null).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void givenReadingsShouldReturnTheConsumptionInEachBucket() {
+        meterReadingService.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), new BigDecimal("1.0")),
+                        new ElectricityReading(Instant.parse("2024-04-26T00:30:00Z"), new BigDecimal("3.0")),
+                        new ElectricityReading(Instant.parse("2024-04-26T01:30:00Z"), new BigDecimal("3.0"))));
+
+        ResponseEntity<List<ConsumptionBucket>> response = meterReadingController.readConsumption(
+                SMART_METER_ID,
+                Instant.parse("2024-04-26T00:00:00Z"),
+                Instant.parse("2024-04-26T02:00:00Z"),
+                Duration.ofHours(1));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody())
+                .isEqualTo(List.of(
+                        new ConsumptionBucket(
+                                Instant.parse("2024-04-26T00:00:00Z"),
+                                Instant.parse("2024-04-26T01:00:00Z"),
+                                2,
+                                new BigDecimal("2.5000"),
+                                new BigDecimal("1.0"),
+                                new BigDecimal("2.0"),
+                                new BigDecimal("3.0")),
+                        new ConsumptionBucket(
+                                Instant.parse("2024-04-26T01:00:00Z"),
+                                Instant.parse("2024-04-26T02:00:00Z"),
+                                1,
+                                new BigDecimal("1.5000"),
+                                new BigDecimal("3.0"),
+                                new BigDecimal("3.0"),
+                                new BigDecimal("3.0"))));
+    }
+
+    @Test
+    public void givenMeterIdThatIsNotRecognisedWhenReadingConsumptionShouldReturnNotFound() {
+        assertThat(meterReadingController
+                        .readConsumption(
+                                SMART_METER_ID,
+                                Instant.parse("2024-04-26T00:00:00Z"),
+                                Instant.parse("2024-04-26T02:00:00Z"),
+                                Duration.ofHours(1))
+                        .getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void givenEmptyRangeOrTooManyBucketsWhenReadingConsumptionShouldReturnBadRequest() {
+        meterReadingService.storeReadings(
+                SMART_METER_ID,
+                List.of(new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), new BigDecimal("1.0"))));
+        Instant from = Instant.parse("2024-04-26T00:00:00Z");
+
+        assertThat(meterReadingController
+                        .readConsumption(SMART_METER_ID, from, from, Duration.ofHours(1))
+                        .getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(meterReadingController
+                        .readConsumption(SMART_METER_ID, from, from.plus(Duration.ofDays(365)), Duration.ofMinutes(1))
+                        .getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void givenBatchAsJsonArrayShouldStoreValidEntriesAndCountThemPerMeter() {
+        String body =
+                """
+                [
+                  {"smartMeterId": "meter-a", "electricityReadings": [{"time": "2024-04-26T00:00:10Z", "reading": 0.5}]},
+                  {"smartMeterId": "meter-b", "electricityReadings": []},
+                  {"smartMeterId": "meter-a", "electricityReadings": [{"time": "2024-04-26T00:00:20Z", "reading": 1.5}]},
+                  {"electricityReadings": [{"time": "2024-04-26T00:00:20Z", "reading": 1.5}]}
+                ]
+                """;
+
+        ResponseEntity<BatchIngestionResult> response =
+                meterReadingController.storeReadingsBatch(toStream(body), null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody())
+                .isEqualTo(new BatchIngestionResult(
+                        2,
+                        2,
+                        Map.of(
+                                "meter-a", new BatchIngestionResult.MeterCounts(2, 0),
+                                "meter-b", new BatchIngestionResult.MeterCounts(0, 1))));
+        assertThat(meterReadingService.getReadings("meter-a").get())
+                .isEqualTo(List.of(
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), new BigDecimal("0.5")),
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:20Z"), new BigDecimal("1.5"))));
+        assertThat(meterReadingService.getReadings("meter-b")).isEmpty();
+    }
+
+    @Test
+    public void givenBatchAsNewlineDelimitedJsonShouldStoreEachEntry() {
+        String body =
+                """
+                {"smartMeterId": "meter-a", "electricityReadings": [{"time": "2024-04-26T00:00:10Z", "reading": 0.5}]}
+                {"smartMeterId": "meter-b", "electricityReadings": [{"time": "2024-04-26T00:00:10Z", "reading": 2}]}
+                """;
+
+        ResponseEntity<BatchIngestionResult> response =
+                meterReadingController.storeReadingsBatch(toStream(body), null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().accepted()).isEqualTo(2);
+        assertThat(meterReadingService.getReadings("meter-b").get())
+                .isEqualTo(List.of(new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), new BigDecimal(2))));
+    }
+
+    @Test
+    public void givenMalformedBatchShouldKeepEntriesReadBeforeTheErrorAndReturnBadRequest() {
+        String body =
+                """
+                {"smartMeterId": "meter-a", "electricityReadings": [{"time": "2024-04-26T00:00:10Z", "reading": 0.5}]}
+                {"smartMeterId": "meter-b", "electricityReadings": [{"time": "not-a-time"
+                """;
+
+        ResponseEntity<BatchIngestionResult> response =
+                meterReadingController.storeReadingsBatch(toStream(body), null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().accepted()).isEqualTo(1);
+        assertThat(meterReadingService.getReadings("meter-a")).isPresent();
+        assertThat(meterReadingService.getReadings("meter-b")).isEmpty();
+    }
+
+    @Test
+    public void givenQueuedIngestionShouldQueueBatchEntriesAndTurnThemAwayOnceTheQueueIsFull() throws Exception {
+        CountDownLatch storing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MeterReadingService slowService = new MeterReadingService(new ColumnarReadingStore()) {
+            @Override
+            public void storeReadings(String smartMeterId, ReadingColumns readings) {
+                storing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.storeReadings(smartMeterId, readings);
+            }
+        };
+        ReadingIngestionQueue queue = new ReadingIngestionQueue(slowService, new SimpleMeterRegistry(), true, 1, 1);
+        MeterReadingController controller = controllerFor(slowService, queue);
+        String first =
+                """
+                {"smartMeterId": "meter-a", "electricityReadings": [{"time": "2024-04-26T00:00:10Z", "reading": 0.5}]}
+                """;
+        String more =
+                """
+                {"smartMeterId": "meter-a", "electricityReadings": [{"time": "2024-04-26T00:00:20Z", "reading": 1.5}]}
+                {"smartMeterId": "meter-a", "electricityReadings": [{"time": "2024-04-26T00:00:30Z", "reading": 2.5}]}
+                """;
+
+        ResponseEntity<BatchIngestionResult> queued = controller.storeReadingsBatch(toStream(first), null);
+        storing.await();
+        ResponseEntity<BatchIngestionResult> turnedAway = controller.storeReadingsBatch(toStream(more), null);
+        release.countDown();
+        queue.close();
+
+        assertThat(queued.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        assertThat(queued.getBody().accepted()).isEqualTo(1);
+        assertThat(turnedAway.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(turnedAway.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(turnedAway.getBody().meters())
+                .isEqualTo(Map.of("meter-a", new BatchIngestionResult.MeterCounts(1, 1)));
+        assertThat(slowService.getReadings("meter-a").orElseThrow().size()).isEqualTo(2);
+    }
+
+    @Test
+    public void givenOwnerThatAnswersWithAnErrorShouldCountTheEntriesSentToItAsRejected() throws Exception {
+        HttpServer owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        owner.createContext("/readings/store/batch", exchange -> {
+            byte[] error = "{\"status\": 500, \"error\": \"Internal Server Error\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, "application/json");
+            exchange.sendResponseHeaders(HttpStatus.INTERNAL_SERVER_ERROR.value(), error.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(error);
+            }
+        });
+        owner.start();
+        try {
+            String self = "http://localhost:1";
+            String ownerNode = "http://localhost:" + owner.getAddress().getPort();
+            ClusterTopology cluster = new ClusterTopology(self, List.of(self, ownerNode), 128);
+            String local = meterOwnedBy(cluster, self);
+            String remote = meterOwnedBy(cluster, ownerNode);
+            MeterReadingController controller =
+                    controllerFor(meterReadingService, queueStoringDirectly(meterReadingService), cluster);
+            String entry =
+                    """
+                    {"smartMeterId": "%s", "electricityReadings": [{"time": "2024-04-26T00:00:10Z", "reading": 0.5}]}
+                    """;
+            String body = entry.formatted(local) + entry.formatted(remote);
+
+            ResponseEntity<BatchIngestionResult> response = controller.storeReadingsBatch(toStream(body), null);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.getBody())
+                    .isEqualTo(new BatchIngestionResult(
+                            1,
+                            1,
+                            Map.of(
+                                    local, new BatchIngestionResult.MeterCounts(1, 0),
+                                    remote, new BatchIngestionResult.MeterCounts(0, 1))));
+            assertThat(meterReadingService.getReadings(local)).isPresent();
+        } finally {
+            owner.stop(0);
+        }
+    }
+
+    private static String meterOwnedBy(ClusterTopology clusterTopology, String node) {
+        for (int meter = 0; ; meter++) {
+            if (clusterTopology.ownerOf("meter-" + meter).equals(node)) {
+                return "meter-" + meter;
+            }
+        }
+    }
+
+    private static InputStream toStream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -5,18 +5,23 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.AbstractMap;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import uk.tw.energy.domain.ComparisonCacheStatistics;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanRecommendation;
+import uk.tw.energy.domain.PricePlanRecommendation.RecommendedPricePlan;
 import uk.tw.energy.service.AccountService;
 import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanCatalog;
+import uk.tw.energy.service.PricePlanRecommendationService;
 import uk.tw.energy.service.PricePlanService;
+import uk.tw.energy.store.ColumnarReadingStore;
 
 public class PricePlanComparatorControllerTest {
     private static final String WORST_PLAN_ID = "worst-supplier";
@@ -29,17 +34,21 @@ public class PricePlanComparatorControllerTest {
 
     @BeforeEach
     public void setUp() {
-        meterReadingService = new MeterReadingService(new HashMap<>());
+        meterReadingService = new MeterReadingService(new ColumnarReadingStore());
 
         PricePlan pricePlan1 = new PricePlan(WORST_PLAN_ID, null, BigDecimal.TEN, null);
         PricePlan pricePlan2 = new PricePlan(BEST_PLAN_ID, null, BigDecimal.ONE, null);
         PricePlan pricePlan3 = new PricePlan(SECOND_BEST_PLAN_ID, null, BigDecimal.valueOf(2), null);
         List<PricePlan> pricePlans = List.of(pricePlan1, pricePlan2, pricePlan3);
-        PricePlanService pricePlanService = new PricePlanService(pricePlans, meterReadingService);
+        PricePlanCatalog pricePlanCatalog = new PricePlanCatalog(pricePlans);
+        PricePlanService pricePlanService = new PricePlanService(pricePlanCatalog, meterReadingService);
 
         accountService = new AccountService(Map.of(SMART_METER_ID, WORST_PLAN_ID));
 
-        controller = new PricePlanComparatorController(pricePlanService, accountService);
+        controller = new PricePlanComparatorController(
+                pricePlanService,
+                accountService,
+                new PricePlanRecommendationService(pricePlanService, pricePlanCatalog, accountService));
     }
 
     @Test
@@ -56,9 +65,9 @@ public class PricePlanComparatorControllerTest {
                 WORST_PLAN_ID,
                 PricePlanComparatorController.PRICE_PLAN_COMPARISONS_KEY,
                 Map.of(
-                        WORST_PLAN_ID, BigDecimal.valueOf(100.0),
-                        BEST_PLAN_ID, BigDecimal.valueOf(10.0),
-                        SECOND_BEST_PLAN_ID, BigDecimal.valueOf(20.0)));
+                        WORST_PLAN_ID, new BigDecimal("100.0000"),
+                        BEST_PLAN_ID, new BigDecimal("10.0000"),
+                        SECOND_BEST_PLAN_ID, new BigDecimal("20.0000")));
         assertThat(response.getBody()).isEqualTo(expected);
     }
 
@@ -76,13 +85,13 @@ public class PricePlanComparatorControllerTest {
         meterReadingService.storeReadings(SMART_METER_ID, List.of(electricityReading, otherReading));
 
         ResponseEntity<List<Map.Entry<String, BigDecimal>>> response =
-                controller.recommendCheapestPricePlans(SMART_METER_ID, null);
+                controller.recommendCheapestPricePlans(SMART_METER_ID, null, null);
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         var expectedPricePlanToCost = List.of(
-                new AbstractMap.SimpleEntry<>(BEST_PLAN_ID, BigDecimal.valueOf(38.0)),
-                new AbstractMap.SimpleEntry<>(SECOND_BEST_PLAN_ID, BigDecimal.valueOf(76.0)),
-                new AbstractMap.SimpleEntry<>(WORST_PLAN_ID, BigDecimal.valueOf(380.0)));
+                new AbstractMap.SimpleEntry<>(BEST_PLAN_ID, new BigDecimal("9.5000")),
+                new AbstractMap.SimpleEntry<>(SECOND_BEST_PLAN_ID, new BigDecimal("19.0000")),
+                new AbstractMap.SimpleEntry<>(WORST_PLAN_ID, new BigDecimal("95.0000")));
         assertThat(response.getBody()).isEqualTo(expectedPricePlanToCost);
     }
 
@@ -93,11 +102,11 @@ public class PricePlanComparatorControllerTest {
         meterReadingService.storeReadings(SMART_METER_ID, List.of(electricityReading, otherReading));
 
         ResponseEntity<List<Map.Entry<String, BigDecimal>>> response =
-                controller.recommendCheapestPricePlans(SMART_METER_ID, 2);
+                controller.recommendCheapestPricePlans(SMART_METER_ID, 2, null);
 
         var expectedPricePlanToCost = List.of(
-                new AbstractMap.SimpleEntry<>(BEST_PLAN_ID, BigDecimal.valueOf(16.7)),
-                new AbstractMap.SimpleEntry<>(SECOND_BEST_PLAN_ID, BigDecimal.valueOf(33.4)));
+                new AbstractMap.SimpleEntry<>(BEST_PLAN_ID, new BigDecimal("9.3750")),
+                new AbstractMap.SimpleEntry<>(SECOND_BEST_PLAN_ID, new BigDecimal("18.7500")));
         assertThat(response.getBody()).isEqualTo(expectedPricePlanToCost);
     }
 
@@ -108,12 +117,60 @@ public class PricePlanComparatorControllerTest {
         meterReadingService.storeReadings(SMART_METER_ID, List.of(reading0, reading1));
 
         ResponseEntity<List<Map.Entry<String, BigDecimal>>> response =
-                controller.recommendCheapestPricePlans(SMART_METER_ID, 5);
+                controller.recommendCheapestPricePlans(SMART_METER_ID, 5, null);
 
         var expectedPricePlanToCost = List.of(
-                new AbstractMap.SimpleEntry<>(BEST_PLAN_ID, BigDecimal.valueOf(14.0)),
-                new AbstractMap.SimpleEntry<>(SECOND_BEST_PLAN_ID, BigDecimal.valueOf(28.0)),
-                new AbstractMap.SimpleEntry<>(WORST_PLAN_ID, BigDecimal.valueOf(140.0)));
+                new AbstractMap.SimpleEntry<>(BEST_PLAN_ID, new BigDecimal("14.0000")),
+                new AbstractMap.SimpleEntry<>(SECOND_BEST_PLAN_ID, new BigDecimal("28.0000")),
+                new AbstractMap.SimpleEntry<>(WORST_PLAN_ID, new BigDecimal("140.0000")));
         assertThat(response.getBody()).isEqualTo(expectedPricePlanToCost);
     }
+
+    @Test
+    public void recommendCheapestPricePlans_negativeLimit() {
+        ResponseEntity<List<Map.Entry<String, BigDecimal>>> response =
+                controller.recommendCheapestPricePlans(SMART_METER_ID, -1, null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void recommendAgainstCurrentPricePlan_happyPath() {
+        var electricityReading = new ElectricityReading(Instant.now().minusSeconds(3600), BigDecimal.valueOf(15.0));
+        var otherReading = new ElectricityReading(Instant.now(), BigDecimal.valueOf(5.0));
+        meterReadingService.storeReadings(SMART_METER_ID, List.of(electricityReading, otherReading));
+
+        ResponseEntity<PricePlanRecommendation> response =
+                controller.recommendAgainstCurrentPricePlan(SMART_METER_ID, 1, null);
+
+        assertThat(response.getBody())
+                .isEqualTo(new PricePlanRecommendation(
+                        SMART_METER_ID,
+                        WORST_PLAN_ID,
+                        new BigDecimal("100.0000"),
+                        List.of(new RecommendedPricePlan(
+                                BEST_PLAN_ID, null, new BigDecimal("10.0000"), new BigDecimal("90.0000")))));
+    }
+
+    @Test
+    public void recommendAgainstCurrentPricePlan_noReadings() {
+        ResponseEntity<PricePlanRecommendation> response =
+                controller.recommendAgainstCurrentPricePlan("not-found", null, null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void comparisonCacheStatistics_countsRepeatedComparisonsAsHits() {
+        var electricityReading = new ElectricityReading(Instant.now().minusSeconds(3600), BigDecimal.valueOf(15.0));
+        var otherReading = new ElectricityReading(Instant.now(), BigDecimal.valueOf(5.0));
+        meterReadingService.storeReadings(SMART_METER_ID, List.of(electricityReading, otherReading));
+
+        controller.calculatedCostForEachPricePlan(SMART_METER_ID);
+        controller.recommendCheapestPricePlans(SMART_METER_ID, null, null);
+        ResponseEntity<ComparisonCacheStatistics> response = controller.comparisonCacheStatistics();
+
+        assertThat(response.getBody())
+                .isEqualTo(new ComparisonCacheStatistics(1, 1, 0, 1, PricePlanService.COMPARISON_CACHE_CAPACITY));
+    }
 }
@@ -0,0 +1,54 @@
+package uk.tw.energy.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class BinaryMeterReadingsTest {
+
+    private static final MeterReadings METER_READINGS = new MeterReadings(
+            "smart-meter-0",
+            List.of(
+                    new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), new BigDecimal("0.5000")),
+                    new ElectricityReading(Instant.parse("2024-04-26T00:00:05.123456789Z"), new BigDecimal("-12")),
+                    new ElectricityReading(Instant.parse("1969-12-31T23:59:59Z"), new BigDecimal("1E+3")),
+                    new ElectricityReading(Instant.MAX, BigDecimal.valueOf(Long.MIN_VALUE, 127))));
+
+    @Test
+    public void givenEncodedReadingsShouldDecodeThemExactly() {
+        BinaryMeterReadings decoded = BinaryMeterReadings.decode(BinaryMeterReadings.encode(METER_READINGS));
+
+        assertThat(decoded.smartMeterId()).isEqualTo(METER_READINGS.smartMeterId());
+        assertThat(decoded.readings().toList()).isEqualTo(METER_READINGS.electricityReadings());
+    }
+
+    @Test
+    public void givenTruncatedBodyShouldReject() {
+        byte[] body = BinaryMeterReadings.encode(METER_READINGS);
+
+        assertThatThrownBy(() -> BinaryMeterReadings.decode(Arrays.copyOf(body, body.length - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void givenBytesAfterTheReadingsShouldReject() {
+        byte[] body = BinaryMeterReadings.encode(METER_READINGS);
+
+        assertThatThrownBy(() -> BinaryMeterReadings.decode(Arrays.copyOf(body, body.length + 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void givenReadingTooPreciseToEncodeShouldReject() {
+        MeterReadings tooPrecise = new MeterReadings(
+                "smart-meter-0",
+                List.of(new ElectricityReading(Instant.now(), new BigDecimal("123456789012345678901234567890"))));
+
+        assertThatThrownBy(() -> BinaryMeterReadings.encode(tooPrecise)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
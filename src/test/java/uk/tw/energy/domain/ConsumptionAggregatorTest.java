@@ -0,0 +1,170 @@
+package uk.tw.energy.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+public class ConsumptionAggregatorTest {
+
+    private static final Instant START = Instant.parse("2024-04-26T00:00:00Z");
+    private static final Duration HOUR = Duration.ofHours(1);
+    private static final Duration HALF_HOUR = Duration.ofMinutes(30);
+
+    @Test
+    public void shouldCutIntervalsWhereBucketsStartAtThePowerTheIntegrationTakes() {
+        ConsumptionAggregator trapezoidal = new ConsumptionAggregator(
+                START, START.plus(Duration.ofHours(2)), HOUR, EnergyIntegration.TRAPEZOIDAL, null);
+        ConsumptionAggregator leftRiemann = new ConsumptionAggregator(
+                START, START.plus(Duration.ofHours(2)), HOUR, EnergyIntegration.LEFT_RIEMANN, null);
+
+        for (ConsumptionAggregator aggregator : new ConsumptionAggregator[] {trapezoidal, leftRiemann}) {
+            add(aggregator, START, "2.0");
+            add(aggregator, START.plus(Duration.ofHours(2)), "4.0");
+        }
+
+        // rising steadily from 2 kW to 4 kW, or holding at 2 kW, for two hours
+        assertThat(trapezoidal.buckets())
+                .containsExactly(
+                        bucket(START, HOUR, 1, "2.5000", "2.0", "2.0", "2.0"),
+                        bucket(START.plus(Duration.ofHours(1)), HOUR, 0, "3.5000", null, null, null));
+        assertThat(leftRiemann.buckets())
+                .containsExactly(
+                        bucket(START, HOUR, 1, "2.0000", "2.0", "2.0", "2.0"),
+                        bucket(START.plus(Duration.ofHours(1)), HOUR, 0, "2.0000", null, null, null));
+    }
+
+    @Test
+    public void shouldLeaveOutGapsLongerThanAllowedAndIntervalsOutsideTheRange() {
+        ConsumptionAggregator aggregator = new ConsumptionAggregator(
+                START,
+                START.plus(Duration.ofHours(4)),
+                HOUR,
+                EnergyIntegration.TRAPEZOIDAL,
+                Duration.ofMinutes(90));
+
+        add(aggregator, START.minus(Duration.ofHours(1)), "2.0");
+        add(aggregator, START.plus(Duration.ofMinutes(30)), "2.0");
+        add(aggregator, START.plus(Duration.ofHours(3)), "2.0");
+        add(aggregator, START.plus(Duration.ofMinutes(210)), "4.0");
+        add(aggregator, START.plus(Duration.ofHours(5)), "4.0");
+
+        // half an hour at 2 kW from the start of the range, then after a gap of 150 minutes half an hour rising from
+        // 2 kW to 4 kW and half an hour at 4 kW until the end of the range
+        assertThat(aggregator.buckets())
+                .containsExactly(
+                        bucket(START, HOUR, 1, "1.0000", "2.0", "2.0", "2.0"),
+                        bucket(START.plus(Duration.ofHours(1)), HOUR, 0, "0.0000", null, null, null),
+                        bucket(START.plus(Duration.ofHours(2)), HOUR, 0, "0.0000", null, null, null),
+                        bucket(START.plus(Duration.ofHours(3)), HOUR, 2, "3.5000", "2.0", "3.0", "4.0"));
+    }
+
+    @Test
+    public void shouldCountARollupTowardsTheBucketItStartsIn() {
+        ConsumptionAggregator aggregator = new ConsumptionAggregator(
+                START, START.plus(Duration.ofHours(2)), HALF_HOUR, EnergyIntegration.TRAPEZOIDAL, null);
+
+        aggregator.add(new ReadingRollup(
+                START,
+                START.plus(Duration.ofHours(1)),
+                4,
+                new BigDecimal("8.0"),
+                new BigDecimal("1.0"),
+                new BigDecimal("3.0")));
+        add(aggregator, START.plus(Duration.ofMinutes(90)), "2.0");
+
+        // an hour at the rollup's mean of 2 kW, then half an hour at 2 kW
+        assertThat(aggregator.buckets())
+                .containsExactly(
+                        bucket(START, HALF_HOUR, 4, "2.0000", "1.0", "2.0", "3.0"),
+                        bucket(START.plus(Duration.ofMinutes(30)), HALF_HOUR, 0, "0.0000", null, null, null),
+                        bucket(START.plus(Duration.ofMinutes(60)), HALF_HOUR, 0, "1.0000", null, null, null),
+                        bucket(START.plus(Duration.ofMinutes(90)), HALF_HOUR, 1, "0.0000", "2.0", "2.0", "2.0"));
+    }
+
+    @Test
+    public void shouldShareOutTheEnergyOverTheRangeBetweenTheBuckets() {
+        List<ElectricityReading> readings = new ElectricityReadingsGenerator().generate(1000);
+        Instant from = readings.getFirst().time();
+        Instant to = readings.getLast().time().plusSeconds(1);
+        ConsumptionAggregator aggregator =
+                new ConsumptionAggregator(from, to, Duration.ofSeconds(45), EnergyIntegration.TRAPEZOIDAL, null);
+        EnergyIntegrator integrator = new EnergyIntegrator(EnergyIntegration.TRAPEZOIDAL, null);
+
+        for (ElectricityReading reading : readings) {
+            add(aggregator, reading.time(), reading.reading().toPlainString());
+            integrator.add(reading);
+        }
+
+        List<ConsumptionBucket> buckets = aggregator.buckets();
+        BigDecimal energyInKwH = buckets.stream()
+                .map(ConsumptionBucket::energyInKwH)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(buckets).hasSize(223);
+        assertThat(buckets.getLast().end()).isEqualTo(to);
+        assertThat(buckets.stream().mapToLong(ConsumptionBucket::readingCount).sum())
+                .isEqualTo(1000);
+        // each bucket's energy is rounded to the four decimal places of the readings
+        assertThat(energyInKwH)
+                .isCloseTo(
+                        integrator.energyInKwH(),
+                        within(new BigDecimal("0.00005").multiply(BigDecimal.valueOf(buckets.size()))));
+    }
+
+    @Test
+    public void shouldEndTheLastBucketAtTheEndOfTheRange() {
+        ConsumptionAggregator aggregator = new ConsumptionAggregator(
+                START, START.plus(Duration.ofMinutes(90)), HOUR, EnergyIntegration.TRAPEZOIDAL, null);
+
+        assertThat(aggregator.buckets())
+                .extracting(ConsumptionBucket::end)
+                .containsExactly(START.plus(HOUR), START.plus(Duration.ofMinutes(90)));
+    }
+
+    @Test
+    public void shouldRejectEmptyRangesWidthsThatAreNotPositiveAndTooManyBuckets() {
+        Instant to = START.plus(Duration.ofDays(1));
+
+        assertThatThrownBy(() -> new ConsumptionAggregator(START, START, HOUR, EnergyIntegration.TRAPEZOIDAL, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() ->
+                        new ConsumptionAggregator(START, to, Duration.ZERO, EnergyIntegration.TRAPEZOIDAL, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConsumptionAggregator(
+                        START, to, Duration.ofSeconds(8), EnergyIntegration.TRAPEZOIDAL, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() ->
+                        new ConsumptionAggregator(START, to, HOUR, EnergyIntegration.AVERAGE_OVER_USAGE_TIME, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void add(ConsumptionAggregator aggregator, Instant time, String reading) {
+        BigDecimal value = new BigDecimal(reading);
+        aggregator.accept(
+                time.getEpochSecond(), time.getNano(), value.unscaledValue().longValueExact(), (byte) value.scale());
+    }
+
+    private static ConsumptionBucket bucket(
+            Instant start,
+            Duration width,
+            long readingCount,
+            String energyInKwH,
+            String min,
+            String average,
+            String max) {
+        return new ConsumptionBucket(
+                start,
+                start.plus(width),
+                readingCount,
+                new BigDecimal(energyInKwH),
+                min == null ? null : new BigDecimal(min),
+                average == null ? null : new BigDecimal(average),
+                max == null ? null : new BigDecimal(max));
+    }
+}
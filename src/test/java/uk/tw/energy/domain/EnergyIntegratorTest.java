@@ -0,0 +1,110 @@
+package uk.tw.energy.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+public class EnergyIntegratorTest {
+
+    private static final Instant START = Instant.parse("2024-04-26T00:00:00Z");
+
+    @Test
+    public void givenNoReadingsShouldHaveConsumedNothing() {
+        assertThat(new EnergyIntegrator(EnergyIntegration.TRAPEZOIDAL, null).energyInKwH())
+                .isEqualTo(new BigDecimal("0.0000"));
+    }
+
+    @Test
+    public void givenReadingsInWholeKilowattsShouldGiveTheEnergyToFourDecimalPlaces() {
+        EnergyIntegrator integrator = new EnergyIntegrator(EnergyIntegration.TRAPEZOIDAL, null);
+
+        integrator.add(new ElectricityReading(START, BigDecimal.ONE));
+        integrator.add(new ElectricityReading(START.plusSeconds(10), BigDecimal.TWO));
+
+        // 15 kW seconds
+        assertThat(integrator.energyInKwH()).isEqualTo(new BigDecimal("0.0042"));
+    }
+
+    @Test
+    public void shouldIntegrateIntervalsAsTrapezoidsOrAtTheReadingTheyStartWith() {
+        EnergyIntegrator trapezoidal = new EnergyIntegrator(EnergyIntegration.TRAPEZOIDAL, null);
+        EnergyIntegrator leftRiemann = new EnergyIntegrator(EnergyIntegration.LEFT_RIEMANN, null);
+
+        for (EnergyIntegrator integrator : new EnergyIntegrator[] {trapezoidal, leftRiemann}) {
+            integrator.add(new ElectricityReading(START, new BigDecimal("2.00")));
+            integrator.add(new ElectricityReading(START.plus(Duration.ofMinutes(90)), new BigDecimal("4.00")));
+            integrator.add(new ElectricityReading(START.plus(Duration.ofMinutes(120)), new BigDecimal("1.00")));
+        }
+
+        // 1.5 hours at 3 kW and half an hour at 2.5 kW, or 1.5 hours at 2 kW and half an hour at 4 kW
+        assertThat(trapezoidal.energyInKwH()).isEqualTo(new BigDecimal("5.7500"));
+        assertThat(leftRiemann.energyInKwH()).isEqualTo(new BigDecimal("5.0000"));
+    }
+
+    @Test
+    public void shouldIntegrateFractionsOfASecond() {
+        EnergyIntegrator integrator = new EnergyIntegrator(EnergyIntegration.LEFT_RIEMANN, null);
+
+        integrator.add(new ElectricityReading(START.plusMillis(999), new BigDecimal("3600.00")));
+        integrator.add(new ElectricityReading(START.plusMillis(1_249), new BigDecimal("0.00")));
+
+        // a quarter of a second at 3600 kW
+        assertThat(integrator.energyInKwH()).isEqualTo(new BigDecimal("0.2500"));
+    }
+
+    @Test
+    public void givenProductsTooLongForALongShouldIntegrateExactly() {
+        BigDecimal reading = BigDecimal.valueOf(Long.MAX_VALUE - 1);
+        EnergyIntegrator integrator = new EnergyIntegrator(EnergyIntegration.TRAPEZOIDAL, null);
+
+        integrator.add(new ElectricityReading(START, reading));
+        integrator.add(new ElectricityReading(START.plus(Duration.ofHours(2)), reading));
+        integrator.add(new ElectricityReading(START.plus(Duration.ofHours(3)), new BigDecimal("1E+30")));
+
+        assertThat(integrator.energyInKwH())
+                .isEqualByComparingTo(reading.multiply(BigDecimal.TWO)
+                        .add(reading.add(new BigDecimal("1E+30")).divide(BigDecimal.TWO)));
+    }
+
+    @Test
+    public void shouldLeaveOutGapsLongerThanAllowedAndReadingsBeforeThePrevious() {
+        EnergyIntegrator integrator = new EnergyIntegrator(EnergyIntegration.TRAPEZOIDAL, Duration.ofMinutes(30));
+
+        integrator.add(new ElectricityReading(START, new BigDecimal("1.0")));
+        integrator.add(new ElectricityReading(START.plus(Duration.ofMinutes(30)), new BigDecimal("3.0")));
+        integrator.add(new ElectricityReading(START.plus(Duration.ofMinutes(61)), new BigDecimal("5.0")));
+        integrator.add(new ElectricityReading(START.plus(Duration.ofMinutes(50)), new BigDecimal("100.0")));
+        integrator.add(new ElectricityReading(START.plus(Duration.ofMinutes(91)), new BigDecimal("5.0")));
+
+        // half an hour at 2 kW and half an hour at 5 kW, either side of a gap of 31 minutes
+        assertThat(integrator.energyInKwH()).isEqualTo(new BigDecimal("3.5000"));
+    }
+
+    @Test
+    public void shouldIntegrateARollupAtItsMeanOverItsPeriod() {
+        EnergyIntegrator integrator = new EnergyIntegrator(EnergyIntegration.TRAPEZOIDAL, null);
+
+        integrator.add(new ElectricityReading(START.minus(Duration.ofMinutes(30)), new BigDecimal("1.0")));
+        integrator.add(new ReadingRollup(
+                START,
+                START.plus(Duration.ofHours(1)),
+                4,
+                new BigDecimal("12.0"),
+                new BigDecimal("2.0"),
+                new BigDecimal("4.0")));
+        integrator.add(new ElectricityReading(START.plus(Duration.ofMinutes(90)), new BigDecimal("5.0")));
+
+        // half an hour rising from 1 kW to 3 kW, an hour at 3 kW, and half an hour rising from 3 kW to 5 kW
+        assertThat(integrator.energyInKwH()).isEqualTo(new BigDecimal("6.0000"));
+    }
+
+    @Test
+    public void shouldNotIntegrateTheAverageOverUsageTime() {
+        assertThatThrownBy(() -> new EnergyIntegrator(EnergyIntegration.AVERAGE_OVER_USAGE_TIME, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
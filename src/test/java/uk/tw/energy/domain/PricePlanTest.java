@@ -5,7 +5,9 @@ import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
 import java.math.BigDecimal;
 import java.time.DayOfWeek;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.Month;
 import java.util.Arrays;
 import java.util.List;
@@ -62,4 +64,77 @@ public class PricePlanTest {
 
         assertThat(price).isCloseTo(BigDecimal.TEN, Percentage.withPercentage(1));
     }
+
+    @Test
+    public void shouldOnlyApplyMultiplierWithinItsWindow() {
+        PricePlan.PeakTimeMultiplier eveningPeak = new PricePlan.PeakTimeMultiplier(
+                DayOfWeek.WEDNESDAY, LocalTime.of(17, 0), LocalTime.of(19, 0), BigDecimal.TEN);
+        PricePlan pricePlan = new PricePlan(null, null, BigDecimal.ONE, singletonList(eveningPeak));
+
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 30, 16, 59, 59)))
+                .isEqualByComparingTo(BigDecimal.ONE);
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 30, 17, 0, 0)))
+                .isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 30, 18, 59, 59)))
+                .isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 30, 19, 0, 0)))
+                .isEqualByComparingTo(BigDecimal.ONE);
+    }
+
+    @Test
+    public void shouldCarryAnOvernightWindowIntoTheNextDay() {
+        PricePlan.PeakTimeMultiplier overnightOffPeak = new PricePlan.PeakTimeMultiplier(
+                DayOfWeek.SUNDAY, LocalTime.of(23, 0), LocalTime.of(7, 0), new BigDecimal("0.5"));
+        PricePlan pricePlan = new PricePlan(null, null, BigDecimal.ONE, singletonList(overnightOffPeak));
+
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 27, 22, 59, 59)))
+                .isEqualByComparingTo(BigDecimal.ONE);
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 27, 23, 0, 0)))
+                .isEqualByComparingTo("0.5");
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 28, 6, 59, 59)))
+                .isEqualByComparingTo("0.5");
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 28, 7, 0, 0)))
+                .isEqualByComparingTo(BigDecimal.ONE);
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 27, 6, 0, 0)))
+                .isEqualByComparingTo(BigDecimal.ONE);
+    }
+
+    @Test
+    public void shouldApplyTheFirstOfOverlappingMultipliers() {
+        PricePlan.PeakTimeMultiplier eveningPeak = new PricePlan.PeakTimeMultiplier(
+                DayOfWeek.WEDNESDAY, LocalTime.of(17, 0), LocalTime.of(19, 0), BigDecimal.TEN);
+        PricePlan.PeakTimeMultiplier wholeDay =
+                new PricePlan.PeakTimeMultiplier(DayOfWeek.WEDNESDAY, BigDecimal.valueOf(2));
+        PricePlan pricePlan = new PricePlan(null, null, BigDecimal.ONE, Arrays.asList(eveningPeak, wholeDay));
+
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 30, 18, 0, 0)))
+                .isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 30, 8, 0, 0)))
+                .isEqualByComparingTo(BigDecimal.valueOf(2));
+    }
+
+    @Test
+    public void shouldPriceAnInstantByItsUtcTime() {
+        PricePlan.PeakTimeMultiplier peakTimeMultiplier =
+                new PricePlan.PeakTimeMultiplier(DayOfWeek.WEDNESDAY, BigDecimal.TEN);
+        PricePlan pricePlan = new PricePlan(null, null, BigDecimal.ONE, singletonList(peakTimeMultiplier));
+
+        assertThat(pricePlan.getPrice(Instant.parse("2017-08-30T23:59:59Z"))).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(pricePlan.getPrice(Instant.parse("2017-08-31T00:00:00Z"))).isEqualByComparingTo(BigDecimal.ONE);
+        assertThat(pricePlan.isTimeOfUse()).isTrue();
+    }
+
+    @Test
+    public void shouldGiveEveryUnitRateUnscaledAtTheLargestScale() {
+        PricePlan.PeakTimeMultiplier peakTimeMultiplier =
+                new PricePlan.PeakTimeMultiplier(DayOfWeek.WEDNESDAY, new BigDecimal("1.5"));
+        PricePlan pricePlan = new PricePlan(null, null, new BigDecimal("0.2"), singletonList(peakTimeMultiplier));
+
+        assertThat(pricePlan.getUnitRateBySlotScale()).isEqualTo(2);
+        assertThat(pricePlan.getUnscaledUnitRatesBySlot()[TimeOfUseSlot.of(DayOfWeek.WEDNESDAY, LocalTime.NOON)])
+                .isEqualTo(30L);
+        assertThat(pricePlan.getUnscaledUnitRatesBySlot()[TimeOfUseSlot.of(DayOfWeek.THURSDAY, LocalTime.NOON)])
+                .isEqualTo(20L);
+        assertThat(pricePlan.getLargestUnscaledUnitRate()).isEqualTo(30L);
+    }
 }
@@ -0,0 +1,36 @@
+package uk.tw.energy.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ReadingColumnsTest {
+
+    @Test
+    public void givenMixedScalesAndSumsOverflowingALongShouldSummariseAsAddingEachReadingWould() {
+        List<ElectricityReading> readings = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), BigDecimal.valueOf(Long.MAX_VALUE, 4)),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:05Z"), BigDecimal.valueOf(Long.MAX_VALUE, 4)),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:20Z"), new BigDecimal("0.5")),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:15Z"), new BigDecimal("-3")));
+
+        ReadingSummary expected = ReadingSummary.EMPTY;
+        for (ElectricityReading reading : readings) {
+            expected = expected.add(reading);
+        }
+
+        assertThat(ReadingColumns.of(readings).summary()).isEqualTo(expected);
+    }
+
+    @Test
+    public void givenNanoAdjustmentOutOfRangeShouldReject() {
+        ReadingColumns columns = new ReadingColumns();
+
+        assertThatThrownBy(() -> columns.add(0, 1_000_000_000, 1, (byte) 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
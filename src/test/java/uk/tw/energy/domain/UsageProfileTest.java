@@ -0,0 +1,192 @@
+package uk.tw.energy.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class UsageProfileTest {
+
+    private static final Instant FRIDAY_MORNING = Instant.parse("2024-04-26T08:00:00Z");
+    private static final Instant FRIDAY_EVENING = Instant.parse("2024-04-26T18:00:00Z");
+
+    private final PricePlan eveningPeak = new PricePlan(
+            "time-of-use",
+            null,
+            new BigDecimal("0.21"),
+            List.of(new PricePlan.PeakTimeMultiplier(
+                    DayOfWeek.FRIDAY, LocalTime.of(17, 0), LocalTime.of(19, 0), new BigDecimal("1.5"))));
+
+    @Test
+    public void shouldIntegrateTheEnergyOfEachHalfHourOfTheWeek() {
+        UsageProfile profile = new UsageProfile();
+
+        profile.add(new ElectricityReading(FRIDAY_MORNING, new BigDecimal("1")));
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(15 * 60), new BigDecimal("3")));
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(45 * 60), new BigDecimal("3")));
+
+        assertThat(profile.count()).isEqualTo(3);
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING), 4)).isEqualTo(new BigDecimal("1.2500"));
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING.plusSeconds(30 * 60)), 4))
+                .isEqualTo(new BigDecimal("0.7500"));
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_EVENING), 4)).isEqualTo(new BigDecimal("0.0000"));
+        assertThat(profile.energyInKwH(4)).isEqualTo(new BigDecimal("2.0000"));
+    }
+
+    @Test
+    public void shouldSplitATrapezoidWhereItsHalfHourEnds() {
+        UsageProfile profile = new UsageProfile();
+
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(20 * 60), new BigDecimal("0.0")));
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(40 * 60), new BigDecimal("2.0")));
+
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING), 4)).isEqualTo(new BigDecimal("0.0833"));
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING.plusSeconds(30 * 60)), 4))
+                .isEqualTo(new BigDecimal("0.2500"));
+        assertThat(profile.energyInKwH(4)).isEqualTo(new BigDecimal("0.3333"));
+    }
+
+    @Test
+    public void givenLeftRiemannSumsShouldTakeEachIntervalAtItsFirstReading() {
+        UsageProfile profile = new UsageProfile(EnergyIntegration.LEFT_RIEMANN, null);
+
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(20 * 60), new BigDecimal("0.0")));
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(40 * 60), new BigDecimal("2.0")));
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(70 * 60), new BigDecimal("1.0")));
+
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING), 4)).isEqualTo(new BigDecimal("0.0000"));
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING.plusSeconds(30 * 60)), 4))
+                .isEqualTo(new BigDecimal("0.6667"));
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING.plusSeconds(60 * 60)), 4))
+                .isEqualTo(new BigDecimal("0.3333"));
+    }
+
+    @Test
+    public void shouldShareAnHourlyRollupBetweenItsHalfHours() {
+        UsageProfile profile = new UsageProfile();
+
+        profile.add(new ReadingRollup(
+                FRIDAY_MORNING,
+                FRIDAY_MORNING.plusSeconds(3600),
+                4,
+                new BigDecimal("3.0"),
+                new BigDecimal("0.5"),
+                new BigDecimal("1.0")));
+
+        assertThat(profile.count()).isEqualTo(4);
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING), 4)).isEqualTo(new BigDecimal("0.3750"));
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING.plusSeconds(30 * 60)), 4))
+                .isEqualTo(new BigDecimal("0.3750"));
+    }
+
+    @Test
+    public void givenMixedScalesShouldPriceAsPricingEveryPartOfEveryIntervalAtItsRateWould() {
+        Random random = new Random(22);
+        List<ElectricityReading> readings = new ArrayList<>();
+        Instant time = FRIDAY_MORNING;
+        for (int i = 0; i < 1_000; i++) {
+            time = time.plusSeconds(1 + random.nextInt(3600));
+            readings.add(new ElectricityReading(time, BigDecimal.valueOf(random.nextInt(100_000), random.nextInt(6))));
+        }
+        UsageProfile profile = new UsageProfile();
+
+        assertThat(profile.addAll(ReadingColumns.of(readings))).isTrue();
+
+        assertThat(profile.count()).isEqualTo(readings.size());
+        assertThat(profile.price(eveningPeak, 4))
+                .isEqualTo(priceEveryPartOfEveryInterval(readings, eveningPeak).setScale(4, RoundingMode.HALF_UP));
+    }
+
+    @Test
+    public void givenEnergiesTooLargeForALongShouldKeepThemExactly() {
+        BigDecimal reading = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+        UsageProfile profile = new UsageProfile();
+
+        profile.add(new ElectricityReading(FRIDAY_EVENING, reading));
+        profile.add(new ElectricityReading(FRIDAY_EVENING.plusSeconds(30 * 60), reading));
+
+        BigDecimal energy = reading.multiply(new BigDecimal("0.5"));
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_EVENING), energy.scale())).isEqualTo(energy);
+        assertThat(profile.price(eveningPeak, 4))
+                .isEqualTo(energy.multiply(new BigDecimal("0.315")).setScale(4, RoundingMode.HALF_UP));
+    }
+
+    @Test
+    public void givenProductsThatOverflowALongShouldPriceExactly() {
+        UsageProfile profile = new UsageProfile();
+
+        profile.add(new ElectricityReading(FRIDAY_EVENING, new BigDecimal("10000")));
+        profile.add(new ElectricityReading(FRIDAY_EVENING.plusSeconds(30 * 60), new BigDecimal("10000")));
+
+        assertThat(profile.price(eveningPeak, 4)).isEqualTo(new BigDecimal("1575.0000"));
+    }
+
+    @Test
+    public void givenReadingsBeforeTheLatestShouldLeaveTheProfileAsItWas() {
+        UsageProfile profile = new UsageProfile();
+        profile.add(new ElectricityReading(FRIDAY_MORNING, BigDecimal.ONE));
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(60), BigDecimal.ONE));
+
+        boolean added = profile.addAll(ReadingColumns.of(List.of(
+                new ElectricityReading(FRIDAY_MORNING.plusSeconds(120), BigDecimal.ONE),
+                new ElectricityReading(FRIDAY_MORNING.plusSeconds(30), BigDecimal.ONE))));
+
+        assertThat(added).isFalse();
+        assertThat(profile.count()).isEqualTo(2);
+        assertThat(profile.energyInKwH(4)).isEqualTo(new BigDecimal("0.0167"));
+    }
+
+    @Test
+    public void shouldCopyWithoutLaterReadings() {
+        ElectricityReading first = new ElectricityReading(FRIDAY_MORNING, new BigDecimal("1.0"));
+        ElectricityReading second = new ElectricityReading(FRIDAY_MORNING.plusSeconds(6 * 60), new BigDecimal("1.0"));
+        UsageProfile profile = new UsageProfile();
+        profile.add(first);
+        profile.add(second);
+        ReadingSummary readingSummary = ReadingSummary.EMPTY.add(first).add(second);
+
+        UsageProfile copy = profile.copy(readingSummary);
+        profile.add(new ElectricityReading(FRIDAY_MORNING.plusSeconds(12 * 60), new BigDecimal("1.0")));
+
+        assertThat(copy.readingSummary()).isSameAs(readingSummary);
+        assertThat(copy.count()).isEqualTo(2);
+        assertThat(copy.energyInKwH()).isEqualTo(new BigDecimal("0.1000"));
+        assertThat(copy.getEnergyInKwH(TimeOfUseSlot.of(FRIDAY_MORNING), 1)).isEqualTo(new BigDecimal("0.1"));
+    }
+
+    /**
+     * Prices the trapezoid between each pair of readings, cut where each half-hour ends, at the rate of each part.
+     */
+    private static BigDecimal priceEveryPartOfEveryInterval(List<ElectricityReading> readings, PricePlan pricePlan) {
+        BigDecimal priced = BigDecimal.ZERO;
+        for (int i = 1; i < readings.size(); i++) {
+            ElectricityReading from = readings.get(i - 1);
+            ElectricityReading to = readings.get(i);
+            long start = from.time().getEpochSecond();
+            long end = to.time().getEpochSecond();
+            BigDecimal slope = to.reading()
+                    .subtract(from.reading())
+                    .divide(BigDecimal.valueOf(end - start), MathContext.DECIMAL128);
+            for (long partStart = start; partStart < end; ) {
+                long partEnd = Math.min(end, (partStart / 1800 + 1) * 1800);
+                BigDecimal startPower = from.reading().add(slope.multiply(BigDecimal.valueOf(partStart - start)));
+                BigDecimal endPower = from.reading().add(slope.multiply(BigDecimal.valueOf(partEnd - start)));
+                BigDecimal energy = startPower
+                        .add(endPower)
+                        .multiply(BigDecimal.valueOf(partEnd - partStart))
+                        .divide(BigDecimal.valueOf(7200), MathContext.DECIMAL128);
+                priced = priced.add(energy.multiply(pricePlan.getPrice(Instant.ofEpochSecond(partStart))));
+                partStart = partEnd;
+            }
+        }
+        return priced;
+    }
+}
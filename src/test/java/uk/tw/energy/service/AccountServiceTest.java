@@ -1,9 +1,10 @@
 package uk.tw.energy.service;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -26,4 +27,38 @@ public class AccountServiceTest {
     public void givenTheSmartMeterIdReturnsThePricePlanId() throws Exception {
         assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(PRICE_PLAN_ID);
     }
+
+    @Test
+    public void givenAccountsReturnsTheirSmartMeterIds() {
+        assertThat(accountService.getSmartMeterIds()).isEqualTo(Set.of(SMART_METER_ID));
+    }
+
+    @Test
+    public void givenSwitchesShouldMoveEachMeterToItsPricePlanAtOnce() {
+        Set<String> smartMeterIds = accountService.getSmartMeterIds();
+
+        int switched = accountService.switchPricePlans(
+                Map.of(SMART_METER_ID, "other-price-plan-id", "new-smart-meter-id", PRICE_PLAN_ID));
+
+        assertThat(switched).isEqualTo(2);
+        assertThat(accountService.getAccounts())
+                .isEqualTo(Map.of(SMART_METER_ID, "other-price-plan-id", "new-smart-meter-id", PRICE_PLAN_ID));
+        assertThat(smartMeterIds).isEqualTo(Set.of(SMART_METER_ID));
+    }
+
+    @Test
+    public void givenAPricePlanShouldMoveEveryMeterOnItToAnother() {
+        accountService.switchPricePlans(Map.of("other-smart-meter-id", PRICE_PLAN_ID, "third-smart-meter-id", "kept"));
+
+        assertThat(accountService.switchPricePlans(PRICE_PLAN_ID, "other-price-plan-id")).isEqualTo(2);
+        assertThat(accountService.getAccounts())
+                .containsEntry(SMART_METER_ID, "other-price-plan-id")
+                .containsEntry("other-smart-meter-id", "other-price-plan-id")
+                .containsEntry("third-smart-meter-id", "kept");
+    }
+
+    @Test
+    public void givenTheCurrentPricePlanShouldNotCountItAsSwitched() {
+        assertThat(accountService.switchPricePlans(Map.of(SMART_METER_ID, PRICE_PLAN_ID))).isZero();
+    }
 }
@@ -0,0 +1,78 @@
+package uk.tw.energy.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.FleetRecommendation;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+public class FleetRecommendationServiceTest {
+
+    private static final String WORST_PLAN_ID = "worst-supplier";
+    private static final String BEST_PLAN_ID = "best-supplier";
+    private static final String SECOND_BEST_PLAN_ID = "second-best-supplier";
+
+    private FleetRecommendationService fleetRecommendationService;
+
+    @BeforeEach
+    public void setUp() {
+        MeterReadingService meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        List<ElectricityReading> readings = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), BigDecimal.valueOf(15.0)),
+                new ElectricityReading(Instant.parse("2024-04-26T01:00:00Z"), BigDecimal.valueOf(5.0)));
+        meterReadingService.storeReadings("meter-on-worst-plan", readings);
+        meterReadingService.storeReadings("meter-on-best-plan", readings);
+
+        List<PricePlan> pricePlans = List.of(
+                new PricePlan(WORST_PLAN_ID, null, BigDecimal.TEN, null),
+                new PricePlan(BEST_PLAN_ID, null, BigDecimal.ONE, null),
+                new PricePlan(SECOND_BEST_PLAN_ID, null, BigDecimal.valueOf(2), null));
+        AccountService accountService = new AccountService(Map.of(
+                "meter-on-worst-plan", WORST_PLAN_ID,
+                "meter-on-best-plan", BEST_PLAN_ID,
+                "meter-without-readings", WORST_PLAN_ID));
+
+        fleetRecommendationService = new FleetRecommendationService(
+                new PricePlanService(new PricePlanCatalog(pricePlans), meterReadingService), accountService);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        fleetRecommendationService.shutdown();
+    }
+
+    @Test
+    public void shouldRankPricePlansForEveryMeterWithReadings() {
+        FleetRecommendation recommendation = fleetRecommendationService.recommendForFleet(true, 2);
+
+        assertThat(recommendation.meters()).isEqualTo(2);
+        assertThat(recommendation.rankings())
+                .containsOnlyKeys("meter-on-worst-plan", "meter-on-best-plan")
+                .containsEntry(
+                        "meter-on-worst-plan",
+                        List.of(
+                                new AbstractMap.SimpleEntry<>(BEST_PLAN_ID, new BigDecimal("10.0000")),
+                                new AbstractMap.SimpleEntry<>(SECOND_BEST_PLAN_ID, new BigDecimal("20.0000"))));
+    }
+
+    @Test
+    public void shouldTotalTheSavingsOfSwitchingEveryMeterToEachPricePlan() {
+        FleetRecommendation recommendation = fleetRecommendationService.recommendForFleet(false, null);
+
+        assertThat(recommendation.rankings()).isNull();
+        assertThat(recommendation.pricePlans()).containsOnlyKeys(BEST_PLAN_ID, SECOND_BEST_PLAN_ID, WORST_PLAN_ID);
+        assertThat(recommendation.pricePlans().get(BEST_PLAN_ID).cheapestForMeters()).isEqualTo(2);
+        assertThat(recommendation.pricePlans().get(BEST_PLAN_ID).totalSavings()).isEqualByComparingTo("90");
+        assertThat(recommendation.pricePlans().get(SECOND_BEST_PLAN_ID).totalSavings()).isEqualByComparingTo("70");
+        assertThat(recommendation.pricePlans().get(WORST_PLAN_ID).totalSavings()).isEqualByComparingTo("-90");
+    }
+}
@@ -2,11 +2,21 @@ package uk.tw.energy.service;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.TimeOfUseSlot;
+import uk.tw.energy.domain.UsageProfile;
+import uk.tw.energy.store.ColumnarReadingStore;
 
 public class MeterReadingServiceTest {
 
@@ -14,7 +24,7 @@ public class MeterReadingServiceTest {
 
     @BeforeEach
     public void setUp() {
-        meterReadingService = new MeterReadingService(new HashMap<>());
+        meterReadingService = new MeterReadingService(new ColumnarReadingStore());
     }
 
     @Test
@@ -27,4 +37,99 @@ public class MeterReadingServiceTest {
         meterReadingService.storeReadings("random-id", new ArrayList<>());
         assertThat(meterReadingService.getReadings("random-id")).isEqualTo(Optional.of(new ArrayList<>()));
     }
+
+    @Test
+    public void shouldCountStoredReadingsOnTheRegistryItIsGiven() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        meterReadingService =
+                new MeterReadingService(new ColumnarReadingStore(), registry, EnergyIntegration.TRAPEZOIDAL, null);
+        Instant time = Instant.parse("2024-04-26T18:00:00Z");
+
+        meterReadingService.storeReadings(
+                "random-id",
+                List.of(new ElectricityReading(time, BigDecimal.ONE), new ElectricityReading(time, BigDecimal.TWO)));
+
+        assertThat(registry.get("joi.readings.ingested").counter().count()).isEqualTo(2.0);
+        assertThat(registry.get("joi.readings.batches.ingested").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("joi.readings.store").timer().count()).isEqualTo(1L);
+    }
+
+    @Test
+    public void givenBatchShouldReportWhetherEachEntryWasStoredByItsPosition() {
+        Instant time = Instant.parse("2024-04-26T18:00:00Z");
+        MeterReadings valid = new MeterReadings("random-id", List.of(new ElectricityReading(time, BigDecimal.ONE)));
+        MeterReadings tooPrecise =
+                new MeterReadings("random-id", List.of(new ElectricityReading(time, new BigDecimal("1E-200"))));
+
+        boolean[] stored = meterReadingService.storeReadings(List.of(valid, tooPrecise, valid));
+
+        assertThat(stored).isEqualTo(new boolean[] {true, false, true});
+        assertThat(meterReadingService.getReadings("random-id").orElseThrow().size()).isEqualTo(2);
+    }
+
+    @Test
+    public void givenUnknownMeterShouldHaveNoUsageProfile() {
+        assertThat(meterReadingService.getUsageProfile("unknown-id")).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    public void givenReadingsStoredAfterTheProfileWasMadeShouldAddThemToIt() {
+        Instant time = Instant.parse("2024-04-26T18:00:00Z");
+        meterReadingService.storeReadings("random-id", List.of(new ElectricityReading(time, BigDecimal.ONE)));
+        meterReadingService.getUsageProfile("random-id");
+
+        meterReadingService.storeReadings(
+                "random-id", List.of(new ElectricityReading(time.plusSeconds(60), new BigDecimal("0.5"))));
+
+        UsageProfile profile = meterReadingService.getUsageProfile("random-id").orElseThrow();
+        assertThat(profile.count()).isEqualTo(2);
+        assertThat(profile.readingSummary())
+                .isSameAs(meterReadingService.getReadingSummary("random-id").orElseThrow());
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(time), 4)).isEqualTo(new BigDecimal("0.0125"));
+    }
+
+    @Test
+    public void givenReadingsStoredOutOfTimeOrderAfterTheProfileWasMadeShouldIntegrateThemInTimeOrder() {
+        Instant time = Instant.parse("2024-04-26T18:00:00Z");
+        meterReadingService.storeReadings(
+                "random-id",
+                List.of(
+                        new ElectricityReading(time, BigDecimal.ONE),
+                        new ElectricityReading(time.plusSeconds(120), BigDecimal.ONE)));
+        meterReadingService.getUsageProfile("random-id");
+
+        meterReadingService.storeReadings(
+                "random-id", List.of(new ElectricityReading(time.plusSeconds(60), new BigDecimal("3"))));
+
+        UsageProfile profile = meterReadingService.getUsageProfile("random-id").orElseThrow();
+        assertThat(profile.count()).isEqualTo(3);
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(time), 4)).isEqualTo(new BigDecimal("0.0667"));
+    }
+
+    @Test
+    public void givenCostsWorkedOutFromTheAverageReadingShouldStillIntegrateTheProfileTrapezoidally() {
+        meterReadingService = new MeterReadingService(
+                new ColumnarReadingStore(), new SimpleMeterRegistry(), EnergyIntegration.AVERAGE_OVER_USAGE_TIME, null);
+        Instant time = Instant.parse("2024-04-26T18:00:00Z");
+        meterReadingService.storeReadings(
+                "random-id",
+                List.of(
+                        new ElectricityReading(time, BigDecimal.ONE),
+                        new ElectricityReading(time.plusSeconds(60), new BigDecimal("0.5"))));
+
+        UsageProfile profile = meterReadingService.getUsageProfile("random-id").orElseThrow();
+
+        assertThat(profile.getEnergyInKwH(TimeOfUseSlot.of(time), 4)).isEqualTo(new BigDecimal("0.0125"));
+    }
+
+    @Test
+    public void givenRemovedReadingsShouldHaveNoUsageProfile() {
+        Instant time = Instant.parse("2024-04-26T18:00:00Z");
+        meterReadingService.storeReadings("random-id", List.of(new ElectricityReading(time, BigDecimal.ONE)));
+        meterReadingService.getUsageProfile("random-id");
+
+        meterReadingService.removeReadings("random-id");
+
+        assertThat(meterReadingService.getUsageProfile("random-id")).isEqualTo(Optional.empty());
+    }
 }
@@ -0,0 +1,55 @@
+package uk.tw.energy.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.PricePlan;
+
+public class PricePlanCatalogTest {
+
+    private final PricePlan first = new PricePlan("price-plan-0", "supplier-0", BigDecimal.TEN, null);
+    private final PricePlan second = new PricePlan("price-plan-1", "supplier-1", BigDecimal.ONE, null);
+    private final PricePlanCatalog catalog = new PricePlanCatalog(List.of(first, second));
+
+    @Test
+    public void shouldLookUpPricePlansById() {
+        assertThat(catalog.getPricePlan("price-plan-1")).contains(second);
+        assertThat(catalog.getPricePlan("price-plan-2")).isEmpty();
+        assertThat(catalog.contains("price-plan-0")).isTrue();
+        assertThat(catalog.contains(null)).isFalse();
+    }
+
+    @Test
+    public void shouldReplaceAPricePlanWithTheSameIdInItsPlace() {
+        PricePlan replacement = new PricePlan("price-plan-0", "supplier-0", BigDecimal.TWO, null);
+
+        catalog.putPricePlan(replacement);
+
+        assertThat(catalog.getPricePlans()).containsExactly(replacement, second);
+        assertThat(catalog.getPricePlan("price-plan-0")).contains(replacement);
+    }
+
+    @Test
+    public void shouldLeaveASnapshotUnchangedByLaterChanges() {
+        PricePlanCatalog.Snapshot snapshot = catalog.snapshot();
+        PricePlan added = new PricePlan("price-plan-2", "supplier-2", BigDecimal.ONE, null);
+
+        catalog.putPricePlan(added);
+        catalog.removePricePlan("price-plan-0");
+
+        assertThat(snapshot.pricePlans()).containsExactly(first, second);
+        assertThat(snapshot.get("price-plan-2")).isNull();
+        assertThat(catalog.getPricePlans()).containsExactly(second, added);
+        assertThat(catalog.snapshot().version()).isEqualTo(snapshot.version() + 2);
+    }
+
+    @Test
+    public void shouldRejectPricePlansWithTheSameId() {
+        assertThatThrownBy(() -> catalog.replacePricePlans(List.of(first, first)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(catalog.getPricePlans()).containsExactly(first, second);
+    }
+}
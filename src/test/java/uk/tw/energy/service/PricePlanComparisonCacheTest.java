@@ -0,0 +1,82 @@
+package uk.tw.energy.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ComparisonCacheStatistics;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.ReadingSummary;
+
+public class PricePlanComparisonCacheTest {
+
+    private static final Map<String, BigDecimal> COSTS = Map.of("price-plan-0", BigDecimal.ONE);
+    private static final PricePlan PRICE_PLAN = new PricePlan("price-plan-0", null, BigDecimal.ONE, null);
+
+    private final ReadingSummary summary = ReadingSummary.EMPTY.add(
+            new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), BigDecimal.ONE));
+    private final PricePlanCatalog catalog = new PricePlanCatalog(List.of(PRICE_PLAN));
+    private final PricePlanCatalog.Snapshot pricePlans = catalog.snapshot();
+    private PricePlanComparisonCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new PricePlanComparisonCache(2);
+    }
+
+    @Test
+    public void givenCachedCostsShouldReturnThemWhileTheReadingsAreUnchanged() {
+        cache.put("smart-meter-0", summary, pricePlans, COSTS);
+
+        assertThat(cache.get("smart-meter-0", summary, pricePlans)).isSameAs(COSTS);
+        assertThat(cache.statistics()).isEqualTo(new ComparisonCacheStatistics(1, 0, 0, 1, 2));
+    }
+
+    @Test
+    public void givenNewReadingsShouldDropTheCachedCosts() {
+        cache.put("smart-meter-0", summary, pricePlans, COSTS);
+        ReadingSummary changed =
+                summary.add(new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), BigDecimal.ONE));
+
+        assertThat(cache.get("smart-meter-0", changed, pricePlans)).isNull();
+        assertThat(cache.statistics()).isEqualTo(new ComparisonCacheStatistics(0, 1, 0, 0, 2));
+    }
+
+    @Test
+    public void givenMoreMetersThanCapacityShouldEvictTheLeastRecentlyUsed() {
+        cache.put("smart-meter-0", summary, pricePlans, COSTS);
+        cache.put("smart-meter-1", summary, pricePlans, COSTS);
+        cache.get("smart-meter-0", summary, pricePlans);
+        cache.put("smart-meter-2", summary, pricePlans, COSTS);
+
+        assertThat(cache.get("smart-meter-1", summary, pricePlans)).isNull();
+        assertThat(cache.get("smart-meter-0", summary, pricePlans)).isSameAs(COSTS);
+        assertThat(cache.get("smart-meter-2", summary, pricePlans)).isSameAs(COSTS);
+        assertThat(cache.statistics()).isEqualTo(new ComparisonCacheStatistics(3, 1, 1, 2, 2));
+    }
+
+    @Test
+    public void givenChangedPricePlansShouldDropEveryEntry() {
+        cache.put("smart-meter-0", summary, pricePlans, COSTS);
+        catalog.putPricePlan(new PricePlan("price-plan-1", null, BigDecimal.TEN, null));
+
+        assertThat(cache.get("smart-meter-0", summary, catalog.snapshot())).isNull();
+        assertThat(cache.statistics().size()).isZero();
+    }
+
+    @Test
+    public void givenCostsWorkedOutOnPricePlansChangedSinceShouldNotCacheThem() {
+        catalog.putPricePlan(new PricePlan("price-plan-1", null, BigDecimal.TEN, null));
+        cache.get("smart-meter-0", summary, catalog.snapshot());
+
+        cache.put("smart-meter-0", summary, pricePlans, COSTS);
+
+        assertThat(cache.get("smart-meter-0", summary, catalog.snapshot())).isNull();
+        assertThat(cache.get("smart-meter-0", summary, pricePlans)).isNull();
+    }
+}
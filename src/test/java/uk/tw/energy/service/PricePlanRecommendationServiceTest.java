@@ -0,0 +1,93 @@
+package uk.tw.energy.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanRecommendation;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+public class PricePlanRecommendationServiceTest {
+
+    private static final String SMART_METER_ID = "smart-meter-id";
+
+    private PricePlanRecommendationService recommendationService;
+
+    @BeforeEach
+    public void setUp() {
+        MeterReadingService meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        meterReadingService.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), BigDecimal.valueOf(15.0)),
+                        new ElectricityReading(Instant.parse("2024-04-26T01:00:00Z"), BigDecimal.valueOf(5.0))));
+        PricePlanCatalog pricePlanCatalog = new PricePlanCatalog(List.of(
+                new PricePlan("dear-green", "green", BigDecimal.TEN, null),
+                new PricePlan("cheap-green", "green", BigDecimal.ONE, null),
+                new PricePlan("cheap-evil", "evil", BigDecimal.ONE, null),
+                new PricePlan("middling-evil", "evil", BigDecimal.valueOf(2), null)));
+        AccountService accountService = new AccountService(Map.of(SMART_METER_ID, "middling-evil"));
+        recommendationService = new PricePlanRecommendationService(
+                new PricePlanService(pricePlanCatalog, meterReadingService), pricePlanCatalog, accountService);
+    }
+
+    @Test
+    public void givenASupplierShouldOnlyRecommendItsPricePlans() {
+        assertThat(recommendationService
+                        .recommendCheapestPricePlans(SMART_METER_ID, null, "green")
+                        .orElseThrow())
+                .containsExactly(
+                        Map.entry("cheap-green", new BigDecimal("10.0000")),
+                        Map.entry("dear-green", new BigDecimal("100.0000")));
+    }
+
+    @Test
+    public void givenPricePlansCostingTheSameShouldRankThemById() {
+        assertThat(recommendationService
+                        .recommendCheapestPricePlans(SMART_METER_ID, 2, null)
+                        .orElseThrow())
+                .containsExactly(
+                        Map.entry("cheap-evil", new BigDecimal("10.0000")),
+                        Map.entry("cheap-green", new BigDecimal("10.0000")));
+    }
+
+    @Test
+    public void givenTheCurrentPricePlanShouldWorkOutTheSavingOfEachRecommendation() {
+        PricePlanRecommendation recommendation = recommendationService
+                .recommendAgainstCurrentPricePlan(SMART_METER_ID, 3, null)
+                .orElseThrow();
+
+        assertThat(recommendation.currentCost()).isEqualTo(new BigDecimal("20.0000"));
+        assertThat(recommendation.pricePlans())
+                .extracting(PricePlanRecommendation.RecommendedPricePlan::pricePlanId)
+                .containsExactly("cheap-evil", "cheap-green", "middling-evil");
+        assertThat(recommendation.pricePlans())
+                .extracting(PricePlanRecommendation.RecommendedPricePlan::saving)
+                .containsExactly(new BigDecimal("10.0000"), new BigDecimal("10.0000"), new BigDecimal("0.0000"));
+    }
+
+    @Test
+    public void givenAnyLimitShouldPickTheSamePricePlansAsSortingThemAll() {
+        Random random = new Random(0);
+        Map<String, BigDecimal> costs = new HashMap<>();
+        for (int pricePlan = 0; pricePlan < 1000; pricePlan++) {
+            costs.put("price-plan-" + pricePlan, BigDecimal.valueOf(random.nextInt(200), 1));
+        }
+        List<Map.Entry<String, BigDecimal>> sorted = new ArrayList<>(costs.entrySet());
+        sorted.sort(PricePlanRecommendationService.CHEAPEST_FIRST);
+
+        for (int limit : new int[] {0, 1, 7, 999, 1000, 5000}) {
+            assertThat(PricePlanRecommendationService.cheapest(costs, pricePlanId -> true, limit))
+                    .containsExactlyElementsOf(sorted.subList(0, Math.min(limit, sorted.size())));
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package uk.tw.energy.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.EnergyIntegrator;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ColumnarReadingStore;
+import uk.tw.energy.store.RetentionPolicy;
+
+public class PricePlanServiceTest {
+
+    private static final String SMART_METER_ID = "smart-meter-id";
+
+    private final List<PricePlan> pricePlans = List.of(
+            new PricePlan("price-plan-0", null, BigDecimal.TEN, null),
+            new PricePlan("price-plan-1", null, BigDecimal.valueOf(2), null),
+            new PricePlan("price-plan-2", null, new BigDecimal("0.1234"), null));
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private MeterReadingService meterReadingService;
+    private PricePlanCatalog pricePlanCatalog;
+    private PricePlanService pricePlanService;
+
+    @BeforeEach
+    public void setUp() {
+        meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        pricePlanCatalog = new PricePlanCatalog(pricePlans);
+        // costs from the full history are worked out the way they were before readings were integrated
+        pricePlanService = new PricePlanService(
+                pricePlanCatalog, meterReadingService, registry, EnergyIntegration.AVERAGE_OVER_USAGE_TIME, null);
+    }
+
+    @Test
+    public void givenMeterIdThatDoesNotExistShouldReturnEmpty() {
+        assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan("unknown-id"))
+                .isEmpty();
+    }
+
+    @Test
+    public void givenGeneratedReadingsShouldMatchCostsCalculatedFromTheFullHistory() {
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        List<ElectricityReading> history = new ArrayList<>();
+        for (int batch = 0; batch < 20; batch++) {
+            List<ElectricityReading> readings = generator.generate(50);
+            meterReadingService.storeReadings(SMART_METER_ID, readings);
+            history.addAll(readings);
+
+            assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                    .contains(costsFromFullHistory(history));
+        }
+    }
+
+    @Test
+    public void shouldTimeEveryCostingOnTheRegistryItIsGivenIncludingCacheHits() {
+        meterReadingService.storeReadings(SMART_METER_ID, new ElectricityReadingsGenerator().generate(20));
+
+        pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID);
+        pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID);
+
+        assertThat(registry.get("joi.price-plans.costs").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void givenAPricePlanAddedToTheCatalogShouldCostTheCachedMeterOnItToo() {
+        meterReadingService.storeReadings(SMART_METER_ID, new ElectricityReadingsGenerator().generate(20));
+        pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID);
+
+        pricePlanCatalog.putPricePlan(new PricePlan("price-plan-3", null, BigDecimal.ONE, null));
+
+        assertThat(pricePlanService
+                        .getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID)
+                        .orElseThrow())
+                .containsOnlyKeys("price-plan-0", "price-plan-1", "price-plan-2", "price-plan-3");
+    }
+
+    @Test
+    public void givenOutOfOrderReadingsWithMixedScalesShouldMatchCostsCalculatedFromTheFullHistory() {
+        List<ElectricityReading> history = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T10:00:00.250Z"), new BigDecimal("1.5")),
+                new ElectricityReading(Instant.parse("2024-04-26T08:59:59.750Z"), new BigDecimal("0.0001")),
+                new ElectricityReading(Instant.parse("2024-04-26T09:30:00Z"), new BigDecimal(3)),
+                new ElectricityReading(Instant.parse("2024-04-26T09:45:00Z"), new BigDecimal("2.12345")));
+        meterReadingService.storeReadings(SMART_METER_ID, history.subList(0, 2));
+        meterReadingService.storeReadings(SMART_METER_ID, history.subList(2, 4));
+
+        assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .contains(costsFromFullHistory(history));
+    }
+
+    @Test
+    public void givenRandomReadingsAndUsageTimesShouldMatchCostsCalculatedFromTheFullHistory() {
+        Random random = new Random(0);
+        for (int meter = 0; meter < 10_000; meter++) {
+            String smartMeterId = "smart-meter-" + meter;
+            Instant start = Instant.parse("2024-04-26T00:00:00Z");
+            List<ElectricityReading> history = List.of(
+                    new ElectricityReading(start, BigDecimal.valueOf(random.nextInt(100_000), 4)),
+                    new ElectricityReading(
+                            start.plusSeconds(1 + random.nextInt(10_000)),
+                            BigDecimal.valueOf(random.nextInt(1000), 1)));
+            meterReadingService.storeReadings(smartMeterId, history);
+
+            assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId))
+                    .contains(costsFromFullHistory(history));
+        }
+    }
+
+    @Test
+    public void givenReadingsTooLongForFixedPointArithmeticShouldMatchCostsCalculatedFromTheFullHistory() {
+        List<ElectricityReading> history = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), new BigDecimal("9000000000000000000")),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:07Z"), new BigDecimal("9000000000000000000")));
+        meterReadingService.storeReadings(SMART_METER_ID, history);
+
+        assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .contains(costsFromFullHistory(history));
+    }
+
+    @Test
+    public void givenTimeOfUsePlanShouldPriceTheEnergyOfEachHalfHourAtItsRate() {
+        PricePlan.PeakTimeMultiplier eveningPeak = new PricePlan.PeakTimeMultiplier(
+                DayOfWeek.FRIDAY, LocalTime.of(17, 0), LocalTime.of(19, 0), BigDecimal.valueOf(2));
+        PricePlan timeOfUse = new PricePlan("time-of-use", null, BigDecimal.ONE, List.of(eveningPeak));
+        PricePlan flat = new PricePlan("flat", null, BigDecimal.ONE, List.of());
+        pricePlanService = new PricePlanService(new PricePlanCatalog(List.of(timeOfUse, flat)), meterReadingService);
+        meterReadingService.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        new ElectricityReading(Instant.parse("2024-04-26T08:00:00Z"), new BigDecimal("1.0000")),
+                        new ElectricityReading(Instant.parse("2024-04-26T18:00:00Z"), new BigDecimal("3.0000"))));
+
+        // 20 kWh, of which the 2.9 kWh consumed from 17:00 to 18:00 are priced at the peak rate
+        assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .contains(Map.of("time-of-use", new BigDecimal("22.9000"), "flat", new BigDecimal("20.0000")));
+    }
+
+    @Test
+    public void givenReadingsCompactedIntoQuarterHoursShouldCostTheSameAsBeforeOnEveryPlan() {
+        PricePlan.PeakTimeMultiplier eveningPeak = new PricePlan.PeakTimeMultiplier(
+                DayOfWeek.FRIDAY, LocalTime.of(17, 0), LocalTime.of(19, 0), BigDecimal.valueOf(2));
+        List<PricePlan> plans = List.of(
+                new PricePlan("time-of-use", null, BigDecimal.ONE, List.of(eveningPeak)),
+                new PricePlan("flat", null, new BigDecimal("0.1234"), List.of()));
+        ColumnarReadingStore readingStore = new ColumnarReadingStore();
+        meterReadingService = new MeterReadingService(readingStore);
+        Random random = new Random(15);
+        List<ElectricityReading> history = new ArrayList<>();
+        for (int tenSeconds = 0; tenSeconds < 6 * 60 * 24; tenSeconds++) {
+            history.add(new ElectricityReading(
+                    Instant.parse("2024-04-26T00:00:00Z").plusSeconds(10L * tenSeconds),
+                    BigDecimal.valueOf(random.nextInt(10_000), 4)));
+        }
+        meterReadingService.storeReadings(SMART_METER_ID, history);
+        Map<String, BigDecimal> costs = new PricePlanService(
+                        new PricePlanCatalog(plans),
+                        meterReadingService,
+                        registry,
+                        EnergyIntegration.AVERAGE_OVER_USAGE_TIME,
+                        null)
+                .getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID)
+                .orElseThrow();
+
+        readingStore.compact(
+                new RetentionPolicy(Duration.ofHours(1), Duration.ofDays(1)), Instant.parse("2024-04-27T00:00:00Z"));
+
+        assertThat(meterReadingService.getRollups(SMART_METER_ID).orElseThrow()).hasSize(23 * 4);
+        assertThat(new PricePlanService(
+                                new PricePlanCatalog(plans),
+                                meterReadingService,
+                                registry,
+                                EnergyIntegration.AVERAGE_OVER_USAGE_TIME,
+                                null)
+                        .getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .contains(costs);
+    }
+
+    @Test
+    public void givenNoNewReadingsShouldReturnTheCachedCosts() {
+        meterReadingService.storeReadings(SMART_METER_ID, new ElectricityReadingsGenerator().generate(10));
+
+        Map<String, BigDecimal> costs = pricePlanService
+                .getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID)
+                .orElseThrow();
+
+        assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .containsSame(costs);
+        assertThat(pricePlanService.getComparisonCacheStatistics().hits()).isEqualTo(1);
+    }
+
+    @Test
+    public void givenNewReadingsShouldRecalculateTheCachedCosts() {
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        List<ElectricityReading> history = new ArrayList<>(generator.generate(10));
+        meterReadingService.storeReadings(SMART_METER_ID, history);
+        pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID);
+
+        List<ElectricityReading> readings = List.of(new ElectricityReading(Instant.now(), BigDecimal.TEN));
+        meterReadingService.storeReadings(SMART_METER_ID, readings);
+        history.addAll(readings);
+
+        assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .contains(costsFromFullHistory(history));
+        assertThat(pricePlanService.getComparisonCacheStatistics().misses()).isEqualTo(2);
+    }
+
+    @Test
+    public void givenOutOfOrderReadingsWithMixedScalesShouldIntegrateThemInTimeOrder() {
+        List<ElectricityReading> history = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T10:00:00.250Z"), new BigDecimal("1.5")),
+                new ElectricityReading(Instant.parse("2024-04-26T08:59:59.750Z"), new BigDecimal("0.0001")),
+                new ElectricityReading(Instant.parse("2024-04-26T09:30:00Z"), new BigDecimal(3)),
+                new ElectricityReading(Instant.parse("2024-04-26T09:45:00Z"), new BigDecimal("2.12345")));
+        meterReadingService.storeReadings(SMART_METER_ID, history.subList(0, 2));
+        meterReadingService.storeReadings(SMART_METER_ID, history.subList(2, 4));
+
+        for (EnergyIntegration integration : List.of(EnergyIntegration.TRAPEZOIDAL, EnergyIntegration.LEFT_RIEMANN)) {
+            assertThat(new PricePlanService(pricePlanCatalog, meterReadingService, registry, integration, null)
+                            .getEnergyConsumedInKwH(SMART_METER_ID))
+                    .contains(integrateFullHistory(history, integration));
+        }
+    }
+
+    @Test
+    public void givenGeneratedReadingsShouldCostTheIntegratedEnergy() {
+        List<ElectricityReading> history = new ElectricityReadingsGenerator().generate(5_000);
+        meterReadingService.storeReadings(SMART_METER_ID, history);
+
+        assertThat(new PricePlanService(pricePlanCatalog, meterReadingService)
+                        .getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .contains(integratedCostsFromFullHistory(history));
+    }
+
+    @Test
+    public void givenGeneratedReadingsInBatchesShouldCostTheIntegratedEnergyOfTheFullHistory() {
+        PricePlanService integratingPricePlanService = new PricePlanService(pricePlanCatalog, meterReadingService);
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        List<ElectricityReading> history = new ArrayList<>();
+        for (int batch = 0; batch < 20; batch++) {
+            List<ElectricityReading> readings = generator.generate(50);
+            meterReadingService.storeReadings(SMART_METER_ID, readings);
+            history.addAll(readings);
+
+            assertThat(integratingPricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(
+                            SMART_METER_ID))
+                    .contains(integratedCostsFromFullHistory(history));
+        }
+    }
+
+    @Test
+    public void givenOutOfOrderReadingsWithMixedScalesShouldCostTheIntegratedEnergyOfTheFullHistory() {
+        List<ElectricityReading> history = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T10:00:00.250Z"), new BigDecimal("1.5")),
+                new ElectricityReading(Instant.parse("2024-04-26T08:59:59.750Z"), new BigDecimal("0.0001")),
+                new ElectricityReading(Instant.parse("2024-04-26T09:30:00Z"), new BigDecimal(3)),
+                new ElectricityReading(Instant.parse("2024-04-26T09:45:00Z"), new BigDecimal("2.12345")));
+        meterReadingService.storeReadings(SMART_METER_ID, history.subList(0, 2));
+        meterReadingService.storeReadings(SMART_METER_ID, history.subList(2, 4));
+
+        assertThat(new PricePlanService(pricePlanCatalog, meterReadingService)
+                        .getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .contains(integratedCostsFromFullHistory(history));
+    }
+
+    @Test
+    public void givenRandomReadingsAndUsageTimesShouldCostTheIntegratedEnergyOfTheFullHistory() {
+        PricePlanService integratingPricePlanService = new PricePlanService(pricePlanCatalog, meterReadingService);
+        Random random = new Random(0);
+        for (int meter = 0; meter < 10_000; meter++) {
+            String smartMeterId = "smart-meter-" + meter;
+            Instant start = Instant.parse("2024-04-26T00:00:00Z");
+            List<ElectricityReading> history = List.of(
+                    new ElectricityReading(start, BigDecimal.valueOf(random.nextInt(100_000), 4)),
+                    new ElectricityReading(
+                            start.plusSeconds(1 + random.nextInt(10_000)),
+                            BigDecimal.valueOf(random.nextInt(1000), 1)));
+            meterReadingService.storeReadings(smartMeterId, history);
+
+            assertThat(integratingPricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(
+                            smartMeterId))
+                    .contains(integratedCostsFromFullHistory(history));
+        }
+    }
+
+    @Test
+    public void givenReadingsTooLongForFixedPointArithmeticShouldCostTheIntegratedEnergyOfTheFullHistory() {
+        List<ElectricityReading> history = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), new BigDecimal("9000000000000000000")),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:07Z"), new BigDecimal("9000000000000000000")));
+        meterReadingService.storeReadings(SMART_METER_ID, history);
+
+        assertThat(new PricePlanService(pricePlanCatalog, meterReadingService)
+                        .getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID))
+                .contains(integratedCostsFromFullHistory(history));
+    }
+
+    @Test
+    public void givenASingleReadingShouldHaveConsumedNothing() {
+        meterReadingService.storeReadings(
+                SMART_METER_ID,
+                List.of(new ElectricityReading(Instant.parse("2024-04-26T00:00:00Z"), new BigDecimal("1.5"))));
+
+        assertThat(new PricePlanService(pricePlanCatalog, meterReadingService).getEnergyConsumedInKwH(SMART_METER_ID))
+                .contains(new BigDecimal("0.0000"));
+        assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID)
+                        .orElseThrow())
+                .containsEntry("price-plan-0", new BigDecimal("0.0"));
+    }
+
+    @Test
+    public void givenReadingsAtTheSameTimeShouldHaveConsumedNothing() {
+        Instant time = Instant.parse("2024-04-26T00:00:00Z");
+        meterReadingService.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        new ElectricityReading(time, new BigDecimal("1.5")),
+                        new ElectricityReading(time, BigDecimal.ONE)));
+
+        assertThat(new PricePlanService(pricePlanCatalog, meterReadingService).getEnergyConsumedInKwH(SMART_METER_ID))
+                .contains(new BigDecimal("0.0000"));
+        assertThat(pricePlanService.getEnergyConsumedInKwH(SMART_METER_ID)).contains(new BigDecimal("0.0"));
+    }
+
+    @Test
+    public void givenAGapLongerThanAllowedShouldLeaveItOut() {
+        Instant start = Instant.parse("2024-04-26T00:00:00Z");
+        meterReadingService.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        new ElectricityReading(start, new BigDecimal("1.0")),
+                        new ElectricityReading(start.plus(Duration.ofMinutes(30)), new BigDecimal("3.0")),
+                        new ElectricityReading(start.plus(Duration.ofHours(6)), new BigDecimal("5.0")),
+                        new ElectricityReading(start.plus(Duration.ofHours(7)), new BigDecimal("7.0"))));
+
+        Duration maxReadingGap = Duration.ofHours(1);
+
+        // half an hour at 2 kW and an hour at 6 kW, without the five and a half hours the meter was silent
+        assertThat(new PricePlanService(
+                                pricePlanCatalog,
+                                meterReadingService,
+                                registry,
+                                EnergyIntegration.TRAPEZOIDAL,
+                                maxReadingGap)
+                        .getEnergyConsumedInKwH(SMART_METER_ID))
+                .contains(new BigDecimal("7.0000"));
+        assertThat(new PricePlanService(
+                                pricePlanCatalog,
+                                meterReadingService,
+                                registry,
+                                EnergyIntegration.LEFT_RIEMANN,
+                                maxReadingGap)
+                        .getEnergyConsumedInKwH(SMART_METER_ID))
+                .contains(new BigDecimal("5.5000"));
+    }
+
+    /**
+     * The energy of readings sorted by time, integrated one interval at a time.
+     */
+    private static BigDecimal integrateFullHistory(
+            List<ElectricityReading> electricityReadings, EnergyIntegration integration) {
+        List<ElectricityReading> sorted = electricityReadings.stream()
+                .sorted(Comparator.comparing(ElectricityReading::time))
+                .toList();
+        BigDecimal kwNanos = BigDecimal.ZERO;
+        int scale = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            scale = Math.max(scale, sorted.get(i).reading().scale());
+            if (i > 0) {
+                BigDecimal previous = sorted.get(i - 1).reading();
+                BigDecimal power = integration == EnergyIntegration.TRAPEZOIDAL
+                        ? previous.add(sorted.get(i).reading()).divide(BigDecimal.valueOf(2))
+                        : previous;
+                long nanos = Duration.between(sorted.get(i - 1).time(), sorted.get(i).time()).toNanos();
+                kwNanos = kwNanos.add(power.multiply(BigDecimal.valueOf(nanos)));
+            }
+        }
+        return kwNanos.divide(
+                BigDecimal.valueOf(3_600_000_000_000L),
+                Math.max(scale, EnergyIntegrator.MIN_ENERGY_SCALE),
+                RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Costs of the energy of every reading, integrated trapezoidally one interval at a time.
+     */
+    private Map<String, BigDecimal> integratedCostsFromFullHistory(List<ElectricityReading> electricityReadings) {
+        BigDecimal energyConsumedInKwH = integrateFullHistory(electricityReadings, EnergyIntegration.TRAPEZOIDAL);
+        return pricePlans.stream()
+                .collect(Collectors.toMap(
+                        PricePlan::getPlanName, pricePlan -> energyConsumedInKwH.multiply(pricePlan.getUnitRate())));
+    }
+
+    /**
+     * Costs worked out by streaming over every reading, which is how they were calculated before meters kept a running
+     * summary.
+     */
+    private Map<String, BigDecimal> costsFromFullHistory(List<ElectricityReading> electricityReadings) {
+        BigDecimal summedReadings = electricityReadings.stream()
+                .map(ElectricityReading::reading)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal averageReadingInKw =
+                summedReadings.divide(BigDecimal.valueOf(electricityReadings.size()), RoundingMode.HALF_UP);
+        Instant first = electricityReadings.stream()
+                .min(Comparator.comparing(ElectricityReading::time))
+                .get()
+                .time();
+        Instant last = electricityReadings.stream()
+                .max(Comparator.comparing(ElectricityReading::time))
+                .get()
+                .time();
+        BigDecimal usageTimeInHours = BigDecimal.valueOf(Duration.between(first, last).getSeconds() / 3600.0);
+        BigDecimal energyConsumedInKwH = averageReadingInKw.divide(usageTimeInHours, RoundingMode.HALF_UP);
+
+        return pricePlans.stream()
+                .collect(Collectors.toMap(
+                        PricePlan::getPlanName, pricePlan -> energyConsumedInKwH.multiply(pricePlan.getUnitRate())));
+    }
+}
@@ -0,0 +1,79 @@
+package uk.tw.energy.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingColumns;
+import uk.tw.energy.store.ColumnarReadingStore;
+
+public class ReadingIngestionQueueTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void givenQueuedBatchesShouldStoreEachMetersReadingsInTheOrderTheyArrived() {
+        MeterReadingService meterReadingService = new MeterReadingService(new ColumnarReadingStore());
+        ReadingIngestionQueue queue = new ReadingIngestionQueue(meterReadingService, registry, true, 1000, 4);
+        Map<String, List<ElectricityReading>> expected = new HashMap<>();
+
+        for (int batch = 0; batch < 200; batch++) {
+            String smartMeterId = "smart-meter-" + batch % 7;
+            List<ElectricityReading> readings = List.of(
+                    new ElectricityReading(Instant.ofEpochSecond(1_714_089_600L - batch), BigDecimal.valueOf(batch)));
+            expected.computeIfAbsent(smartMeterId, id -> new ArrayList<>()).addAll(readings);
+            assertThat(queue.offer(smartMeterId, ReadingColumns.of(readings))).isTrue();
+        }
+        queue.close();
+
+        assertThat(queue.depth()).isZero();
+        assertThat(registry.get("joi.readings.queue.queued").counter().count()).isEqualTo(200);
+        assertThat(registry.get("joi.readings.queue.drained").counter().count()).isEqualTo(200);
+        expected.forEach((smartMeterId, readings) ->
+                assertThat(meterReadingService.getReadings(smartMeterId)).contains(readings));
+    }
+
+    @Test
+    public void givenFullQueueShouldTurnBatchesAwayUntilItDrains() throws InterruptedException {
+        CountDownLatch storing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MeterReadingService slowService = new MeterReadingService(new ColumnarReadingStore()) {
+            @Override
+            public void storeReadings(String smartMeterId, ReadingColumns readings) {
+                storing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.storeReadings(smartMeterId, readings);
+            }
+        };
+        ReadingIngestionQueue queue = new ReadingIngestionQueue(slowService, registry, true, 1, 1);
+
+        assertThat(queue.offer("smart-meter-0", readings(1))).isTrue();
+        storing.await();
+        assertThat(queue.offer("smart-meter-0", readings(2))).isTrue();
+        assertThat(queue.offer("smart-meter-0", readings(3))).isFalse();
+        assertThat(queue.depth()).isEqualTo(1);
+        assertThat(registry.get("joi.readings.queue.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        queue.close();
+
+        assertThat(slowService.getReadings("smart-meter-0").orElseThrow()).hasSize(2);
+    }
+
+    private static ReadingColumns readings(int reading) {
+        return ReadingColumns.of(List.of(new ElectricityReading(Instant.now(), BigDecimal.valueOf(reading))));
+    }
+}
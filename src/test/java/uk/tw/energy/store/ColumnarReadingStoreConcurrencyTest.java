@@ -0,0 +1,93 @@
+package uk.tw.energy.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+
+public class ColumnarReadingStoreConcurrencyTest {
+
+    private static final int WRITERS = 8;
+    private static final int BATCHES_PER_WRITER = 500;
+    private static final int READINGS_PER_BATCH = 10;
+    private static final String SHARED_METER_ID = "shared-meter";
+
+    @Test
+    public void givenConcurrentWritersNoReadingsShouldBeLost() throws Exception {
+        ColumnarReadingStore readingStore = new ColumnarReadingStore();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+
+        for (int writer = 0; writer < WRITERS; writer++) {
+            String ownMeterId = "meter-" + writer;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int batch = 0; batch < BATCHES_PER_WRITER; batch++) {
+                    readingStore.storeReadings(ownMeterId, readings(batch));
+                    readingStore.storeReadings(SHARED_METER_ID, readings(batch));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        for (int writer = 0; writer < WRITERS; writer++) {
+            assertThat(readingStore.getReadings("meter-" + writer).orElseThrow())
+                    .hasSize(BATCHES_PER_WRITER * READINGS_PER_BATCH);
+        }
+        assertThat(readingStore.getReadings(SHARED_METER_ID).orElseThrow())
+                .hasSize(WRITERS * BATCHES_PER_WRITER * READINGS_PER_BATCH);
+    }
+
+    @Test
+    public void givenConcurrentWriterReadersShouldOnlySeeWholeBatches() throws Exception {
+        ColumnarReadingStore readingStore = new ColumnarReadingStore();
+        readingStore.storeReadings(SHARED_METER_ID, List.of());
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<?> writer = executor.submit(() -> {
+            for (int batch = 0; batch < BATCHES_PER_WRITER; batch++) {
+                readingStore.storeReadings(SHARED_METER_ID, readings(batch));
+            }
+            writing.set(false);
+        });
+        Future<?> reader = executor.submit(() -> {
+            while (writing.get()) {
+                List<ElectricityReading> snapshot = readingStore.getReadings(SHARED_METER_ID).orElseThrow();
+                assertThat(snapshot.size() % READINGS_PER_BATCH).isZero();
+                assertThat(snapshot).doesNotContainNull();
+            }
+        });
+        writer.get(30, TimeUnit.SECONDS);
+        reader.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertThat(readingStore.getReadings(SHARED_METER_ID).orElseThrow())
+                .hasSize(BATCHES_PER_WRITER * READINGS_PER_BATCH);
+    }
+
+    private static List<ElectricityReading> readings(int batch) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        Instant start = Instant.ofEpochSecond(1_700_000_000L + batch * 100L);
+        for (int i = 0; i < READINGS_PER_BATCH; i++) {
+            readings.add(new ElectricityReading(start.plusSeconds(i * 10L), BigDecimal.valueOf(i + 1, 4)));
+        }
+        return readings;
+    }
+}
@@ -0,0 +1,308 @@
+package uk.tw.energy.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingSummary;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+public class ColumnarReadingStoreTest {
+
+    private static final String SMART_METER_ID = "smart-meter-id";
+
+    private ColumnarReadingStore readingStore;
+
+    @BeforeEach
+    public void setUp() {
+        readingStore = new ColumnarReadingStore();
+    }
+
+    @Test
+    public void givenMeterIdThatDoesNotExistShouldReturnEmpty() {
+        assertThat(readingStore.getReadings("unknown-id")).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    public void givenReadingsShouldReturnThemExactlyAsStored() {
+        List<ElectricityReading> readings = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), new BigDecimal(10)),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:20.123456789Z"), new BigDecimal("0.5000")),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:05Z"), new BigDecimal("-1.25")));
+
+        readingStore.storeReadings(SMART_METER_ID, readings);
+
+        assertThat(readingStore.getReadings(SMART_METER_ID)).contains(readings);
+    }
+
+    @Test
+    public void givenMultipleBatchesShouldGrowAndKeepInsertionOrder() {
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        List<ElectricityReading> expected = new ArrayList<>();
+        for (int batch = 0; batch < 10; batch++) {
+            List<ElectricityReading> readings = generator.generate(25);
+            readingStore.storeReadings(SMART_METER_ID, readings);
+            expected.addAll(readings);
+        }
+
+        assertThat(readingStore.getReadings(SMART_METER_ID)).contains(expected);
+    }
+
+    @Test
+    public void givenReadingsInSeveralBatchesShouldKeepTheirSummary() {
+        readingStore.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), new BigDecimal("1.5")),
+                        new ElectricityReading(Instant.parse("2024-04-26T00:00:20Z"), new BigDecimal("0.25"))));
+        readingStore.storeReadings(
+                SMART_METER_ID,
+                List.of(new ElectricityReading(Instant.parse("2024-04-26T00:00:05Z"), new BigDecimal(2))));
+
+        assertThat(readingStore.getSummary(SMART_METER_ID))
+                .contains(new ReadingSummary(
+                        3,
+                        new BigDecimal("3.75"),
+                        Instant.parse("2024-04-26T00:00:05Z"),
+                        Instant.parse("2024-04-26T00:00:20Z")));
+    }
+
+    @Test
+    public void givenEmptyReadingsShouldKnowTheMeter() {
+        readingStore.storeReadings(SMART_METER_ID, List.of());
+
+        assertThat(readingStore.getReadings(SMART_METER_ID)).contains(List.of());
+        assertThat(readingStore.getSummary(SMART_METER_ID)).contains(ReadingSummary.EMPTY);
+    }
+
+    @Test
+    public void givenTimeRangeShouldReturnReadingsWithinItInTimeOrder() {
+        readingStore.storeReadings(
+                SMART_METER_ID,
+                List.of(reading("2024-04-26T00:00:10Z", 1), reading("2024-04-26T00:00:20Z", 2)));
+        readingStore.storeReadings(
+                SMART_METER_ID,
+                List.of(reading("2024-04-26T00:00:05Z", 3), reading("2024-04-26T00:00:30Z", 4)));
+        readingStore.storeReadings(
+                SMART_METER_ID,
+                List.of(reading("2024-04-26T00:00:15Z", 5), reading("2024-04-26T00:00:20Z", 6)));
+
+        assertThat(readingStore.getReadings(
+                        SMART_METER_ID,
+                        Instant.parse("2024-04-26T00:00:10Z"),
+                        Instant.parse("2024-04-26T00:00:30Z"),
+                        Integer.MAX_VALUE))
+                .contains(List.of(
+                        reading("2024-04-26T00:00:10Z", 1),
+                        reading("2024-04-26T00:00:15Z", 5),
+                        reading("2024-04-26T00:00:20Z", 2),
+                        reading("2024-04-26T00:00:20Z", 6)));
+        assertThat(readingStore.getReadings(SMART_METER_ID, Instant.MIN, Instant.MAX, 2))
+                .contains(List.of(reading("2024-04-26T00:00:05Z", 3), reading("2024-04-26T00:00:10Z", 1)));
+    }
+
+    @Test
+    public void givenRandomlyOrderedBatchesRangesShouldMatchFilteringAndSortingTheHistory() {
+        Random random = new Random(42);
+        List<ElectricityReading> history = new ArrayList<>();
+        for (int batch = 0; batch < 50; batch++) {
+            List<ElectricityReading> readings = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Instant time = Instant.ofEpochSecond(1_700_000_000L + random.nextInt(10_000), random.nextInt(3) * 500);
+                readings.add(new ElectricityReading(time, BigDecimal.valueOf(random.nextInt(10_000), 4)));
+            }
+            readingStore.storeReadings(SMART_METER_ID, readings);
+            history.addAll(readings);
+
+            Instant from = Instant.ofEpochSecond(1_700_000_000L + random.nextInt(10_000));
+            Instant to = from.plusSeconds(random.nextInt(5_000));
+            List<ElectricityReading> expected = history.stream()
+                    .filter(reading -> !reading.time().isBefore(from) && reading.time().isBefore(to))
+                    .sorted(Comparator.comparing(ElectricityReading::time))
+                    .toList();
+            assertThat(readingStore.getReadings(SMART_METER_ID, from, to, Integer.MAX_VALUE))
+                    .contains(expected);
+        }
+    }
+
+    @Test
+    public void givenReadingsOutOfOrderAcrossBlocksShouldReturnTheEarliestInRangeUpToTheLimit() {
+        List<ElectricityReading> later = new ArrayList<>();
+        List<ElectricityReading> earlier = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            later.add(new ElectricityReading(Instant.ofEpochSecond(1_700_010_000L + i), BigDecimal.ONE));
+            earlier.add(new ElectricityReading(Instant.ofEpochSecond(1_700_000_000L + i), BigDecimal.TEN));
+        }
+        readingStore.storeReadings(SMART_METER_ID, later);
+        readingStore.storeReadings(SMART_METER_ID, earlier);
+
+        Instant from = Instant.ofEpochSecond(1_700_000_250L);
+        Instant to = Instant.ofEpochSecond(1_700_010_010L);
+        assertThat(readingStore.getReadings(SMART_METER_ID, from, to, 60))
+                .contains(Stream.concat(earlier.subList(250, 300).stream(), later.subList(0, 10).stream())
+                        .toList());
+        assertThat(readingStore.getReadings(SMART_METER_ID, from, to, 5)).contains(earlier.subList(250, 255));
+    }
+
+    @Test
+    public void givenReadingTooPreciseToStoreShouldReject() {
+        BigDecimal tooPrecise = new BigDecimal(BigInteger.TWO.pow(70), 4);
+        List<ElectricityReading> readings = List.of(new ElectricityReading(Instant.now(), tooPrecise));
+
+        assertThatThrownBy(() -> readingStore.storeReadings(SMART_METER_ID, readings))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldUseFarLessMemoryThanReadingObjects() {
+        readingStore.storeReadings(SMART_METER_ID, new ElectricityReadingsGenerator().generate(1000));
+
+        assertThat(readingStore.sizeInBytes()).isLessThan(1000 * 32L);
+    }
+
+    @Test
+    public void givenReadingsOlderThanTheRawRetentionShouldRollThemUpIntoQuarterHoursAndKeepTheSummary() {
+        readingStore.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        reading("2024-04-26T00:00:10Z", 1),
+                        reading("2024-04-26T02:00:00Z", 5),
+                        reading("2024-04-26T00:20:00Z", 2),
+                        reading("2024-04-26T00:05:00Z", 3)));
+        ReadingSummary summary = readingStore.getSummary(SMART_METER_ID).orElseThrow();
+
+        long rolledUp = readingStore.compact(
+                new RetentionPolicy(Duration.ofHours(1), Duration.ofDays(1)), Instant.parse("2024-04-26T03:10:00Z"));
+
+        assertThat(rolledUp).isEqualTo(3);
+        assertThat(readingStore.getReadings(SMART_METER_ID)).contains(List.of(reading("2024-04-26T02:00:00Z", 5)));
+        assertThat(readingStore.getRollups(SMART_METER_ID))
+                .contains(List.of(
+                        rollup("2024-04-26T00:00:00Z", "2024-04-26T00:15:00Z", 2, 4, 1, 3),
+                        rollup("2024-04-26T00:15:00Z", "2024-04-26T00:30:00Z", 1, 2, 2, 2)));
+        assertThat(readingStore.getSummary(SMART_METER_ID)).containsSame(summary);
+        assertThat(readingStore.readingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void givenQuarterHoursOlderThanTheirRetentionShouldRollThemUpIntoHours() {
+        readingStore.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        reading("2024-04-26T00:00:10Z", 1),
+                        reading("2024-04-26T00:05:00Z", 3),
+                        reading("2024-04-26T00:20:00Z", 2),
+                        reading("2024-04-26T01:30:00Z", 4)));
+
+        readingStore.compact(
+                new RetentionPolicy(Duration.ofHours(1), Duration.ofHours(2)), Instant.parse("2024-04-26T03:10:00Z"));
+
+        assertThat(readingStore.getReadings(SMART_METER_ID)).contains(List.of());
+        assertThat(readingStore.getRollups(SMART_METER_ID))
+                .contains(List.of(
+                        rollup("2024-04-26T00:00:00Z", "2024-04-26T01:00:00Z", 3, 6, 1, 3),
+                        rollup("2024-04-26T01:30:00Z", "2024-04-26T01:45:00Z", 1, 4, 4, 4)));
+    }
+
+    @Test
+    public void givenReadingArrivingLateForACompactedPeriodShouldAddItToThatPeriodsRollup() {
+        RetentionPolicy retentionPolicy = new RetentionPolicy(Duration.ofHours(1), Duration.ofDays(1));
+        readingStore.storeReadings(
+                SMART_METER_ID, List.of(reading("2024-04-26T00:00:10Z", 1), reading("2024-04-26T00:05:00Z", 3)));
+        readingStore.compact(retentionPolicy, Instant.parse("2024-04-26T03:10:00Z"));
+
+        readingStore.storeReadings(
+                SMART_METER_ID, List.of(reading("2024-04-26T00:07:00Z", 4), reading("2024-04-26T03:00:00Z", 1)));
+        readingStore.compact(retentionPolicy, Instant.parse("2024-04-26T03:20:00Z"));
+
+        assertThat(readingStore.getReadings(SMART_METER_ID)).contains(List.of(reading("2024-04-26T03:00:00Z", 1)));
+        assertThat(readingStore.getRollups(SMART_METER_ID))
+                .contains(List.of(rollup("2024-04-26T00:00:00Z", "2024-04-26T00:15:00Z", 3, 8, 1, 4)));
+        assertThat(readingStore.getSummary(SMART_METER_ID).orElseThrow().count()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldHandOverReadingsAndRollupsInTimeOrder() {
+        readingStore.storeReadings(
+                SMART_METER_ID, List.of(reading("2024-04-26T00:05:00Z", 3), reading("2024-04-26T00:00:10Z", 1)));
+        readingStore.compact(
+                new RetentionPolicy(Duration.ofHours(1), Duration.ofDays(1)), Instant.parse("2024-04-26T03:10:00Z"));
+        readingStore.storeReadings(
+                SMART_METER_ID,
+                List.of(
+                        reading("2024-04-26T02:00:00Z", 5),
+                        reading("2024-04-26T00:15:00Z", 2),
+                        reading("2024-04-26T00:10:00Z", 4)));
+
+        List<Object> handedOver = new ArrayList<>();
+        Optional<ReadingSummary> summary = readingStore.forEachInTimeOrder(
+                SMART_METER_ID,
+                (epochSecond, nano, unscaledReading, readingScale) -> handedOver.add(new ElectricityReading(
+                        Instant.ofEpochSecond(epochSecond, nano), BigDecimal.valueOf(unscaledReading, readingScale))),
+                handedOver::add);
+
+        assertThat(handedOver)
+                .containsExactly(
+                        rollup("2024-04-26T00:00:00Z", "2024-04-26T00:15:00Z", 2, 4, 1, 3),
+                        reading("2024-04-26T00:10:00Z", 4),
+                        reading("2024-04-26T00:15:00Z", 2),
+                        reading("2024-04-26T02:00:00Z", 5));
+        assertThat(summary).contains(readingStore.getSummary(SMART_METER_ID).orElseThrow());
+        assertThat(readingStore.forEachInTimeOrder("unknown-meter", (s, n, r, scale) -> {}, rollup -> {}))
+                .isEmpty();
+    }
+
+    @Test
+    public void givenShuffledReadingsAcrossManyBlocksShouldHandThemOverInTimeOrder() {
+        Random random = new Random(17);
+        List<ElectricityReading> history = new ArrayList<>();
+        for (int batch = 0; batch < 40; batch++) {
+            List<ElectricityReading> readings = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                Instant time = Instant.ofEpochSecond(1_700_000_000L + random.nextInt(2_000), random.nextInt(2) * 500);
+                readings.add(new ElectricityReading(time, BigDecimal.valueOf(random.nextInt(10_000), 2)));
+            }
+            readingStore.storeReadings(SMART_METER_ID, readings);
+            history.addAll(readings);
+        }
+
+        List<ElectricityReading> handedOver = new ArrayList<>();
+        readingStore.forEachInTimeOrder(
+                SMART_METER_ID,
+                (epochSecond, nano, unscaledReading, readingScale) -> handedOver.add(new ElectricityReading(
+                        Instant.ofEpochSecond(epochSecond, nano), BigDecimal.valueOf(unscaledReading, readingScale))),
+                rollup -> {});
+
+        assertThat(handedOver)
+                .isEqualTo(history.stream()
+                        .sorted(Comparator.comparing(ElectricityReading::time))
+                        .toList());
+    }
+
+    private static ReadingRollup rollup(String start, String end, long count, int sum, int min, int max) {
+        return new ReadingRollup(
+                Instant.parse(start),
+                Instant.parse(end),
+                count,
+                BigDecimal.valueOf(sum),
+                BigDecimal.valueOf(min),
+                BigDecimal.valueOf(max));
+    }
+
+    private static ElectricityReading reading(String time, int reading) {
+        return new ElectricityReading(Instant.parse(time), BigDecimal.valueOf(reading));
+    }
+}
@@ -0,0 +1,168 @@
+package uk.tw.energy.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+public class DurableReadingStoreTest {
+
+    private static final int SHARDS = 4;
+    private static final long SEGMENT_BYTES = DurableReadingStore.RECORD_BYTES * 32L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void givenReadingsShouldRecoverThemExactlyAfterReopening() throws IOException {
+        List<ElectricityReading> readings = List.of(
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), new BigDecimal(10)),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:20.123456789Z"), new BigDecimal("0.5000")),
+                new ElectricityReading(Instant.parse("2024-04-26T00:00:05Z"), new BigDecimal("-1.25")));
+
+        try (DurableReadingStore readingStore = open()) {
+            readingStore.storeReadings("smart-meter-0", readings);
+        }
+
+        try (DurableReadingStore readingStore = open()) {
+            assertThat(readingStore.getReadings("smart-meter-0")).contains(readings);
+            assertThat(readingStore.getSummary("smart-meter-0").orElseThrow().count()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void givenManyMetersAndBatchesShouldRollSegmentsAndKeepEachMetersOrder() throws IOException {
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        List<List<ElectricityReading>> expected = new ArrayList<>();
+        for (int meter = 0; meter < 10; meter++) {
+            expected.add(new ArrayList<>());
+        }
+
+        try (DurableReadingStore readingStore = open()) {
+            for (int batch = 0; batch < 5; batch++) {
+                for (int meter = 0; meter < 10; meter++) {
+                    List<ElectricityReading> readings = generator.generate(25);
+                    readingStore.storeReadings("smart-meter-" + meter, readings);
+                    expected.get(meter).addAll(readings);
+                }
+            }
+        }
+
+        try (DurableReadingStore readingStore = open()) {
+            for (int meter = 0; meter < 10; meter++) {
+                assertThat(readingStore.getReadings("smart-meter-" + meter)).contains(expected.get(meter));
+            }
+        }
+        assertThat(segments()).hasSizeGreaterThan(SHARDS);
+    }
+
+    @Test
+    public void givenRemovedMeterShouldOnlyRecoverTheReadingsStoredSinceItWasRemoved() throws IOException {
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        List<ElectricityReading> removed = generator.generate(40);
+        List<ElectricityReading> storedSince = generator.generate(5);
+
+        try (DurableReadingStore readingStore = open()) {
+            readingStore.storeReadings("smart-meter-0", removed);
+            assertThat(readingStore.removeReadings("smart-meter-0")).contains(removed);
+            readingStore.storeReadings("smart-meter-0", storedSince);
+        }
+
+        try (DurableReadingStore readingStore = open()) {
+            assertThat(readingStore.getReadings("smart-meter-0")).contains(storedSince);
+            assertThat(readingStore.getSmartMeterIds()).containsExactly("smart-meter-0");
+        }
+    }
+
+    @Test
+    public void givenBatchTornByACrashShouldRecoverTheBatchesBeforeItAndCarryOnAppending() throws IOException {
+        List<ElectricityReading> readings = new ElectricityReadingsGenerator().generate(5);
+        try (DurableReadingStore readingStore = open()) {
+            readingStore.storeReadings("smart-meter-0", readings.subList(0, 2));
+            readingStore.storeReadings("smart-meter-0", readings.subList(2, 5));
+        }
+        Path segment = segments().stream()
+                .filter(path -> path.toFile().length() > 0)
+                .findFirst()
+                .orElseThrow();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        ElectricityReading later = new ElectricityReading(Instant.parse("2024-04-26T00:00:10Z"), BigDecimal.ONE);
+        try (DurableReadingStore readingStore = open()) {
+            assertThat(readingStore.getReadings("smart-meter-0")).contains(readings.subList(0, 2));
+            readingStore.storeReadings("smart-meter-0", List.of(later));
+        }
+
+        try (DurableReadingStore readingStore = open()) {
+            assertThat(readingStore.getReadings("smart-meter-0"))
+                    .contains(List.of(readings.get(0), readings.get(1), later));
+        }
+    }
+
+    @Test
+    public void givenBatchWithoutItsCommitRecordShouldSkipItsReadings() throws IOException {
+        List<ElectricityReading> readings = new ElectricityReadingsGenerator().generate(5);
+        try (DurableReadingStore readingStore = open()) {
+            readingStore.storeReadings("smart-meter-0", readings.subList(0, 2));
+            readingStore.storeReadings("smart-meter-0", readings.subList(2, 5));
+        }
+        Path segment = segments().stream()
+                .filter(path -> path.toFile().length() > 0)
+                .findFirst()
+                .orElseThrow();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - DurableReadingStore.RECORD_BYTES);
+        }
+
+        try (DurableReadingStore readingStore = open()) {
+            assertThat(readingStore.getReadings("smart-meter-0")).contains(readings.subList(0, 2));
+        }
+    }
+
+    @Test
+    public void givenReadingsThatCannotBeStoredShouldWriteNothing() throws IOException {
+        try (DurableReadingStore readingStore = open()) {
+            assertThatThrownBy(() -> readingStore.storeReadings(
+                            "smart-meter-0",
+                            List.of(new ElectricityReading(Instant.now(), new BigDecimal("1e-200")))))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        try (DurableReadingStore readingStore = open()) {
+            assertThat(readingStore.getReadings("smart-meter-0")).isEmpty();
+        }
+    }
+
+    @Test
+    public void givenDirectoryWithADifferentNumberOfShardsShouldRefuseToOpen() throws IOException {
+        open().close();
+
+        assertThatThrownBy(() -> new DurableReadingStore(directory, SHARDS * 2, SEGMENT_BYTES, false))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private DurableReadingStore open() throws IOException {
+        return new DurableReadingStore(directory, SHARDS, SEGMENT_BYTES, false);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(path -> path.toString().endsWith(".seg")).toList();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package uk.tw.energy.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class SeriesBlockTest {
+
+    @Test
+    public void givenRegularSlowlyVaryingReadingsShouldDecodeThemExactlyFromAFewBytesEach() {
+        long[] epochSeconds = new long[SeriesBlock.CAPACITY];
+        long[] unscaledReadings = new long[SeriesBlock.CAPACITY];
+        byte[] readingScales = new byte[SeriesBlock.CAPACITY];
+        for (int i = 0; i < SeriesBlock.CAPACITY; i++) {
+            epochSeconds[i] = 1_714_089_600L + i * 10L;
+            unscaledReadings[i] = 5_000 + i % 7;
+            readingScales[i] = 4;
+        }
+
+        SeriesBlock block =
+                SeriesBlock.encode(epochSeconds, null, unscaledReadings, readingScales, SeriesBlock.CAPACITY);
+
+        assertDecodesTo(block, epochSeconds, new int[SeriesBlock.CAPACITY], unscaledReadings, readingScales);
+        assertThat(block.sizeInBytes()).isLessThan(SeriesBlock.CAPACITY * 3L);
+    }
+
+    @Test
+    public void givenOutOfOrderTimesNanosMixedScalesAndExtremeValuesShouldDecodeThemExactly() {
+        Random random = new Random(42);
+        int count = 100;
+        long[] epochSeconds = new long[count];
+        int[] nanos = new int[count];
+        long[] unscaledReadings = new long[count];
+        byte[] readingScales = new byte[count];
+        for (int i = 0; i < count; i++) {
+            epochSeconds[i] = random.nextLong();
+            nanos[i] = random.nextInt(1_000_000_000);
+            unscaledReadings[i] = i % 2 == 0 ? Long.MIN_VALUE + i : Long.MAX_VALUE - i;
+            readingScales[i] = (byte) random.nextInt(256);
+        }
+
+        SeriesBlock block = SeriesBlock.encode(epochSeconds, nanos, unscaledReadings, readingScales, count);
+
+        assertDecodesTo(block, epochSeconds, nanos, unscaledReadings, readingScales);
+    }
+
+    private static void assertDecodesTo(
+            SeriesBlock block, long[] epochSeconds, int[] nanos, long[] unscaledReadings, byte[] readingScales) {
+        long[] decodedEpochSeconds = new long[SeriesBlock.CAPACITY];
+        int[] decodedNanos = new int[SeriesBlock.CAPACITY];
+        long[] decodedUnscaledReadings = new long[SeriesBlock.CAPACITY];
+        byte[] decodedScales = new byte[SeriesBlock.CAPACITY];
+
+        block.decode(decodedEpochSeconds, decodedNanos, decodedUnscaledReadings, decodedScales);
+
+        int count = epochSeconds.length;
+        assertThat(block.count).isEqualTo(count);
+        assertThat(Arrays.copyOf(decodedEpochSeconds, count)).isEqualTo(epochSeconds);
+        assertThat(Arrays.copyOf(decodedNanos, count)).isEqualTo(nanos);
+        assertThat(Arrays.copyOf(decodedUnscaledReadings, count)).isEqualTo(unscaledReadings);
+        assertThat(Arrays.copyOf(decodedScales, count)).isEqualTo(readingScales);
+    }
+}
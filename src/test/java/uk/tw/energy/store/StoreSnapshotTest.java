@@ -0,0 +1,182 @@
+package uk.tw.energy.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.SnapshotStatistics;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+public class StoreSnapshotTest {
+
+    private static final List<PricePlan> PRICE_PLANS = List.of(
+            new PricePlan("price-plan-0", "Dr Evil's Dark Energy", BigDecimal.TEN, List.of()),
+            new PricePlan(
+                    "price-plan-1",
+                    "The Green Eco",
+                    new BigDecimal("0.25"),
+                    List.of(new PricePlan.PeakTimeMultiplier(
+                            DayOfWeek.FRIDAY, LocalTime.of(16, 30), LocalTime.of(19, 0), new BigDecimal("1.5")))));
+    private static final Map<String, String> ACCOUNTS = Map.of(
+            "smart-meter-0", "price-plan-0",
+            "smart-meter-1", "price-plan-1",
+            "smart-meter-2", "price-plan-0");
+    private static final RetentionPolicy RETENTION_POLICY =
+            new RetentionPolicy(Duration.ofHours(1), Duration.ofDays(1));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldRestoreReadingsRollupsAccountsAndPricePlansInTimeOrder() throws IOException {
+        ColumnarReadingStore readingStore = new ColumnarReadingStore();
+        List<ElectricityReading> readings = new ElectricityReadingsGenerator().generate(300);
+        List<ElectricityReading> reversed = new ArrayList<>(readings);
+        Collections.reverse(reversed);
+        readingStore.storeReadings("smart-meter-0", reversed);
+        readingStore.storeReadings(
+                "smart-meter-1",
+                List.of(
+                        reading("2024-04-26T00:00:10Z", 1),
+                        reading("2024-04-26T00:05:00Z", 3),
+                        reading("2024-04-26T02:00:00.123456789Z", 5)));
+        readingStore.compact(RETENTION_POLICY, Instant.parse("2024-04-26T03:10:00Z"));
+
+        SnapshotStatistics statistics = StoreSnapshot.write(snapshotFile(), readingStore, ACCOUNTS, PRICE_PLANS);
+        StoreSnapshot snapshot = StoreSnapshot.open(snapshotFile());
+        SnapshotReadingStore restored = new SnapshotReadingStore(snapshot);
+
+        assertThat(statistics).isEqualTo(new SnapshotStatistics(2, 301, 3, 2, Files.size(snapshotFile())));
+        assertThat(snapshot.pricePlans()).usingRecursiveComparison().isEqualTo(PRICE_PLANS);
+        assertThat(snapshot.accounts()).isEqualTo(ACCOUNTS);
+        assertThat(restored.getReadings("smart-meter-0")).contains(readings);
+        assertThat(restored.getSummary("smart-meter-0")).isEqualTo(readingStore.getSummary("smart-meter-0"));
+        assertThat(restored.getReadings("smart-meter-1"))
+                .contains(List.of(reading("2024-04-26T02:00:00.123456789Z", 5)));
+        assertThat(restored.getRollups("smart-meter-1"))
+                .contains(List.of(rollup("2024-04-26T00:00:00Z", "2024-04-26T00:15:00Z", 2, 4, 1, 3)));
+        assertThat(restored.getSummary("smart-meter-1")).isEqualTo(readingStore.getSummary("smart-meter-1"));
+        assertThat(restored.getReadings("smart-meter-2")).isEmpty();
+    }
+
+    @Test
+    public void shouldRestoreEachMeterOnlyWhenFirstAskedFor() throws IOException {
+        SnapshotReadingStore restored = new SnapshotReadingStore(writeAndOpen(storeOfTenReadingsForEachMeter(3)));
+
+        assertThat(restored.meterCount()).isEqualTo(3);
+        assertThat(restored.readingCount()).isEqualTo(30);
+        assertThat(restored.sizeInBytes()).isZero();
+        assertThat(restored.getSmartMeterIds())
+                .containsExactlyInAnyOrder("smart-meter-0", "smart-meter-1", "smart-meter-2");
+
+        restored.storeReadings("smart-meter-1", List.of(reading("2024-04-26T00:00:00Z", 1)));
+        restored.storeReadings("smart-meter-3", List.of(reading("2024-04-26T00:00:00Z", 1)));
+
+        assertThat(restored.getSummary("smart-meter-1").orElseThrow().count()).isEqualTo(11);
+        assertThat(restored.meterCount()).isEqualTo(4);
+        assertThat(restored.readingCount()).isEqualTo(32);
+        assertThat(restored.sizeInBytes()).isPositive();
+        assertThat(restored.getSmartMeterIds())
+                .containsExactlyInAnyOrder("smart-meter-0", "smart-meter-1", "smart-meter-2", "smart-meter-3");
+    }
+
+    @Test
+    public void givenRemovedMeterShouldNotRestoreItAgain() throws IOException {
+        SnapshotReadingStore restored = new SnapshotReadingStore(writeAndOpen(storeOfTenReadingsForEachMeter(2)));
+
+        assertThat(restored.removeReadings("smart-meter-0").orElseThrow()).hasSize(10);
+
+        assertThat(restored.getReadings("smart-meter-0")).isEmpty();
+        assertThat(restored.getSmartMeterIds()).containsExactly("smart-meter-1");
+        assertThat(restored.meterCount()).isEqualTo(1);
+        assertThat(restored.readingCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void givenCompactionBeforeAMeterIsRestoredShouldCompactItWhenRestored() throws IOException {
+        ColumnarReadingStore readingStore = new ColumnarReadingStore();
+        readingStore.storeReadings(
+                "smart-meter-0", List.of(reading("2024-04-26T00:00:10Z", 1), reading("2024-04-26T02:00:00Z", 5)));
+        SnapshotReadingStore restored = new SnapshotReadingStore(writeAndOpen(readingStore));
+
+        assertThat(restored.compact(RETENTION_POLICY, Instant.parse("2024-04-26T03:10:00Z"))).isZero();
+
+        assertThat(restored.getReadings("smart-meter-0")).contains(List.of(reading("2024-04-26T02:00:00Z", 5)));
+        assertThat(restored.getRollups("smart-meter-0"))
+                .contains(List.of(rollup("2024-04-26T00:00:00Z", "2024-04-26T00:15:00Z", 1, 1, 1, 1)));
+        assertThat(restored.readingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void givenMetersNotYetRestoredShouldCopyThemIntoTheNextSnapshot() throws IOException {
+        ColumnarReadingStore readingStore = storeOfTenReadingsForEachMeter(3);
+        SnapshotReadingStore restored = new SnapshotReadingStore(writeAndOpen(readingStore));
+        restored.storeReadings("smart-meter-1", List.of(reading("2024-04-26T00:00:00Z", 1)));
+        restored.removeReadings("smart-meter-2");
+
+        Path next = directory.resolve("next.snapshot");
+        SnapshotStatistics statistics = StoreSnapshot.write(next, restored, ACCOUNTS, PRICE_PLANS);
+        SnapshotReadingStore restoredAgain = new SnapshotReadingStore(StoreSnapshot.open(next));
+
+        assertThat(statistics.meterCount()).isEqualTo(2);
+        assertThat(statistics.readingCount()).isEqualTo(21);
+        assertThat(restoredAgain.getReadings("smart-meter-0")).isEqualTo(readingStore.getReadings("smart-meter-0"));
+        assertThat(restoredAgain.getSummary("smart-meter-1").orElseThrow().count()).isEqualTo(11);
+        assertThat(restoredAgain.getReadings("smart-meter-2")).isEmpty();
+    }
+
+    @Test
+    public void givenFileThatIsNotASnapshotShouldNotOpenIt() throws IOException {
+        Files.write(snapshotFile(), new byte[StoreSnapshot.HEADER_BYTES]);
+
+        assertThatThrownBy(() -> StoreSnapshot.open(snapshotFile())).isInstanceOf(IllegalStateException.class);
+    }
+
+    private StoreSnapshot writeAndOpen(ReadingStore readingStore) throws IOException {
+        StoreSnapshot.write(snapshotFile(), readingStore, ACCOUNTS, PRICE_PLANS);
+        return StoreSnapshot.open(snapshotFile());
+    }
+
+    private Path snapshotFile() {
+        return directory.resolve("store.snapshot");
+    }
+
+    private static ColumnarReadingStore storeOfTenReadingsForEachMeter(int meterCount) {
+        ColumnarReadingStore readingStore = new ColumnarReadingStore();
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        for (int meter = 0; meter < meterCount; meter++) {
+            readingStore.storeReadings("smart-meter-" + meter, generator.generate(10));
+        }
+        return readingStore;
+    }
+
+    private static ElectricityReading reading(String time, int reading) {
+        return new ElectricityReading(Instant.parse(time), BigDecimal.valueOf(reading));
+    }
+
+    private static ReadingRollup rollup(String start, String end, long count, int sum, int min, int max) {
+        return new ReadingRollup(
+                Instant.parse(start),
+                Instant.parse(end),
+                count,
+                BigDecimal.valueOf(sum),
+                BigDecimal.valueOf(min),
+                BigDecimal.valueOf(max));
+    }
+}